@@ -56,6 +56,7 @@ import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
 
 @AutoService(Processor.class)
 @SupportedAnnotationTypes(EncodableProcessor.ENCODABLE_ANNOTATION)
@@ -67,18 +68,36 @@ public class EncodableProcessor extends AbstractProcessor {
   private Elements elements;
   private Types types;
   private GetterFactory getterFactory;
+  private ProtobufWriters protobufWriters;
 
   @Override
   public SourceVersion getSupportedSourceVersion() {
     return SourceVersion.latestSupported();
   }
 
+  @Override
+  public Set<String> getSupportedOptions() {
+    return Collections.singleton(ProtobufWriters.OPTION);
+  }
+
   @Override
   public synchronized void init(ProcessingEnvironment processingEnvironment) {
     super.init(processingEnvironment);
     elements = processingEnvironment.getElementUtils();
     types = processingEnvironment.getTypeUtils();
     getterFactory = new GetterFactory(types, elements, processingEnvironment.getMessager());
+    if (Boolean.parseBoolean(processingEnvironment.getOptions().get(ProtobufWriters.OPTION))) {
+      protobufWriters = new ProtobufWriters(types, elements);
+      if (!protobufWriters.isAvailable()) {
+        processingEnvironment
+            .getMessager()
+            .printMessage(
+                Diagnostic.Kind.WARNING,
+                ProtobufWriters.OPTION
+                    + " is set, but firebase-encoders-proto is not on the classpath.");
+        protobufWriters = null;
+      }
+    }
   }
 
   @Override
@@ -271,7 +290,8 @@ public class EncodableProcessor extends AbstractProcessor {
       Set<TypeMirror> result = new LinkedHashSet<>();
       Set<FieldSpec> descriptorFields = new LinkedHashSet<>();
       ClassName fieldDescriptor = ClassName.get("com.google.firebase.encoders", "FieldDescriptor");
-      for (Getter getter : getterFactory.allGetters((DeclaredType) type)) {
+      Set<Getter> getters = getterFactory.allGetters((DeclaredType) type);
+      for (Getter getter : getters) {
         result.addAll(getTypesToVisit(getter.getUnderlyingType()));
         if (getter.inline()) {
           methodBuilder.addCode("ctx.inline(value.$L);\n", getter.expression());
@@ -314,22 +334,30 @@ public class EncodableProcessor extends AbstractProcessor {
         }
       }
 
+      Optional<MethodSpec> protobufWriteMethod =
+          protobufWriters == null
+              ? Optional.empty()
+              : protobufWriters.writeMethod((DeclaredType) type, getters);
+      ClassName encoderInterface =
+          protobufWriteMethod.isPresent()
+              ? ProtobufWriters.PROTOBUF_OBJECT_ENCODER
+              : ClassName.get("com.google.firebase.encoders", "ObjectEncoder");
+
       ClassName className =
           ClassName.bestGuess(Names.generatedClassName(types.asElement(type)) + "Encoder");
-      TypeSpec encoder =
+      TypeSpec.Builder encoderBuilder =
           TypeSpec.classBuilder(className)
               .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
               .addSuperinterface(
-                  ParameterizedTypeName.get(
-                      ClassName.get("com.google.firebase.encoders", "ObjectEncoder"),
-                      TypeName.get(types.erasure(type))))
+                  ParameterizedTypeName.get(encoderInterface, TypeName.get(types.erasure(type))))
               .addField(
                   FieldSpec.builder(className, "INSTANCE", Modifier.FINAL, Modifier.STATIC)
                       .initializer("new $T()", className)
                       .build())
               .addFields(descriptorFields)
-              .addMethod(methodBuilder.build())
-              .build();
+              .addMethod(methodBuilder.build());
+      protobufWriteMethod.ifPresent(encoderBuilder::addMethod);
+      TypeSpec encoder = encoderBuilder.build();
       encoded.put(types.erasure(type), encoder);
       return VisitResult.of(result, Encoder.create(types.erasure(type), encoder));
     }
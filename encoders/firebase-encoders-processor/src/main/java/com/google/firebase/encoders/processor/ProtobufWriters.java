@@ -0,0 +1,283 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.encoders.processor;
+
+import com.google.firebase.encoders.processor.getters.AnnotationDescriptor;
+import com.google.firebase.encoders.processor.getters.Getter;
+import com.google.firebase.encoders.processor.getters.GetterFactory;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates direct-write protobuf encoders.
+ *
+ * <p>For types whose getters are all annotated with {@code @Protobuf}, generates an {@code
+ * encode(T, ProtobufWriter)} method with tags and wire types resolved at compile time, so that the
+ * encoder can implement {@code ProtobufObjectEncoder}. Getters of types that don't have a
+ * specialized write method, e.g. maps, still go through their {@code FieldDescriptor}.
+ */
+final class ProtobufWriters {
+  /** Annotation processor option that enables generation of direct-write protobuf encoders. */
+  static final String OPTION = "firebase.encoders.generateProtobufWriters";
+
+  private static final String PROTO_PACKAGE = "com.google.firebase.encoders.proto";
+  static final ClassName PROTOBUF_OBJECT_ENCODER =
+      ClassName.get(PROTO_PACKAGE, "ProtobufObjectEncoder");
+  private static final ClassName PROTOBUF_WRITER = ClassName.get(PROTO_PACKAGE, "ProtobufWriter");
+  private static final String PROTOBUF_ANNOTATION = PROTO_PACKAGE + ".Protobuf";
+  private static final String PROTO_ENUM = PROTO_PACKAGE + ".ProtoEnum";
+
+  private final Types types;
+  private final Elements elements;
+  // Getters are only inspected here, diagnostics are reported when their encoders are generated.
+  private final GetterFactory getterFactory;
+  private final Map<String, Boolean> supportedTypes = new HashMap<>();
+
+  ProtobufWriters(Types types, Elements elements) {
+    this.types = types;
+    this.elements = elements;
+    this.getterFactory = new GetterFactory(types, elements, new SilentMessager());
+  }
+
+  /** Returns true if the proto runtime with {@code ProtobufObjectEncoder} is on the classpath. */
+  boolean isAvailable() {
+    return elements.getTypeElement(PROTOBUF_OBJECT_ENCODER.canonicalName()) != null;
+  }
+
+  /**
+   * Returns an {@code encode(T, ProtobufWriter)} method for the given type, or empty if any of its
+   * getters is not annotated with {@code @Protobuf}.
+   */
+  Optional<MethodSpec> writeMethod(DeclaredType type, Set<Getter> getters) {
+    if (!isSupported(getters)) {
+      return Optional.empty();
+    }
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("encode")
+            .addParameter(TypeName.get(types.erasure(type)), "value")
+            .addParameter(PROTOBUF_WRITER, "writer")
+            .addModifiers(Modifier.PUBLIC)
+            .addException(IOException.class)
+            .addAnnotation(Override.class);
+    for (Getter getter : getters) {
+      method.addCode(writeField(getter));
+    }
+    return Optional.of(method.build());
+  }
+
+  private CodeBlock writeField(Getter getter) {
+    AnnotationMirror protobuf = protobufAnnotation(getter).get();
+    int tag = (Integer) annotationValue(protobuf, "tag").getValue();
+    String intEncoding =
+        Optional.ofNullable(annotationValue(protobuf, "intEncoding"))
+            .map(v -> ((VariableElement) v.getValue()).getSimpleName().toString())
+            .orElse("DEFAULT");
+    String value = "value." + getter.expression();
+
+    TypeMirror type = getter.returnType();
+    switch (type.getKind()) {
+      case INT:
+      case SHORT:
+      case BYTE:
+      case CHAR:
+        return CodeBlock.of("writer.$L($L, $L);\n", intMethod("Int32", intEncoding), tag, value);
+      case LONG:
+        return CodeBlock.of("writer.$L($L, $L);\n", intMethod("Int64", intEncoding), tag, value);
+      case FLOAT:
+        return CodeBlock.of("writer.writeFloat($L, $L);\n", tag, value);
+      case DOUBLE:
+        return CodeBlock.of("writer.writeDouble($L, $L);\n", tag, value);
+      case BOOLEAN:
+        return CodeBlock.of("writer.writeBool($L, $L);\n", tag, value);
+      case ARRAY:
+        if (((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE) {
+          return CodeBlock.of("writer.writeBytes($L, $L);\n", tag, value);
+        }
+        break;
+      case DECLARED:
+        Optional<CodeBlock> declared = writeDeclared((DeclaredType) type, tag, intEncoding, value);
+        if (declared.isPresent()) {
+          return declared.get();
+        }
+        break;
+      default:
+        break;
+    }
+    return CodeBlock.of(
+        "writer.writeObject($L_DESCRIPTOR, $L);\n", getter.name().toUpperCase(), value);
+  }
+
+  private Optional<CodeBlock> writeDeclared(
+      DeclaredType type, int tag, String intEncoding, String value) {
+    if (isType(type, "java.lang.String")) {
+      return Optional.of(CodeBlock.of("writer.writeString($L, $L);\n", tag, value));
+    }
+    TypeElement protoEnum = elements.getTypeElement(PROTO_ENUM);
+    if (protoEnum != null && types.isAssignable(type, protoEnum.asType())) {
+      return Optional.of(CodeBlock.of("writer.writeEnum($L, $L);\n", tag, value));
+    }
+    if (types.isSameType(types.erasure(type), types.erasure(listType()))) {
+      return repeatedMethod(type.getTypeArguments().get(0), intEncoding)
+          .map(method -> CodeBlock.of("writer.$L($L, $L);\n", method, tag, value));
+    }
+    if (isMessage(type)) {
+      ClassName encoder =
+          ClassName.bestGuess(Names.generatedClassName(types.asElement(type)) + "Encoder");
+      return Optional.of(
+          CodeBlock.of("writer.writeMessage($L, $L, $T.INSTANCE);\n", tag, value, encoder));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns the writer method of a repeated scalar field, if its encoding matches the one of
+   * ProtobufDataEncoderContext, which widens {@code Integer} elements to {@code long} and encodes
+   * {@code Boolean} elements like {@code int}s of the field.
+   */
+  private Optional<String> repeatedMethod(TypeMirror element, String intEncoding) {
+    if (isType(element, "java.lang.Integer") && !"FIXED".equals(intEncoding)) {
+      return Optional.of(intMethod("RepeatedInt32", intEncoding));
+    }
+    if (isType(element, "java.lang.Long")) {
+      return Optional.of(intMethod("RepeatedInt64", intEncoding));
+    }
+    if (isType(element, "java.lang.Float")) {
+      return Optional.of("writeRepeatedFloat");
+    }
+    if (isType(element, "java.lang.Double")) {
+      return Optional.of("writeRepeatedDouble");
+    }
+    if (isType(element, "java.lang.Boolean") && "DEFAULT".equals(intEncoding)) {
+      return Optional.of("writeRepeatedBool");
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns true if the type is a message with a direct-write encoder in the same generated class.
+   */
+  private boolean isMessage(DeclaredType type) {
+    Element element = types.asElement(type);
+    if (!type.getTypeArguments().isEmpty()
+        || element.getKind() != ElementKind.CLASS
+        || "java.lang".equals(Names.packageName(element))
+        || types.isAssignable(type, elements.getTypeElement("java.util.Date").asType())
+        || types.isAssignable(
+            type, types.erasure(elements.getTypeElement("java.util.Collection").asType()))
+        || types.isAssignable(
+            type, types.erasure(elements.getTypeElement("java.util.Map").asType()))) {
+      return false;
+    }
+    String key = types.erasure(type).toString();
+    Boolean supported = supportedTypes.get(key);
+    if (supported == null) {
+      // Mark the type as supported while visiting it to terminate on self-referential types.
+      supportedTypes.put(key, true);
+      supported = isSupported(getterFactory.allGetters(type));
+      supportedTypes.put(key, supported);
+    }
+    return supported;
+  }
+
+  private boolean isSupported(Set<Getter> getters) {
+    for (Getter getter : getters) {
+      if (getter.inline() || !protobufAnnotation(getter).isPresent()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String intMethod(String name, String intEncoding) {
+    switch (intEncoding) {
+      case "SIGNED":
+        return "write" + name.replace("Int", "SInt");
+      case "FIXED":
+        return "write" + name.replace("Int", "Fixed");
+      default:
+        return "write" + name;
+    }
+  }
+
+  private TypeMirror listType() {
+    return elements.getTypeElement("java.util.List").asType();
+  }
+
+  private boolean isType(TypeMirror type, String name) {
+    TypeElement element = elements.getTypeElement(name);
+    return element != null && types.isSameType(type, element.asType());
+  }
+
+  private static Optional<AnnotationMirror> protobufAnnotation(Getter getter) {
+    for (AnnotationDescriptor descriptor : getter.annotationDescriptors()) {
+      TypeElement annotation = (TypeElement) descriptor.type().getAnnotationType().asElement();
+      if (annotation.getQualifiedName().contentEquals(PROTOBUF_ANNOTATION)) {
+        return Optional.of(descriptor.type());
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static AnnotationValue annotationValue(AnnotationMirror annotation, String name) {
+    for (Map.Entry<? extends Element, ? extends AnnotationValue> entry :
+        annotation.getElementValues().entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  private static class SilentMessager implements Messager {
+    @Override
+    public void printMessage(Diagnostic.Kind kind, CharSequence msg) {}
+
+    @Override
+    public void printMessage(Diagnostic.Kind kind, CharSequence msg, Element e) {}
+
+    @Override
+    public void printMessage(
+        Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a) {}
+
+    @Override
+    public void printMessage(
+        Diagnostic.Kind kind,
+        CharSequence msg,
+        Element e,
+        AnnotationMirror a,
+        AnnotationValue v) {}
+  }
+}
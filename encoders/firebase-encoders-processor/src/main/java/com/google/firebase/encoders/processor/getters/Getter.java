@@ -38,7 +38,8 @@ public abstract class Getter {
    */
   public abstract String expression();
 
-  abstract TypeMirror returnType();
+  /** Getter's declared return type, resolved with respect to generics. */
+  public abstract TypeMirror returnType();
 
   public abstract boolean inline();
 
@@ -22,6 +22,7 @@ import com.google.auto.value.processor.AutoValueProcessor;
 import com.google.common.truth.StringSubject;
 import com.google.testing.compile.Compilation;
 import com.google.testing.compile.JavaFileObjects;
+import javax.tools.JavaFileObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -467,6 +468,131 @@ public class EncodableProcessorTest {
         .contains("ctx.inline(value.getMember());");
   }
 
+  @Test
+  public void compile_withProtobufWritersOption_shouldGenerateDirectWriteEncoder() {
+    Compilation result =
+        javac()
+            .withProcessors(new EncodableProcessor())
+            .withOptions("-A" + ProtobufWriters.OPTION + "=true")
+            .compile(protoClass());
+
+    assertThat(result).succeededWithoutWarnings();
+    StringSubject generated =
+        assertThat(result).generatedSourceFile("AutoProtoClassEncoder").contentsAsUtf8String();
+    generated.contains("implements ProtobufObjectEncoder<ProtoClass>");
+    generated.contains("public void encode(ProtoClass value, ProtobufWriter writer)");
+    generated.contains("writer.writeInt32(1, value.getInt());");
+    generated.contains("writer.writeSInt64(2, value.getLong());");
+    generated.contains("writer.writeString(3, value.getStr());");
+    // Repeated fixed32 fields are written by the reflective encoder, which widens them to fixed64.
+    generated.contains("writer.writeObject(INTS_DESCRIPTOR, value.getInts());");
+    generated.contains("writer.writeObject(MAP_DESCRIPTOR, value.getMap());");
+    generated.contains("writer.writeMessage(6, value.getChild(), ProtoClassEncoder.INSTANCE);");
+  }
+
+  @Test
+  public void compile_withProtobufWritersOption_shouldCompileWriterForAllFieldTypes() {
+    Compilation result =
+        javac()
+            .withProcessors(new EncodableProcessor())
+            .withOptions("-A" + ProtobufWriters.OPTION + "=true")
+            .compile(
+                JavaFileObjects.forSourceLines(
+                    "AllTypesClass",
+                    "import com.google.firebase.encoders.annotations.Encodable;",
+                    "import com.google.firebase.encoders.proto.ProtoEnum;",
+                    "import com.google.firebase.encoders.proto.Protobuf;",
+                    "import java.util.List;",
+                    "@Encodable public class AllTypesClass {",
+                    "public enum Kind implements ProtoEnum {",
+                    "  FIRST;",
+                    "  @Override public int getNumber() { return 1; }",
+                    "}",
+                    "@Protobuf(tag = 1) public int getInt() { return 0; }",
+                    "@Protobuf(tag = 2, intEncoding = Protobuf.IntEncoding.FIXED)",
+                    "public long getLong() { return 0; }",
+                    "@Protobuf(tag = 3) public float getFloat() { return 0; }",
+                    "@Protobuf(tag = 4) public double getDouble() { return 0; }",
+                    "@Protobuf(tag = 5) public boolean getBool() { return false; }",
+                    "@Protobuf(tag = 6) public byte[] getBytes() { return null; }",
+                    "@Protobuf(tag = 7) public String getStr() { return null; }",
+                    "@Protobuf(tag = 8) public Kind getKind() { return null; }",
+                    "@Protobuf(tag = 9) public List<Double> getDoubles() { return null; }",
+                    "@Protobuf(tag = 10) public AllTypesClass getChild() { return null; }",
+                    "@Protobuf(tag = 11, intEncoding = Protobuf.IntEncoding.SIGNED)",
+                    "public List<Integer> getInts() { return null; }",
+                    "}"));
+
+    assertThat(result).succeededWithoutWarnings();
+    StringSubject generated =
+        assertThat(result).generatedSourceFile("AutoAllTypesClassEncoder").contentsAsUtf8String();
+    generated.contains("writer.writeInt32(1, value.getInt());");
+    generated.contains("writer.writeFixed64(2, value.getLong());");
+    generated.contains("writer.writeFloat(3, value.getFloat());");
+    generated.contains("writer.writeDouble(4, value.getDouble());");
+    generated.contains("writer.writeBool(5, value.getBool());");
+    generated.contains("writer.writeBytes(6, value.getBytes());");
+    generated.contains("writer.writeString(7, value.getStr());");
+    generated.contains("writer.writeEnum(8, value.getKind());");
+    generated.contains("writer.writeRepeatedDouble(9, value.getDoubles());");
+    generated.contains(
+        "writer.writeMessage(10, value.getChild(), AllTypesClassEncoder.INSTANCE);");
+    generated.contains("writer.writeRepeatedSInt32(11, value.getInts());");
+  }
+
+  @Test
+  public void compile_withoutProtobufWritersOption_shouldNotGenerateDirectWriteEncoder() {
+    Compilation result = javac().withProcessors(new EncodableProcessor()).compile(protoClass());
+
+    assertThat(result).succeededWithoutWarnings();
+    assertThat(result)
+        .generatedSourceFile("AutoProtoClassEncoder")
+        .contentsAsUtf8String()
+        .doesNotContain("ProtobufWriter");
+  }
+
+  @Test
+  public void compile_withProtobufWritersOptionAndNonProtobufGetter_shouldNotGenerateWriter() {
+    Compilation result =
+        javac()
+            .withProcessors(new EncodableProcessor())
+            .withOptions("-A" + ProtobufWriters.OPTION + "=true")
+            .compile(
+                JavaFileObjects.forSourceLines(
+                    "MixedClass",
+                    "import com.google.firebase.encoders.annotations.Encodable;",
+                    "import com.google.firebase.encoders.proto.Protobuf;",
+                    "@Encodable public class MixedClass {",
+                    "@Protobuf(tag = 1) public int getInt() { return 0; }",
+                    "public String getStr() { return null; }",
+                    "}"));
+
+    assertThat(result).succeededWithoutWarnings();
+    assertThat(result)
+        .generatedSourceFile("AutoMixedClassEncoder")
+        .contentsAsUtf8String()
+        .doesNotContain("ProtobufWriter");
+  }
+
+  private static JavaFileObject protoClass() {
+    return JavaFileObjects.forSourceLines(
+        "ProtoClass",
+        "import com.google.firebase.encoders.annotations.Encodable;",
+        "import com.google.firebase.encoders.proto.Protobuf;",
+        "import java.util.List;",
+        "import java.util.Map;",
+        "@Encodable public class ProtoClass {",
+        "@Protobuf(tag = 1) public int getInt() { return 0; }",
+        "@Protobuf(tag = 2, intEncoding = Protobuf.IntEncoding.SIGNED)",
+        "public long getLong() { return 0; }",
+        "@Protobuf(tag = 3) public String getStr() { return null; }",
+        "@Protobuf(tag = 4, intEncoding = Protobuf.IntEncoding.FIXED)",
+        "public List<Integer> getInts() { return null; }",
+        "@Protobuf(tag = 5) public Map<String, String> getMap() { return null; }",
+        "@Protobuf(tag = 6) public ProtoClass getChild() { return null; }",
+        "}");
+  }
+
   @Test
   public void compile_withExtraProperty_annotation_shouldIncludeThePropertyInFieldDescriptor() {
     Compilation result =
@@ -46,4 +46,14 @@ final class LengthCountingOutputStream extends OutputStream {
   long getLength() {
     return length;
   }
+
+  /** Accounts for {@code count} bytes as if they were written. */
+  void skip(long count) {
+    length += count;
+  }
+
+  /** Resets the number of bytes written to a previously observed {@link #getLength()}. */
+  void reset(long length) {
+    this.length = length;
+  }
 }
@@ -27,9 +27,11 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
-final class ProtobufDataEncoderContext implements ObjectEncoderContext {
+final class ProtobufDataEncoderContext implements ObjectEncoderContext, ProtobufWriter {
   private static final Charset UTF_8 = Charset.forName("UTF-8");
 
   private OutputStream output;
@@ -39,6 +41,14 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
   private final ProtobufValueEncoderContext valueEncoderContext =
       new ProtobufValueEncoderContext(this);
 
+  // Sizes of nested messages are computed at most once per encoded object, so that encoding a
+  // message nested N levels deep is linear in N instead of encoding inner messages N+1 times.
+  private final LengthCountingOutputStream sizeCounter = new LengthCountingOutputStream();
+  private final Map<Object, Long> sizeCache = new IdentityHashMap<>();
+
+  private final byte[] varIntBuffer = new byte[10];
+  private final ByteBuffer fixedBuffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
   private static final FieldDescriptor MAP_KEY_DESC =
       FieldDescriptor.builder("key").withProperty(AtProtobuf.builder().tag(1).build()).build();
 
@@ -208,7 +218,7 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
     int tag = getTag(field);
     int wire = 1;
     writeVarInt32((tag << 3) | wire);
-    output.write(allocateBuffer(8).putDouble(value).array());
+    writeFixed(fixedBuffer().putDouble(value));
     return this;
   }
 
@@ -227,7 +237,7 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
     int tag = getTag(field);
     int wire = 5;
     writeVarInt32((tag << 3) | wire);
-    output.write(allocateBuffer(4).putFloat(value).array());
+    writeFixed(fixedBuffer().putFloat(value));
     return this;
   }
 
@@ -255,7 +265,7 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
         break;
       case FIXED:
         writeVarInt32((protobuf.tag() << 3) | 5);
-        output.write(allocateBuffer(4).putInt(value).array());
+        writeFixed(fixedBuffer().putInt(value));
         break;
     }
     return this;
@@ -285,7 +295,7 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
         break;
       case FIXED:
         writeVarInt32((protobuf.tag() << 3) | 1);
-        output.write(allocateBuffer(8).putLong(value).array());
+        writeFixed(fixedBuffer().putLong(value));
         break;
     }
     return this;
@@ -317,7 +327,7 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
     ObjectEncoder<Object> objectEncoder =
         (ObjectEncoder<Object>) objectEncoders.get(value.getClass());
     if (objectEncoder != null) {
-      objectEncoder.encode(value, this);
+      encodeFields(objectEncoder, value);
       return this;
     }
     throw new EncodingException("No encoder for " + value.getClass());
@@ -344,29 +354,279 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
       return this;
     }
 
-    int tag = getTag(field);
+    writeMessage(getTag(field), encoder, obj, size);
+    return this;
+  }
+
+  private <T> void writeMessage(int tag, ObjectEncoder<T> encoder, T obj, long size)
+      throws IOException {
     int wire = 2;
     writeVarInt32((tag << 3) | wire);
     writeVarInt64(size);
-    encoder.encode(obj, this);
-    return this;
+    if (output == sizeCounter) {
+      // Only the size is being computed, the nested message has already been measured.
+      sizeCounter.skip(size);
+    } else {
+      encodeFields(encoder, obj);
+    }
   }
 
   private <T> long determineSize(ObjectEncoder<T> encoder, T obj) throws IOException {
-    // TODO(vkryachko): consider reusing these output streams to avoid allocations.
-    try (LengthCountingOutputStream out = new LengthCountingOutputStream()) {
-
-      OutputStream originalStream = output;
-      output = out;
-      try {
-        encoder.encode(obj, this);
-      } finally {
-        output = originalStream;
+    Long cachedSize = sizeCache.get(obj);
+    if (cachedSize != null) {
+      return cachedSize;
+    }
+    long start = sizeCounter.getLength();
+    OutputStream originalStream = output;
+    output = sizeCounter;
+    try {
+      encodeFields(encoder, obj);
+    } finally {
+      output = originalStream;
+    }
+    long size = sizeCounter.getLength() - start;
+    sizeCounter.reset(start);
+    sizeCache.put(obj, size);
+    return size;
+  }
+
+  private <T> void encodeFields(ObjectEncoder<T> encoder, T obj) throws IOException {
+    if (encoder instanceof ProtobufObjectEncoder) {
+      @SuppressWarnings("unchecked")
+      ProtobufObjectEncoder<T> protobufEncoder = (ProtobufObjectEncoder<T>) encoder;
+      // Cast is needed to disambiguate, this class is both an ObjectEncoderContext and a writer.
+      protobufEncoder.encode(obj, (ProtobufWriter) this);
+    } else {
+      encoder.encode(obj, this);
+    }
+  }
+
+  @Override
+  public void writeInt32(int tag, int value) throws IOException {
+    if (value == 0) {
+      return;
+    }
+    writeVarInt32(tag << 3);
+    writeVarInt32(value);
+  }
+
+  @Override
+  public void writeSInt32(int tag, int value) throws IOException {
+    writeInt32(tag, (value << 1) ^ (value >> 31));
+  }
+
+  @Override
+  public void writeFixed32(int tag, int value) throws IOException {
+    if (value == 0) {
+      return;
+    }
+    writeVarInt32((tag << 3) | 5);
+    writeFixed(fixedBuffer().putInt(value));
+  }
+
+  @Override
+  public void writeInt64(int tag, long value) throws IOException {
+    if (value == 0) {
+      return;
+    }
+    writeVarInt32(tag << 3);
+    writeVarInt64(value);
+  }
+
+  @Override
+  public void writeSInt64(int tag, long value) throws IOException {
+    writeInt64(tag, (value << 1) ^ (value >> 63));
+  }
+
+  @Override
+  public void writeFixed64(int tag, long value) throws IOException {
+    if (value == 0) {
+      return;
+    }
+    writeVarInt32((tag << 3) | 1);
+    writeFixed(fixedBuffer().putLong(value));
+  }
+
+  @Override
+  public void writeFloat(int tag, float value) throws IOException {
+    if (value == 0) {
+      return;
+    }
+    writeVarInt32((tag << 3) | 5);
+    writeFixed(fixedBuffer().putFloat(value));
+  }
+
+  @Override
+  public void writeDouble(int tag, double value) throws IOException {
+    if (value == 0) {
+      return;
+    }
+    writeVarInt32((tag << 3) | 1);
+    writeFixed(fixedBuffer().putDouble(value));
+  }
+
+  @Override
+  public void writeBool(int tag, boolean value) throws IOException {
+    writeInt32(tag, value ? 1 : 0);
+  }
+
+  @Override
+  public void writeEnum(int tag, @Nullable ProtoEnum value) throws IOException {
+    if (value != null) {
+      writeInt32(tag, value.getNumber());
+    }
+  }
+
+  @Override
+  public void writeString(int tag, @Nullable String value) throws IOException {
+    if (value == null || value.isEmpty()) {
+      return;
+    }
+    writeBytes(tag, value.getBytes(UTF_8));
+  }
+
+  @Override
+  public void writeBytes(int tag, @Nullable byte[] value) throws IOException {
+    if (value == null || value.length == 0) {
+      return;
+    }
+    writeVarInt32((tag << 3) | 2);
+    writeVarInt32(value.length);
+    output.write(value);
+  }
+
+  @Override
+  public void writeRepeatedInt32(int tag, @Nullable List<Integer> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Integer value = values.get(i);
+      if (value != null) {
+        // Like add(FieldDescriptor, long), negative values are sign extended to 10 bytes.
+        writeVarInt32(tag << 3);
+        writeVarInt64(value);
+      }
+    }
+  }
+
+  @Override
+  public void writeRepeatedSInt32(int tag, @Nullable List<Integer> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Integer value = values.get(i);
+      if (value != null) {
+        long longValue = value;
+        writeVarInt32(tag << 3);
+        writeVarInt64((longValue << 1) ^ (longValue >> 63));
+      }
+    }
+  }
+
+  @Override
+  public void writeRepeatedInt64(int tag, @Nullable List<Long> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Long value = values.get(i);
+      if (value != null) {
+        writeVarInt32(tag << 3);
+        writeVarInt64(value);
+      }
+    }
+  }
+
+  @Override
+  public void writeRepeatedSInt64(int tag, @Nullable List<Long> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Long value = values.get(i);
+      if (value != null) {
+        writeVarInt32(tag << 3);
+        writeVarInt64((value << 1) ^ (value >> 63));
+      }
+    }
+  }
+
+  @Override
+  public void writeRepeatedFixed64(int tag, @Nullable List<Long> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Long value = values.get(i);
+      if (value != null) {
+        writeVarInt32((tag << 3) | 1);
+        writeFixed(fixedBuffer().putLong(value));
       }
-      return out.getLength();
     }
   }
 
+  @Override
+  public void writeRepeatedFloat(int tag, @Nullable List<Float> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Float value = values.get(i);
+      if (value != null) {
+        writeVarInt32((tag << 3) | 5);
+        writeFixed(fixedBuffer().putFloat(value));
+      }
+    }
+  }
+
+  @Override
+  public void writeRepeatedDouble(int tag, @Nullable List<Double> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Double value = values.get(i);
+      if (value != null) {
+        writeVarInt32((tag << 3) | 1);
+        writeFixed(fixedBuffer().putDouble(value));
+      }
+    }
+  }
+
+  @Override
+  public void writeRepeatedBool(int tag, @Nullable List<Boolean> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    for (int i = 0; i < values.size(); i++) {
+      Boolean value = values.get(i);
+      if (value != null) {
+        writeVarInt32(tag << 3);
+        writeVarInt32(value ? 1 : 0);
+      }
+    }
+  }
+
+  @Override
+  public <T> void writeMessage(
+      int tag, @Nullable T value, @NonNull ProtobufObjectEncoder<T> encoder) throws IOException {
+    if (value == null) {
+      return;
+    }
+    long size = determineSize(encoder, value);
+    if (size != 0) {
+      writeMessage(tag, encoder, value, size);
+    }
+  }
+
+  @Override
+  public void writeObject(@NonNull FieldDescriptor field, @Nullable Object value)
+      throws IOException {
+    add(field, value);
+  }
+
   private <T> ProtobufDataEncoderContext doEncode(
       ValueEncoder<T> encoder, FieldDescriptor field, T obj, boolean skipDefault)
       throws IOException {
@@ -375,8 +635,13 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
     return this;
   }
 
-  private static ByteBuffer allocateBuffer(int length) {
-    return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+  private ByteBuffer fixedBuffer() {
+    fixedBuffer.clear();
+    return fixedBuffer;
+  }
+
+  private void writeFixed(ByteBuffer buffer) throws IOException {
+    output.write(buffer.array(), 0, buffer.position());
   }
 
   private static int getTag(FieldDescriptor field) {
@@ -396,18 +661,22 @@ final class ProtobufDataEncoderContext implements ObjectEncoderContext {
   }
 
   private void writeVarInt32(int value) throws IOException {
+    int position = 0;
     while ((value & 0xFFFFFF80) != 0L) {
-      output.write((value & 0x7F) | 0x80);
+      varIntBuffer[position++] = (byte) ((value & 0x7F) | 0x80);
       value >>>= 7;
     }
-    output.write(value & 0x7F);
+    varIntBuffer[position++] = (byte) (value & 0x7F);
+    output.write(varIntBuffer, 0, position);
   }
 
   private void writeVarInt64(long value) throws IOException {
+    int position = 0;
     while ((value & 0xFFFFFFFFFFFFFF80L) != 0L) {
-      output.write(((int) value & 0x7F) | 0x80);
+      varIntBuffer[position++] = (byte) (((int) value & 0x7F) | 0x80);
       value >>>= 7;
     }
-    output.write((int) value & 0x7F);
+    varIntBuffer[position++] = (byte) ((int) value & 0x7F);
+    output.write(varIntBuffer, 0, position);
   }
 }
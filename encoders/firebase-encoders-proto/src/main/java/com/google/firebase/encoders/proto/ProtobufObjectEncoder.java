@@ -0,0 +1,33 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.encoders.proto;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.encoders.ObjectEncoder;
+import java.io.IOException;
+
+/**
+ * {@link ObjectEncoder} that is able to write its fields directly into a {@link ProtobufWriter}.
+ *
+ * <p>{@link ProtobufEncoder} prefers {@link #encode(Object, ProtobufWriter)} over going through
+ * the {@link com.google.firebase.encoders.ObjectEncoderContext} for encoders implementing this
+ * interface.
+ * Implementations are generated by the encoders annotation processor when it's run with the
+ * {@code firebase.encoders.generateProtobufWriters} option.
+ *
+ * @hide
+ */
+public interface ProtobufObjectEncoder<T> extends ObjectEncoder<T> {
+  void encode(@NonNull T value, @NonNull ProtobufWriter writer) throws IOException;
+}
@@ -0,0 +1,91 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.encoders.proto;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.encoders.FieldDescriptor;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes protocol buffer fields with statically known tags and wire types.
+ *
+ * <p>Used by {@link ProtobufObjectEncoder}s to avoid resolving {@link Protobuf} configuration from
+ * {@link FieldDescriptor}s for every written field. Like {@link ProtobufEncoder}, default values
+ * of non-repeated fields are not written.
+ *
+ * @hide
+ */
+public interface ProtobufWriter {
+  void writeInt32(int tag, int value) throws IOException;
+
+  void writeSInt32(int tag, int value) throws IOException;
+
+  void writeFixed32(int tag, int value) throws IOException;
+
+  void writeInt64(int tag, long value) throws IOException;
+
+  void writeSInt64(int tag, long value) throws IOException;
+
+  void writeFixed64(int tag, long value) throws IOException;
+
+  void writeFloat(int tag, float value) throws IOException;
+
+  void writeDouble(int tag, double value) throws IOException;
+
+  void writeBool(int tag, boolean value) throws IOException;
+
+  void writeEnum(int tag, @Nullable ProtoEnum value) throws IOException;
+
+  void writeString(int tag, @Nullable String value) throws IOException;
+
+  void writeBytes(int tag, @Nullable byte[] value) throws IOException;
+
+  /**
+   * Writes each element of a repeated {@code int32} field as a separate field. Like {@link
+   * ProtobufEncoder}, repeated fields are not packed and default elements are written.
+   */
+  void writeRepeatedInt32(int tag, @Nullable List<Integer> values) throws IOException;
+
+  /** Writes each element of a repeated {@code sint32} field as a separate field. */
+  void writeRepeatedSInt32(int tag, @Nullable List<Integer> values) throws IOException;
+
+  /** Writes each element of a repeated {@code int64} field as a separate field. */
+  void writeRepeatedInt64(int tag, @Nullable List<Long> values) throws IOException;
+
+  /** Writes each element of a repeated {@code sint64} field as a separate field. */
+  void writeRepeatedSInt64(int tag, @Nullable List<Long> values) throws IOException;
+
+  /** Writes each element of a repeated {@code fixed64} field as a separate field. */
+  void writeRepeatedFixed64(int tag, @Nullable List<Long> values) throws IOException;
+
+  /** Writes each element of a repeated {@code float} field as a separate field. */
+  void writeRepeatedFloat(int tag, @Nullable List<Float> values) throws IOException;
+
+  /** Writes each element of a repeated {@code double} field as a separate field. */
+  void writeRepeatedDouble(int tag, @Nullable List<Double> values) throws IOException;
+
+  /** Writes each element of a repeated {@code bool} field as a separate field. */
+  void writeRepeatedBool(int tag, @Nullable List<Boolean> values) throws IOException;
+
+  /**
+   * Writes a nested message with the given encoder, bypassing encoder lookup by the value's class.
+   */
+  <T> void writeMessage(int tag, @Nullable T value, @NonNull ProtobufObjectEncoder<T> encoder)
+      throws IOException;
+
+  /** Writes a field of any type supported by {@link ProtobufEncoder}. */
+  void writeObject(@NonNull FieldDescriptor field, @Nullable Object value) throws IOException;
+}
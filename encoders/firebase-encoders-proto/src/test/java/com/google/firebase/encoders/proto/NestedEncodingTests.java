@@ -0,0 +1,110 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.encoders.proto;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.google.firebase.encoders.FieldDescriptor;
+import com.google.firebase.encoders.ObjectEncoder;
+import com.google.firebase.encoders.proto.tests.NestedProto;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class NestedEncodingTests {
+  private static final FieldDescriptor VALUE_DESC =
+      FieldDescriptor.builder("value").withProperty(AtProtobuf.builder().tag(1).build()).build();
+  private static final FieldDescriptor CHILD_DESC =
+      FieldDescriptor.builder("child").withProperty(AtProtobuf.builder().tag(2).build()).build();
+
+  private static class Node {
+    final int value;
+    final Node child;
+
+    Node(int value, Node child) {
+      this.value = value;
+      this.child = child;
+    }
+  }
+
+  private final AtomicInteger encodeCalls = new AtomicInteger();
+
+  private final ObjectEncoder<Node> nodeEncoder =
+      (node, ctx) -> {
+        encodeCalls.incrementAndGet();
+        ctx.add(VALUE_DESC, node.value);
+        ctx.add(CHILD_DESC, node.child);
+      };
+
+  private final ProtobufEncoder encoder =
+      ProtobufEncoder.builder().registerEncoder(Node.class, nodeEncoder).build();
+
+  private static Node chain(int depth) {
+    Node node = null;
+    for (int i = depth; i > 0; i--) {
+      node = new Node(i, node);
+    }
+    return node;
+  }
+
+  private static NestedProto chainProto(int depth) {
+    NestedProto proto = null;
+    for (int i = depth; i > 0; i--) {
+      NestedProto.Builder builder = NestedProto.newBuilder().setValue(i);
+      if (proto != null) {
+        builder.setChild(proto);
+      }
+      proto = builder.build();
+    }
+    return proto;
+  }
+
+  @Test
+  public void encode_withDeeplyNestedMessages_producesValidProto()
+      throws InvalidProtocolBufferException {
+    byte[] result = encoder.encode(chain(50));
+
+    assertThat(NestedProto.parseFrom(result)).isEqualTo(chainProto(50));
+  }
+
+  @Test
+  public void encode_withDeeplyNestedMessages_isLinearInDepth() {
+    for (int depth : new int[] {1, 2, 10, 100, 1000}) {
+      encodeCalls.set(0);
+      encoder.encode(chain(depth));
+
+      // The root is encoded once, every nested message is measured once and written once.
+      assertThat(encodeCalls.get()).isEqualTo(2 * depth - 1);
+    }
+  }
+
+  @Test
+  public void encode_withSharedNestedInstances_producesValidProto()
+      throws InvalidProtocolBufferException {
+    Node shared = chain(3);
+    Node root = new Node(1, new Node(2, shared));
+
+    NestedProto expected =
+        NestedProto.newBuilder()
+            .setValue(1)
+            .setChild(NestedProto.newBuilder().setValue(2).setChild(chainProto(3)))
+            .build();
+    assertThat(NestedProto.parseFrom(encoder.encode(root))).isEqualTo(expected);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.encoders.proto;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.firebase.encoders.proto.pojos.AutoBatchEncoder;
+import com.google.firebase.encoders.proto.pojos.Batch;
+
+/**
+ * Compares encoders generated with the {@code firebase.encoders.generateProtobufWriters} option to
+ * {@code FieldDescriptor} based encoding. Enable the test manually to run it; the generated
+ * writers are expected to encode a batch at least twice as fast.
+ */
+public class ProtobufWriterBenchmarks {
+  private static final int BATCH_SIZE = 100;
+  private static final int WARM_UP_ITERATIONS = 2_000;
+  private static final int ITERATIONS = 10_000;
+
+  // @Test
+  public void protobufWritersVsFieldDescriptors() {
+    Batch batch = ProtobufWriterEncodingTests.createBatch(BATCH_SIZE);
+    ProtobufEncoder direct =
+        ProtobufEncoder.builder().configureWith(AutoBatchEncoder.CONFIG).build();
+    ProtobufEncoder generic = ProtobufWriterEncodingTests.fieldDescriptorEncoder();
+    assertThat(direct.encode(batch)).isEqualTo(generic.encode(batch));
+
+    measure(direct, batch, WARM_UP_ITERATIONS);
+    measure(generic, batch, WARM_UP_ITERATIONS);
+    long directNanos = measure(direct, batch, ITERATIONS);
+    long genericNanos = measure(generic, batch, ITERATIONS);
+
+    double speedup = (double) genericNanos / directNanos;
+    System.err.printf(
+        "Encoding a batch of %d events: ProtobufWriter %d ns, FieldDescriptor %d ns (%.2fx)%n",
+        BATCH_SIZE, directNanos / ITERATIONS, genericNanos / ITERATIONS, speedup);
+    assertThat(speedup).isAtLeast(2.0);
+  }
+
+  private static long measure(ProtobufEncoder encoder, Batch batch, int iterations) {
+    long totalSize = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      totalSize += encoder.encode(batch).length;
+    }
+    long elapsed = System.nanoTime() - start;
+    assertThat(totalSize).isGreaterThan(0L);
+    return elapsed;
+  }
+}
@@ -0,0 +1,187 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.encoders.proto;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import androidx.annotation.NonNull;
+import com.google.firebase.encoders.ObjectEncoder;
+import com.google.firebase.encoders.ValueEncoder;
+import com.google.firebase.encoders.config.EncoderConfig;
+import com.google.firebase.encoders.proto.pojos.AutoBatchEncoder;
+import com.google.firebase.encoders.proto.pojos.Batch;
+import com.google.firebase.encoders.proto.pojos.OtherTypes;
+import com.google.firebase.encoders.proto.pojos.Repeated;
+import com.google.firebase.encoders.proto.pojos.Simple;
+import com.google.firebase.encoders.proto.tests.BatchProto;
+import com.google.firebase.encoders.proto.tests.RepeatedProto;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests encoders generated with the {@code firebase.encoders.generateProtobufWriters} option. */
+@RunWith(JUnit4.class)
+public class ProtobufWriterEncodingTests {
+  @Test
+  public void generatedEncoders_implementProtobufObjectEncoder() {
+    List<Object> encoders = new ArrayList<>();
+    AutoBatchEncoder.CONFIG.configure(new RecordingConfig(encoders));
+
+    assertThat(encoders).isNotEmpty();
+    for (Object encoder : encoders) {
+      assertThat(encoder).isInstanceOf(ProtobufObjectEncoder.class);
+    }
+  }
+
+  @Test
+  public void encode_withRepeatedFields_producesValidProto() throws InvalidProtocolBufferException {
+    Repeated repeated = createRepeated();
+
+    assertThat(RepeatedProto.parseFrom(repeated.encode()))
+        .isEqualTo(
+            RepeatedProto.newBuilder()
+                .addAllValues(repeated.getValues())
+                .addAllSignedValues(repeated.getSignedValues())
+                .addAllFixedValues(repeated.getFixedValues())
+                .addAllDoubles(repeated.getDoubles())
+                .addAllBools(repeated.getBools())
+                .addAllFloats(repeated.getFloats())
+                .build());
+  }
+
+  @Test
+  public void encode_withEmptyRepeatedFields_producesEmptyMessage() {
+    Repeated repeated =
+        new Repeated(
+            Collections.emptyList(),
+            Collections.emptyList(),
+            null,
+            Collections.emptyList(),
+            null,
+            Collections.emptyList());
+
+    assertThat(repeated.encode()).isEmpty();
+  }
+
+  @Test
+  public void encode_withRepeatedFields_isIdenticalToFieldDescriptorEncoding() {
+    Repeated repeated = createRepeated();
+
+    assertThat(repeated.encode()).isEqualTo(fieldDescriptorEncoder().encode(repeated));
+  }
+
+  @Test
+  public void encode_withProtobufWriters_isIdenticalToFieldDescriptorEncoding() {
+    Batch batch = createBatch(10);
+
+    assertThat(batch.encode()).isEqualTo(fieldDescriptorEncoder().encode(batch));
+  }
+
+  @Test
+  public void encode_withProtobufWriters_isEquivalentToFieldDescriptorEncoding()
+      throws InvalidProtocolBufferException {
+    Batch batch = createBatch(10);
+
+    BatchProto direct = BatchProto.parseFrom(batch.encode());
+    BatchProto generic = BatchProto.parseFrom(fieldDescriptorEncoder().encode(batch));
+
+    assertThat(direct).isEqualTo(generic);
+    assertThat(direct.getSimpleCount()).isEqualTo(10);
+    assertThat(direct.getRepeatedFields(3).getValuesList()).containsExactly(3L, 6L, 9L).inOrder();
+  }
+
+  /** Returns repeated fields with default, negative and extreme elements. */
+  private static Repeated createRepeated() {
+    return new Repeated(
+        Arrays.asList(0L, 1L, -1L, Long.MAX_VALUE),
+        Arrays.asList(0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE),
+        Arrays.asList(0L, -5L, Long.MIN_VALUE),
+        Arrays.asList(0d, 1.5d, -2.25d),
+        Arrays.asList(true, false, true),
+        Arrays.asList(0f, -0.5f, Float.MAX_VALUE));
+  }
+
+  static Batch createBatch(int size) {
+    List<Simple> simple = new ArrayList<>();
+    List<Repeated> repeated = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      simple.add(new Simple(i, -i * 1000L, i / 2f, i / 3d, i, i * 7L, -i, -i * 3L));
+      repeated.add(
+          new Repeated(
+              Arrays.asList((long) i, 2L * i, 3L * i),
+              Arrays.asList(-i, i),
+              Collections.singletonList(i * 11L),
+              Arrays.asList(i / 5d, i * 5d),
+              Arrays.asList(i % 2 == 0, true),
+              Collections.singletonList(i / 4f)));
+    }
+    OtherTypes otherTypes =
+        new OtherTypes("batch", "payload".getBytes(Charset.forName("UTF-8")), true, false);
+    return new Batch(simple, repeated, otherTypes);
+  }
+
+  /** Returns an encoder for {@link Batch} that does not use generated {@link ProtobufWriter}s. */
+  static ProtobufEncoder fieldDescriptorEncoder() {
+    ProtobufEncoder.Builder builder = ProtobufEncoder.builder();
+    AutoBatchEncoder.CONFIG.configure(
+        new EncoderConfig<ProtobufEncoder.Builder>() {
+          @NonNull
+          @Override
+          public <U> ProtobufEncoder.Builder registerEncoder(
+              @NonNull Class<U> type, @NonNull ObjectEncoder<? super U> encoder) {
+            ObjectEncoder<U> generic = (value, ctx) -> encoder.encode(value, ctx);
+            return builder.registerEncoder(type, generic);
+          }
+
+          @NonNull
+          @Override
+          public <U> ProtobufEncoder.Builder registerEncoder(
+              @NonNull Class<U> type, @NonNull ValueEncoder<? super U> encoder) {
+            return builder.registerEncoder(type, encoder);
+          }
+        });
+    return builder.build();
+  }
+
+  private static class RecordingConfig implements EncoderConfig<RecordingConfig> {
+    private final List<Object> encoders;
+
+    RecordingConfig(List<Object> encoders) {
+      this.encoders = encoders;
+    }
+
+    @NonNull
+    @Override
+    public <U> RecordingConfig registerEncoder(
+        @NonNull Class<U> type, @NonNull ObjectEncoder<? super U> encoder) {
+      encoders.add(encoder);
+      return this;
+    }
+
+    @NonNull
+    @Override
+    public <U> RecordingConfig registerEncoder(
+        @NonNull Class<U> type, @NonNull ValueEncoder<? super U> encoder) {
+      encoders.add(encoder);
+      return this;
+    }
+  }
+}
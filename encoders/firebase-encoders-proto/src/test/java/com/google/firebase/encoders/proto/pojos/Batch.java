@@ -0,0 +1,54 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.encoders.proto.pojos;
+
+import com.google.firebase.encoders.annotations.Encodable;
+import com.google.firebase.encoders.proto.Protobuf;
+import com.google.firebase.encoders.proto.ProtobufEncoder;
+import java.util.List;
+
+@Encodable
+public class Batch {
+  private static final ProtobufEncoder ENCODER =
+      ProtobufEncoder.builder().configureWith(AutoBatchEncoder.CONFIG).build();
+
+  private final List<Simple> simple;
+  private final List<Repeated> repeatedFields;
+  private final OtherTypes otherTypes;
+
+  public Batch(List<Simple> simple, List<Repeated> repeatedFields, OtherTypes otherTypes) {
+    this.simple = simple;
+    this.repeatedFields = repeatedFields;
+    this.otherTypes = otherTypes;
+  }
+
+  @Protobuf(tag = 1)
+  public List<Simple> getSimple() {
+    return simple;
+  }
+
+  @Protobuf(tag = 2)
+  public List<Repeated> getRepeatedFields() {
+    return repeatedFields;
+  }
+
+  @Protobuf(tag = 3)
+  public OtherTypes getOtherTypes() {
+    return otherTypes;
+  }
+
+  public byte[] encode() {
+    return ENCODER.encode(this);
+  }
+}
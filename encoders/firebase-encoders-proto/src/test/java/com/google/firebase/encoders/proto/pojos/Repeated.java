@@ -0,0 +1,81 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.encoders.proto.pojos;
+
+import com.google.firebase.encoders.annotations.Encodable;
+import com.google.firebase.encoders.proto.Protobuf;
+import com.google.firebase.encoders.proto.ProtobufEncoder;
+import java.util.List;
+
+@Encodable
+public class Repeated {
+  private static final ProtobufEncoder ENCODER =
+      ProtobufEncoder.builder().configureWith(AutoRepeatedEncoder.CONFIG).build();
+
+  private final List<Long> values;
+  private final List<Integer> signedValues;
+  private final List<Long> fixedValues;
+  private final List<Double> doubles;
+  private final List<Boolean> bools;
+  private final List<Float> floats;
+
+  public Repeated(
+      List<Long> values,
+      List<Integer> signedValues,
+      List<Long> fixedValues,
+      List<Double> doubles,
+      List<Boolean> bools,
+      List<Float> floats) {
+    this.values = values;
+    this.signedValues = signedValues;
+    this.fixedValues = fixedValues;
+    this.doubles = doubles;
+    this.bools = bools;
+    this.floats = floats;
+  }
+
+  @Protobuf(tag = 1)
+  public List<Long> getValues() {
+    return values;
+  }
+
+  @Protobuf(tag = 2, intEncoding = Protobuf.IntEncoding.SIGNED)
+  public List<Integer> getSignedValues() {
+    return signedValues;
+  }
+
+  @Protobuf(tag = 3, intEncoding = Protobuf.IntEncoding.FIXED)
+  public List<Long> getFixedValues() {
+    return fixedValues;
+  }
+
+  @Protobuf(tag = 4)
+  public List<Double> getDoubles() {
+    return doubles;
+  }
+
+  @Protobuf(tag = 5)
+  public List<Boolean> getBools() {
+    return bools;
+  }
+
+  @Protobuf(tag = 6)
+  public List<Float> getFloats() {
+    return floats;
+  }
+
+  public byte[] encode() {
+    return ENCODER.encode(this);
+  }
+}
@@ -14,12 +14,28 @@
 
 package com.google.firebase.database;
 
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.snapshot.BinaryNodeSerializer;
+import com.google.firebase.database.snapshot.ChildKey;
+import com.google.firebase.database.snapshot.CompoundHash;
+import com.google.firebase.database.snapshot.Node;
+import com.google.firebase.database.snapshot.NodeUtilities;
+import com.google.firebase.database.util.JsonMapper;
+import com.google.firebase.database.util.StreamingJsonParser;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Assert;
 
 /** Created by jonny on 7/22/14. */
@@ -261,4 +277,205 @@ public class PerformanceBenchmarks {
     System.err.println(String.format("Benchmark took %dms", System.currentTimeMillis() - start));
     ref.removeEventListener(listener);
   }
+
+  private static Object unwrapJson(Object value) throws JSONException {
+    if (value instanceof JSONObject) {
+      JSONObject jsonObject = (JSONObject) value;
+      Map<String, Object> map = new HashMap<String, Object>(jsonObject.length());
+      Iterator<String> keys = jsonObject.keys();
+      while (keys.hasNext()) {
+        String key = keys.next();
+        map.put(key, unwrapJson(jsonObject.get(key)));
+      }
+      return map;
+    } else if (value instanceof JSONArray) {
+      JSONArray jsonArray = (JSONArray) value;
+      List<Object> list = new ArrayList<Object>(jsonArray.length());
+      for (int i = 0; i < jsonArray.length(); i++) {
+        list.add(unwrapJson(jsonArray.get(i)));
+      }
+      return list;
+    } else {
+      return JSONObject.NULL.equals(value) ? null : value;
+    }
+  }
+
+  private static long usedHeapAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      runtime.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // @Test
+  public void largeSnapshotParsePerformance() throws IOException, JSONException {
+    final int approximateSnapshotSize = 5 * 1024 * 1024;
+    final int frameSize = 16384;
+
+    // Create a large snapshot and split it into frames, as the server sends it on initial sync.
+    Map<String, Object> snapshot = new HashMap<String, Object>();
+    Random random = new Random();
+    int size = 0;
+    while (size < approximateSnapshotSize) {
+      Object child = randomObject(/* recursionDepth= */ 3, /* recursionFanOut= */ 5);
+      snapshot.put(randomString(random, alphaNumeric, 12), child);
+      size += JsonMapper.serializeJsonValue(child).length();
+    }
+    Charset utf8 = Charset.forName("UTF-8");
+    byte[] json = JsonMapper.serializeJsonValue(snapshot).getBytes(utf8);
+    snapshot = null;
+    List<byte[]> frames = new ArrayList<byte[]>();
+    for (int i = 0; i < json.length; i += frameSize) {
+      frames.add(Arrays.copyOfRange(json, i, Math.min(i + frameSize, json.length)));
+    }
+
+    // Frames used to be decoded into strings, joined and parsed into an org.json tree, which was
+    // converted into maps and finally into nodes.
+    long baseHeap = usedHeapAfterGc();
+    long start = System.nanoTime();
+    List<String> textFrames = new ArrayList<String>();
+    for (byte[] frame : frames) {
+      textFrames.add(new String(frame, utf8));
+    }
+    StringBuilder text = new StringBuilder();
+    for (String textFrame : textFrames) {
+      text.append(textFrame);
+    }
+    Object generic = unwrapJson(new JSONObject(text.toString()));
+    Node expected = NodeUtilities.NodeFromJSON(generic);
+    long orgJsonMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    long orgJsonHeap = usedHeapAfterGc() - baseHeap;
+    textFrames = null;
+    text = null;
+    generic = null;
+
+    // Frames are now parsed into nodes directly.
+    baseHeap = usedHeapAfterGc();
+    start = System.nanoTime();
+    Node parsed =
+        NodeUtilities.NodeFromJSON(
+            new StreamingJsonParser(frames).readValue(NodeUtilities.JSON_CONVERTER));
+    long streamingMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    long streamingHeap = usedHeapAfterGc() - baseHeap;
+
+    Assert.assertEquals(expected, parsed);
+    System.err.println(
+        String.format(
+            "Parsed a %d byte snapshot with org.json in %dms holding %d bytes, and with the "
+                + "streaming parser in %dms holding %d bytes",
+            json.length, orgJsonMs, orgJsonHeap, streamingMs, streamingHeap));
+  }
+
+  // @Test
+  public void persistentCacheFormatPerformance() throws IOException {
+    final int approximateSnapshotSize = 5 * 1024 * 1024;
+    final int runs = 5;
+
+    Map<String, Object> snapshot = new HashMap<String, Object>();
+    Random random = new Random();
+    int size = 0;
+    while (size < approximateSnapshotSize) {
+      Object child = randomObject(/* recursionDepth= */ 3, /* recursionFanOut= */ 5);
+      snapshot.put(randomString(random, alphaNumeric, 12), child);
+      size += JsonMapper.serializeJsonValue(child).length();
+    }
+    Node node = NodeUtilities.NodeFromJSON(snapshot);
+    snapshot = null;
+
+    // The persistent cache used to store nodes as JSON and now stores them in a binary format.
+    Charset utf8 = Charset.forName("UTF-8");
+    byte[] json = JsonMapper.serializeJsonValue(node.getValue(true)).getBytes(utf8);
+    byte[] binary = BinaryNodeSerializer.serialize(node);
+
+    // Loading the cache on a cold start deserializes the stored rows into nodes.
+    long jsonNanos = 0;
+    long binaryNanos = 0;
+    for (int i = 0; i < runs; i++) {
+      long start = System.nanoTime();
+      NodeUtilities.NodeFromJSON(JsonMapper.parseJsonValue(json, NodeUtilities.JSON_CONVERTER));
+      jsonNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      Node fromBinary = BinaryNodeSerializer.deserialize(binary);
+      binaryNanos += System.nanoTime() - start;
+
+      Assert.assertEquals(node, fromBinary);
+    }
+
+    System.err.println(
+        String.format(
+            "Loaded a node stored as %d bytes of JSON in %dms, and stored as %d bytes in the "
+                + "binary format in %dms",
+            json.length,
+            TimeUnit.NANOSECONDS.toMillis(jsonNanos / runs),
+            binary.length,
+            TimeUnit.NANOSECONDS.toMillis(binaryNanos / runs)));
+  }
+
+  // @Test
+  public void compoundHashPerformance() {
+    final int runs = 5;
+    Random random = new Random();
+
+    // Reconnecting sends the compound hash of every cached listen that has a large enough cache.
+    for (int childCount : new int[] {1000, 10000, 100000}) {
+      Map<String, Object> snapshot = new HashMap<String, Object>();
+      for (int i = 0; i < childCount; i++) {
+        Map<String, Object> child = new HashMap<String, Object>();
+        child.put("name", randomString(random, alphaNumeric, 16));
+        child.put("count", random.nextInt());
+        child.put("active", random.nextBoolean());
+        snapshot.put(randomString(random, alphaNumeric, 12), child);
+      }
+      Node node = NodeUtilities.NodeFromJSON(snapshot);
+      snapshot = null;
+
+      long firstNanos = 0;
+      long repeatedNanos = 0;
+      long changedNanos = 0;
+      long nodeHeap = 0;
+      long hashHeap = 0;
+      for (int i = 0; i < runs; i++) {
+        long baseHeap = usedHeapAfterGc();
+        // Copies the node so that nothing is remembered from earlier runs.
+        Node copy = NodeUtilities.NodeFromJSON(node.getValue(true));
+        long copyHeap = usedHeapAfterGc();
+        nodeHeap += copyHeap - baseHeap;
+        long start = System.nanoTime();
+        CompoundHash hash = CompoundHash.fromNode(copy);
+        firstNanos += System.nanoTime() - start;
+
+        start = System.nanoTime();
+        CompoundHash repeated = CompoundHash.fromNode(copy);
+        repeatedNanos += System.nanoTime() - start;
+        Assert.assertEquals(hash.getHashes(), repeated.getHashes());
+
+        // Changes one leaf, as happens between reconnects, and hashes the updated node.
+        ChildKey key = copy.getFirstChildKey();
+        Path path = new Path(key, ChildKey.fromString("count"));
+        Node changed = copy.updateChild(path, NodeUtilities.NodeFromJSON(random.nextInt()));
+        start = System.nanoTime();
+        CompoundHash changedHash = CompoundHash.fromNode(changed);
+        changedNanos += System.nanoTime() - start;
+
+        // The hash state that the nodes keep between hashes, including the changed node and the
+        // hashes themselves.
+        hashHeap += usedHeapAfterGc() - copyHeap;
+        Assert.assertEquals(changedHash.getPosts().size(), hash.getPosts().size());
+        Assert.assertNotSame(copy, changed);
+      }
+
+      System.err.println(
+          String.format(
+              "Hashed %d children in %dus, again in %dus, and after changing one leaf in %dus. "
+                  + "The node uses %dKB of heap, and the hashes retain %dKB more",
+              childCount,
+              TimeUnit.NANOSECONDS.toMicros(firstNanos / runs),
+              TimeUnit.NANOSECONDS.toMicros(repeatedNanos / runs),
+              TimeUnit.NANOSECONDS.toMicros(changedNanos / runs),
+              nodeHeap / runs / 1024,
+              hashHeap / runs / 1024));
+    }
+  }
 }
@@ -27,6 +27,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 import com.google.firebase.database.DatabaseException;
@@ -41,10 +44,12 @@ import com.google.firebase.database.core.view.QueryParams;
 import com.google.firebase.database.core.view.QuerySpec;
 import com.google.firebase.database.logging.DefaultLogger;
 import com.google.firebase.database.logging.Logger;
+import com.google.firebase.database.snapshot.BinaryNodeSerializer;
 import com.google.firebase.database.snapshot.ChildKey;
 import com.google.firebase.database.snapshot.EmptyNode;
 import com.google.firebase.database.snapshot.Node;
 import com.google.firebase.database.snapshot.PathIndex;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -404,6 +409,196 @@ public class SqlPersistenceStorageEngineTest {
     assertEquals(first.updateChild(path("a"), newA), engine.serverCache(path("")));
   }
 
+  private static Node largeListWithChildren(int count, Node changedChild) {
+    Node list = EmptyNode.Empty();
+    for (int i = 0; i < count; i++) {
+      Node child = i == 0 && changedChild != null ? changedChild : leafNodeOfSize(1024);
+      list = list.updateImmediateChild(ChildKey.fromString("item-" + i), child);
+    }
+    return list;
+  }
+
+  @Test
+  public void testIncrementalOverwriteOnlyRewritesChangedChildren() {
+    SqlPersistenceStorageEngine sqlEngine = (SqlPersistenceStorageEngine) engine;
+    Node list = largeListWithChildren(100, null);
+    overwriteServerCache(engine, path("list"), list);
+    assertEquals(101, sqlEngine.getLastServerCacheWriteStats().getRowsWritten());
+
+    Node changed = largeListWithChildren(100, NodeFromJSON("changed"));
+    overwriteServerCache(engine, path("list"), changed);
+    SqlPersistenceStorageEngine.ServerCacheWriteStats stats =
+        sqlEngine.getLastServerCacheWriteStats();
+    assertEquals(1, stats.getRowsWritten());
+    assertEquals(1, stats.getRowsDeleted());
+    assertEquals(100, stats.getRowsUnchanged());
+    assertEquals(changed, engine.serverCache(path("list")));
+
+    overwriteServerCache(engine, path("list"), changed);
+    assertEquals(0, sqlEngine.getLastServerCacheWriteStats().getRowsWritten());
+    assertEquals(0, sqlEngine.getLastServerCacheWriteStats().getRowsDeleted());
+  }
+
+  @Test
+  public void testIncrementalOverwriteRemovesChildrenAndPriorities() {
+    SqlPersistenceStorageEngine sqlEngine = (SqlPersistenceStorageEngine) engine;
+    Node list = largeListWithChildren(100, null).updatePriority(NodeFromJSON("prio"));
+    overwriteServerCache(engine, path("list"), list);
+
+    Node shorter =
+        list.updateImmediateChild(ChildKey.fromString("item-1"), EmptyNode.Empty())
+            .updatePriority(EmptyNode.Empty());
+    overwriteServerCache(engine, path("list"), shorter);
+    assertEquals(0, sqlEngine.getLastServerCacheWriteStats().getRowsWritten());
+    assertEquals(2, sqlEngine.getLastServerCacheWriteStats().getRowsDeleted());
+    assertEquals(shorter, engine.serverCache(path("list")));
+  }
+
+  @Test
+  public void testIncrementalOverwriteAfterMergesAndLayoutChanges() {
+    Node list = largeListWithChildren(100, null);
+    overwriteServerCache(engine, path("list"), list);
+    mergeIntoServerCache(
+        engine, path("list"), compoundWrite("{'item-2': { 'a': 1 }, 'item-3/b': 2 }"));
+    Node merged =
+        list.updateChild(path("item-2"), node("{ 'a': 1 }"))
+            .updateChild(path("item-3/b"), NodeFromJSON(2));
+    assertEquals(merged, engine.serverCache(path("list")));
+
+    // Shrinking the list below the split threshold stores it in a single row.
+    Node small = node("{ 'item-0': 'a', 'item-3': { 'b': 2 } }");
+    overwriteServerCache(engine, path("list"), small);
+    assertEquals(small, engine.serverCache(path("list")));
+
+    overwriteServerCache(engine, path("list"), list);
+    assertEquals(list, engine.serverCache(path("list")));
+  }
+
+  @Test
+  public void testFullOverwriteRewritesAllRows() {
+    SqlPersistenceStorageEngine sqlEngine = (SqlPersistenceStorageEngine) engine;
+    sqlEngine.setIncrementalServerCacheWritesEnabled(false);
+    Node list = largeListWithChildren(100, null);
+    overwriteServerCache(engine, path("list"), list);
+    overwriteServerCache(engine, path("list"), list);
+    assertEquals(101, sqlEngine.getLastServerCacheWriteStats().getRowsWritten());
+    assertEquals(101, sqlEngine.getLastServerCacheWriteStats().getRowsDeleted());
+    assertEquals(list, engine.serverCache(path("list")));
+  }
+
+  @Test
+  public void testUpgradeConvertsJsonRowsToBinaryFormat() {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    String cacheId = "json-upgrade-test";
+    context.deleteDatabase(cacheId);
+
+    // Create a database in the JSON format of version 2.
+    SQLiteDatabase db = context.openOrCreateDatabase(cacheId, Context.MODE_PRIVATE, null);
+    db.execSQL("CREATE TABLE serverCache (path TEXT PRIMARY KEY, value BLOB);");
+    db.execSQL(
+        "CREATE TABLE writes (id INTEGER, path TEXT, type TEXT, part INTEGER, node BLOB, UNIQUE "
+            + "(id, part));");
+    db.execSQL(
+        "CREATE TABLE trackedQueries (id INTEGER PRIMARY KEY, path TEXT, "
+            + "queryParams TEXT, lastUse INTEGER, complete INTEGER, active INTEGER);");
+    db.execSQL("CREATE TABLE trackedKeys (id INTEGER, key TEXT);");
+    insertServerCacheRow(db, "/foo/", "{'bar': 1, 'baz': true}");
+    insertServerCacheRow(db, "/foo/qux/", "{'.value': 'x', '.priority': 2}");
+    insertServerCacheRow(db, "/big/.part-0000", "{'a': 'long ");
+    insertServerCacheRow(db, "/big/.part-0001", "string'}");
+    ContentValues overwrite = new ContentValues();
+    overwrite.put("id", 1);
+    overwrite.put("path", "/a/");
+    overwrite.put("type", "o");
+    overwrite.put("node", jsonBytes("{'b': 1.5}"));
+    db.insert("writes", null, overwrite);
+    ContentValues merge = new ContentValues();
+    merge.put("id", 2);
+    merge.put("path", "/c/");
+    merge.put("type", "m");
+    merge.put("node", jsonBytes("{'d/e': 'f', 'g': null}"));
+    db.insert("writes", null, merge);
+    db.setVersion(2);
+    db.close();
+
+    DatabaseConfig cfg = new DatabaseConfig();
+    cfg.setLogger(new DefaultLogger(Logger.Level.DEBUG, null));
+    PersistenceStorageEngine upgraded = new SqlPersistenceStorageEngine(context, cfg, cacheId);
+    try {
+      assertEquals(
+          node("{'bar': 1, 'baz': true, 'qux': {'.value': 'x', '.priority': 2}}"),
+          upgraded.serverCache(path("foo")));
+      assertEquals(node("{'a': 'long string'}"), upgraded.serverCache(path("big")));
+
+      Map<String, Object> mergeValues = new HashMap<String, Object>();
+      mergeValues.put("d/e", "f");
+      mergeValues.put("g", null);
+      assertEquals(
+          asList(
+              writeRecord(1, path("a"), node("{'b': 1.5}")),
+              writeRecord(2, path("c"), CompoundWrite.fromValue(mergeValues))),
+          upgraded.loadUserWrites());
+    } finally {
+      upgraded.close();
+      context.deleteDatabase(cacheId);
+    }
+  }
+
+  @Test
+  public void testUpgradeRewritesServerCacheRowsWithoutHash() {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    String cacheId = "hash-upgrade-test";
+    context.deleteDatabase(cacheId);
+
+    // Create a database of version 3, whose server cache rows have no hash.
+    SQLiteDatabase db = context.openOrCreateDatabase(cacheId, Context.MODE_PRIVATE, null);
+    db.execSQL("CREATE TABLE serverCache (path TEXT PRIMARY KEY, value BLOB);");
+    db.execSQL(
+        "CREATE TABLE writes (id INTEGER, path TEXT, type TEXT, part INTEGER, node BLOB, UNIQUE "
+            + "(id, part));");
+    db.execSQL(
+        "CREATE TABLE trackedQueries (id INTEGER PRIMARY KEY, path TEXT, "
+            + "queryParams TEXT, lastUse INTEGER, complete INTEGER, active INTEGER);");
+    db.execSQL("CREATE TABLE trackedKeys (id INTEGER, key TEXT);");
+    Node foo = node("{'bar': 1, 'baz': true}");
+    ContentValues values = new ContentValues();
+    values.put("path", "/foo/");
+    values.put("value", BinaryNodeSerializer.serialize(foo));
+    db.insert("serverCache", null, values);
+    db.setVersion(3);
+    db.close();
+
+    DatabaseConfig cfg = new DatabaseConfig();
+    cfg.setLogger(new DefaultLogger(Logger.Level.DEBUG, null));
+    SqlPersistenceStorageEngine upgraded = new SqlPersistenceStorageEngine(context, cfg, cacheId);
+    try {
+      assertEquals(foo, upgraded.serverCache(path("foo")));
+
+      overwriteServerCache(upgraded, path("foo"), foo);
+      assertEquals(1, upgraded.getLastServerCacheWriteStats().getRowsWritten());
+      assertEquals(1, upgraded.getLastServerCacheWriteStats().getRowsDeleted());
+
+      overwriteServerCache(upgraded, path("foo"), foo);
+      assertEquals(0, upgraded.getLastServerCacheWriteStats().getRowsWritten());
+      assertEquals(1, upgraded.getLastServerCacheWriteStats().getRowsUnchanged());
+      assertEquals(foo, upgraded.serverCache(path("foo")));
+    } finally {
+      upgraded.close();
+      context.deleteDatabase(cacheId);
+    }
+  }
+
+  private static byte[] jsonBytes(String singleQuotedJson) {
+    return singleQuotedJson.replace('\'', '"').getBytes(Charset.forName("UTF-8"));
+  }
+
+  private static void insertServerCacheRow(SQLiteDatabase db, String path, String json) {
+    ContentValues values = new ContentValues();
+    values.put("path", path);
+    values.put("value", jsonBytes(json));
+    db.insert("serverCache", null, values);
+  }
+
   @Test
   public void testAllowedSessionIdCharacters() {
     DatabaseConfig cfg = new DatabaseConfig();
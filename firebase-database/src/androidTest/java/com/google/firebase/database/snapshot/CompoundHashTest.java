@@ -18,6 +18,8 @@ import static com.google.firebase.database.IntegrationTestHelpers.fromSingleQuot
 import static com.google.firebase.database.IntegrationTestHelpers.path;
 import static com.google.firebase.database.snapshot.NodeUtilities.NodeFromJSON;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -28,6 +30,7 @@ import com.google.firebase.database.core.utilities.Utilities;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.junit.Rule;
@@ -151,6 +154,62 @@ public class CompoundHashTest {
     assertEquals(Arrays.asList(hashValue, ""), hash.getHashes());
   }
 
+  /** Splits like the default strategy, but forces hashing to process the node node by node. */
+  private static CompoundHash.SplitStrategy splitAfterLength(final long splitThreshold) {
+    return new CompoundHash.SplitStrategy() {
+      @Override
+      public boolean shouldSplit(CompoundHash.CompoundHashBuilder state) {
+        return state.currentHashLength() > splitThreshold
+            && (state.currentPath().isEmpty()
+                || !state.currentPath().getBack().equals(ChildKey.getPriorityKey()));
+      }
+    };
+  }
+
+  private static Node nestedNode(int children) {
+    Map<String, Object> data = new HashMap<String, Object>();
+    for (int i = 0; i < children; i++) {
+      Map<String, Object> tags =
+          new MapBuilder().put("a", i).put("b", "quote\"" + i).put("c", i % 2 == 0).build();
+      data.put(
+          "item-" + i,
+          new MapBuilder()
+              .put("name", "name-" + i)
+              .put(".priority", i % 3)
+              .put("tags", tags)
+              .put("score", i * 1.5)
+              .build());
+    }
+    return NodeFromJSON(data);
+  }
+
+  private static void assertSameHashes(CompoundHash expected, CompoundHash actual) {
+    assertEquals(expected.getPosts(), actual.getPosts());
+    assertEquals(expected.getHashes(), actual.getHashes());
+  }
+
+  @Test
+  public void rememberedTextsMatchNodeByNodeHashing() {
+    Node node = nestedNode(300);
+    for (long splitThreshold : new long[] {0, 100, 512, 700, 2000, 5000, 100000}) {
+      assertSameHashes(
+          CompoundHash.fromNode(node, splitAfterLength(splitThreshold)),
+          CompoundHash.fromNode(node, CompoundHash.sizeSplitStrategy(splitThreshold)));
+    }
+  }
+
+  @Test
+  public void compoundHashIsRememberedAndUpdated() {
+    Node node = nestedNode(300);
+    CompoundHash hash = CompoundHash.fromNode(node);
+    assertSame(hash, CompoundHash.fromNode(node));
+
+    Node updated = node.updateChild(path("item-42/tags/b"), NodeFromJSON("changed"));
+    CompoundHash updatedHash = CompoundHash.fromNode(updated);
+    assertSameHashes(CompoundHash.fromNode(NodeFromJSON(updated.getValue(true))), updatedHash);
+    assertFalse(hash.getHashes().equals(updatedHash.getHashes()));
+  }
+
   private static void assertWithinPercent(int expected, int actual, double percent) {
     double percentDecimal = percent / 100.0;
     double lowerBound = expected * (1 - percentDecimal);
@@ -35,6 +35,7 @@ import com.google.firebase.database.core.utilities.NodeSizeEstimator;
 import com.google.firebase.database.core.utilities.Pair;
 import com.google.firebase.database.core.view.QuerySpec;
 import com.google.firebase.database.logging.LogWrapper;
+import com.google.firebase.database.snapshot.BinaryNodeSerializer;
 import com.google.firebase.database.snapshot.ChildKey;
 import com.google.firebase.database.snapshot.ChildrenNode;
 import com.google.firebase.database.snapshot.EmptyNode;
@@ -53,7 +54,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * This class is an Android/SQL-backed implementation of PersistenceStorageEngine.
@@ -73,6 +77,9 @@ import java.util.Set;
  * reads don't need to read massive amounts of data and single rows don't have excessive amount of
  * data in them.
  *
+ * <p>Updates compare the new node with the rows stored at the updated path, split the same way, and
+ * only rewrite the rows whose node hash changed.
+ *
  * <p>- trackedQueries: Queries tracked in our cache. Each row has a unique-across-restarts id, the
  * path/query and metadata about the query (whether we have complete data, when it was last used,
  * and whether it's currently active). These tracked queries are used to determine what serverCache
@@ -93,24 +100,28 @@ import java.util.Set;
  *
  * <p>To ensure prefix queries work on paths, each path must start and end with a '/'.
  *
+ * <p>Nodes and merges are serialized with {@link BinaryNodeSerializer}. Databases created before
+ * version 3 stored them as JSON (utf-8) bytes and are converted when they are upgraded.
+ *
  * <p>Schema: - writes table + id: unique id across restarts + path: path for this write as string +
- * node: serialized node/merge-map as JSON (utf-8) bytes + part: The part number for
- * multi-part/split writes starting with 0, NULL if not split + type: 'o' for overwrite and 'm' for
- * merge - serverCache + path: path for this node as string + value: serialized node as JSON (utf-8)
- * bytes - trackedQueries + id: unique id across restarts + path: Path of query. + query: A
- * serialization of the query parameters. + lastUse: When this query was last used (e.g. there was
- * an active listener). + complete: Whether serverCache contains complete data for the query. +
- * active: Whether we have an active listener for the query. - trackedKeys + id: id of the
- * trackedQuery for which this is a tracked key. + key: The tracked key belonging to the
- * trackedQuery identified by id.
+ * node: serialized node/merge + part: The part number for multi-part/split writes starting with 0,
+ * NULL if not split + type: 'o' for overwrite and 'm' for merge - serverCache + path: path for this
+ * node as string + value: serialized node + hash: hash of the node, NULL for rows saved before
+ * version 4 - trackedQueries + id: unique id across restarts + path:
+ * Path of query. + query: A serialization of the query parameters. + lastUse: When this query was
+ * last used (e.g. there was an active listener). + complete: Whether serverCache contains complete
+ * data for the query. + active: Whether we have an active listener for the query. - trackedKeys +
+ * id: id of the trackedQuery for which this is a tracked key. + key: The tracked key belonging to
+ * the trackedQuery identified by id.
  */
 public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
   private static final String CREATE_SERVER_CACHE =
-      "CREATE TABLE serverCache (path TEXT PRIMARY KEY, value BLOB);";
+      "CREATE TABLE serverCache (path TEXT PRIMARY KEY, value BLOB, hash TEXT);";
 
   private static final String SERVER_CACHE_TABLE = "serverCache";
   private static final String PATH_COLUMN_NAME = "path";
   private static final String VALUE_COLUMN_NAME = "value";
+  private static final String HASH_COLUMN_NAME = "hash";
 
   private static final String CREATE_WRITES =
       "CREATE TABLE writes (id INTEGER, path TEXT, type TEXT, part INTEGER, node BLOB, UNIQUE "
@@ -156,7 +167,7 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
   private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
 
   private static class PersistentCacheOpenHelper extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 4;
 
     public PersistentCacheOpenHelper(Context context, String cacheId) {
       super(context, cacheId, null, DATABASE_VERSION);
@@ -187,8 +198,16 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
         // Create tracked queries/keys.
         db.execSQL(CREATE_TRACKED_KEYS);
         db.execSQL(CREATE_TRACKED_QUERIES);
-      } else {
-        throw new AssertionError("We don't handle upgrading to " + newVersion);
+      } else if (oldVersion <= 3) {
+        // Add the node hashes that server cache updates compare. Existing rows have no hash and are
+        // rewritten by the next update.
+        db.execSQL(
+            "ALTER TABLE " + SERVER_CACHE_TABLE + " ADD COLUMN " + HASH_COLUMN_NAME + " TEXT");
+      }
+      if (oldVersion <= 2) {
+        // Convert the JSON serialized nodes and merges to the binary format.
+        convertServerCacheToBinary(db);
+        convertWritesToBinary(db);
       }
     }
 
@@ -199,10 +218,36 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
 
   private static final String LOGGER_COMPONENT = "Persistence";
 
+  /** The rows written, deleted and kept by an update of the server cache. */
+  public static final class ServerCacheWriteStats {
+    private int rowsWritten;
+    private int rowsDeleted;
+    private int rowsUnchanged;
+
+    private ServerCacheWriteStats() {}
+
+    /** Returns the number of rows that were inserted or replaced. */
+    public int getRowsWritten() {
+      return rowsWritten;
+    }
+
+    /** Returns the number of rows that were deleted. */
+    public int getRowsDeleted() {
+      return rowsDeleted;
+    }
+
+    /** Returns the number of rows that already held the new data and were left untouched. */
+    public int getRowsUnchanged() {
+      return rowsUnchanged;
+    }
+  }
+
   private final SQLiteDatabase database;
   private final LogWrapper logger;
   private boolean insideTransaction;
   private long transactionStart = 0;
+  private boolean incrementalServerCacheWrites = true;
+  private ServerCacheWriteStats lastServerCacheWriteStats = new ServerCacheWriteStats();
 
   public SqlPersistenceStorageEngine(
       Context context, com.google.firebase.database.core.Context firebaseContext, String cacheId) {
@@ -220,7 +265,7 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
   public void saveUserOverwrite(Path path, Node node, long writeId) {
     verifyInsideTransaction();
     long start = System.currentTimeMillis();
-    byte[] serializedNode = serializeObject(node.getValue(true));
+    byte[] serializedNode = BinaryNodeSerializer.serialize(node);
     saveWrite(path, writeId, WRITE_TYPE_OVERWRITE, serializedNode);
     long duration = System.currentTimeMillis() - start;
     if (logger.logsDebug()) {
@@ -232,7 +277,7 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
   public void saveUserMerge(Path path, CompoundWrite children, long writeId) {
     verifyInsideTransaction();
     long start = System.currentTimeMillis();
-    byte[] serializedNode = serializeObject(children.getValue(true));
+    byte[] serializedNode = BinaryNodeSerializer.serializeMerge(children);
     saveWrite(path, writeId, WRITE_TYPE_MERGE, serializedNode);
     long duration = System.currentTimeMillis() - start;
     if (logger.logsDebug()) {
@@ -294,15 +339,12 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
           cursor.moveToPrevious();
           serialized = joinBytes(parts);
         }
-        String serializedString = new String(serialized, UTF8_CHARSET);
-        Object writeValue = JsonMapper.parseJsonValue(serializedString);
         UserWriteRecord record;
         if (WRITE_TYPE_OVERWRITE.equals(type)) {
-          Node set = NodeUtilities.NodeFromJSON(writeValue);
+          Node set = deserializeNode(serialized);
           record = new UserWriteRecord(writeId, path, set, /*visible=*/ true);
         } else if (WRITE_TYPE_MERGE.equals(type)) {
-          @SuppressWarnings("unchecked")
-          CompoundWrite merge = CompoundWrite.fromValue((Map<String, Object>) writeValue);
+          CompoundWrite merge = deserializeMerge(serialized);
           record = new UserWriteRecord(writeId, path, merge);
         } else {
           throw new IllegalStateException("Got invalid write type: " + type);
@@ -314,8 +356,6 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
         logger.debug(String.format(Locale.US, "Loaded %d writes in %dms", writes.size(), duration));
       }
       return writes;
-    } catch (IOException e) {
-      throw new RuntimeException("Failed to load writes", e);
     } finally {
       cursor.close();
     }
@@ -323,6 +363,11 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
 
   private void saveWrite(Path path, long writeId, String type, byte[] serializedWrite) {
     verifyInsideTransaction();
+    saveWrite(database, path, writeId, type, serializedWrite);
+  }
+
+  private static void saveWrite(
+      SQLiteDatabase database, Path path, long writeId, String type, byte[] serializedWrite) {
     database.delete(
         WRITES_TABLE, WRITE_ID_COLUMN_NAME + " = ?", new String[] {String.valueOf(writeId)});
     if (serializedWrite.length >= ROW_SPLIT_SIZE) {
@@ -366,55 +411,59 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
 
   private void updateServerCache(Path path, Node node, boolean merge) {
     long start = System.currentTimeMillis();
-    int removedRows;
-    int savedRows;
+    ServerCacheWriteStats stats = new ServerCacheWriteStats();
     if (!merge) {
-      removedRows = removeNested(SERVER_CACHE_TABLE, path);
-      savedRows = saveNested(path, node);
+      replaceNested(path, node, stats);
     } else {
-      removedRows = 0;
-      savedRows = 0;
       for (NamedNode child : node) {
-        removedRows += removeNested(SERVER_CACHE_TABLE, path.child(child.getName()));
-        savedRows += saveNested(path.child(child.getName()), child.getNode());
+        replaceNested(path.child(child.getName()), child.getNode(), stats);
       }
     }
-    long duration = System.currentTimeMillis() - start;
-    if (logger.logsDebug()) {
-      logger.debug(
-          String.format(
-              Locale.US,
-              "Persisted a total of %d rows and deleted %d rows for a set at %s in %dms",
-              savedRows,
-              removedRows,
-              path.toString(),
-              duration));
-    }
+    logServerCacheWrite("set", path, stats, System.currentTimeMillis() - start);
   }
 
   @Override
   public void mergeIntoServerCache(Path path, CompoundWrite children) {
     verifyInsideTransaction();
     long start = System.currentTimeMillis();
-    int savedRows = 0;
-    int removedRows = 0;
+    ServerCacheWriteStats stats = new ServerCacheWriteStats();
     for (Map.Entry<Path, Node> entry : children) {
-      removedRows += removeNested(SERVER_CACHE_TABLE, path.child(entry.getKey()));
-      savedRows += saveNested(path.child(entry.getKey()), entry.getValue());
+      replaceNested(path.child(entry.getKey()), entry.getValue(), stats);
     }
-    long duration = System.currentTimeMillis() - start;
+    logServerCacheWrite("merge", path, stats, System.currentTimeMillis() - start);
+  }
+
+  private void logServerCacheWrite(
+      String operation, Path path, ServerCacheWriteStats stats, long duration) {
+    lastServerCacheWriteStats = stats;
     if (logger.logsDebug()) {
       logger.debug(
           String.format(
               Locale.US,
-              "Persisted a total of %d rows and deleted %d rows for a merge at %s in %dms",
-              savedRows,
-              removedRows,
+              "Persisted a total of %d rows, deleted %d rows and kept %d unchanged rows for a %s "
+                  + "at %s in %dms",
+              stats.rowsWritten,
+              stats.rowsDeleted,
+              stats.rowsUnchanged,
+              operation,
               path.toString(),
               duration));
     }
   }
 
+  /**
+   * Sets whether updates of the server cache only rewrite the rows whose data changed. If disabled,
+   * every update deletes and rewrites all rows at and below the updated path. Enabled by default.
+   */
+  public void setIncrementalServerCacheWritesEnabled(boolean enabled) {
+    this.incrementalServerCacheWrites = enabled;
+  }
+
+  /** Returns the rows written, deleted and kept by the most recent update of the server cache. */
+  public ServerCacheWriteStats getLastServerCacheWriteStats() {
+    return lastServerCacheWriteStats;
+  }
+
   @Override
   public long serverCacheEstimatedSizeInBytes() {
     String query =
@@ -913,21 +962,163 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
     }
   }
 
-  private String partKey(Path path, int i) {
+  private static boolean shouldSplit(Node node) {
+    return node instanceof ChildrenNode
+        && NodeSizeEstimator.estimateSerializedNodeSize(node) > CHILDREN_NODE_SPLIT_SIZE_THRESHOLD;
+  }
+
+  /**
+   * Replaces the node at a path and all its descendants with the given node. If incremental writes
+   * are enabled, the hashes of the rows that are currently stored at and below the path are
+   * compared with the new node at every boundary at which {@link #saveNested} splits nodes, and
+   * only the rows whose data changed are rewritten.
+   */
+  private void replaceNested(Path path, Node node, ServerCacheWriteStats stats) {
+    if (!incrementalServerCacheWrites) {
+      stats.rowsDeleted += removeNested(SERVER_CACHE_TABLE, path);
+      stats.rowsWritten += saveNested(path, node);
+      return;
+    }
+
+    NavigableMap<String, String> rows = new TreeMap<String, String>();
+    String pathPrefixStart = pathToKey(path);
+    String pathPrefixEnd = pathPrefixStartToPrefixEnd(pathPrefixStart);
+    Cursor cursor =
+        database.query(
+            SERVER_CACHE_TABLE,
+            new String[] {PATH_COLUMN_NAME, HASH_COLUMN_NAME},
+            PATH_COLUMN_NAME + " >= ? AND " + PATH_COLUMN_NAME + " < ?",
+            new String[] {pathPrefixStart, pathPrefixEnd},
+            null,
+            null,
+            null);
+    try {
+      while (cursor.moveToNext()) {
+        rows.put(cursor.getString(0), cursor.getString(1));
+      }
+    } finally {
+      cursor.close();
+    }
+    diffNested(path, node, rows, stats);
+  }
+
+  /**
+   * Updates the rows at and below a path to store the given node, comparing the node with the
+   * currently stored rows.
+   *
+   * <p>If {@link #saveNested} splits the node, the path has to hold an empty row already so that
+   * the node is made up only of the rows of its children, which are then compared one by one. If
+   * it does not split the node, the node is kept if a single row, or the parts of a split leaf
+   * node, at the path store the same hash. In all other cases the rows at and below the path are
+   * rewritten.
+   *
+   * @param rows The hashes of the rows that were stored at and below the path of the update, by
+   *     path key. Rows without a hash map to null.
+   */
+  private void diffNested(
+      Path path, Node node, NavigableMap<String, String> rows, ServerCacheWriteStats stats) {
+    String pathPrefixStart = pathToKey(path);
+    SortedMap<String, String> subtree =
+        rows.subMap(pathPrefixStart, pathPrefixStartToPrefixEnd(pathPrefixStart));
+
+    if (!shouldSplit(node)) {
+      String savedHash = null;
+      if (subtree.size() == 1 && subtree.containsKey(pathPrefixStart)) {
+        savedHash = subtree.get(pathPrefixStart);
+      } else if (!subtree.isEmpty() && isSplitLeafNode(pathPrefixStart, subtree)) {
+        savedHash = subtree.get(subtree.firstKey());
+      }
+      if (node.getHash().equals(savedHash)) {
+        stats.rowsUnchanged += subtree.size();
+      } else {
+        rewriteNested(path, node, subtree, stats);
+      }
+      return;
+    }
+
+    if (!EmptyNode.Empty().getHash().equals(subtree.get(pathPrefixStart))) {
+      rewriteNested(path, node, subtree, stats);
+      return;
+    }
+    stats.rowsUnchanged++;
+
+    // Delete the rows of children that the node no longer has.
+    String rowKey = rows.higherKey(pathPrefixStart);
+    String pathPrefixEnd = pathPrefixStartToPrefixEnd(pathPrefixStart);
+    while (rowKey != null && rowKey.compareTo(pathPrefixEnd) < 0) {
+      int childEnd = rowKey.indexOf('/', pathPrefixStart.length());
+      if (childEnd < 0) {
+        // Parts of a split leaf node at this path, which an empty row supersedes.
+        rowKey = rows.higherKey(rowKey);
+        continue;
+      }
+      ChildKey childKey = ChildKey.fromString(rowKey.substring(pathPrefixStart.length(), childEnd));
+      if (!childKey.isPriorityChildName() && node.getImmediateChild(childKey).isEmpty()) {
+        stats.rowsDeleted += removeNested(SERVER_CACHE_TABLE, path.child(childKey));
+      }
+      rowKey = rows.ceilingKey(pathPrefixStartToPrefixEnd(rowKey.substring(0, childEnd + 1)));
+    }
+
+    Path priorityPath = path.child(ChildKey.getPriorityKey());
+    String priorityKey = pathToKey(priorityPath);
+    if (node.getPriority().isEmpty()) {
+      if (rows.containsKey(priorityKey)) {
+        stats.rowsDeleted += removeNested(SERVER_CACHE_TABLE, priorityPath);
+      }
+    } else if (node.getPriority().getHash().equals(rows.get(priorityKey))) {
+      stats.rowsUnchanged++;
+    } else {
+      saveNode(priorityPath, node.getPriority());
+      stats.rowsWritten++;
+    }
+
+    for (NamedNode child : node) {
+      diffNested(path.child(child.getName()), child.getNode(), rows, stats);
+    }
+  }
+
+  private void rewriteNested(
+      Path path, Node node, SortedMap<String, String> subtree, ServerCacheWriteStats stats) {
+    if (!subtree.isEmpty()) {
+      stats.rowsDeleted += removeNested(SERVER_CACHE_TABLE, path);
+    }
+    stats.rowsWritten += saveNested(path, node);
+  }
+
+  /** Returns whether the rows consist of all parts of a leaf node that was split at the path. */
+  private static boolean isSplitLeafNode(String pathKey, SortedMap<String, String> rows) {
+    int part = 0;
+    for (String rowKey : rows.keySet()) {
+      if (!rowKey.equals(pathKey + String.format(Locale.US, PART_KEY_FORMAT, part))) {
+        return false;
+      }
+      part++;
+    }
+    return true;
+  }
+
+  private static String partKey(Path path, int i) {
     return pathToKey(path) + String.format(Locale.US, PART_KEY_FORMAT, i);
   }
 
   private void saveNode(Path path, Node node) {
-    byte[] serialized = serializeObject(node.getValue(true));
+    byte[] serialized = BinaryNodeSerializer.serialize(node);
+    if (serialized.length >= ROW_SPLIT_SIZE && logger.logsDebug()) {
+      int parts = (serialized.length - 1) / ROW_SPLIT_SIZE + 1;
+      logger.debug("Saving huge leaf node with " + parts + " parts.");
+    }
+    saveNode(database, path, serialized, node.getHash());
+  }
+
+  /** Saves a serialized node. Every part of a split leaf node stores the hash of the node. */
+  private static void saveNode(SQLiteDatabase database, Path path, byte[] serialized, String hash) {
     if (serialized.length >= ROW_SPLIT_SIZE) {
       List<byte[]> parts = splitBytes(serialized, ROW_SPLIT_SIZE);
-      if (logger.logsDebug()) {
-        logger.debug("Saving huge leaf node with " + parts.size() + " parts.");
-      }
       for (int i = 0; i < parts.size(); i++) {
         ContentValues values = new ContentValues();
         values.put(PATH_COLUMN_NAME, partKey(path, i));
         values.put(VALUE_COLUMN_NAME, parts.get(i));
+        values.put(HASH_COLUMN_NAME, hash);
         database.insertWithOnConflict(
             SERVER_CACHE_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
       }
@@ -935,6 +1126,7 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
       ContentValues values = new ContentValues();
       values.put(PATH_COLUMN_NAME, pathToKey(path));
       values.put(VALUE_COLUMN_NAME, serialized);
+      values.put(HASH_COLUMN_NAME, hash);
       database.insertWithOnConflict(
           SERVER_CACHE_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
     }
@@ -1031,7 +1223,7 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
     return node;
   }
 
-  private int splitNodeRunLength(Path path, List<String> pathStrings, int startPosition) {
+  private static int splitNodeRunLength(Path path, List<String> pathStrings, int startPosition) {
     int endPosition = startPosition + 1;
     String pathPrefix = pathToKey(path);
     if (!pathStrings.get(startPosition).startsWith(pathPrefix)) {
@@ -1112,7 +1304,7 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
     return partList;
   }
 
-  private byte[] joinBytes(List<byte[]> payloads) {
+  private static byte[] joinBytes(List<byte[]> payloads) {
     int totalSize = 0;
     for (byte[] payload : payloads) {
       totalSize += payload.length;
@@ -1126,21 +1318,155 @@ public class SqlPersistenceStorageEngine implements PersistenceStorageEngine {
     return buffer;
   }
 
-  private byte[] serializeObject(Object object) {
+  /** Deserializes a node that was saved in the binary format or, before version 3, as JSON. */
+  private static Node deserializeNode(byte[] value) {
+    if (BinaryNodeSerializer.isBinary(value)) {
+      try {
+        return BinaryNodeSerializer.deserialize(value);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not deserialize node", e);
+      }
+    }
     try {
-      return JsonMapper.serializeJsonValue(object).getBytes(UTF8_CHARSET);
+      Object o = JsonMapper.parseJsonValue(value, NodeUtilities.JSON_CONVERTER);
+      return NodeUtilities.NodeFromJSON(o);
     } catch (IOException e) {
-      throw new RuntimeException("Could not serialize leaf node", e);
+      String stringValue = new String(value, UTF8_CHARSET);
+      throw new RuntimeException("Could not deserialize node: " + stringValue, e);
     }
   }
 
-  private Node deserializeNode(byte[] value) {
+  /** Deserializes a merge that was saved in the binary format or, before version 3, as JSON. */
+  private static CompoundWrite deserializeMerge(byte[] value) {
     try {
-      Object o = JsonMapper.parseJsonValue(new String(value, UTF8_CHARSET));
-      return NodeUtilities.NodeFromJSON(o);
+      if (BinaryNodeSerializer.isBinary(value)) {
+        return CompoundWrite.fromPathMerge(BinaryNodeSerializer.deserializeMerge(value));
+      }
+      @SuppressWarnings("unchecked")
+      Map<String, Object> merge =
+          (Map<String, Object>) JsonMapper.parseJsonValue(new String(value, UTF8_CHARSET));
+      return CompoundWrite.fromValue(merge);
     } catch (IOException e) {
-      String stringValue = new String(value, UTF8_CHARSET);
-      throw new RuntimeException("Could not deserialize node: " + stringValue, e);
+      throw new RuntimeException("Could not deserialize merge", e);
+    }
+  }
+
+  /**
+   * Rewrites all rows of the server cache in the binary format. Leaf nodes that were split into
+   * parts are joined and split again, as their size changes.
+   */
+  private static void convertServerCacheToBinary(SQLiteDatabase db) {
+    List<String> pathStrings = new ArrayList<String>();
+    Cursor cursor =
+        db.query(
+            SERVER_CACHE_TABLE,
+            new String[] {PATH_COLUMN_NAME},
+            null,
+            null,
+            null,
+            null,
+            PATH_COLUMN_NAME);
+    try {
+      while (cursor.moveToNext()) {
+        pathStrings.add(cursor.getString(0));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    for (int i = 0; i < pathStrings.size(); i++) {
+      String pathString = pathStrings.get(i);
+      int runLength = 1;
+      Path path;
+      if (pathString.endsWith(FIRST_PART_KEY)) {
+        path = new Path(pathString.substring(0, pathString.length() - FIRST_PART_KEY.length()));
+        runLength = splitNodeRunLength(path, pathStrings, i);
+      } else {
+        path = new Path(pathString);
+      }
+
+      List<byte[]> parts = new ArrayList<byte[]>(runLength);
+      for (String rowPath : pathStrings.subList(i, i + runLength)) {
+        String[] arguments = new String[] {rowPath};
+        Cursor valueCursor =
+            db.query(
+                SERVER_CACHE_TABLE,
+                new String[] {VALUE_COLUMN_NAME},
+                PATH_COLUMN_NAME + " = ?",
+                arguments,
+                null,
+                null,
+                null);
+        try {
+          valueCursor.moveToFirst();
+          parts.add(valueCursor.getBlob(0));
+        } finally {
+          valueCursor.close();
+        }
+        db.delete(SERVER_CACHE_TABLE, PATH_COLUMN_NAME + " = ?", arguments);
+      }
+      Node node = deserializeNode(joinBytes(parts));
+      saveNode(db, path, BinaryNodeSerializer.serialize(node), node.getHash());
+      i += runLength - 1;
+    }
+  }
+
+  /** Rewrites all user writes in the binary format. */
+  private static void convertWritesToBinary(SQLiteDatabase db) {
+    List<Long> writeIds = new ArrayList<Long>();
+    Cursor cursor =
+        db.query(
+            /* distinct= */ true,
+            WRITES_TABLE,
+            new String[] {WRITE_ID_COLUMN_NAME},
+            null,
+            null,
+            null,
+            null,
+            WRITE_ID_COLUMN_NAME,
+            null);
+    try {
+      while (cursor.moveToNext()) {
+        writeIds.add(cursor.getLong(0));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    for (long writeId : writeIds) {
+      String pathString = null;
+      String type = null;
+      List<byte[]> parts = new ArrayList<byte[]>();
+      Cursor writeCursor =
+          db.query(
+              WRITES_TABLE,
+              new String[] {PATH_COLUMN_NAME, WRITE_TYPE_COLUMN_NAME, WRITE_NODE_COLUMN_NAME},
+              WRITE_ID_COLUMN_NAME + " = ?",
+              new String[] {String.valueOf(writeId)},
+              null,
+              null,
+              WRITE_PART_COLUMN_NAME);
+      try {
+        while (writeCursor.moveToNext()) {
+          pathString = writeCursor.getString(0);
+          type = writeCursor.getString(1);
+          parts.add(writeCursor.getBlob(2));
+        }
+      } finally {
+        writeCursor.close();
+      }
+
+      byte[] serialized = joinBytes(parts);
+      byte[] converted;
+      if (WRITE_TYPE_OVERWRITE.equals(type)) {
+        converted = BinaryNodeSerializer.serialize(deserializeNode(serialized));
+      } else if (WRITE_TYPE_MERGE.equals(type)) {
+        converted = BinaryNodeSerializer.serializeMerge(deserializeMerge(serialized));
+      } else {
+        // Leave the write as it is, loading it reports the invalid type.
+        continue;
+      }
+      saveWrite(db, new Path(pathString), writeId, type, converted);
     }
   }
 
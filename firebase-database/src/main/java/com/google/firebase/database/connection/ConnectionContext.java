@@ -15,6 +15,7 @@
 package com.google.firebase.database.connection;
 
 import com.google.firebase.database.logging.Logger;
+import com.google.firebase.database.util.StreamingJsonParser;
 import java.util.concurrent.ScheduledExecutorService;
 
 public class ConnectionContext {
@@ -27,6 +28,7 @@ public class ConnectionContext {
   private final String userAgent;
   private final String applicationId;
   private final String sslCacheDirectory;
+  private final StreamingJsonParser.ValueConverter dataConverter;
 
   public ConnectionContext(
       Logger logger,
@@ -38,6 +40,35 @@ public class ConnectionContext {
       String userAgent,
       String applicationId,
       String sslCacheDirectory) {
+    this(
+        logger,
+        authTokenProvider,
+        appCheckTokenProvider,
+        executorService,
+        persistenceEnabled,
+        clientSdkVersion,
+        userAgent,
+        applicationId,
+        sslCacheDirectory,
+        /* dataConverter= */ null);
+  }
+
+  /**
+   * Creates a context whose connections convert the data that the server pushes for listens with
+   * {@code dataConverter} while it is parsed. The converted data is passed to {@link
+   * PersistentConnection.Delegate#onDataUpdate}.
+   */
+  public ConnectionContext(
+      Logger logger,
+      ConnectionTokenProvider authTokenProvider,
+      ConnectionTokenProvider appCheckTokenProvider,
+      ScheduledExecutorService executorService,
+      boolean persistenceEnabled,
+      String clientSdkVersion,
+      String userAgent,
+      String applicationId,
+      String sslCacheDirectory,
+      StreamingJsonParser.ValueConverter dataConverter) {
     this.logger = logger;
     this.authTokenProvider = authTokenProvider;
     this.appCheckTokenProvider = appCheckTokenProvider;
@@ -47,6 +78,7 @@ public class ConnectionContext {
     this.userAgent = userAgent;
     this.applicationId = applicationId;
     this.sslCacheDirectory = sslCacheDirectory;
+    this.dataConverter = dataConverter;
   }
 
   public Logger getLogger() {
@@ -84,4 +116,8 @@ public class ConnectionContext {
   public String getApplicationId() {
     return applicationId;
   }
+
+  public StreamingJsonParser.ValueConverter getDataConverter() {
+    return dataConverter;
+  }
 }
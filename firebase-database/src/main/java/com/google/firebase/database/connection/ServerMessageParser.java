@@ -0,0 +1,135 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.connection;
+
+import com.google.firebase.database.logging.LogWrapper;
+import com.google.firebase.database.util.StreamingJsonParser;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the messages that the server sends over a websocket from their UTF-8 encoded frames.
+ *
+ * <p>The data of data updates and merges (the {@code d} and {@code m} actions of {@link
+ * PersistentConnectionImpl}) is passed to a converter while it is parsed. All other parts of the
+ * message are parsed into plain maps, lists and values.
+ */
+class ServerMessageParser {
+  // Keys of the message envelope, see Connection.
+  private static final String SERVER_ENVELOPE_TYPE = "t";
+  private static final String SERVER_DATA_MESSAGE = "d";
+  private static final String SERVER_ENVELOPE_DATA = "d";
+
+  // Keys of data messages, see PersistentConnectionImpl.
+  private static final String SERVER_ASYNC_ACTION = "a";
+  private static final String SERVER_ASYNC_PAYLOAD = "b";
+  private static final String SERVER_ASYNC_DATA_UPDATE = "d";
+  private static final String SERVER_ASYNC_DATA_MERGE = "m";
+  private static final String SERVER_DATA_UPDATE_BODY = "d";
+
+  private ServerMessageParser() {}
+
+  /**
+   * Parses a message. If the converter fails on the data of the message, the message is parsed
+   * again without converting its data, so that the failure is reported where the data is used.
+   *
+   * @param frames The UTF-8 encoded frames of the message.
+   * @param dataConverter The converter for the data of data updates and merges, or null.
+   * @param logger The logger for messages that are parsed again.
+   */
+  static Map<String, Object> parse(
+      List<byte[]> frames, StreamingJsonParser.ValueConverter dataConverter, LogWrapper logger)
+      throws IOException {
+    if (dataConverter != null) {
+      try {
+        return parse(new StreamingJsonParser(frames), dataConverter);
+      } catch (StreamingJsonParser.ConversionException e) {
+        logger.warn("Failed to convert the data of a message, parsing it without conversion", e);
+      }
+    }
+    return parse(new StreamingJsonParser(frames), /* dataConverter= */ null);
+  }
+
+  private static Map<String, Object> parse(
+      StreamingJsonParser parser, StreamingJsonParser.ValueConverter dataConverter)
+      throws IOException {
+    Map<String, Object> envelope = new HashMap<String, Object>();
+    parser.beginObject();
+    while (parser.hasNext()) {
+      String key = parser.nextName();
+      if (dataConverter != null
+          && key.equals(SERVER_ENVELOPE_DATA)
+          && SERVER_DATA_MESSAGE.equals(envelope.get(SERVER_ENVELOPE_TYPE))
+          && parser.peekObject()) {
+        envelope.put(key, parseDataMessage(parser, dataConverter));
+      } else {
+        envelope.put(key, parser.readValue());
+      }
+    }
+    parser.endObject();
+    parser.endDocument();
+    return envelope;
+  }
+
+  private static Map<String, Object> parseDataMessage(
+      StreamingJsonParser parser, StreamingJsonParser.ValueConverter dataConverter)
+      throws IOException {
+    Map<String, Object> message = new HashMap<String, Object>();
+    parser.beginObject();
+    while (parser.hasNext()) {
+      String key = parser.nextName();
+      // The server sends the action before the payload. If it did not, the data is not converted.
+      Object action = message.get(SERVER_ASYNC_ACTION);
+      boolean isUpdate = SERVER_ASYNC_DATA_UPDATE.equals(action);
+      boolean isMerge = SERVER_ASYNC_DATA_MERGE.equals(action);
+      if ((isUpdate || isMerge) && key.equals(SERVER_ASYNC_PAYLOAD) && parser.peekObject()) {
+        message.put(key, parseDataPush(parser, dataConverter, isMerge));
+      } else {
+        message.put(key, parser.readValue());
+      }
+    }
+    parser.endObject();
+    return message;
+  }
+
+  private static Map<String, Object> parseDataPush(
+      StreamingJsonParser parser, StreamingJsonParser.ValueConverter dataConverter, boolean isMerge)
+      throws IOException {
+    Map<String, Object> body = new HashMap<String, Object>();
+    parser.beginObject();
+    while (parser.hasNext()) {
+      String key = parser.nextName();
+      if (!key.equals(SERVER_DATA_UPDATE_BODY)) {
+        body.put(key, parser.readValue());
+      } else if (isMerge && parser.peekObject()) {
+        // Merges map paths to data. The paths stay a map, only the data of each path is converted.
+        Map<String, Object> merge = new HashMap<String, Object>();
+        parser.beginObject();
+        while (parser.hasNext()) {
+          String path = parser.nextName();
+          merge.put(path, parser.readValue(dataConverter));
+        }
+        parser.endObject();
+        body.put(key, merge);
+      } else {
+        body.put(key, parser.readValue(dataConverter));
+      }
+    }
+    parser.endObject();
+    return body;
+  }
+}
@@ -14,7 +14,6 @@
 
 package com.google.firebase.database.connection;
 
-import com.google.firebase.database.connection.util.StringListReader;
 import com.google.firebase.database.logging.LogWrapper;
 import com.google.firebase.database.tubesock.WebSocket;
 import com.google.firebase.database.tubesock.WebSocketEventHandler;
@@ -24,8 +23,10 @@ import com.google.firebase.database.util.JsonMapper;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -37,6 +38,7 @@ class WebsocketConnection {
   private static final long KEEP_ALIVE_TIMEOUT_MS = 45 * 1000; // 45 seconds
   private static final long CONNECT_TIMEOUT_MS = 30 * 1000; // 30 seconds
   private static final int MAX_FRAME_SIZE = 16384;
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
 
   public interface Delegate {
     public void onMessage(Map<String, Object> message);
@@ -77,13 +79,14 @@ class WebsocketConnection {
 
     @Override
     public void onMessage(WebSocketMessage msg) {
-      final String str = msg.getText();
-      if (logger.logsDebug()) logger.debug("ws message: " + str);
+      // Frames are kept UTF-8 encoded and parsed without decoding them into strings.
+      final byte[] frame = msg.getBytes();
+      if (logger.logsDebug()) logger.debug("ws message: " + msg.getText());
       executorService.execute(
           new Runnable() {
             @Override
             public void run() {
-              handleIncomingFrame(str);
+              handleIncomingFrame(frame);
             }
           });
     }
@@ -156,7 +159,7 @@ class WebsocketConnection {
   private boolean everConnected = false;
   private boolean isClosed = false;
   private long totalFrames = 0;
-  private StringListReader frameReader;
+  private List<byte[]> frames;
   private Delegate delegate;
   private ScheduledFuture<?> keepAlive;
   private ScheduledFuture<?> connectTimeout;
@@ -246,43 +249,53 @@ class WebsocketConnection {
     }
   }
 
-  private void appendFrame(String message) {
-    frameReader.addString(message);
+  private void appendFrame(byte[] message) {
+    if (message.length > 0) {
+      frames.add(message);
+    }
     totalFrames -= 1;
     if (totalFrames == 0) {
       // Decode JSON
       try {
-        frameReader.freeze();
-        Map<String, Object> decoded = JsonMapper.parseJson(frameReader.toString());
-        frameReader = null;
+        Map<String, Object> decoded =
+            ServerMessageParser.parse(frames, connectionContext.getDataConverter(), logger);
+        frames = null;
         if (logger.logsDebug()) logger.debug("handleIncomingFrame complete frame: " + decoded);
         delegate.onMessage(decoded);
       } catch (IOException e) {
-        logger.error("Error parsing frame: " + frameReader.toString(), e);
+        logger.error("Error parsing frame: " + framesToString(), e);
         close();
         shutdown();
       } catch (ClassCastException e) {
-        logger.error("Error parsing frame (cast error): " + frameReader.toString(), e);
+        logger.error("Error parsing frame (cast error): " + framesToString(), e);
         close();
         shutdown();
       }
     }
   }
 
+  private String framesToString() {
+    StringBuilder builder = new StringBuilder();
+    for (byte[] frame : frames) {
+      builder.append(new String(frame, UTF8_CHARSET));
+    }
+    return builder.toString();
+  }
+
   private void handleNewFrameCount(int numFrames) {
     totalFrames = numFrames;
-    frameReader = new StringListReader();
+    frames = new ArrayList<byte[]>();
     if (logger.logsDebug()) logger.debug("HandleNewFrameCount: " + totalFrames);
   }
 
-  private String extractFrameCount(String message) {
+  private byte[] extractFrameCount(byte[] message) {
     // TODO: The server is only supposed to send up to 9999 frames (i.e. length <= 4), but that
     // isn't being enforced
     // currently.  So allowing larger frame counts (length <= 6).  See
     // https://app.asana.com/0/search/8688598998380/8237608042508
-    if (message.length() <= 6) {
+    if (message.length <= 6) {
       try {
-        int frameCount = Integer.parseInt(message);
+        int frameCount = Integer.parseInt(new String(message, UTF8_CHARSET));
         if (frameCount > 0) {
           handleNewFrameCount(frameCount);
         }
@@ -295,13 +308,13 @@ class WebsocketConnection {
     return message;
   }
 
-  private void handleIncomingFrame(String message) {
+  private void handleIncomingFrame(byte[] message) {
     if (!isClosed) {
       resetKeepAlive();
       if (isBuffering()) {
         appendFrame(message);
       } else {
-        String remaining = extractFrameCount(message);
+        byte[] remaining = extractFrameCount(message);
         if (remaining != null) {
           appendFrame(remaining);
         }
@@ -335,7 +348,7 @@ class WebsocketConnection {
   }
 
   private boolean isBuffering() {
-    return frameReader != null;
+    return frames != null;
   }
 
   // Close methods
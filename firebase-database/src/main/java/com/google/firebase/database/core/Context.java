@@ -28,6 +28,7 @@ import com.google.firebase.database.core.persistence.PersistenceManager;
 import com.google.firebase.database.core.utilities.DefaultRunLoop;
 import com.google.firebase.database.logging.LogWrapper;
 import com.google.firebase.database.logging.Logger;
+import com.google.firebase.database.snapshot.NodeUtilities;
 import java.io.File;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
@@ -149,7 +150,8 @@ public class Context {
         FirebaseDatabase.getSdkVersion(),
         this.getUserAgent(),
         firebaseApp.getOptions().getApplicationId(),
-        this.getSSLCacheDirectory().getAbsolutePath());
+        this.getSSLCacheDirectory().getAbsolutePath(),
+        NodeUtilities.JSON_CONVERTER);
   }
 
   PersistenceManager getPersistenceManager(String firebaseId) {
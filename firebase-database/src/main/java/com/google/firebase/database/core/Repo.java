@@ -311,7 +311,7 @@ public class Repo implements PersistentConnection.Delegate {
 
   public void postEvent(Runnable r) {
     ctx.requireStarted();
-    ctx.getEventTarget().postEvent(r);
+    eventRaiser.postEvent(r);
   }
 
   private void postEvents(final List<? extends Event> events) {
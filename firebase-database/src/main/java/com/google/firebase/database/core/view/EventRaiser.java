@@ -17,8 +17,11 @@ package com.google.firebase.database.core.view;
 import com.google.firebase.database.core.Context;
 import com.google.firebase.database.core.EventTarget;
 import com.google.firebase.database.logging.LogWrapper;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Each view owns an instance of this class, and it is used to send events to the event target
@@ -27,34 +30,147 @@ import java.util.List;
  * <p>Note that it is safe to post events directly to that thread, since a shutdown will not occur
  * unless there are no listeners. If there are no listeners, all instances of this class will be
  * cleaned up.
+ *
+ * <p>Events are queued and fired by a single dispatch on the event target, which fires all events
+ * that were raised until it runs, so that an update that fans out to many listeners costs one
+ * message to the event target rather than one per list of events. A dispatch that has fired events
+ * for longer than its time budget posts itself again for the remaining events, which lets the main
+ * thread draw a frame in between. Callbacks that are posted with {@link #postEvent} go through the
+ * same queue, so they still run in order with the events.
  */
 public class EventRaiser {
 
+  /** The time one dispatch may spend firing events, about half a frame at 60 frames per second. */
+  private static final long DEFAULT_DISPATCH_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+
+  /** The events fired by a dispatch and how long they waited for it. */
+  public static final class DispatchStats {
+    private final int eventCount;
+    private final long latencyNanos;
+    private final long durationNanos;
+
+    DispatchStats(int eventCount, long latencyNanos, long durationNanos) {
+      this.eventCount = eventCount;
+      this.latencyNanos = latencyNanos;
+      this.durationNanos = durationNanos;
+    }
+
+    /** Returns the number of events and callbacks that the dispatch fired. */
+    public int getEventCount() {
+      return eventCount;
+    }
+
+    /** Returns the time from posting the dispatch to the event target until it started to run. */
+    public long getLatencyNanos() {
+      return latencyNanos;
+    }
+
+    /** Returns the time the dispatch spent firing events. */
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+  }
+
   private final EventTarget eventTarget;
   private final LogWrapper logger;
+  private final long dispatchBudgetNanos;
+
+  // Holds events and runnables, in the order in which they were raised.
+  private final Queue<Object> pendingEvents = new ConcurrentLinkedQueue<Object>();
+  private final AtomicBoolean dispatchPosted = new AtomicBoolean(false);
+  private volatile long dispatchPostedNanos;
+  private volatile DispatchStats lastDispatchStats = new DispatchStats(0, 0, 0);
+
+  private final Runnable dispatcher =
+      new Runnable() {
+        @Override
+        public void run() {
+          dispatch();
+        }
+      };
 
   public EventRaiser(Context ctx) {
-    eventTarget = ctx.getEventTarget();
-    logger = ctx.getLogger("EventRaiser");
+    this(ctx.getEventTarget(), ctx.getLogger("EventRaiser"), DEFAULT_DISPATCH_BUDGET_NANOS);
+  }
+
+  EventRaiser(EventTarget eventTarget, LogWrapper logger, long dispatchBudgetNanos) {
+    this.eventTarget = eventTarget;
+    this.logger = logger;
+    this.dispatchBudgetNanos = dispatchBudgetNanos;
   }
 
   public void raiseEvents(final List<? extends Event> events) {
     if (logger.logsDebug()) {
       logger.debug("Raising " + events.size() + " event(s)");
     }
-    // TODO: Use an immutable data structure for events so we don't have to clone to be safe.
-    final ArrayList<Event> eventsClone = new ArrayList<Event>(events);
-    eventTarget.postEvent(
-        new Runnable() {
-          @Override
-          public void run() {
-            for (Event event : eventsClone) {
-              if (logger.logsDebug()) {
-                logger.debug("Raising " + event.toString());
-              }
-              event.fire();
-            }
+    pendingEvents.addAll(events);
+    postDispatch();
+  }
+
+  /** Runs the callback on the event target after all events that were raised before. */
+  public void postEvent(Runnable r) {
+    pendingEvents.add(r);
+    postDispatch();
+  }
+
+  /** Returns the events fired by the most recent dispatch and how long they waited for it. */
+  public DispatchStats getLastDispatchStats() {
+    return lastDispatchStats;
+  }
+
+  private void postDispatch() {
+    if (dispatchPosted.compareAndSet(false, true)) {
+      dispatchPostedNanos = System.nanoTime();
+      eventTarget.postEvent(dispatcher);
+    }
+  }
+
+  private void dispatch() {
+    long start = System.nanoTime();
+    long latencyNanos = start - dispatchPostedNanos;
+    int eventCount = 0;
+    boolean budgetExceeded = false;
+    try {
+      Object pending;
+      while ((pending = pendingEvents.poll()) != null) {
+        eventCount++;
+        if (pending instanceof Event) {
+          Event event = (Event) pending;
+          if (logger.logsDebug()) {
+            logger.debug("Raising " + event.toString());
           }
-        });
+          event.fire();
+        } else {
+          ((Runnable) pending).run();
+        }
+        if (System.nanoTime() - start >= dispatchBudgetNanos && !pendingEvents.isEmpty()) {
+          budgetExceeded = true;
+          break;
+        }
+      }
+    } finally {
+      long durationNanos = System.nanoTime() - start;
+      lastDispatchStats = new DispatchStats(eventCount, latencyNanos, durationNanos);
+      if (logger.logsDebug()) {
+        logger.debug(
+            "Dispatched "
+                + eventCount
+                + " event(s) in "
+                + TimeUnit.NANOSECONDS.toMillis(durationNanos)
+                + "ms, "
+                + TimeUnit.NANOSECONDS.toMillis(latencyNanos)
+                + "ms after they were posted");
+      }
+      if (budgetExceeded) {
+        dispatchPostedNanos = System.nanoTime();
+        eventTarget.postEvent(dispatcher);
+      } else {
+        // Events that were raised after the queue was found empty may not have posted a dispatch.
+        dispatchPosted.set(false);
+        if (!pendingEvents.isEmpty()) {
+          postDispatch();
+        }
+      }
+    }
   }
 }
@@ -0,0 +1,328 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.snapshot;
+
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.util.JsonMapper;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes nodes and merges into a compact binary format, which is used by the persistent cache.
+ *
+ * <p>Serialized data starts with a format version byte, which no JSON document starts with, so
+ * that data in this format can be told apart from data that was persisted as JSON. It is followed
+ * by a single value:
+ *
+ * <ul>
+ *   <li>Lengths, counts and longs are written as varints, longs after zig-zag encoding them.
+ *   <li>Leaf nodes are tagged with their type. Longs, doubles and booleans are written in binary.
+ *   <li>Child keys are interned: the first occurrence of a key is written as a string, all later
+ *       occurrences as the index of the first one.
+ *   <li>Priorities are written as a separate tag before the node that they belong to.
+ * </ul>
+ */
+public final class BinaryNodeSerializer {
+  /** The version of the format, which is the first byte of all serialized data. */
+  static final int FORMAT_VERSION = 1;
+
+  private static final int TAG_EMPTY = 0;
+  private static final int TAG_STRING = 1;
+  private static final int TAG_LONG = 2;
+  private static final int TAG_DOUBLE = 3;
+  private static final int TAG_TRUE = 4;
+  private static final int TAG_FALSE = 5;
+  private static final int TAG_CHILDREN = 6;
+  private static final int TAG_DEFERRED_VALUE = 7;
+  private static final int TAG_PRIORITY = 8;
+  private static final int TAG_MERGE = 9;
+
+  /** Key reference that announces a key which is not interned yet. */
+  private static final int NEW_KEY = 0;
+
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+  private BinaryNodeSerializer() {}
+
+  /** Returns whether the data was serialized in the binary format rather than as JSON. */
+  public static boolean isBinary(byte[] data) {
+    return data.length > 0 && data[0] == FORMAT_VERSION;
+  }
+
+  public static byte[] serialize(Node node) {
+    Writer writer = new Writer();
+    writer.writeNode(node);
+    return writer.toByteArray();
+  }
+
+  /** Serializes the nodes of a merge, which may be empty, by the path at which they are merged. */
+  public static byte[] serializeMerge(Iterable<Map.Entry<Path, Node>> merge) {
+    Writer writer = new Writer();
+    List<Map.Entry<Path, Node>> entries = new ArrayList<Map.Entry<Path, Node>>();
+    for (Map.Entry<Path, Node> entry : merge) {
+      entries.add(entry);
+    }
+    writer.writeByte(TAG_MERGE);
+    writer.writeVarint(entries.size());
+    for (Map.Entry<Path, Node> entry : entries) {
+      writer.writeString(entry.getKey().wireFormat());
+      writer.writeNode(entry.getValue());
+    }
+    return writer.toByteArray();
+  }
+
+  public static Node deserialize(byte[] data) throws IOException {
+    Reader reader = new Reader(data);
+    Node node = reader.readNode();
+    reader.expectEnd();
+    return node;
+  }
+
+  public static Map<Path, Node> deserializeMerge(byte[] data) throws IOException {
+    Reader reader = new Reader(data);
+    if (reader.readByte() != TAG_MERGE) {
+      throw reader.error("Expected a merge");
+    }
+    int count = reader.readLength();
+    Map<Path, Node> merge = new LinkedHashMap<Path, Node>();
+    for (int i = 0; i < count; i++) {
+      Path path = new Path(reader.readString());
+      merge.put(path, reader.readNode());
+    }
+    reader.expectEnd();
+    return merge;
+  }
+
+  private static class Writer {
+    private final Map<ChildKey, Integer> keyIndexes = new HashMap<ChildKey, Integer>();
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    Writer() {
+      writeByte(FORMAT_VERSION);
+    }
+
+    void writeNode(Node node) {
+      Node priority = node.getPriority();
+      if (!priority.isEmpty()) {
+        writeByte(TAG_PRIORITY);
+        writeNode(priority);
+      }
+
+      if (node.isEmpty()) {
+        writeByte(TAG_EMPTY);
+      } else if (node instanceof StringNode) {
+        writeByte(TAG_STRING);
+        writeString((String) node.getValue());
+      } else if (node instanceof LongNode) {
+        writeByte(TAG_LONG);
+        long value = (Long) node.getValue();
+        writeVarint((value << 1) ^ (value >> 63));
+      } else if (node instanceof DoubleNode) {
+        writeByte(TAG_DOUBLE);
+        long bits = Double.doubleToLongBits((Double) node.getValue());
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          writeByte((int) (bits >>> shift));
+        }
+      } else if (node instanceof BooleanNode) {
+        writeByte((Boolean) node.getValue() ? TAG_TRUE : TAG_FALSE);
+      } else if (node instanceof DeferredValueNode) {
+        writeByte(TAG_DEFERRED_VALUE);
+        try {
+          writeString(JsonMapper.serializeJsonValue(node.getValue()));
+        } catch (IOException e) {
+          throw new RuntimeException("Could not serialize deferred value", e);
+        }
+      } else if (node instanceof ChildrenNode) {
+        writeByte(TAG_CHILDREN);
+        writeVarint(node.getChildCount());
+        for (NamedNode child : node) {
+          writeKey(child.getName());
+          writeNode(child.getNode());
+        }
+      } else {
+        throw new IllegalArgumentException("Unknown node type: " + node.getClass());
+      }
+    }
+
+    private void writeKey(ChildKey key) {
+      Integer index = keyIndexes.get(key);
+      if (index != null) {
+        writeVarint(index);
+      } else {
+        keyIndexes.put(key, keyIndexes.size() + 1);
+        writeVarint(NEW_KEY);
+        writeString(key.asString());
+      }
+    }
+
+    void writeString(String value) {
+      byte[] bytes = value.getBytes(UTF8_CHARSET);
+      writeVarint(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeVarint(long value) {
+      while ((value & ~0x7fL) != 0) {
+        writeByte((int) ((value & 0x7f) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+  }
+
+  private static class Reader {
+    private final List<ChildKey> keys = new ArrayList<ChildKey>();
+    private final byte[] data;
+    private int position;
+
+    Reader(byte[] data) throws IOException {
+      this.data = data;
+      int version = readByte();
+      if (version != FORMAT_VERSION) {
+        throw error("Unsupported format version " + version);
+      }
+    }
+
+    Node readNode() throws IOException {
+      int tag = readByte();
+      Node priority = PriorityUtilities.NullPriority();
+      if (tag == TAG_PRIORITY) {
+        priority = readNode();
+        tag = readByte();
+      }
+
+      switch (tag) {
+        case TAG_EMPTY:
+          return EmptyNode.Empty();
+        case TAG_STRING:
+          return new StringNode(readString(), priority);
+        case TAG_LONG:
+          long zigZag = readVarint();
+          return new LongNode((zigZag >>> 1) ^ -(zigZag & 1), priority);
+        case TAG_DOUBLE:
+          long bits = 0;
+          for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+          }
+          return new DoubleNode(Double.longBitsToDouble(bits), priority);
+        case TAG_TRUE:
+          return new BooleanNode(true, priority);
+        case TAG_FALSE:
+          return new BooleanNode(false, priority);
+        case TAG_DEFERRED_VALUE:
+          @SuppressWarnings({"unchecked", "rawtypes"})
+          Map<Object, Object> value = (Map) JsonMapper.parseJson(readString());
+          return new DeferredValueNode(value, priority);
+        case TAG_CHILDREN:
+          int count = readLength();
+          Map<ChildKey, Node> children = new HashMap<ChildKey, Node>(count);
+          for (int i = 0; i < count; i++) {
+            ChildKey key = readKey();
+            children.put(key, readNode());
+          }
+          ImmutableSortedMap<ChildKey, Node> childSet =
+              ImmutableSortedMap.Builder.fromMap(children, ChildrenNode.NAME_ONLY_COMPARATOR);
+          return new ChildrenNode(childSet, priority);
+        default:
+          throw error("Unknown tag " + tag);
+      }
+    }
+
+    private ChildKey readKey() throws IOException {
+      int index = readLength();
+      if (index == NEW_KEY) {
+        ChildKey key = ChildKey.fromString(readString());
+        keys.add(key);
+        return key;
+      } else if (index <= keys.size()) {
+        return keys.get(index - 1);
+      } else {
+        throw error("Unknown key index " + index);
+      }
+    }
+
+    String readString() throws IOException {
+      int length = readLength();
+      if (length > data.length - position) {
+        throw error("Unexpected end of data");
+      }
+      String value = new String(data, position, length, UTF8_CHARSET);
+      position += length;
+      return value;
+    }
+
+    int readLength() throws IOException {
+      long length = readVarint();
+      if (length > Integer.MAX_VALUE) {
+        throw error("Invalid length " + length);
+      }
+      return (int) length;
+    }
+
+    long readVarint() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw error("Malformed varint");
+    }
+
+    int readByte() throws IOException {
+      if (position == data.length) {
+        throw error("Unexpected end of data");
+      }
+      return data[position++] & 0xff;
+    }
+
+    void expectEnd() throws IOException {
+      if (position != data.length) {
+        throw error("Unexpected data after the end of the value");
+      }
+    }
+
+    IOException error(String message) {
+      return new IOException(message + " at offset " + position);
+    }
+  }
+}
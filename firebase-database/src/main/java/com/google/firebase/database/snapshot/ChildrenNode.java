@@ -42,6 +42,7 @@ public class ChildrenNode implements Node {
   private final Node priority;
 
   private String lazyHash = null;
+  private CompoundHash.Memo compoundHashMemo = null;
 
   private static class NamedNodeIterator implements Iterator<NamedNode> {
 
@@ -211,6 +212,14 @@ public class ChildrenNode implements Node {
     return this.lazyHash;
   }
 
+  /** Returns what {@link CompoundHash} remembers about this node between hashes. */
+  CompoundHash.Memo getCompoundHashMemo() {
+    if (this.compoundHashMemo == null) {
+      this.compoundHashMemo = new CompoundHash.Memo();
+    }
+    return this.compoundHashMemo;
+  }
+
   @Override
   public boolean isLeafNode() {
     return false;
@@ -25,6 +25,32 @@ import java.util.List;
 import java.util.Stack;
 
 public class CompoundHash {
+  /**
+   * Children nodes that are appended to a range as a whole keep their hash text if it is at most
+   * this long, so that later hashes can append it without visiting the nodes in it. Longer texts
+   * are not kept to limit the memory used.
+   */
+  private static final int MAX_MEMOIZED_TEXT_LENGTH = 2048;
+
+  /**
+   * What a children node remembers between hashes. As nodes are immutable and share unchanged
+   * children with the nodes they were updated from, hashing an updated node only recomputes this
+   * for the nodes on the paths to the changes.
+   */
+  static class Memo {
+    /** The length of the hash text of the node's children, or -1 if it was not computed yet. */
+    long textLength = -1;
+
+    /**
+     * The hash text of the node's children, if the node was appended to a range as a whole. The
+     * text is not kept for the nodes below it, so that it is not copied at every level of the tree.
+     */
+    String text;
+
+    /** The compound hash of the node with the default split strategy. */
+    CompoundHash compoundHash;
+  }
+
   private final List<Path> posts;
   private final List<String> hashes;
 
@@ -65,6 +91,10 @@ public class CompoundHash {
       this.splitThreshold = Math.max(512, (long) Math.sqrt(estimatedNodeSize * 100));
     }
 
+    SimpleSizeSplitStrategy(long splitThreshold) {
+      this.splitThreshold = splitThreshold;
+    }
+
     @Override
     public boolean shouldSplit(CompoundHashBuilder state) {
       // Never split on priorities
@@ -132,15 +162,11 @@ public class CompoundHash {
       }
     }
 
-    private void appendKey(StringBuilder builder, ChildKey key) {
-      builder.append(Utilities.stringHashV2Representation(key.asString()));
-    }
-
     private void processLeaf(LeafNode<?> node) {
       ensureRange();
 
       lastLeafDepth = currentPathDepth;
-      optHashValueBuilder.append(node.getHashRepresentation(Node.HashVersion.V2));
+      optHashValueBuilder.append(node.getHashRepresentationV2());
       needsComma = true;
       if (splitStrategy.shouldSplit(this)) {
         endRange();
@@ -156,13 +182,48 @@ public class CompoundHash {
       appendKey(optHashValueBuilder, key);
       optHashValueBuilder.append(":(");
 
-      if (currentPathDepth == currentPath.size()) {
+      setPathKey(currentPathDepth, key);
+      currentPathDepth++;
+      needsComma = false;
+    }
+
+    private void setPathKey(int depth, ChildKey key) {
+      if (depth == currentPath.size()) {
         currentPath.add(key);
       } else {
-        currentPath.set(currentPathDepth, key);
+        currentPath.set(depth, key);
       }
-      currentPathDepth++;
-      needsComma = false;
+    }
+
+    /**
+     * Appends the remembered text of a child that was just started, if the size split strategy is
+     * used and the current range cannot end within the child. Returns false if the child needs to
+     * be processed node by node.
+     */
+    private boolean appendChildText(Node child) {
+      if (!(splitStrategy instanceof SimpleSizeSplitStrategy) || child.isLeafNode()) {
+        return false;
+      }
+      long splitThreshold = ((SimpleSizeSplitStrategy) splitStrategy).splitThreshold;
+      long textLength = textLength(child);
+      if (textLength > MAX_MEMOIZED_TEXT_LENGTH
+          || optHashValueBuilder.length() + textLength > splitThreshold) {
+        return false;
+      }
+      appendText(optHashValueBuilder, child);
+
+      // Track the path of the last leaf in the child, as processing it node by node would.
+      int depth = currentPathDepth;
+      Node node = child;
+      while (!node.isLeafNode()) {
+        ChildKey lastKey = ((ChildrenNode) node).getLastChildKey();
+        setPathKey(depth, lastKey);
+        depth++;
+        node = node.getImmediateChild(lastKey);
+      }
+      lastLeafDepth = depth;
+      needsComma = true;
+      return true;
     }
 
     private void endChild() {
@@ -199,10 +260,25 @@ public class CompoundHash {
     }
   }
 
+  /**
+   * Returns the compound hash of the node with the default split strategy. The hash of a children
+   * node is computed once and kept with the node.
+   */
   public static CompoundHash fromNode(Node node) {
+    if (node instanceof ChildrenNode && !node.isEmpty()) {
+      Memo memo = ((ChildrenNode) node).getCompoundHashMemo();
+      if (memo.compoundHash == null) {
+        memo.compoundHash = fromNode(node, new SimpleSizeSplitStrategy(node));
+      }
+      return memo.compoundHash;
+    }
     return fromNode(node, new SimpleSizeSplitStrategy(node));
   }
 
+  static SplitStrategy sizeSplitStrategy(long splitThreshold) {
+    return new SimpleSizeSplitStrategy(splitThreshold);
+  }
+
   public static CompoundHash fromNode(Node node, SplitStrategy strategy) {
     if (node.isEmpty()) {
       return new CompoundHash(Collections.<Path>emptyList(), Collections.singletonList(""));
@@ -229,11 +305,102 @@ public class CompoundHash {
             @Override
             public void visitChild(ChildKey name, Node child) {
               state.startChild(name);
-              processNode(child, state);
+              if (!state.appendChildText(child)) {
+                processNode(child, state);
+              }
               state.endChild();
             }
           };
       childrenNode.forEachChild(visitor, /*includePriority=*/ true);
     }
   }
+
+  private static void appendKey(StringBuilder builder, ChildKey key) {
+    builder.append(Utilities.stringHashV2Representation(key.asString()));
+  }
+
+  /**
+   * Returns the length of the text that processing the node adds to a range, if the range does not
+   * end within the node.
+   */
+  private static long textLength(Node node) {
+    if (node.isLeafNode()) {
+      return ((LeafNode<?>) node).getHashRepresentationV2().length();
+    }
+    final Memo memo = ((ChildrenNode) node).getCompoundHashMemo();
+    if (memo.textLength < 0) {
+      final long[] length = new long[1];
+      ((ChildrenNode) node)
+          .forEachChild(
+              new ChildrenNode.ChildVisitor() {
+                @Override
+                public void visitChild(ChildKey name, Node child) {
+                  if (length[0] > 0) {
+                    length[0]++; // Comma
+                  }
+                  String key = Utilities.stringHashV2Representation(name.asString());
+                  length[0] += key.length() + 3 + textLength(child); // Key, ":(" and ")"
+                }
+              },
+              /*includePriority=*/ true);
+      memo.textLength = length[0];
+    }
+    return memo.textLength;
+  }
+
+  /**
+   * Appends the text that processing the node adds to a range, if the range does not end within
+   * the node. The text of a children node is remembered with the node, which requires that it is
+   * not longer than MAX_MEMOIZED_TEXT_LENGTH.
+   */
+  private static void appendText(StringBuilder builder, Node node) {
+    if (node.isLeafNode()) {
+      builder.append(((LeafNode<?>) node).getHashRepresentationV2());
+      return;
+    }
+    Memo memo = ((ChildrenNode) node).getCompoundHashMemo();
+    if (memo.text == null) {
+      int start = builder.length();
+      appendChildrenText(builder, (ChildrenNode) node);
+      hardAssert(
+          builder.length() - start <= MAX_MEMOIZED_TEXT_LENGTH,
+          "Text is too long to be remembered");
+      memo.text = builder.substring(start);
+      memo.textLength = memo.text.length();
+    } else {
+      builder.append(memo.text);
+    }
+  }
+
+  /**
+   * Appends the text of the children of the node. Texts that were remembered by nodes below it are
+   * reused, but no new texts are remembered.
+   */
+  private static void appendChildrenText(final StringBuilder builder, ChildrenNode node) {
+    final boolean[] needsComma = new boolean[1];
+    node.forEachChild(
+        new ChildrenNode.ChildVisitor() {
+          @Override
+          public void visitChild(ChildKey name, Node child) {
+            if (needsComma[0]) {
+              builder.append(",");
+            }
+            needsComma[0] = true;
+            appendKey(builder, name);
+            builder.append(":(");
+            if (child.isLeafNode()) {
+              builder.append(((LeafNode<?>) child).getHashRepresentationV2());
+            } else {
+              Memo memo = ((ChildrenNode) child).getCompoundHashMemo();
+              if (memo.text != null) {
+                builder.append(memo.text);
+              } else {
+                appendChildrenText(builder, (ChildrenNode) child);
+              }
+            }
+            builder.append(")");
+          }
+        },
+        /*includePriority=*/ true);
+  }
 }
@@ -35,6 +35,7 @@ public abstract class LeafNode<T extends LeafNode> implements Node {
 
   protected final Node priority;
   private String lazyHash;
+  private String lazyHashRepresentationV2;
 
   LeafNode(Node priority) {
     this.priority = priority;
@@ -139,6 +140,14 @@ public abstract class LeafNode<T extends LeafNode> implements Node {
     return this.lazyHash;
   }
 
+  /** Returns the V2 hash representation, which {@link CompoundHash} hashes for every leaf. */
+  String getHashRepresentationV2() {
+    if (this.lazyHashRepresentationV2 == null) {
+      this.lazyHashRepresentationV2 = getHashRepresentation(HashVersion.V2);
+    }
+    return this.lazyHashRepresentationV2;
+  }
+
   protected String getPriorityHash(HashVersion version) {
     switch (version) {
       case V1:
@@ -17,6 +17,7 @@ package com.google.firebase.database.snapshot;
 import com.google.firebase.database.DatabaseException;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.database.core.ServerValues;
+import com.google.firebase.database.util.StreamingJsonParser;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -24,11 +25,34 @@ import java.util.Map;
 
 public class NodeUtilities {
 
+  /**
+   * Converts the objects and arrays of JSON data to nodes while the data is parsed. Calling {@link
+   * #NodeFromJSON} on the parsed value returns the same node as for the unconverted value.
+   */
+  public static final StreamingJsonParser.ValueConverter JSON_CONVERTER =
+      new StreamingJsonParser.ValueConverter() {
+        @Override
+        public boolean convertsMember(String name) {
+          // The values of keys like ".value", ".priority" and ".sv" are read as plain JSON.
+          return !name.startsWith(".");
+        }
+
+        @Override
+        public Object convert(Object value) {
+          return NodeFromJSON(value);
+        }
+      };
+
   public static Node NodeFromJSON(Object value) throws DatabaseException {
     return NodeFromJSON(value, PriorityUtilities.NullPriority());
   }
 
   public static Node NodeFromJSON(Object value, Node priority) throws DatabaseException {
+    if (value instanceof Node) {
+      // The value was already converted while it was parsed, see JSON_CONVERTER.
+      Node node = (Node) value;
+      return priority.isEmpty() ? node : node.updatePriority(priority);
+    }
     try {
       if (value instanceof Map) {
         Map mapValue = (Map) value;
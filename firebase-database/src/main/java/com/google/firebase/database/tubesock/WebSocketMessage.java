@@ -14,7 +14,11 @@
 
 package com.google.firebase.database.tubesock;
 
+import java.nio.charset.Charset;
+
 public class WebSocketMessage {
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
   private byte[] byteMessage;
   private String stringMessage;
   private byte opcode;
@@ -29,6 +33,13 @@ public class WebSocketMessage {
     this.opcode = WebSocket.OPCODE_TEXT;
   }
 
+  /** Creates a text message from its UTF-8 encoding, which is only decoded by {@link #getText}. */
+  static WebSocketMessage fromUtf8(byte[] utf8Text) {
+    WebSocketMessage message = new WebSocketMessage(utf8Text);
+    message.opcode = WebSocket.OPCODE_TEXT;
+    return message;
+  }
+
   public boolean isText() {
     return opcode == WebSocket.OPCODE_TEXT;
   }
@@ -37,11 +48,18 @@ public class WebSocketMessage {
     return opcode == WebSocket.OPCODE_BINARY;
   }
 
+  /** Returns the payload of a binary message, or the UTF-8 encoding of a text message. */
   public byte[] getBytes() {
+    if (byteMessage == null && stringMessage != null) {
+      byteMessage = stringMessage.getBytes(UTF8_CHARSET);
+    }
     return byteMessage;
   }
 
   public String getText() {
+    if (stringMessage == null && opcode == WebSocket.OPCODE_TEXT) {
+      stringMessage = new String(byteMessage, UTF8_CHARSET);
+    }
     return stringMessage;
   }
 }
@@ -15,17 +15,12 @@
 package com.google.firebase.database.util;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
-import org.json.JSONTokener;
 
 /**
  * Helper class to convert from/to JSON strings. TODO: This class should ideally not live in
@@ -34,6 +29,8 @@ import org.json.JSONTokener;
  */
 public class JsonMapper {
 
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
   public static String serializeJson(Map<String, Object> object) throws IOException {
     return serializeJsonValue(object);
   }
@@ -87,48 +84,33 @@ public class JsonMapper {
   }
 
   public static Map<String, Object> parseJson(String json) throws IOException {
-    try {
-      return unwrapJsonObject(new JSONObject(json));
-    } catch (JSONException e) {
-      throw new IOException(e);
+    Object value = parseJsonValue(json);
+    if (!(value instanceof Map)) {
+      throw new IOException("Expected a JSON object");
     }
+    @SuppressWarnings("unchecked")
+    Map<String, Object> map = (Map<String, Object>) value;
+    return map;
   }
 
   public static Object parseJsonValue(String json) throws IOException {
-    try {
-      return unwrapJson(new JSONTokener(json).nextValue());
-    } catch (JSONException e) {
-      throw new IOException(e);
-    }
-  }
-
-  private static Map<String, Object> unwrapJsonObject(JSONObject jsonObject) throws JSONException {
-    Map<String, Object> map = new HashMap<String, Object>(jsonObject.length());
-    Iterator<String> keys = jsonObject.keys();
-    while (keys.hasNext()) {
-      String key = keys.next();
-      map.put(key, unwrapJson(jsonObject.get(key)));
-    }
-    return map;
+    return parseJsonValue(json.getBytes(UTF8_CHARSET));
   }
 
-  private static List<Object> unwrapJsonArray(JSONArray jsonArray) throws JSONException {
-    List<Object> list = new ArrayList<Object>(jsonArray.length());
-    for (int i = 0; i < jsonArray.length(); i++) {
-      list.add(unwrapJson(jsonArray.get(i)));
-    }
-    return list;
+  /** Parses a JSON value from its UTF-8 encoding, without decoding it into a string first. */
+  public static Object parseJsonValue(byte[] utf8Json) throws IOException {
+    return parseJsonValue(utf8Json, /* converter= */ null);
   }
 
-  private static Object unwrapJson(Object o) throws JSONException {
-    if (o instanceof JSONObject) {
-      return unwrapJsonObject((JSONObject) o);
-    } else if (o instanceof JSONArray) {
-      return unwrapJsonArray((JSONArray) o);
-    } else if (o.equals(JSONObject.NULL)) {
-      return null;
-    } else {
-      return o;
-    }
+  /**
+   * Parses a JSON value from its UTF-8 encoding, passing the value and all objects and arrays
+   * nested in it to the given converter as soon as they are parsed.
+   */
+  public static Object parseJsonValue(
+      byte[] utf8Json, StreamingJsonParser.ValueConverter converter) throws IOException {
+    StreamingJsonParser parser = new StreamingJsonParser(utf8Json);
+    Object value = parser.readValue(converter);
+    parser.endDocument();
+    return value;
   }
 }
@@ -0,0 +1,443 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses JSON directly from UTF-8 encoded bytes, which may be split across several chunks, without
+ * first decoding them into a string.
+ *
+ * <p>Values are returned as the types that {@link JsonMapper} returns: maps, lists, strings,
+ * booleans, null, and numbers as Integer, Long or Double. A {@link ValueConverter} can replace
+ * objects and arrays as soon as they are parsed, so that large documents can be converted without
+ * ever holding their complete generic representation.
+ *
+ * <p>Besides parsing complete values, the parser can step through objects and arrays one element
+ * at a time, so that callers can decide how to parse each member of an object.
+ */
+public final class StreamingJsonParser {
+
+  /** Converts objects and arrays right after they are parsed. */
+  public interface ValueConverter {
+    /**
+     * Returns whether the value of the object member with the given name is converted. If not, the
+     * objects and arrays nested in the value are not converted either.
+     */
+    boolean convertsMember(String name);
+
+    /**
+     * Returns the value to use in place of the given map or list. Objects and arrays nested in the
+     * value have already been converted.
+     */
+    Object convert(Object value);
+  }
+
+  /** Thrown when a {@link ValueConverter} fails on a value that was parsed. */
+  public static final class ConversionException extends RuntimeException {
+    ConversionException(RuntimeException cause) {
+      super("Failed to convert a parsed value", cause);
+    }
+  }
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private final List<byte[]> chunks;
+  private int chunkIndex = -1;
+  private byte[] buffer = EMPTY;
+  private int position;
+  private long chunkOffset;
+
+  /** Whether an element was read in the current object or array and needs a separator. */
+  private boolean needsSeparator;
+
+  /** Buffer for the characters of the string or number that is being parsed. */
+  private char[] chars = new char[64];
+
+  public StreamingJsonParser(byte[] utf8Json) {
+    this(Collections.singletonList(utf8Json));
+  }
+
+  /** Creates a parser for the JSON text that is the concatenation of the given chunks. */
+  public StreamingJsonParser(List<byte[]> utf8JsonChunks) {
+    this.chunks = utf8JsonChunks;
+  }
+
+  /** Returns whether the next value is an object. */
+  public boolean peekObject() throws IOException {
+    skipWhitespace();
+    return peek() == '{';
+  }
+
+  /** Consumes the start of an object. */
+  public void beginObject() throws IOException {
+    expect('{');
+    needsSeparator = false;
+  }
+
+  /** Consumes the end of an object. */
+  public void endObject() throws IOException {
+    expect('}');
+    needsSeparator = true;
+  }
+
+  /** Consumes the start of an array. */
+  public void beginArray() throws IOException {
+    expect('[');
+    needsSeparator = false;
+  }
+
+  /** Consumes the end of an array. */
+  public void endArray() throws IOException {
+    expect(']');
+    needsSeparator = true;
+  }
+
+  /** Returns whether the current object or array has another element. */
+  public boolean hasNext() throws IOException {
+    skipWhitespace();
+    int c = peek();
+    if (c == '}' || c == ']') {
+      return false;
+    }
+    if (needsSeparator) {
+      expect(',');
+      needsSeparator = false;
+    }
+    return true;
+  }
+
+  /** Consumes the name of the next member of the current object. */
+  public String nextName() throws IOException {
+    expect('"');
+    String name = parseString();
+    expect(':');
+    return name;
+  }
+
+  /** Consumes and returns the next value. */
+  public Object readValue() throws IOException {
+    return readValue(/* converter= */ null);
+  }
+
+  /**
+   * Consumes and returns the next value, passing it and all objects and arrays nested in it to the
+   * given converter.
+   *
+   * @throws ConversionException if the converter fails.
+   */
+  public Object readValue(ValueConverter converter) throws IOException {
+    Object value = parseValue(read(), converter);
+    needsSeparator = true;
+    return value;
+  }
+
+  /** Verifies that nothing but whitespace follows the values that were consumed. */
+  public void endDocument() throws IOException {
+    skipWhitespace();
+    if (peek() != -1) {
+      throw syntaxError("Unexpected data after the end of the document");
+    }
+  }
+
+  private Object parseValue(int c, ValueConverter converter) throws IOException {
+    while (isWhitespace(c)) {
+      c = read();
+    }
+    switch (c) {
+      case '{':
+        return parseObject(converter);
+      case '[':
+        return parseArray(converter);
+      case '"':
+        return parseString();
+      case 't':
+        expectLiteral("rue");
+        return Boolean.TRUE;
+      case 'f':
+        expectLiteral("alse");
+        return Boolean.FALSE;
+      case 'n':
+        expectLiteral("ull");
+        return null;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return parseNumber(c);
+        }
+        throw syntaxError(c == -1 ? "Unexpected end of the document" : "Unexpected character");
+    }
+  }
+
+  private Object parseObject(ValueConverter converter) throws IOException {
+    Map<String, Object> map = new HashMap<>();
+    int c = readNonWhitespace();
+    if (c != '}') {
+      while (true) {
+        if (c != '"') {
+          throw syntaxError("Expected a name");
+        }
+        String key = parseString();
+        expect(':');
+        boolean convertsValue = converter != null && converter.convertsMember(key);
+        map.put(key, parseValue(read(), convertsValue ? converter : null));
+        c = readNonWhitespace();
+        if (c == '}') {
+          break;
+        } else if (c != ',') {
+          throw syntaxError("Unterminated object");
+        }
+        c = readNonWhitespace();
+      }
+    }
+    return converter != null ? convert(converter, map) : map;
+  }
+
+  private Object parseArray(ValueConverter converter) throws IOException {
+    List<Object> list = new ArrayList<>();
+    int c = readNonWhitespace();
+    if (c != ']') {
+      while (true) {
+        list.add(parseValue(c, converter));
+        c = readNonWhitespace();
+        if (c == ']') {
+          break;
+        } else if (c != ',') {
+          throw syntaxError("Unterminated array");
+        }
+        c = read();
+      }
+    }
+    return converter != null ? convert(converter, list) : list;
+  }
+
+  private static Object convert(ValueConverter converter, Object value) {
+    try {
+      return converter.convert(value);
+    } catch (RuntimeException e) {
+      throw new ConversionException(e);
+    }
+  }
+
+  /** Parses the remainder of a string whose opening quote was consumed. */
+  private String parseString() throws IOException {
+    int length = 0;
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return new String(chars, 0, length);
+      }
+      if (length + 2 > chars.length) {
+        chars = Arrays.copyOf(chars, chars.length * 2);
+      }
+      if (c == '\\') {
+        chars[length++] = readEscapeCharacter();
+      } else if (c < 0x80) {
+        if (c == -1) {
+          throw syntaxError("Unterminated string");
+        }
+        chars[length++] = (char) c;
+      } else {
+        length = decodeMultiByteCharacter(c, length);
+      }
+    }
+  }
+
+  /** Decodes a UTF-8 sequence of two to four bytes, rejecting overlong forms and surrogates. */
+  private int decodeMultiByteCharacter(int first, int length) throws IOException {
+    if (first >= 0xc2 && first <= 0xdf) {
+      chars[length++] = (char) (((first & 0x1f) << 6) | continuation(0x80, 0xbf));
+    } else if (first >= 0xe0 && first <= 0xef) {
+      int second =
+          first == 0xe0
+              ? continuation(0xa0, 0xbf)
+              : continuation(0x80, first == 0xed ? 0x9f : 0xbf);
+      chars[length++] =
+          (char) (((first & 0x0f) << 12) | (second << 6) | continuation(0x80, 0xbf));
+    } else if (first >= 0xf0 && first <= 0xf4) {
+      int second =
+          first == 0xf0
+              ? continuation(0x90, 0xbf)
+              : continuation(0x80, first == 0xf4 ? 0x8f : 0xbf);
+      int codePoint =
+          ((first & 0x07) << 18)
+              | (second << 12)
+              | (continuation(0x80, 0xbf) << 6)
+              | continuation(0x80, 0xbf);
+      chars[length++] = Character.highSurrogate(codePoint);
+      chars[length++] = Character.lowSurrogate(codePoint);
+    } else {
+      throw syntaxError("Malformed UTF-8");
+    }
+    return length;
+  }
+
+  /** Reads a continuation byte in the given range and returns its six payload bits. */
+  private int continuation(int min, int max) throws IOException {
+    int c = read();
+    if (c < min || c > max) {
+      throw syntaxError("Malformed UTF-8");
+    }
+    return c & 0x3f;
+  }
+
+  private char readEscapeCharacter() throws IOException {
+    int c = read();
+    switch (c) {
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(read(), 16);
+          if (digit == -1) {
+            throw syntaxError("Invalid unicode escape");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case -1:
+        throw syntaxError("Unterminated escape sequence");
+      default:
+        if (c >= 0x80) {
+          throw syntaxError("Invalid escape sequence");
+        }
+        // Like org.json, escaped characters other than the above stand for themselves.
+        return (char) c;
+    }
+  }
+
+  /**
+   * Parses a number. Like org.json, integers are returned as Integer if they fit and as Long
+   * otherwise, and all other numbers as Double.
+   */
+  private Object parseNumber(int first) throws IOException {
+    int length = 0;
+    boolean integral = true;
+    int c = first;
+    while (true) {
+      if (length == chars.length) {
+        chars = Arrays.copyOf(chars, chars.length * 2);
+      }
+      chars[length++] = (char) c;
+      c = peek();
+      if (c >= '0' && c <= '9') {
+        read();
+      } else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+        integral = false;
+        read();
+      } else {
+        break;
+      }
+    }
+
+    try {
+      String literal = new String(chars, 0, length);
+      if (integral) {
+        try {
+          long value = Long.parseLong(literal);
+          if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+          }
+          return value;
+        } catch (NumberFormatException e) {
+          // Integers beyond the range of a long are parsed as doubles.
+        }
+      }
+      return Double.valueOf(literal);
+    } catch (NumberFormatException e) {
+      throw syntaxError("Invalid number");
+    }
+  }
+
+  private void expectLiteral(String remainder) throws IOException {
+    for (int i = 0; i < remainder.length(); i++) {
+      if (read() != remainder.charAt(i)) {
+        throw syntaxError("Unexpected literal");
+      }
+    }
+  }
+
+  private void expect(char expected) throws IOException {
+    if (readNonWhitespace() != expected) {
+      throw syntaxError("Expected '" + expected + "'");
+    }
+  }
+
+  private int readNonWhitespace() {
+    int c = read();
+    while (isWhitespace(c)) {
+      c = read();
+    }
+    return c;
+  }
+
+  private void skipWhitespace() {
+    while (isWhitespace(peek())) {
+      read();
+    }
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  /** Returns the next byte as an unsigned value without consuming it, or -1 at the end. */
+  private int peek() {
+    while (position == buffer.length) {
+      if (!nextChunk()) {
+        return -1;
+      }
+    }
+    return buffer[position] & 0xff;
+  }
+
+  /** Consumes and returns the next byte as an unsigned value, or -1 at the end. */
+  private int read() {
+    while (position == buffer.length) {
+      if (!nextChunk()) {
+        return -1;
+      }
+    }
+    return buffer[position++] & 0xff;
+  }
+
+  private boolean nextChunk() {
+    if (chunkIndex + 1 >= chunks.size()) {
+      return false;
+    }
+    chunkOffset += buffer.length;
+    buffer = chunks.get(++chunkIndex);
+    position = 0;
+    return true;
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException(message + " at offset " + (chunkOffset + position));
+  }
+}
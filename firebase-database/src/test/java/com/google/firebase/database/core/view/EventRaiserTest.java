@@ -0,0 +1,167 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.core.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.firebase.database.core.EventTarget;
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.logging.DefaultLogger;
+import com.google.firebase.database.logging.LogWrapper;
+import com.google.firebase.database.logging.Logger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class EventRaiserTest {
+
+  /** Collects posted runnables, which the test runs one at a time. */
+  private static class QueueEventTarget implements EventTarget {
+    final List<Runnable> posted = new ArrayList<Runnable>();
+
+    @Override
+    public void postEvent(Runnable r) {
+      posted.add(r);
+    }
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public void restart() {}
+
+    void runNext() {
+      posted.remove(0).run();
+    }
+  }
+
+  private static class RecordingEvent implements Event {
+    private final String name;
+    private final List<String> fired;
+
+    RecordingEvent(String name, List<String> fired) {
+      this.name = name;
+      this.fired = fired;
+    }
+
+    @Override
+    public Path getPath() {
+      return Path.getEmptyPath();
+    }
+
+    @Override
+    public void fire() {
+      fired.add(name);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static EventRaiser eventRaiser(EventTarget target, long dispatchBudgetNanos) {
+    LogWrapper logger =
+        new LogWrapper(new DefaultLogger(Logger.Level.DEBUG, null), "EventRaiserTest");
+    return new EventRaiser(target, logger, dispatchBudgetNanos);
+  }
+
+  @Test
+  public void coalescesEventsIntoOneDispatch() {
+    QueueEventTarget target = new QueueEventTarget();
+    EventRaiser raiser = eventRaiser(target, TimeUnit.SECONDS.toNanos(10));
+    final List<String> fired = new ArrayList<String>();
+
+    raiser.raiseEvents(Arrays.asList(new RecordingEvent("a", fired)));
+    raiser.raiseEvents(
+        Arrays.asList(new RecordingEvent("b", fired), new RecordingEvent("c", fired)));
+    raiser.postEvent(
+        new Runnable() {
+          @Override
+          public void run() {
+            fired.add("callback");
+          }
+        });
+    raiser.raiseEvents(Arrays.asList(new RecordingEvent("d", fired)));
+
+    assertEquals(1, target.posted.size());
+    target.runNext();
+    assertEquals(Arrays.asList("a", "b", "c", "callback", "d"), fired);
+    assertEquals(5, raiser.getLastDispatchStats().getEventCount());
+    assertTrue(raiser.getLastDispatchStats().getLatencyNanos() >= 0);
+    assertTrue(target.posted.isEmpty());
+
+    raiser.raiseEvents(Arrays.asList(new RecordingEvent("e", fired)));
+    assertEquals(1, target.posted.size());
+    target.runNext();
+    assertEquals(1, raiser.getLastDispatchStats().getEventCount());
+  }
+
+  @Test
+  public void continuesInNextDispatchWhenBudgetIsExceeded() {
+    QueueEventTarget target = new QueueEventTarget();
+    EventRaiser raiser = eventRaiser(target, /* dispatchBudgetNanos= */ 0);
+    List<String> fired = new ArrayList<String>();
+
+    raiser.raiseEvents(
+        Arrays.asList(
+            new RecordingEvent("a", fired),
+            new RecordingEvent("b", fired),
+            new RecordingEvent("c", fired)));
+    target.runNext();
+    assertEquals(Arrays.asList("a"), fired);
+    assertEquals(1, target.posted.size());
+
+    raiser.raiseEvents(Arrays.asList(new RecordingEvent("d", fired)));
+    assertEquals(1, target.posted.size());
+    while (!target.posted.isEmpty()) {
+      target.runNext();
+    }
+    assertEquals(Arrays.asList("a", "b", "c", "d"), fired);
+  }
+
+  @Test
+  public void keepsDispatchingAfterAFailingEvent() {
+    QueueEventTarget target = new QueueEventTarget();
+    EventRaiser raiser = eventRaiser(target, TimeUnit.SECONDS.toNanos(10));
+    List<String> fired = new ArrayList<String>();
+
+    raiser.postEvent(
+        new Runnable() {
+          @Override
+          public void run() {
+            throw new IllegalStateException("Listener failed");
+          }
+        });
+    raiser.raiseEvents(Arrays.asList(new RecordingEvent("a", fired)));
+    try {
+      target.runNext();
+      fail("Expected the failure of the callback to propagate");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    assertEquals(1, target.posted.size());
+    target.runNext();
+    assertEquals(Arrays.asList("a"), fired);
+  }
+}
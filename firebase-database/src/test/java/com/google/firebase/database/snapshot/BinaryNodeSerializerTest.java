@@ -0,0 +1,149 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.snapshot;
+
+import static com.google.firebase.database.snapshot.NodeUtilities.NodeFromJSON;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.firebase.database.MapBuilder;
+import com.google.firebase.database.core.CompoundWrite;
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.util.JsonMapper;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BinaryNodeSerializerTest {
+
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+  private static Node roundTrip(Node node) throws IOException {
+    byte[] serialized = BinaryNodeSerializer.serialize(node);
+    assertTrue(BinaryNodeSerializer.isBinary(serialized));
+    return BinaryNodeSerializer.deserialize(serialized);
+  }
+
+  @Test
+  public void roundTripsLeafNodes() throws IOException {
+    Node priority = PriorityUtilities.NullPriority();
+    List<Node> nodes =
+        Arrays.asList(
+            EmptyNode.Empty(),
+            new StringNode("é中😀", priority),
+            new StringNode("", priority),
+            new LongNode(0L, priority),
+            new LongNode(-1L, priority),
+            new LongNode(Long.MAX_VALUE, priority),
+            new LongNode(Long.MIN_VALUE, priority),
+            new DoubleNode(-0.5, priority),
+            new DoubleNode(Double.MAX_VALUE, priority),
+            new BooleanNode(true, priority),
+            new BooleanNode(false, priority),
+            NodeFromJSON(new MapBuilder().put(".sv", "timestamp").build()));
+    for (Node node : nodes) {
+      Node result = roundTrip(node);
+      assertEquals(node, result);
+      assertEquals(node.getHash(), result.getHash());
+    }
+  }
+
+  @Test
+  public void roundTripsChildrenAndPriorities() throws IOException {
+    Map<String, Object> data =
+        new MapBuilder()
+            .put(".priority", "root")
+            .put("list", Arrays.asList(1, 2.5, "three", true))
+            .put("leaf", new MapBuilder().put(".value", 4).put(".priority", 1.5).build())
+            .put("nested", new MapBuilder().put("a", Arrays.asList("b", "c")).build())
+            .build();
+    Node node = NodeFromJSON(data);
+    Node result = roundTrip(node);
+    assertEquals(node, result);
+    assertEquals(node.getHash(), result.getHash());
+    assertEquals(node.getValue(true), result.getValue(true));
+  }
+
+  @Test
+  public void internsRepeatedKeys() throws IOException {
+    List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 100; i++) {
+      list.add(
+          new MapBuilder()
+              .put("firstName", "first-" + i)
+              .put("lastName", "last-" + i)
+              .put("age", i)
+              .put("verified", i % 2 == 0)
+              .build());
+    }
+    Node node = NodeFromJSON(list);
+    byte[] binary = BinaryNodeSerializer.serialize(node);
+    byte[] json = JsonMapper.serializeJsonValue(node.getValue(true)).getBytes(UTF8_CHARSET);
+    assertTrue(binary.length * 2 < json.length);
+    assertEquals(node, BinaryNodeSerializer.deserialize(binary));
+  }
+
+  @Test
+  public void roundTripsMerges() throws IOException {
+    Map<String, Object> values = new HashMap<String, Object>();
+    values.put("a/b", 1);
+    values.put("c", new MapBuilder().put("d", "e").build());
+    values.put("f", null);
+    CompoundWrite merge = CompoundWrite.fromValue(values);
+    byte[] serialized = BinaryNodeSerializer.serializeMerge(merge);
+    Map<Path, Node> result = BinaryNodeSerializer.deserializeMerge(serialized);
+    assertEquals(3, result.size());
+    assertEquals(EmptyNode.Empty(), result.get(new Path("f")));
+    assertEquals(merge, CompoundWrite.fromPathMerge(result));
+  }
+
+  @Test
+  public void distinguishesJson() {
+    assertFalse(BinaryNodeSerializer.isBinary("{\"a\":1}".getBytes(UTF8_CHARSET)));
+    assertFalse(BinaryNodeSerializer.isBinary("1".getBytes(UTF8_CHARSET)));
+    assertFalse(BinaryNodeSerializer.isBinary(new byte[0]));
+  }
+
+  @Test
+  public void rejectsMalformedData() {
+    byte[] serialized =
+        BinaryNodeSerializer.serialize(NodeFromJSON(new MapBuilder().put("a", "b").build()));
+    List<byte[]> malformed =
+        Arrays.asList(
+            Arrays.copyOf(serialized, serialized.length - 1),
+            Arrays.copyOf(serialized, serialized.length + 1),
+            new byte[] {BinaryNodeSerializer.FORMAT_VERSION, 42},
+            new byte[] {2, 0});
+    for (byte[] data : malformed) {
+      try {
+        BinaryNodeSerializer.deserialize(data);
+        fail("Expected to fail deserializing " + Arrays.toString(data));
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.snapshot.Node;
+import com.google.firebase.database.snapshot.NodeUtilities;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class StreamingJsonParserTest {
+
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+  private static Object parse(String json) throws IOException {
+    StreamingJsonParser parser = new StreamingJsonParser(json.getBytes(UTF8_CHARSET));
+    Object value = parser.readValue();
+    parser.endDocument();
+    return value;
+  }
+
+  /** Splits the UTF-8 encoding of the string into chunks of the given size. */
+  private static List<byte[]> chunks(String json, int chunkSize) {
+    byte[] bytes = json.getBytes(UTF8_CHARSET);
+    List<byte[]> chunks = new ArrayList<>();
+    for (int i = 0; i < bytes.length; i += chunkSize) {
+      chunks.add(Arrays.copyOfRange(bytes, i, Math.min(i + chunkSize, bytes.length)));
+    }
+    return chunks;
+  }
+
+  @Test
+  public void parsesValuesLikeOrgJson() throws IOException {
+    assertEquals(1, parse("1"));
+    assertEquals(-2147483648, parse("-2147483648"));
+    assertEquals(2147483648L, parse("2147483648"));
+    assertEquals(Long.MIN_VALUE, parse("-9223372036854775808"));
+    assertEquals(9.223372036854775808E18, parse("9223372036854775808"));
+    assertEquals(1.5, parse("1.5"));
+    assertEquals(100.0, parse("1e2"));
+    assertEquals(Boolean.TRUE, parse("true"));
+    assertEquals(Boolean.FALSE, parse("false"));
+    assertNull(parse("null"));
+    assertEquals("foo", parse("\"foo\""));
+    assertEquals(Arrays.asList(1, "a", null), parse(" [ 1 , \"a\" , null ] "));
+  }
+
+  @Test
+  public void parsesNestedObjects() throws IOException {
+    Object value = parse("{\"a\": {\"b\": [true, {}]}, \"c\": []}");
+    assertEquals(JsonMapper.parseJson("{\"c\": [], \"a\": {\"b\": [true, {}]}}"), value);
+  }
+
+  @Test
+  public void decodesEscapesAndUnicode() throws IOException {
+    assertEquals("\"\\/\b\f\n\r\t", parse("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\""));
+    assertEquals("é中😀", parse("\"\\u00e9\\u4E2D\\ud83d\\ude00\""));
+    assertEquals("é中😀", parse("\"é中😀\""));
+  }
+
+  @Test
+  public void parsesAcrossChunks() throws IOException {
+    String json = "{\"key\": \"é中😀\", \"number\": 12345.5, \"list\": [1, 2]}";
+    Object expected = parse(json);
+    for (int chunkSize = 1; chunkSize < 8; chunkSize++) {
+      StreamingJsonParser parser = new StreamingJsonParser(chunks(json, chunkSize));
+      assertEquals(expected, parser.readValue());
+      parser.endDocument();
+    }
+  }
+
+  @Test
+  public void rejectsMalformedInput() {
+    List<byte[]> malformed =
+        Arrays.asList(
+            "{\"a\" 1}".getBytes(UTF8_CHARSET),
+            "[1,]".getBytes(UTF8_CHARSET),
+            "\"unterminated".getBytes(UTF8_CHARSET),
+            "tru".getBytes(UTF8_CHARSET),
+            "1 2".getBytes(UTF8_CHARSET),
+            "-".getBytes(UTF8_CHARSET),
+            // Overlong encoding of '/'.
+            new byte[] {'"', (byte) 0xc0, (byte) 0xaf, '"'},
+            // Encoded surrogate.
+            new byte[] {'"', (byte) 0xed, (byte) 0xa0, (byte) 0x80, '"'},
+            // Missing continuation byte.
+            new byte[] {'"', (byte) 0xe4, (byte) 0xb8, '"'});
+    for (byte[] json : malformed) {
+      try {
+        StreamingJsonParser parser = new StreamingJsonParser(json);
+        parser.readValue();
+        parser.endDocument();
+        fail("Expected to fail parsing " + new String(json, UTF8_CHARSET));
+      } catch (IOException e) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void stepsThroughObjects() throws IOException {
+    StreamingJsonParser parser =
+        new StreamingJsonParser("{\"a\": 1, \"b\": {\"c\": 2}}".getBytes(UTF8_CHARSET));
+    assertTrue(parser.peekObject());
+    parser.beginObject();
+    assertTrue(parser.hasNext());
+    assertEquals("a", parser.nextName());
+    assertFalse(parser.peekObject());
+    assertEquals(1, parser.readValue());
+    assertTrue(parser.hasNext());
+    assertEquals("b", parser.nextName());
+    assertTrue(parser.peekObject());
+    parser.beginObject();
+    assertTrue(parser.hasNext());
+    assertEquals("c", parser.nextName());
+    assertEquals(2, parser.readValue());
+    assertFalse(parser.hasNext());
+    parser.endObject();
+    assertFalse(parser.hasNext());
+    parser.endObject();
+    parser.endDocument();
+  }
+
+  @Test
+  public void convertedNodesMatchNodeFromJson() throws IOException {
+    String json =
+        "{\"a\": {\".priority\": 1, \"b\": [1, null, {\".value\": \"x\", \".priority\": \"p\"}]},"
+            + " \"empty\": {\"x\": null, \"y\": {}},"
+            + " \"value\": {\".value\": {\"z\": 1.5}, \".priority\": 2},"
+            + " \"sv\": {\".sv\": {\"increment\": 1}}}";
+    Node expected = NodeUtilities.NodeFromJSON(JsonMapper.parseJson(json));
+    Object converted =
+        JsonMapper.parseJsonValue(json.getBytes(UTF8_CHARSET), NodeUtilities.JSON_CONVERTER);
+    assertTrue(converted instanceof Node);
+    assertEquals(expected, NodeUtilities.NodeFromJSON(converted));
+  }
+
+  @Test
+  public void converterFailuresAreReportedAsConversionExceptions() throws IOException {
+    // A priority must be a string or a number.
+    String json = "{\"a\": {\".priority\": true, \"b\": 1}}";
+    try {
+      JsonMapper.parseJsonValue(json.getBytes(UTF8_CHARSET), NodeUtilities.JSON_CONVERTER);
+      fail("Expected the conversion to fail");
+    } catch (StreamingJsonParser.ConversionException e) {
+      assertTrue(e.getCause() instanceof DatabaseException);
+    }
+  }
+}
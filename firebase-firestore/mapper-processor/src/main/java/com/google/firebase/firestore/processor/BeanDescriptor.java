@@ -0,0 +1,566 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * The properties of a custom class, resolved at compile time with the same rules that {@code
+ * CustomClassMapper.BeanMapper} applies with reflection at runtime.
+ *
+ * <p>Classes that the generated code cannot map exactly like the reflection based mapper are
+ * rejected with an {@link UnsupportedClassException}. This includes classes with members that are
+ * not accessible from the class's package and classes for which the reflection based mapper
+ * reports an error. These classes keep being mapped with reflection.
+ */
+final class BeanDescriptor {
+  static final String IGNORE_EXTRA_PROPERTIES =
+      "com.google.firebase.firestore.IgnoreExtraProperties";
+  static final String THROW_ON_EXTRA_PROPERTIES =
+      "com.google.firebase.firestore.ThrowOnExtraProperties";
+  static final String PROPERTY_NAME = "com.google.firebase.firestore.PropertyName";
+  private static final String EXCLUDE = "com.google.firebase.firestore.Exclude";
+  private static final String SERVER_TIMESTAMP = "com.google.firebase.firestore.ServerTimestamp";
+  private static final String DOCUMENT_ID = "com.google.firebase.firestore.DocumentId";
+  private static final String DOCUMENT_REFERENCE =
+      "com.google.firebase.firestore.DocumentReference";
+  private static final String TIMESTAMP = "com.google.firebase.Timestamp";
+
+  /** Thrown if a mapper cannot be generated for a class. */
+  static final class UnsupportedClassException extends Exception {
+    UnsupportedClassException(String message) {
+      super(message);
+    }
+  }
+
+  final TypeElement type;
+  final boolean throwOnUnknownProperties;
+  final boolean warnOnUnknownProperties;
+
+  /** Case insensitive mapping of properties to their case sensitive versions. */
+  final Map<String, String> properties = new LinkedHashMap<>();
+
+  final Map<String, ExecutableElement> getters = new LinkedHashMap<>();
+  final Map<String, ExecutableElement> setters = new LinkedHashMap<>();
+  final Map<String, VariableElement> fields = new LinkedHashMap<>();
+  final Set<String> serverTimestamps = new LinkedHashSet<>();
+  final Set<String> documentIdProperties = new LinkedHashSet<>();
+
+  private final Elements elements;
+  private final Types types;
+  private final PackageElement packageElement;
+
+  private BeanDescriptor(TypeElement type, Elements elements, Types types) {
+    this.type = type;
+    this.elements = elements;
+    this.types = types;
+    packageElement = elements.getPackageOf(type);
+    throwOnUnknownProperties = hasAnnotation(type, THROW_ON_EXTRA_PROPERTIES);
+    warnOnUnknownProperties = !hasAnnotation(type, IGNORE_EXTRA_PROPERTIES);
+  }
+
+  /** Resolves the properties of the given class. */
+  static BeanDescriptor create(TypeElement type, Elements elements, Types types)
+      throws UnsupportedClassException {
+    BeanDescriptor descriptor = new BeanDescriptor(type, elements, types);
+    descriptor.validateClass();
+    descriptor.collectProperties();
+    descriptor.validateProperties();
+    return descriptor;
+  }
+
+  /** Returns the type that the reflection based mapper deserializes the property's value to. */
+  TypeMirror deserializedType(String property) {
+    ExecutableElement setter = setters.get(property);
+    return setter != null ? setter.getParameters().get(0).asType() : fields.get(property).asType();
+  }
+
+  /** Returns the type of the value that the reflection based mapper serializes for the property. */
+  TypeMirror serializedType(String property) {
+    ExecutableElement getter = getters.get(property);
+    return getter != null ? getter.getReturnType() : fields.get(property).asType();
+  }
+
+  private void validateClass() throws UnsupportedClassException {
+    if (type.getKind() != ElementKind.CLASS) {
+      throw new UnsupportedClassException("only classes are supported");
+    }
+    if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+      throw new UnsupportedClassException("the class is abstract");
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      throw new UnsupportedClassException("the class has type parameters");
+    }
+    for (Element element = type;
+        element instanceof TypeElement;
+        element = element.getEnclosingElement()) {
+      TypeElement enclosingType = (TypeElement) element;
+      if (enclosingType.getModifiers().contains(Modifier.PRIVATE)) {
+        throw new UnsupportedClassException(enclosingType + " is private");
+      }
+      NestingKind nestingKind = enclosingType.getNestingKind();
+      if (nestingKind == NestingKind.LOCAL || nestingKind == NestingKind.ANONYMOUS) {
+        throw new UnsupportedClassException("local and anonymous classes are not supported");
+      }
+      if (nestingKind == NestingKind.MEMBER
+          && !enclosingType.getModifiers().contains(Modifier.STATIC)
+          && enclosingType.getEnclosingElement().getKind().isClass()) {
+        throw new UnsupportedClassException(enclosingType + " is an inner class");
+      }
+    }
+    for (TypeElement currentType : classHierarchy()) {
+      if (!((DeclaredType) currentType.asType()).getTypeArguments().isEmpty()
+          || !((DeclaredType) currentType.getSuperclass()).getTypeArguments().isEmpty()) {
+        throw new UnsupportedClassException("the class extends a generic class");
+      }
+    }
+
+    boolean hasConstructor = false;
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()
+          && isAccessible(constructor)
+          && !throwsCheckedExceptions(constructor)) {
+        hasConstructor = true;
+      }
+    }
+    if (!hasConstructor) {
+      throw new UnsupportedClassException("the class has no accessible no-argument constructor");
+    }
+  }
+
+  private void collectProperties() throws UnsupportedClassException {
+    // Add any public getters to properties (including isXyz())
+    for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+      if (shouldIncludeGetter(method)) {
+        if (hasBridgeMethod(method)) {
+          throw new UnsupportedClassException(method + " overrides a method with another type");
+        }
+        String propertyName = propertyName(method);
+        addProperty(propertyName);
+        if (getters.containsKey(propertyName)) {
+          throw new UnsupportedClassException("conflicting getters for " + propertyName);
+        }
+        getters.put(propertyName, method);
+        applyGetterAnnotations(method);
+      }
+    }
+
+    // Add any public fields to properties
+    for (TypeElement currentType : classHierarchy()) {
+      for (VariableElement field : ElementFilter.fieldsIn(currentType.getEnclosedElements())) {
+        if (shouldIncludeField(field)) {
+          String propertyName = propertyName(field);
+          addProperty(propertyName);
+          applyFieldAnnotations(field);
+        }
+      }
+    }
+
+    // Setters and non-public fields can be used for known properties. They are resolved from the
+    // class to its superclasses, so that members of subclasses take precedence.
+    for (TypeElement currentType : classHierarchy()) {
+      for (ExecutableElement method : ElementFilter.methodsIn(currentType.getEnclosedElements())) {
+        if (!shouldIncludeSetter(method)) {
+          continue;
+        }
+        if (hasBridgeMethod(method)) {
+          throw new UnsupportedClassException(method + " overrides a method with another type");
+        }
+        String propertyName = propertyName(method);
+        String existingPropertyName = properties.get(propertyName.toLowerCase(Locale.US));
+        if (existingPropertyName == null) {
+          continue;
+        }
+        if (!existingPropertyName.equals(propertyName)) {
+          throw new UnsupportedClassException("setter " + method + " has an invalid case");
+        }
+        ExecutableElement existingSetter = setters.get(propertyName);
+        if (existingSetter == null) {
+          setters.put(propertyName, method);
+          applySetterAnnotations(method);
+        } else if (!isSetterOverride(method, existingSetter)) {
+          throw new UnsupportedClassException("conflicting setters for " + propertyName);
+        }
+      }
+
+      for (VariableElement field : ElementFilter.fieldsIn(currentType.getEnclosedElements())) {
+        String propertyName = propertyName(field);
+        if (properties.containsKey(propertyName.toLowerCase(Locale.US))
+            && !fields.containsKey(propertyName)) {
+          fields.put(propertyName, field);
+          applyFieldAnnotations(field);
+        }
+      }
+    }
+
+    if (properties.isEmpty()) {
+      throw new UnsupportedClassException("the class has no properties");
+    }
+  }
+
+  /** Checks that the generated code can read and write the properties like reflection would. */
+  private void validateProperties() throws UnsupportedClassException {
+    for (String property : properties.values()) {
+      if (documentIdProperties.contains(property)) {
+        continue;
+      }
+      ExecutableElement getter = getters.get(property);
+      if (getter != null) {
+        if (throwsCheckedExceptions(getter)) {
+          throw new UnsupportedClassException(getter + " throws checked exceptions");
+        }
+      } else {
+        VariableElement field = fields.get(property);
+        if (field == null) {
+          throw new UnsupportedClassException("property " + property + " cannot be read");
+        }
+        validateField(field);
+      }
+    }
+
+    Set<String> deserializedProperties = new LinkedHashSet<>(setters.keySet());
+    deserializedProperties.addAll(fields.keySet());
+    for (String property : deserializedProperties) {
+      ExecutableElement setter = setters.get(property);
+      if (setter != null) {
+        if (!isAccessible(setter) || throwsCheckedExceptions(setter)) {
+          throw new UnsupportedClassException(setter + " is not accessible");
+        }
+      } else {
+        VariableElement field = fields.get(property);
+        validateField(field);
+        if (field.getModifiers().contains(Modifier.FINAL)) {
+          throw new UnsupportedClassException(field + " is final");
+        }
+      }
+      validateDeserializedType(deserializedType(property));
+    }
+
+    for (String property : documentIdProperties) {
+      if (!setters.containsKey(property) && !fields.containsKey(property)) {
+        throw new UnsupportedClassException("@DocumentId property " + property + " is read-only");
+      }
+    }
+  }
+
+  private void validateField(VariableElement field) throws UnsupportedClassException {
+    if (!isAccessible(field)) {
+      throw new UnsupportedClassException(field + " is not accessible");
+    }
+    if (field.getModifiers().contains(Modifier.STATIC)) {
+      throw new UnsupportedClassException(field + " is static");
+    }
+  }
+
+  /** Checks that the type can be named in the generated code and is converted without errors. */
+  private void validateDeserializedType(TypeMirror type) throws UnsupportedClassException {
+    switch (type.getKind()) {
+      case INT:
+      case LONG:
+      case DOUBLE:
+      case FLOAT:
+      case BOOLEAN:
+        return;
+      case DECLARED:
+        for (Element element = types.asElement(type);
+            element instanceof TypeElement;
+            element = element.getEnclosingElement()) {
+          if (!isAccessible(element)) {
+            throw new UnsupportedClassException(element + " is not accessible");
+          }
+        }
+        for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+          if (typeArgument.getKind() != TypeKind.DECLARED) {
+            throw new UnsupportedClassException("type " + type + " is not supported");
+          }
+          validateDeserializedType(typeArgument);
+        }
+        return;
+      default:
+        throw new UnsupportedClassException("type " + type + " is not supported");
+    }
+  }
+
+  /** Returns the class and its superclasses up to, but excluding, {@code java.lang.Object}. */
+  private List<TypeElement> classHierarchy() {
+    List<TypeElement> hierarchy = new ArrayList<>();
+    TypeElement currentType = type;
+    while (currentType != null
+        && !currentType.getQualifiedName().contentEquals(Object.class.getName())) {
+      hierarchy.add(currentType);
+      TypeMirror superclass = currentType.getSuperclass();
+      currentType =
+          superclass.getKind() == TypeKind.DECLARED
+              ? (TypeElement) types.asElement(superclass)
+              : null;
+    }
+    return hierarchy;
+  }
+
+  private void addProperty(String property) throws UnsupportedClassException {
+    String oldValue = properties.put(property.toLowerCase(Locale.US), property);
+    if (oldValue != null && !property.equals(oldValue)) {
+      throw new UnsupportedClassException("conflicting case for property " + property);
+    }
+  }
+
+  private void applyFieldAnnotations(VariableElement field) throws UnsupportedClassException {
+    if (hasAnnotation(field, SERVER_TIMESTAMP)) {
+      if (!isTimestampType(field.asType())) {
+        throw new UnsupportedClassException("@ServerTimestamp field " + field + " is no timestamp");
+      }
+      serverTimestamps.add(propertyName(field));
+    }
+
+    if (hasAnnotation(field, DOCUMENT_ID)) {
+      if (!isDocumentIdType(field.asType())) {
+        throw new UnsupportedClassException("@DocumentId field " + field + " has invalid type");
+      }
+      documentIdProperties.add(propertyName(field));
+    }
+  }
+
+  private void applyGetterAnnotations(ExecutableElement method) throws UnsupportedClassException {
+    if (hasAnnotation(method, SERVER_TIMESTAMP)) {
+      if (!isTimestampType(method.getReturnType())) {
+        throw new UnsupportedClassException("@ServerTimestamp getter " + method + " is invalid");
+      }
+      serverTimestamps.add(propertyName(method));
+    }
+
+    if (hasAnnotation(method, DOCUMENT_ID)) {
+      if (!isDocumentIdType(method.getReturnType())) {
+        throw new UnsupportedClassException("@DocumentId getter " + method + " is invalid");
+      }
+      documentIdProperties.add(propertyName(method));
+    }
+  }
+
+  private void applySetterAnnotations(ExecutableElement method) throws UnsupportedClassException {
+    if (hasAnnotation(method, SERVER_TIMESTAMP)) {
+      throw new UnsupportedClassException("@ServerTimestamp is applied to setter " + method);
+    }
+
+    if (hasAnnotation(method, DOCUMENT_ID)) {
+      if (!isDocumentIdType(method.getParameters().get(0).asType())) {
+        throw new UnsupportedClassException("@DocumentId setter " + method + " is invalid");
+      }
+      documentIdProperties.add(propertyName(method));
+    }
+  }
+
+  private boolean shouldIncludeGetter(ExecutableElement method) {
+    String name = method.getSimpleName().toString();
+    return (name.startsWith("get") || name.startsWith("is"))
+        && !isDeclaredByObject(method)
+        && method.getModifiers().contains(Modifier.PUBLIC)
+        && !method.getModifiers().contains(Modifier.STATIC)
+        && method.getReturnType().getKind() != TypeKind.VOID
+        && method.getParameters().isEmpty()
+        && !hasAnnotation(method, EXCLUDE);
+  }
+
+  private boolean shouldIncludeSetter(ExecutableElement method) {
+    return method.getSimpleName().toString().startsWith("set")
+        && !isDeclaredByObject(method)
+        && !method.getModifiers().contains(Modifier.STATIC)
+        && method.getReturnType().getKind() == TypeKind.VOID
+        && method.getParameters().size() == 1
+        && !hasAnnotation(method, EXCLUDE);
+  }
+
+  private boolean shouldIncludeField(VariableElement field) {
+    return !isDeclaredByObject(field)
+        && field.getModifiers().contains(Modifier.PUBLIC)
+        && !field.getModifiers().contains(Modifier.STATIC)
+        && !field.getModifiers().contains(Modifier.TRANSIENT)
+        && !hasAnnotation(field, EXCLUDE);
+  }
+
+  private boolean isSetterOverride(ExecutableElement base, ExecutableElement override) {
+    return base.getSimpleName().contentEquals(override.getSimpleName())
+        && isSameErasedType(
+            base.getParameters().get(0).asType(), override.getParameters().get(0).asType());
+  }
+
+  /**
+   * Returns whether the compiler generates a bridge method for the given method, which the
+   * reflection based mapper would see as a conflicting getter or setter.
+   */
+  private boolean hasBridgeMethod(ExecutableElement method) {
+    TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+    for (TypeElement supertype : supertypes(declaringType)) {
+      for (ExecutableElement other : ElementFilter.methodsIn(supertype.getEnclosedElements())) {
+        if (other.getSimpleName().contentEquals(method.getSimpleName())
+            && elements.overrides(method, other, declaringType)
+            && !hasSameErasedSignature(method, other)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean hasSameErasedSignature(ExecutableElement method, ExecutableElement other) {
+    if (!isSameErasedType(method.getReturnType(), other.getReturnType())) {
+      return false;
+    }
+    for (int i = 0; i < method.getParameters().size(); ++i) {
+      if (!isSameErasedType(
+          method.getParameters().get(i).asType(), other.getParameters().get(i).asType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isSameErasedType(TypeMirror type, TypeMirror other) {
+    return types.isSameType(types.erasure(type), types.erasure(other));
+  }
+
+  private Set<TypeElement> supertypes(TypeElement type) {
+    Set<TypeElement> supertypes = new LinkedHashSet<>();
+    List<TypeMirror> pending = new ArrayList<>(types.directSupertypes(type.asType()));
+    while (!pending.isEmpty()) {
+      TypeMirror supertype = pending.remove(pending.size() - 1);
+      if (supertypes.add((TypeElement) types.asElement(supertype))) {
+        pending.addAll(types.directSupertypes(supertype));
+      }
+    }
+    return supertypes;
+  }
+
+  private boolean throwsCheckedExceptions(ExecutableElement method) {
+    TypeMirror runtimeException =
+        elements.getTypeElement(RuntimeException.class.getName()).asType();
+    TypeMirror error = elements.getTypeElement(Error.class.getName()).asType();
+    for (TypeMirror thrownType : method.getThrownTypes()) {
+      if (!types.isSubtype(thrownType, runtimeException) && !types.isSubtype(thrownType, error)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns whether the element can be accessed from the generated mapper. */
+  private boolean isAccessible(Element element) {
+    Set<Modifier> modifiers = element.getModifiers();
+    return modifiers.contains(Modifier.PUBLIC)
+        || (!modifiers.contains(Modifier.PRIVATE)
+            && elements.getPackageOf(element).equals(packageElement));
+  }
+
+  private boolean isTimestampType(TypeMirror type) {
+    return isClass(type, "java.util.Date") || isClass(type, TIMESTAMP);
+  }
+
+  private boolean isDocumentIdType(TypeMirror type) {
+    return isClass(type, String.class.getName()) || isClass(type, DOCUMENT_REFERENCE);
+  }
+
+  private boolean isClass(TypeMirror type, String className) {
+    TypeMirror erasure = types.erasure(type);
+    return erasure.getKind() == TypeKind.DECLARED
+        && ((TypeElement) types.asElement(erasure)).getQualifiedName().contentEquals(className);
+  }
+
+  private static boolean isDeclaredByObject(Element member) {
+    return ((TypeElement) member.getEnclosingElement())
+        .getQualifiedName()
+        .contentEquals(Object.class.getName());
+  }
+
+  static boolean hasAnnotation(Element element, String annotationName) {
+    return getAnnotation(element, annotationName) != null;
+  }
+
+  private static AnnotationMirror getAnnotation(Element element, String annotationName) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+      if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  private static String propertyName(VariableElement field) {
+    String annotatedName = annotatedName(field);
+    return annotatedName != null ? annotatedName : field.getSimpleName().toString();
+  }
+
+  private static String propertyName(ExecutableElement method) {
+    String annotatedName = annotatedName(method);
+    return annotatedName != null
+        ? annotatedName
+        : serializedName(method.getSimpleName().toString());
+  }
+
+  private static String annotatedName(Element element) {
+    AnnotationMirror annotation = getAnnotation(element, PROPERTY_NAME);
+    if (annotation == null) {
+      return null;
+    }
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+        annotation.getElementValues().entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals("value")) {
+        return (String) entry.getValue().getValue();
+      }
+    }
+    return null;
+  }
+
+  private static String serializedName(String methodName) {
+    String[] prefixes = new String[] {"get", "set", "is"};
+    String methodPrefix = null;
+    for (String prefix : prefixes) {
+      if (methodName.startsWith(prefix)) {
+        methodPrefix = prefix;
+      }
+    }
+    String strippedName = methodName.substring(methodPrefix.length());
+
+    // Make sure the first word or upper-case prefix is converted to lower-case
+    char[] chars = strippedName.toCharArray();
+    int pos = 0;
+    while (pos < chars.length && Character.isUpperCase(chars[pos])) {
+      chars[pos] = Character.toLowerCase(chars[pos]);
+      pos++;
+    }
+    return new String(chars);
+  }
+}
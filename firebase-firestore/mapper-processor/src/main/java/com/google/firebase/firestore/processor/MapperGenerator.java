@@ -0,0 +1,279 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/** Generates the source of the mapper for a {@link BeanDescriptor}. */
+final class MapperGenerator {
+  static final String MAPPER_CLASS_SUFFIX = "_FirestoreMapper";
+
+  private static final ClassName GENERATED_CLASS_MAPPER =
+      ClassName.get("com.google.firebase.firestore", "GeneratedClassMapper");
+  private static final ClassName SERIALIZE_CONTEXT =
+      GENERATED_CLASS_MAPPER.nestedClass("SerializeContext");
+  private static final ClassName DESERIALIZE_CONTEXT =
+      GENERATED_CLASS_MAPPER.nestedClass("DeserializeContext");
+  private static final TypeName PROPERTY_MAP =
+      ParameterizedTypeName.get(Map.class, String.class, Object.class);
+
+  /** Types that {@code CustomClassMapper} serializes as they are. */
+  private static final Set<String> PLAIN_JAVA_TYPES =
+      new HashSet<>(
+          Arrays.asList(
+              "java.lang.String",
+              "java.lang.Integer",
+              "java.lang.Long",
+              "java.lang.Double",
+              "java.lang.Float",
+              "java.lang.Boolean",
+              "java.util.Date",
+              "com.google.firebase.Timestamp",
+              "com.google.firebase.firestore.GeoPoint",
+              "com.google.firebase.firestore.Blob",
+              "com.google.firebase.firestore.DocumentReference"));
+
+  private final BeanDescriptor bean;
+  private final ClassName beanClassName;
+  private final TypeSpec.Builder mapperBuilder;
+  private int typeFieldCount;
+
+  private MapperGenerator(BeanDescriptor bean) {
+    this.bean = bean;
+    beanClassName = ClassName.get(bean.type);
+    mapperBuilder =
+        TypeSpec.classBuilder(mapperClassName(beanClassName))
+            .addOriginatingElement(bean.type)
+            .addModifiers(Modifier.FINAL)
+            .superclass(ParameterizedTypeName.get(GENERATED_CLASS_MAPPER, beanClassName));
+  }
+
+  /** Returns the source of the mapper for the given class. */
+  static JavaFile generate(BeanDescriptor bean) {
+    return new MapperGenerator(bean).generate();
+  }
+
+  /**
+   * Returns the simple name of the mapper for the given class. It is derived from the binary name
+   * of the class, so that the mappers of {@code Outer.Inner} and {@code Outer_Inner} differ.
+   */
+  static String mapperClassName(ClassName className) {
+    return String.join("$", className.simpleNames()) + MAPPER_CLASS_SUFFIX;
+  }
+
+  private JavaFile generate() {
+    CodeBlock.Builder properties = CodeBlock.builder().add("{");
+    boolean first = true;
+    for (String property : bean.properties.values()) {
+      properties.add(first ? "$S" : ", $S", property);
+      first = false;
+    }
+    mapperBuilder.addField(
+        FieldSpec.builder(
+                ArrayTypeName.of(String.class),
+                "PROPERTIES",
+                Modifier.PRIVATE,
+                Modifier.STATIC,
+                Modifier.FINAL)
+            .initializer(properties.add("}").build())
+            .build());
+    mapperBuilder.addMethod(generateSerialize());
+    mapperBuilder.addMethod(generateDeserialize());
+
+    return JavaFile.builder(beanClassName.packageName(), mapperBuilder.build())
+        .addFileComment("Generated by the Firestore mapper annotation processor. Do not edit.")
+        .build();
+  }
+
+  private MethodSpec generateSerialize() {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("serialize")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(PROPERTY_MAP)
+            .addParameter(beanClassName, "object")
+            .addParameter(SERIALIZE_CONTEXT, "context")
+            .addStatement("$T result = new $T<>()", PROPERTY_MAP, HashMap.class);
+
+    for (String property : bean.properties.values()) {
+      // @DocumentId properties are not written to the document.
+      if (bean.documentIdProperties.contains(property)) {
+        continue;
+      }
+      ExecutableElement getter = bean.getters.get(property);
+      CodeBlock value =
+          getter != null
+              ? CodeBlock.of("object.$N()", getter.getSimpleName().toString())
+              : CodeBlock.of("object.$N", bean.fields.get(property).getSimpleName().toString());
+      if (bean.serverTimestamps.contains(property)) {
+        value = CodeBlock.of("serializeServerTimestamp($L)", value);
+      } else if (!isPlainJavaType(bean.serializedType(property))) {
+        value = CodeBlock.of("context.serialize($L, $S)", value, property);
+      }
+      method.addStatement("result.put($S, $L)", property, value);
+    }
+    return method.addStatement("return result").build();
+  }
+
+  private MethodSpec generateDeserialize() {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("deserialize")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(beanClassName)
+            .addParameter(PROPERTY_MAP, "values")
+            .addParameter(DESERIALIZE_CONTEXT, "context")
+            .addStatement("$T instance = new $T()", beanClassName, beanClassName)
+            .beginControlFlow(
+                "for ($T entry : values.entrySet())",
+                ParameterizedTypeName.get(Map.Entry.class, String.class, Object.class))
+            .addStatement("$T value = entry.getValue()", Object.class)
+            .beginControlFlow("switch (entry.getKey())");
+
+    Set<String> deserializedProperties = new LinkedHashSet<>(bean.setters.keySet());
+    deserializedProperties.addAll(bean.fields.keySet());
+    for (String property : deserializedProperties) {
+      CodeBlock value = deserializeValue(bean.deserializedType(property), property);
+      method
+          .addCode("case $S:\n$>", property)
+          .addStatement(assignment(property, value))
+          .addStatement("break")
+          .addCode("$<");
+    }
+    method
+        .addCode("default:\n$>")
+        .addStatement(
+            "handleUnknownProperty($T.class, entry.getKey(), $L, $L, PROPERTIES)",
+            beanClassName,
+            bean.throwOnUnknownProperties,
+            bean.warnOnUnknownProperties)
+        .addCode("$<")
+        .endControlFlow()
+        .endControlFlow();
+
+    for (String property : bean.documentIdProperties) {
+      method
+          .beginControlFlow("if (values.containsKey($S))", property)
+          .addStatement(
+              "throw documentIdConflict($T.class, $S, context)", beanClassName, property)
+          .endControlFlow();
+      CodeBlock value =
+          isString(bean.deserializedType(property))
+              ? CodeBlock.of("context.getDocumentReference().getId()")
+              : CodeBlock.of("context.getDocumentReference()");
+      method.addStatement(assignment(property, value));
+    }
+    return method.addStatement("return instance").build();
+  }
+
+  private CodeBlock assignment(String property, CodeBlock value) {
+    ExecutableElement setter = bean.setters.get(property);
+    if (setter != null) {
+      return CodeBlock.of("instance.$N($L)", setter.getSimpleName().toString(), value);
+    }
+    VariableElement field = bean.fields.get(property);
+    return CodeBlock.of("instance.$N = $L", field.getSimpleName().toString(), value);
+  }
+
+  private CodeBlock deserializeValue(TypeMirror type, String property) {
+    switch (type.getKind()) {
+      case INT:
+        return CodeBlock.of("context.deserializeInt(value, $S)", property);
+      case LONG:
+        return CodeBlock.of("context.deserializeLong(value, $S)", property);
+      case DOUBLE:
+        return CodeBlock.of("context.deserializeDouble(value, $S)", property);
+      case FLOAT:
+        return CodeBlock.of("(float) context.deserializeDouble(value, $S)", property);
+      case BOOLEAN:
+        return CodeBlock.of("context.deserializeBoolean(value, $S)", property);
+      default:
+        if (isString(type)) {
+          return CodeBlock.of("context.deserializeString(value, $S)", property);
+        }
+        return CodeBlock.of("context.deserialize(value, $L, $S)", typeReference(type), property);
+    }
+  }
+
+  /**
+   * Returns an expression for the {@link Type} of a property. Parameterized types are stored in
+   * static fields so that they are only created once.
+   */
+  private CodeBlock typeReference(TypeMirror type) {
+    DeclaredType declaredType = (DeclaredType) type;
+    ClassName rawType = ClassName.get((TypeElement) declaredType.asElement());
+    List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+    if (typeArguments.isEmpty()) {
+      return CodeBlock.of("$T.class", rawType);
+    }
+    String fieldName = "TYPE_" + typeFieldCount++;
+    mapperBuilder.addField(
+        FieldSpec.builder(Type.class, fieldName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+            .initializer(parameterizedType(declaredType))
+            .build());
+    return CodeBlock.of("$N", fieldName);
+  }
+
+  private static CodeBlock parameterizedType(DeclaredType type) {
+    ClassName rawType = ClassName.get((TypeElement) type.asElement());
+    if (type.getTypeArguments().isEmpty()) {
+      return CodeBlock.of("$T.class", rawType);
+    }
+    CodeBlock.Builder builder = CodeBlock.builder().add("parameterizedType($T.class", rawType);
+    for (TypeMirror typeArgument : type.getTypeArguments()) {
+      builder.add(", $L", parameterizedType((DeclaredType) typeArgument));
+    }
+    return builder.add(")").build();
+  }
+
+  private static boolean isPlainJavaType(TypeMirror type) {
+    return type.getKind().isPrimitive()
+        ? type.getKind() != TypeKind.SHORT
+            && type.getKind() != TypeKind.BYTE
+            && type.getKind() != TypeKind.CHAR
+        : type.getKind() == TypeKind.DECLARED && PLAIN_JAVA_TYPES.contains(qualifiedName(type));
+  }
+
+  private static boolean isString(TypeMirror type) {
+    return type.getKind() == TypeKind.DECLARED && qualifiedName(type).equals("java.lang.String");
+  }
+
+  private static String qualifiedName(TypeMirror type) {
+    return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import com.google.auto.service.AutoService;
+import com.google.firebase.firestore.processor.BeanDescriptor.UnsupportedClassException;
+import com.squareup.javapoet.JavaFile;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Generates mappers for the custom classes that Firestore converts to and from documents, so that
+ * {@code CustomClassMapper} does not need reflection to map them.
+ *
+ * <p>Mappers are generated for classes annotated with {@code @IgnoreExtraProperties} or
+ * {@code @ThrowOnExtraProperties}, and for classes with {@code @PropertyName} annotated members.
+ * Classes that cannot be mapped exactly like the reflection based mapper does are skipped with a
+ * note and continue to be mapped with reflection.
+ */
+@AutoService(Processor.class)
+@SupportedAnnotationTypes({
+  BeanDescriptor.IGNORE_EXTRA_PROPERTIES,
+  BeanDescriptor.THROW_ON_EXTRA_PROPERTIES,
+  BeanDescriptor.PROPERTY_NAME
+})
+public class MapperProcessor extends AbstractProcessor {
+  private Elements elements;
+  private Types types;
+  private Filer filer;
+  private Messager messager;
+
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnvironment) {
+    super.init(processingEnvironment);
+    elements = processingEnvironment.getElementUtils();
+    types = processingEnvironment.getTypeUtils();
+    filer = processingEnvironment.getFiler();
+    messager = processingEnvironment.getMessager();
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    Set<TypeElement> classes = new LinkedHashSet<>();
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (annotation.getQualifiedName().contentEquals(BeanDescriptor.PROPERTY_NAME)) {
+          element = element.getEnclosingElement();
+        }
+        if (element instanceof TypeElement) {
+          classes.add((TypeElement) element);
+        }
+      }
+    }
+    for (TypeElement type : classes) {
+      generateMapper(type);
+    }
+    return false;
+  }
+
+  private void generateMapper(TypeElement type) {
+    BeanDescriptor bean;
+    try {
+      bean = BeanDescriptor.create(type, elements, types);
+    } catch (UnsupportedClassException e) {
+      messager.printMessage(
+          Kind.NOTE,
+          String.format(
+              "Not generating a Firestore mapper for %s, it is mapped with reflection because %s.",
+              type, e.getMessage()),
+          type);
+      return;
+    }
+
+    JavaFile javaFile = MapperGenerator.generate(bean);
+    try {
+      javaFile.writeTo(filer);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to save class file " + javaFile.typeSpec.name);
+    }
+  }
+}
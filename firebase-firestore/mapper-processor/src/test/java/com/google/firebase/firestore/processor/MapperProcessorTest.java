@@ -0,0 +1,244 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MapperProcessorTest {
+
+  /**
+   * Stand-ins for the Firestore classes that the processor and the generated code refer to, since
+   * the Android library is not available to this test.
+   */
+  private static final List<JavaFileObject> FIRESTORE_SOURCES =
+      Arrays.asList(
+          annotation("IgnoreExtraProperties", "TYPE"),
+          annotation("Exclude", "METHOD, ElementType.FIELD"),
+          annotation("ServerTimestamp", "METHOD, ElementType.FIELD"),
+          annotation("DocumentId", "METHOD, ElementType.FIELD"),
+          JavaFileObjects.forSourceLines(
+              "com.google.firebase.firestore.DocumentReference",
+              "package com.google.firebase.firestore;",
+              "public class DocumentReference {",
+              "  public String getId() { return null; }",
+              "  public String getPath() { return null; }",
+              "}"),
+          JavaFileObjects.forSourceLines(
+              "com.google.firebase.firestore.GeneratedClassMapper",
+              "package com.google.firebase.firestore;",
+              "import java.lang.reflect.Type;",
+              "import java.util.Map;",
+              "public abstract class GeneratedClassMapper<T> {",
+              "  public interface SerializeContext {",
+              "    Object serialize(Object value, String property);",
+              "  }",
+              "  public interface DeserializeContext {",
+              "    <V> V deserialize(Object value, Type type, String property);",
+              "    String deserializeString(Object value, String property);",
+              "    int deserializeInt(Object value, String property);",
+              "    long deserializeLong(Object value, String property);",
+              "    double deserializeDouble(Object value, String property);",
+              "    boolean deserializeBoolean(Object value, String property);",
+              "    DocumentReference getDocumentReference();",
+              "  }",
+              "  public abstract Map<String, Object> serialize(",
+              "      T object, SerializeContext context);",
+              "  public abstract T deserialize(",
+              "      Map<String, Object> values, DeserializeContext context);",
+              "  protected static Object serializeServerTimestamp(Object value) { return value; }",
+              "  protected static Type parameterizedType(Class<?> rawType, Type... arguments) {",
+              "    return null;",
+              "  }",
+              "  protected static void handleUnknownProperty(",
+              "      Class<?> clazz, String property, boolean throwOnUnknownProperties,",
+              "      boolean warnOnUnknownProperties, String[] properties) {}",
+              "  protected static RuntimeException documentIdConflict(",
+              "      Class<?> clazz, String property, DeserializeContext context) {",
+              "    return null;",
+              "  }",
+              "}"));
+
+  private static JavaFileObject annotation(String name, String targets) {
+    return JavaFileObjects.forSourceLines(
+        "com.google.firebase.firestore." + name,
+        "package com.google.firebase.firestore;",
+        "import java.lang.annotation.ElementType;",
+        "import java.lang.annotation.Retention;",
+        "import java.lang.annotation.RetentionPolicy;",
+        "import java.lang.annotation.Target;",
+        "@Retention(RetentionPolicy.RUNTIME)",
+        "@Target({ElementType." + targets + "})",
+        "public @interface " + name + " {}");
+  }
+
+  private static Compilation compile(JavaFileObject... sources) {
+    List<JavaFileObject> allSources = new ArrayList<>(FIRESTORE_SOURCES);
+    allSources.addAll(Arrays.asList(sources));
+    return javac().withProcessors(new MapperProcessor()).compile(allSources);
+  }
+
+  @Test
+  public void mappersOfNestedClassesDoNotCollideWithTopLevelClasses() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Outer",
+                "package com.example;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "public class Outer {",
+                "  @IgnoreExtraProperties",
+                "  public static class Inner {",
+                "    public String nested;",
+                "  }",
+                "}"),
+            JavaFileObjects.forSourceLines(
+                "com.example.Outer_Inner",
+                "package com.example;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "@IgnoreExtraProperties",
+                "public class Outer_Inner {",
+                "  public String topLevel;",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com/example/Outer$Inner_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("result.put(\"nested\", object.nested);");
+    assertThat(result)
+        .generatedSourceFile("com/example/Outer_Inner_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("result.put(\"topLevel\", object.topLevel);");
+  }
+
+  @Test
+  public void excludedMembersAreNotMapped() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Bean",
+                "package com.example;",
+                "import com.google.firebase.firestore.Exclude;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "@IgnoreExtraProperties",
+                "public class Bean {",
+                "  public String name;",
+                "  @Exclude public String secret;",
+                "  private String hidden;",
+                "  @Exclude public String getHidden() { return hidden; }",
+                "  public void setHidden(String hidden) { this.hidden = hidden; }",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("PROPERTIES = {\"name\"};");
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .doesNotContainMatch("secret|hidden|Hidden");
+  }
+
+  @Test
+  public void serverTimestampsReplaceNullValues() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Bean",
+                "package com.example;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "import com.google.firebase.firestore.ServerTimestamp;",
+                "import java.util.Date;",
+                "@IgnoreExtraProperties",
+                "public class Bean {",
+                "  @ServerTimestamp public Date updated;",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("result.put(\"updated\", serializeServerTimestamp(object.updated));");
+  }
+
+  @Test
+  public void serverTimestampsOfOtherTypesAreMappedWithReflection() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Bean",
+                "package com.example;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "import com.google.firebase.firestore.ServerTimestamp;",
+                "@IgnoreExtraProperties",
+                "public class Bean {",
+                "  @ServerTimestamp public String updated;",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result).hadNoteContaining("Not generating a Firestore mapper for com.example.Bean");
+    assertThat(result.generatedSourceFiles()).isEmpty();
+  }
+
+  @Test
+  public void documentIdsAreReadFromTheDocumentReference() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Bean",
+                "package com.example;",
+                "import com.google.firebase.firestore.DocumentId;",
+                "import com.google.firebase.firestore.DocumentReference;",
+                "import com.google.firebase.firestore.IgnoreExtraProperties;",
+                "@IgnoreExtraProperties",
+                "public class Bean {",
+                "  @DocumentId public String id;",
+                "  @DocumentId public DocumentReference reference;",
+                "  public String name;",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("instance.id = context.getDocumentReference().getId();");
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("instance.reference = context.getDocumentReference();");
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .contains("throw documentIdConflict(Bean.class, \"id\", context);");
+    assertThat(result)
+        .generatedSourceFile("com/example/Bean_FirestoreMapper")
+        .contentsAsUtf8String()
+        .doesNotContain("result.put(\"id\"");
+  }
+}
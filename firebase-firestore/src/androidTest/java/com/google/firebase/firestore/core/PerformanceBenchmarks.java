@@ -0,0 +1,86 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.docUpdates;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.path;
+import static com.google.firebase.firestore.testutil.TestUtil.targetChange;
+import static org.junit.Assert.assertEquals;
+
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** Benchmarks of the query views. Enable a benchmark to run it on a device. */
+public class PerformanceBenchmarks {
+
+  // @Test
+  public void singleDocumentViewUpdatePerformance() {
+    final int updateCount = 1_000;
+    final int runs = 5;
+
+    Query query = Query.atPath(path("rooms/eros/messages"));
+    for (int viewSize : new int[] {1_000, 10_000, 20_000}) {
+      // Only every other document is part of the remote target, so that half of the view is in
+      // limbo.
+      ImmutableSortedMap<DocumentKey, Document> documents = docUpdates();
+      List<MutableDocument> syncedDocuments = new ArrayList<>();
+      for (int i = 0; i < viewSize; ++i) {
+        MutableDocument doc = doc("rooms/eros/messages/" + i, 1, map("sort", i));
+        documents = documents.insert(doc.getKey(), doc);
+        if (i % 2 == 0) {
+          syncedDocuments.add(doc);
+        }
+      }
+      View view = new View(query, DocumentKey.emptyKeySet());
+      view.applyChanges(
+          view.computeDocChanges(documents),
+          targetChange(ByteString.EMPTY, true, syncedDocuments, null, null));
+      assertEquals(viewSize / 2, view.getLimboDocuments().size());
+
+      long nanos = 0;
+      long version = 2;
+      for (int run = 0; run <= runs; ++run) {
+        long start = System.nanoTime();
+        for (int i = 0; i < updateCount; ++i) {
+          String path = "rooms/eros/messages/" + (i * 7 % viewSize);
+          MutableDocument doc = doc(path, version++, map("sort", i, "updated", true));
+          View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc));
+          view.applyChanges(changes, targetChange(ByteString.EMPTY, true, null, null, null));
+        }
+        // The first run warms up.
+        if (run > 0) {
+          nanos += System.nanoTime() - start;
+        }
+      }
+      assertEquals(viewSize / 2, view.getLimboDocuments().size());
+
+      System.err.println(
+          String.format(
+              Locale.US,
+              "Applied %d single document updates to a view of %d documents in %.1fms",
+              updateCount,
+              viewSize,
+              nanos / 1e6 / runs));
+    }
+  }
+}
@@ -0,0 +1,279 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.model.DocumentCollections.emptyDocumentMap;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.fieldIndex;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.key;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.orderBy;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.core.Target;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.FieldIndex.IndexOffset;
+import com.google.firebase.firestore.model.FieldIndex.Segment.Kind;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.remote.RemoteSerializer;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/** Benchmarks of the local store. Enable a benchmark to run it on a device. */
+public class PerformanceBenchmarks {
+
+  private static SQLitePersistence createSQLitePersistence() {
+    DatabaseId databaseId = DatabaseId.forProject("projectId");
+    LocalSerializer serializer = new LocalSerializer(new RemoteSerializer(databaseId));
+    SQLitePersistence persistence =
+        new SQLitePersistence(
+            ApplicationProvider.getApplicationContext(),
+            "benchmark-" + System.nanoTime(),
+            databaseId,
+            serializer,
+            LruGarbageCollector.Params.Default());
+    persistence.start();
+    return persistence;
+  }
+
+  // @Test
+  public void documentDecodePerformance() {
+    final int documentCount = 5000;
+    final int runs = 5;
+
+    SQLitePersistence persistence = createSQLitePersistence();
+    try {
+      SQLiteRemoteDocumentCache remoteDocumentCache =
+          (SQLiteRemoteDocumentCache) persistence.getRemoteDocumentCache();
+      IndexManager indexManager = persistence.getIndexManager(User.UNAUTHENTICATED);
+      indexManager.start();
+      remoteDocumentCache.setIndexManager(indexManager);
+      persistence.runTransaction(
+          "add documents",
+          () -> {
+            for (int i = 0; i < documentCount; ++i) {
+              Map<String, Object> data =
+                  map(
+                      "index",
+                      i,
+                      "name",
+                      "document " + i,
+                      "nested",
+                      map("tags", Arrays.asList("a", "b", "c"), "value", i * 1.5));
+              remoteDocumentCache.add(doc("coll/doc" + i, 1, data), version(2));
+            }
+          });
+
+      // Queries decode the documents they read on a number of workers.
+      for (int workerCount : new int[] {1, 2, 4, 8}) {
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+          remoteDocumentCache.setDecodeExecutor(executor, workerCount);
+          long nanos = 0;
+          for (int i = 0; i <= runs; ++i) {
+            long start = System.nanoTime();
+            Map<?, MutableDocument> documents =
+                remoteDocumentCache.getDocumentsMatchingQuery(
+                    query("coll"), IndexOffset.NONE, Collections.emptySet());
+            // The first run warms up.
+            if (i > 0) {
+              nanos += System.nanoTime() - start;
+            }
+            assertEquals(documentCount, documents.size());
+          }
+
+          System.err.println(
+              String.format(
+                  Locale.US,
+                  "Decoded %d documents with %d worker(s) in %dms (%.0f docs/sec)",
+                  documentCount,
+                  workerCount,
+                  TimeUnit.NANOSECONDS.toMillis(nanos / runs),
+                  documentCount * runs * 1e9 / nanos));
+        } finally {
+          executor.shutdown();
+        }
+      }
+    } finally {
+      persistence.shutdown();
+    }
+  }
+
+  // @Test
+  public void lazyDocumentDecodePerformance() throws InvalidProtocolBufferException {
+    final int documentCount = 2000;
+    final int runs = 5;
+
+    DatabaseId databaseId = DatabaseId.forProject("projectId");
+    LocalSerializer serializer = new LocalSerializer(new RemoteSerializer(databaseId));
+    Query query = query("coll").filter(filter("selector", "==", 7));
+    List<byte[]> encodedDocuments = new ArrayList<>(documentCount);
+    for (int i = 0; i < documentCount; ++i) {
+      Map<String, Object> data = map("selector", i % 100);
+      for (int j = 0; j < 30; ++j) {
+        data.put("field" + j, map("name", "value " + j, "index", j, "tags", Arrays.asList("a")));
+      }
+      encodedDocuments.add(
+          serializer.encodeMaybeDocument(doc("coll/doc" + i, 1, data)).toByteArray());
+    }
+
+    // Filtering documents used to parse each of them completely before evaluating the filter.
+    long eagerNanos = 0;
+    long lazyNanos = 0;
+    for (int i = 0; i <= runs; ++i) {
+      int eagerMatches = 0;
+      long start = System.nanoTime();
+      for (byte[] bytes : encodedDocuments) {
+        MutableDocument document =
+            serializer.decodeMaybeDocument(
+                com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes));
+        if (query.matches(document)) {
+          ++eagerMatches;
+        }
+      }
+      long eagerElapsed = System.nanoTime() - start;
+
+      int lazyMatches = 0;
+      start = System.nanoTime();
+      for (byte[] bytes : encodedDocuments) {
+        if (query.matches(serializer.decodeMaybeDocument(bytes))) {
+          ++lazyMatches;
+        }
+      }
+      long lazyElapsed = System.nanoTime() - start;
+
+      assertEquals(documentCount / 100, eagerMatches);
+      assertEquals(eagerMatches, lazyMatches);
+      // The first run warms up.
+      if (i > 0) {
+        eagerNanos += eagerElapsed;
+        lazyNanos += lazyElapsed;
+      }
+    }
+
+    System.err.println(
+        String.format(
+            Locale.US,
+            "Filtered %d documents with eager decoding in %.1fms and lazy decoding in %.1fms",
+            documentCount,
+            eagerNanos / 1e6 / runs,
+            lazyNanos / 1e6 / runs));
+  }
+
+  // @Test
+  public void largeInQueryMergePerformance() {
+    final int documentCount = 3000;
+    final int runs = 20;
+
+    SQLitePersistence persistence = createSQLitePersistence();
+    try {
+      SQLiteIndexManager indexManager =
+          (SQLiteIndexManager) persistence.getIndexManager(User.UNAUTHENTICATED);
+      persistence.runTransaction(
+          "add documents",
+          () -> {
+            indexManager.start();
+            indexManager.addFieldIndex(
+                fieldIndex("coll", "a", Kind.ASCENDING, "b", Kind.ASCENDING));
+            ImmutableSortedMap<DocumentKey, Document> documents = emptyDocumentMap();
+            for (int i = 0; i < documentCount; ++i) {
+              MutableDocument document = doc("coll/doc" + i, 1, map("a", i % 100, "b", i));
+              documents = documents.insert(document.getKey(), document);
+            }
+            indexManager.updateIndexEntries(documents);
+          });
+
+      List<Object> values = new ArrayList<>();
+      for (int i = 0; i < 30; ++i) {
+        values.add(i);
+      }
+      Query query = query("coll").filter(filter("a", "in", values)).orderBy(orderBy("b"));
+      Target target = query.toTarget();
+      Target limitTarget = query.limitToFirst(10).toTarget();
+      List<DocumentKey> expectedLimitResults = new ArrayList<>();
+      for (int i = 0; i < 10; ++i) {
+        expectedLimitResults.add(key("coll/doc" + i));
+      }
+
+      // A 30-way IN query is run as a single UNION statement, or as 30 index scans whose results
+      // are merged.
+      indexManager.setMinIndexScansForMerge(Integer.MAX_VALUE);
+      long unionNanos = measureQuery(persistence, indexManager, target, null, runs);
+      indexManager.setMinIndexScansForMerge(1);
+      long mergeNanos = measureQuery(persistence, indexManager, target, null, runs);
+      long limitNanos =
+          measureQuery(persistence, indexManager, limitTarget, expectedLimitResults, runs);
+
+      System.err.println(
+          String.format(
+              Locale.US,
+              "Ran a 30-way IN query over %d documents with a UNION statement in %.2fms, with "
+                  + "merged index scans in %.2fms and with merged index scans and a limit of 10 "
+                  + "in %.2fms",
+              documentCount,
+              unionNanos / 1e6 / runs,
+              mergeNanos / 1e6 / runs,
+              limitNanos / 1e6 / runs));
+    } finally {
+      persistence.shutdown();
+    }
+  }
+
+  /**
+   * Runs the target against the index for the given number of runs after a warm-up run, and returns
+   * the total time. Checks the results against {@code expectedResults} if they are given, and
+   * otherwise against the results of the warm-up run.
+   */
+  private static long measureQuery(
+      SQLitePersistence persistence,
+      SQLiteIndexManager indexManager,
+      Target target,
+      @Nullable List<DocumentKey> expectedResults,
+      int runs) {
+    long nanos = 0;
+    for (int i = 0; i <= runs; ++i) {
+      long start = System.nanoTime();
+      List<DocumentKey> results =
+          persistence.runTransaction(
+              "query index", () -> indexManager.getDocumentsMatchingTarget(target));
+      // The first run warms up.
+      if (i > 0) {
+        nanos += System.nanoTime() - start;
+      } else if (expectedResults == null) {
+        expectedResults = results;
+      }
+      assertEquals(expectedResults, results);
+    }
+    return nanos;
+  }
+}
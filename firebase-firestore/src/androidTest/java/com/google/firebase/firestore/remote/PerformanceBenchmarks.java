@@ -0,0 +1,70 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.protobuf.ByteString;
+import java.util.Locale;
+import java.util.Random;
+
+/** Benchmarks of the remote store. Enable a benchmark to run it on a device. */
+public class PerformanceBenchmarks {
+
+  // @Test
+  public void bloomFilterMismatchResolutionPerformance() {
+    final int runs = 5;
+
+    Random random = new Random(42);
+    for (int targetSize : new int[] {1_000, 10_000, 100_000}) {
+      // Size the bitmap for a 1% false positive rate, as the backend does.
+      byte[] bitmap = new byte[targetSize * 10 / 8 + 1];
+      random.nextBytes(bitmap);
+      BloomFilter bloomFilter = new BloomFilter(ByteString.copyFrom(bitmap), 0, 7);
+      String[] documentPaths = new String[targetSize];
+      for (int i = 0; i < targetSize; i++) {
+        documentPaths[i] = "projects/project-1/databases/database-1/documents/coll/doc" + i;
+      }
+
+      // Resolving a mismatch checks every document of the target against the filter.
+      long nanos = 0;
+      int expectedRemovedCount = -1;
+      for (int i = 0; i <= runs; ++i) {
+        long start = System.nanoTime();
+        int removedCount = 0;
+        for (String documentPath : documentPaths) {
+          if (!bloomFilter.mightContain(documentPath)) {
+            ++removedCount;
+          }
+        }
+        // The first run warms up.
+        if (i > 0) {
+          nanos += System.nanoTime() - start;
+          assertEquals(expectedRemovedCount, removedCount);
+        } else {
+          expectedRemovedCount = removedCount;
+        }
+      }
+
+      System.err.println(
+          String.format(
+              Locale.US,
+              "Resolved existence filter mismatch for %d documents (%d removed) in %.2fms",
+              targetSize,
+              expectedRemovedCount,
+              nanos / 1e6 / runs));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.firebase.firestore.IgnoreExtraProperties;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Benchmarks of the custom class mapping. Enable a benchmark to run it on a device. */
+public class PerformanceBenchmarks {
+
+  /** Mapped by the mapper that the annotation processor generates for it. */
+  @IgnoreExtraProperties
+  public static class GeneratedBean {
+    public String name;
+    public long count;
+    public double score;
+    public boolean active;
+    public List<String> tags;
+  }
+
+  /** Same shape as {@link GeneratedBean}, but private so that it is mapped with reflection. */
+  private static class ReflectiveBean {
+    public String name;
+    public long count;
+    public double score;
+    public boolean active;
+    public List<String> tags;
+  }
+
+  // @Test
+  public void generatedMapperVsReflectionPerformance() {
+    final int documentCount = 5000;
+    final int runs = 5;
+
+    assertNotNull(CustomClassMapper.loadGeneratedMapperForClass(GeneratedBean.class));
+    assertNull(CustomClassMapper.loadGeneratedMapperForClass(ReflectiveBean.class));
+
+    List<Map<String, Object>> documents = new ArrayList<>(documentCount);
+    for (int i = 0; i < documentCount; ++i) {
+      documents.add(
+          map(
+              "name",
+              "name" + i,
+              "count",
+              (long) i,
+              "score",
+              i / 2.0,
+              "active",
+              i % 2 == 0,
+              "tags",
+              Arrays.asList("a", "b", "c")));
+    }
+
+    // toObjects() converts the data of every document in a snapshot.
+    long generatedNanos = 0;
+    long reflectiveNanos = 0;
+    for (int i = 0; i <= runs; ++i) {
+      long start = System.nanoTime();
+      List<GeneratedBean> generated = new ArrayList<>(documentCount);
+      for (Map<String, Object> data : documents) {
+        generated.add(CustomClassMapper.convertToCustomClass(data, GeneratedBean.class, null));
+      }
+      long generatedElapsed = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      List<ReflectiveBean> reflective = new ArrayList<>(documentCount);
+      for (Map<String, Object> data : documents) {
+        reflective.add(CustomClassMapper.convertToCustomClass(data, ReflectiveBean.class, null));
+      }
+      long reflectiveElapsed = System.nanoTime() - start;
+
+      assertEquals(documentCount, generated.size());
+      assertEquals(documentCount, reflective.size());
+      // The first run warms up, so that class loading and mapper lookups are not measured.
+      if (i > 0) {
+        generatedNanos += generatedElapsed;
+        reflectiveNanos += reflectiveElapsed;
+      }
+    }
+
+    System.err.println(
+        String.format(
+            Locale.US,
+            "Converted %d documents with the generated mapper in %.1fms and with reflection in "
+                + "%.1fms",
+            documentCount,
+            generatedNanos / 1e6 / runs,
+            reflectiveNanos / 1e6 / runs));
+  }
+}
@@ -18,6 +18,7 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 import static com.google.firebase.firestore.util.Preconditions.checkNotNull;
 
 import androidx.annotation.NonNull;
+import com.google.firebase.firestore.remote.RemoteStore;
 import java.util.Objects;
 import javax.annotation.Nullable;
 
@@ -34,6 +35,9 @@ public final class FirebaseFirestoreSettings {
 
   static final long MINIMUM_CACHE_BYTES = 1 * 1024 * 1024; // 1 MB
   static final long DEFAULT_CACHE_SIZE_BYTES = 100 * 1024 * 1024; // 100 MB
+  static final int DEFAULT_MAX_PENDING_WRITES = RemoteStore.DEFAULT_MAX_PENDING_WRITES;
+  static final int DEFAULT_MAX_BATCHES_PER_WRITE_REQUEST =
+      RemoteStore.DEFAULT_MAX_BATCHES_PER_WRITE_REQUEST;
 
   /** A Builder for creating {@code FirebaseFirestoreSettings}. */
   public static final class Builder {
@@ -46,12 +50,17 @@ public final class FirebaseFirestoreSettings {
 
     private boolean usedLegacyCacheSettings = false;
 
+    private int maxPendingWrites;
+    private int maxBatchesPerWriteRequest;
+
     /** Constructs a new {@code FirebaseFirestoreSettings} Builder object. */
     public Builder() {
       host = DEFAULT_HOST;
       sslEnabled = true;
       persistenceEnabled = true;
       cacheSizeBytes = DEFAULT_CACHE_SIZE_BYTES;
+      maxPendingWrites = DEFAULT_MAX_PENDING_WRITES;
+      maxBatchesPerWriteRequest = DEFAULT_MAX_BATCHES_PER_WRITE_REQUEST;
     }
 
     /**
@@ -64,6 +73,8 @@ public final class FirebaseFirestoreSettings {
       sslEnabled = settings.sslEnabled;
       persistenceEnabled = settings.persistenceEnabled;
       cacheSizeBytes = settings.cacheSizeBytes;
+      maxPendingWrites = settings.maxPendingWrites;
+      maxBatchesPerWriteRequest = settings.maxBatchesPerWriteRequest;
       if (!persistenceEnabled || cacheSizeBytes != DEFAULT_CACHE_SIZE_BYTES) {
         usedLegacyCacheSettings = true;
       }
@@ -183,6 +194,41 @@ public final class FirebaseFirestoreSettings {
       return this;
     }
 
+    /**
+     * Sets the maximum number of write batches that are sent to the backend before their
+     * acknowledgement is received. The default is 10.
+     *
+     * @return A settings object on which the number of pending writes is configured as specified by
+     *     the given {@code value}.
+     */
+    @NonNull
+    public Builder setMaxPendingWrites(int value) {
+      if (value < 1) {
+        throw new IllegalArgumentException("The maximum number of pending writes must be positive");
+      }
+      this.maxPendingWrites = value;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of consecutive write batches that are sent to the backend in a single
+     * request. Sending several batches per request reduces the time it takes to send a large number
+     * of writes that were queued while offline. Batches that write the same document are still
+     * sent in separate requests. The default is 1, which sends every batch in its own request.
+     *
+     * @return A settings object on which the number of batches per request is configured as
+     *     specified by the given {@code value}.
+     */
+    @NonNull
+    public Builder setMaxBatchesPerWriteRequest(int value) {
+      if (value < 1) {
+        throw new IllegalArgumentException(
+            "The maximum number of batches per write request must be positive");
+      }
+      this.maxBatchesPerWriteRequest = value;
+      return this;
+    }
+
     /** @return the host of the Cloud Firestore backend. */
     @NonNull
     public String getHost() {
@@ -214,6 +260,16 @@ public final class FirebaseFirestoreSettings {
       return cacheSizeBytes;
     }
 
+    /** @return the maximum number of write batches that are sent before being acknowledged. */
+    public int getMaxPendingWrites() {
+      return maxPendingWrites;
+    }
+
+    /** @return the maximum number of write batches that are sent in a single request. */
+    public int getMaxBatchesPerWriteRequest() {
+      return maxBatchesPerWriteRequest;
+    }
+
     @NonNull
     public FirebaseFirestoreSettings build() {
       if (!this.sslEnabled && this.host.equals(DEFAULT_HOST)) {
@@ -228,6 +284,8 @@ public final class FirebaseFirestoreSettings {
   private final boolean sslEnabled;
   private final boolean persistenceEnabled;
   private final long cacheSizeBytes;
+  private final int maxPendingWrites;
+  private final int maxBatchesPerWriteRequest;
 
   private LocalCacheSettings cacheSettings;
 
@@ -237,6 +295,8 @@ public final class FirebaseFirestoreSettings {
     sslEnabled = builder.sslEnabled;
     persistenceEnabled = builder.persistenceEnabled;
     cacheSizeBytes = builder.cacheSizeBytes;
+    maxPendingWrites = builder.maxPendingWrites;
+    maxBatchesPerWriteRequest = builder.maxBatchesPerWriteRequest;
     cacheSettings = builder.cacheSettings;
   }
 
@@ -250,6 +310,8 @@ public final class FirebaseFirestoreSettings {
     if (sslEnabled != that.sslEnabled) return false;
     if (persistenceEnabled != that.persistenceEnabled) return false;
     if (cacheSizeBytes != that.cacheSizeBytes) return false;
+    if (maxPendingWrites != that.maxPendingWrites) return false;
+    if (maxBatchesPerWriteRequest != that.maxBatchesPerWriteRequest) return false;
     if (!host.equals(that.host)) return false;
     return Objects.equals(cacheSettings, that.cacheSettings);
   }
@@ -260,6 +322,8 @@ public final class FirebaseFirestoreSettings {
     result = 31 * result + (sslEnabled ? 1 : 0);
     result = 31 * result + (persistenceEnabled ? 1 : 0);
     result = 31 * result + (int) (cacheSizeBytes ^ (cacheSizeBytes >>> 32));
+    result = 31 * result + maxPendingWrites;
+    result = 31 * result + maxBatchesPerWriteRequest;
     result = 31 * result + (cacheSettings != null ? cacheSettings.hashCode() : 0);
     return result;
   }
@@ -276,6 +340,10 @@ public final class FirebaseFirestoreSettings {
                 + persistenceEnabled
                 + ", cacheSizeBytes="
                 + cacheSizeBytes
+                + ", maxPendingWrites="
+                + maxPendingWrites
+                + ", maxBatchesPerWriteRequest="
+                + maxBatchesPerWriteRequest
                 + ", cacheSettings="
                 + cacheSettings
             == null
@@ -335,6 +403,16 @@ public final class FirebaseFirestoreSettings {
     return cacheSizeBytes;
   }
 
+  /** Returns the maximum number of write batches that are sent before being acknowledged. */
+  public int getMaxPendingWrites() {
+    return maxPendingWrites;
+  }
+
+  /** Returns the maximum number of write batches that are sent in a single request. */
+  public int getMaxBatchesPerWriteRequest() {
+    return maxBatchesPerWriteRequest;
+  }
+
   /**
    * Returns the cache settings configured for the SDK. Returns null if it is not configured, in
    * which case a default {@link PersistentCacheSettings} instance is used.
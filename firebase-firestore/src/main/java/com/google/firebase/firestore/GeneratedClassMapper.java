@@ -0,0 +1,187 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.firestore.util.CustomClassMapper;
+import com.google.firebase.firestore.util.Logger;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Base class of the mappers that the Firestore mapper annotation processor generates for custom
+ * classes. Applications do not use this class directly.
+ *
+ * <p>A generated mapper converts between a custom class and its plain Java representation in the
+ * same way as the reflection based mapper that {@link DocumentSnapshot#toObject} uses, but calls
+ * the constructor, getters, setters and fields of the class directly. The mapper of a class is
+ * named after its binary name with the suffix {@code _FirestoreMapper}, for example {@code
+ * Outer$Inner_FirestoreMapper} for the nested class {@code Outer.Inner}, and lives in the same
+ * package. Firestore uses it, if it exists, instead of reflection.
+ */
+public abstract class GeneratedClassMapper<T> {
+
+  /** Converts custom classes to their plain Java representation. */
+  public interface SerializeContext {
+    /** Converts the value of the given property to its plain Java representation. */
+    @Nullable
+    Object serialize(@Nullable Object value, @NonNull String property);
+  }
+
+  /** Converts plain Java values to the types of the properties of custom classes. */
+  public interface DeserializeContext {
+    /** Converts the value of the given property to the given type. */
+    @Nullable
+    <V> V deserialize(@Nullable Object value, @NonNull Type type, @NonNull String property);
+
+    /** Converts the value of the given {@code String} property. */
+    @Nullable
+    String deserializeString(@Nullable Object value, @NonNull String property);
+
+    /** Converts the value of the given {@code int} property. */
+    int deserializeInt(@Nullable Object value, @NonNull String property);
+
+    /** Converts the value of the given {@code long} property. */
+    long deserializeLong(@Nullable Object value, @NonNull String property);
+
+    /** Converts the value of the given {@code double} or {@code float} property. */
+    double deserializeDouble(@Nullable Object value, @NonNull String property);
+
+    /** Converts the value of the given {@code boolean} property. */
+    boolean deserializeBoolean(@Nullable Object value, @NonNull String property);
+
+    /** Returns the document that is deserialized, which is set to {@link DocumentId} properties. */
+    @Nullable
+    DocumentReference getDocumentReference();
+  }
+
+  protected GeneratedClassMapper() {}
+
+  /** Converts the given object to a map of its properties. */
+  @NonNull
+  public abstract Map<String, Object> serialize(
+      @NonNull T object, @NonNull SerializeContext context);
+
+  /** Creates a new object of the mapped class from the given map of its properties. */
+  @NonNull
+  public abstract T deserialize(
+      @NonNull Map<String, Object> values, @NonNull DeserializeContext context);
+
+  /** Replaces a null value of a {@link ServerTimestamp} property with the sentinel. */
+  @NonNull
+  protected static Object serializeServerTimestamp(@Nullable Object value) {
+    return value != null ? value : FieldValue.serverTimestamp();
+  }
+
+  /** Returns the type {@code rawType<typeArguments>}. */
+  @NonNull
+  protected static Type parameterizedType(
+      @NonNull Class<?> rawType, @NonNull Type... typeArguments) {
+    return new ParameterizedTypeImpl(rawType, typeArguments);
+  }
+
+  /** Handles a property that has no setter or field, like the reflection based mapper. */
+  protected static void handleUnknownProperty(
+      @NonNull Class<?> clazz,
+      @NonNull String property,
+      boolean throwOnUnknownProperties,
+      boolean warnOnUnknownProperties,
+      @NonNull String[] properties) {
+    String message = "No setter/field for " + property + " found on class " + clazz.getName();
+    String lowerCaseProperty = property.toLowerCase(Locale.US);
+    for (String knownProperty : properties) {
+      if (knownProperty.toLowerCase(Locale.US).equals(lowerCaseProperty)) {
+        message += " (fields/setters are case sensitive!)";
+        break;
+      }
+    }
+    if (throwOnUnknownProperties) {
+      throw new RuntimeException(message);
+    } else if (warnOnUnknownProperties) {
+      Logger.warn(CustomClassMapper.class.getSimpleName(), "%s", message);
+    }
+  }
+
+  /** Returns the error for a {@link DocumentId} property that is also a document field. */
+  @NonNull
+  protected static RuntimeException documentIdConflict(
+      @NonNull Class<?> clazz, @NonNull String property, @NonNull DeserializeContext context) {
+    return new RuntimeException(
+        "'"
+            + property
+            + "' was found from document "
+            + context.getDocumentReference().getPath()
+            + ", cannot apply @DocumentId on this property for class "
+            + clazz.getName());
+  }
+
+  private static final class ParameterizedTypeImpl implements ParameterizedType {
+    private final Class<?> rawType;
+    private final Type[] typeArguments;
+
+    ParameterizedTypeImpl(Class<?> rawType, Type[] typeArguments) {
+      this.rawType = rawType;
+      this.typeArguments = typeArguments;
+    }
+
+    @Override
+    public Type[] getActualTypeArguments() {
+      return typeArguments.clone();
+    }
+
+    @Override
+    public Type getRawType() {
+      return rawType;
+    }
+
+    @Nullable
+    @Override
+    public Type getOwnerType() {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder(rawType.getName()).append('<');
+      for (int i = 0; i < typeArguments.length; ++i) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(typeArguments[i].toString().replaceFirst("^(class|interface) ", ""));
+      }
+      return builder.append('>').toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof ParameterizedType)) {
+        return false;
+      }
+      ParameterizedType that = (ParameterizedType) other;
+      return that.getOwnerType() == null
+          && rawType.equals(that.getRawType())
+          && Arrays.equals(typeArguments, that.getActualTypeArguments());
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(typeArguments) ^ rawType.hashCode();
+    }
+  }
+}
@@ -36,9 +36,11 @@ public final class PersistentCacheSettings implements LocalCacheSettings {
   }
 
   private final long sizeBytes;
+  private final int readerConnectionCount;
 
-  private PersistentCacheSettings(long sizeBytes) {
+  private PersistentCacheSettings(long sizeBytes, int readerConnectionCount) {
     this.sizeBytes = sizeBytes;
+    this.readerConnectionCount = readerConnectionCount;
   }
 
   @Override
@@ -48,17 +50,25 @@ public final class PersistentCacheSettings implements LocalCacheSettings {
 
     PersistentCacheSettings that = (PersistentCacheSettings) o;
 
-    return sizeBytes == that.sizeBytes;
+    if (sizeBytes != that.sizeBytes) return false;
+    return readerConnectionCount == that.readerConnectionCount;
   }
 
   @Override
   public int hashCode() {
-    return (int) (sizeBytes ^ (sizeBytes >>> 32));
+    int result = (int) (sizeBytes ^ (sizeBytes >>> 32));
+    result = 31 * result + readerConnectionCount;
+    return result;
   }
 
   @Override
   public String toString() {
-    return "PersistentCacheSettings{" + "sizeBytes=" + sizeBytes + '}';
+    return "PersistentCacheSettings{"
+        + "sizeBytes="
+        + sizeBytes
+        + ", readerConnectionCount="
+        + readerConnectionCount
+        + '}';
   }
 
   /**
@@ -74,10 +84,19 @@ public final class PersistentCacheSettings implements LocalCacheSettings {
     return sizeBytes;
   }
 
+  /**
+   * Returns the number of read-only connections that serve cache-only reads. If it is 0, which is
+   * the default, cache-only reads wait for writes to the cache that were issued before them.
+   */
+  public int getReaderConnectionCount() {
+    return readerConnectionCount;
+  }
+
   /** A Builder for creating {@code PersistentCacheSettings} instance. */
   public static class Builder {
 
     private long sizeBytes = FirebaseFirestoreSettings.DEFAULT_CACHE_SIZE_BYTES;
+    private int readerConnectionCount = 0;
 
     private Builder() {}
 
@@ -98,10 +117,33 @@ public final class PersistentCacheSettings implements LocalCacheSettings {
       return this;
     }
 
+    /**
+     * Sets the number of read-only connections that serve cache-only reads, such as {@code
+     * get(Source.CACHE)}. If it is positive, these reads run on a background thread against the
+     * state of the cache at the time they are issued, so that they do not wait for large writes to
+     * the cache that are issued after them.
+     *
+     * <p>By default, no reader connections are used. Using reader connections requires the cache
+     * to be opened without an exclusive lock, so Firestore can no longer detect that the cache is
+     * used from multiple processes.
+     *
+     * @return A settings object on which the number of reader connections is configured as
+     *     specified by the given {@code value}.
+     */
+    @NonNull
+    public Builder setReaderConnectionCount(int value) {
+      if (value < 0) {
+        throw new IllegalArgumentException(
+            "The number of reader connections must not be negative");
+      }
+      this.readerConnectionCount = value;
+      return this;
+    }
+
     /** Creates a {@code PersistentCacheSettings} instance from this builder instance. */
     @NonNull
     public PersistentCacheSettings build() {
-      return new PersistentCacheSettings(sizeBytes);
+      return new PersistentCacheSettings(sizeBytes, readerConnectionCount);
     }
   }
 }
@@ -23,12 +23,17 @@ import com.google.firebase.firestore.model.MutableDocument;
 /** Interface implemented by components that can apply changes from a bundle to local storage. */
 public interface BundleCallback {
   /**
-   * Applies the documents from a bundle to the "ground-state" (remote) documents.
+   * Applies a chunk of documents from a bundle to the "ground-state" (remote) documents.
    *
    * <p>LocalDocuments are re-calculated if there are remaining mutations in the queue.
+   *
+   * @param replaceBundledKeys Whether the document keys retained for a previous load of the bundle
+   *     should be dropped. This is set for the first chunk of each load.
    */
   ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
-      ImmutableSortedMap<DocumentKey, MutableDocument> documents, String bundleId);
+      ImmutableSortedMap<DocumentKey, MutableDocument> documents,
+      String bundleId,
+      boolean replaceBundledKeys);
 
   /** Saves the given NamedQuery to local persistence. */
   void saveNamedQuery(NamedQuery namedQuery, ImmutableSortedSet<DocumentKey> documentKeys);
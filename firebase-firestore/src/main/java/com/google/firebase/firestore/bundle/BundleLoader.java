@@ -17,12 +17,14 @@ package com.google.firebase.firestore.bundle;
 import static com.google.firebase.firestore.model.DocumentCollections.emptyMutableDocumentMap;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.LoadBundleTaskProgress;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.util.Consumer;
 import com.google.firebase.firestore.util.Preconditions;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,27 +34,58 @@ import java.util.Map;
 /**
  * A class to process the elements from a bundle, load them into local storage and provide progress
  * update while loading.
+ *
+ * <p>Documents are applied to local storage in chunks while the bundle is being read, so that the
+ * memory used by the loader is bounded by the chunk size rather than by the size of the bundle.
+ * The documents whose local view changed are passed to a listener after each chunk.
  */
 public class BundleLoader {
+  /** The number of documents that are applied to local storage in a single transaction. */
+  static final int DEFAULT_DOCUMENT_CHUNK_SIZE = 500;
+
   private final BundleCallback bundleCallback;
   private final BundleMetadata bundleMetadata;
+  private final Consumer<ImmutableSortedMap<DocumentKey, Document>> changeListener;
+  private final int documentChunkSize;
   private final List<NamedQuery> queries;
-  private final Map<DocumentKey, BundledDocumentMetadata> documentsMetadata;
+  private final Map<String, ImmutableSortedSet<DocumentKey>> queryDocumentMap;
 
-  private ImmutableSortedMap<DocumentKey, MutableDocument> documents;
+  private ImmutableSortedMap<DocumentKey, MutableDocument> pendingDocuments;
+  private int documentsLoaded;
+  private boolean appliedFirstChunk;
   private long bytesLoaded;
   @Nullable private BundledDocumentMetadata currentMetadata;
 
-  public BundleLoader(BundleCallback bundleCallback, BundleMetadata bundleMetadata) {
+  /**
+   * Creates a loader that applies the bundle to local storage through the given callback, and that
+   * passes the documents whose local view was changed by each applied chunk to the listener.
+   */
+  public BundleLoader(
+      BundleCallback bundleCallback,
+      BundleMetadata bundleMetadata,
+      Consumer<ImmutableSortedMap<DocumentKey, Document>> changeListener) {
+    this(bundleCallback, bundleMetadata, changeListener, DEFAULT_DOCUMENT_CHUNK_SIZE);
+  }
+
+  @VisibleForTesting
+  BundleLoader(
+      BundleCallback bundleCallback,
+      BundleMetadata bundleMetadata,
+      Consumer<ImmutableSortedMap<DocumentKey, Document>> changeListener,
+      int documentChunkSize) {
+    Preconditions.checkArgument(documentChunkSize > 0, "Chunk size must be positive.");
     this.bundleCallback = bundleCallback;
     this.bundleMetadata = bundleMetadata;
+    this.changeListener = changeListener;
+    this.documentChunkSize = documentChunkSize;
     this.queries = new ArrayList<>();
-    this.documents = emptyMutableDocumentMap();
-    this.documentsMetadata = new HashMap<>();
+    this.queryDocumentMap = new HashMap<>();
+    this.pendingDocuments = emptyMutableDocumentMap();
   }
 
   /**
-   * Adds an element from the bundle to the loader.
+   * Adds an element from the bundle to the loader. Applies the pending documents to local storage
+   * once a chunk is complete.
    *
    * <p>Returns a new progress if adding the element leads to a new progress, otherwise returns
    * null.
@@ -61,21 +94,19 @@ public class BundleLoader {
     Preconditions.checkArgument(
         !(bundleElement instanceof BundleMetadata), "Unexpected bundle metadata element.");
 
-    int beforeDocumentCount = documents.size();
+    int beforeDocumentCount = documentsLoaded;
 
     if (bundleElement instanceof NamedQuery) {
       queries.add((NamedQuery) bundleElement);
     } else if (bundleElement instanceof BundledDocumentMetadata) {
       BundledDocumentMetadata bundledDocumentMetadata = (BundledDocumentMetadata) bundleElement;
-      documentsMetadata.put(bundledDocumentMetadata.getKey(), bundledDocumentMetadata);
+      addQueryMatches(bundledDocumentMetadata);
       currentMetadata = bundledDocumentMetadata;
       if (!((BundledDocumentMetadata) bundleElement).exists()) {
-        documents =
-            documents.insert(
-                bundledDocumentMetadata.getKey(),
-                MutableDocument.newNoDocument(
-                        bundledDocumentMetadata.getKey(), bundledDocumentMetadata.getReadTime())
-                    .setReadTime(bundledDocumentMetadata.getReadTime()));
+        addDocument(
+            MutableDocument.newNoDocument(
+                    bundledDocumentMetadata.getKey(), bundledDocumentMetadata.getReadTime())
+                .setReadTime(bundledDocumentMetadata.getReadTime()));
         currentMetadata = null;
       }
     } else if (bundleElement instanceof BundleDocument) {
@@ -84,18 +115,15 @@ public class BundleLoader {
         throw new IllegalArgumentException(
             "The document being added does not match the stored metadata.");
       }
-      documents =
-          documents.insert(
-              bundleDocument.getKey(),
-              bundleDocument.getDocument().setReadTime(currentMetadata.getReadTime()));
+      addDocument(bundleDocument.getDocument().setReadTime(currentMetadata.getReadTime()));
       currentMetadata = null;
     }
 
     bytesLoaded += byteSize;
 
-    return beforeDocumentCount != documents.size()
+    return beforeDocumentCount != documentsLoaded
         ? new LoadBundleTaskProgress(
-            documents.size(),
+            documentsLoaded,
             bundleMetadata.getTotalDocuments(),
             bytesLoaded,
             bundleMetadata.getTotalBytes(),
@@ -104,43 +132,64 @@ public class BundleLoader {
         : null;
   }
 
-  /** Applies the loaded documents and queries to local store. Returns the document view changes. */
-  public ImmutableSortedMap<DocumentKey, Document> applyChanges() {
+  /**
+   * Applies the remaining documents and the queries to local store.
+   *
+   * <p>Note that documents from earlier chunks have already been applied when this method is
+   * called, even if the bundle turns out to be incomplete. These documents are valid on their own,
+   * but the bundle itself is not saved and will be loaded again.
+   */
+  public void applyChanges() {
     Preconditions.checkArgument(
         currentMetadata == null,
         "Bundled documents end with a document metadata element instead of a document.");
     Preconditions.checkArgument(bundleMetadata.getBundleId() != null, "Bundle ID must be set");
     Preconditions.checkArgument(
-        documents.size() == bundleMetadata.getTotalDocuments(),
+        documentsLoaded == bundleMetadata.getTotalDocuments(),
         "Expected %s documents, but loaded %s.",
         bundleMetadata.getTotalDocuments(),
-        documents.size());
+        documentsLoaded);
 
-    ImmutableSortedMap<DocumentKey, Document> changes =
-        bundleCallback.applyBundledDocuments(documents, bundleMetadata.getBundleId());
+    if (!pendingDocuments.isEmpty() || !appliedFirstChunk) {
+      applyPendingDocuments();
+    }
 
-    Map<String, ImmutableSortedSet<DocumentKey>> queryDocumentMap = getQueryDocumentMapping();
     for (NamedQuery namedQuery : queries) {
-      bundleCallback.saveNamedQuery(namedQuery, queryDocumentMap.get(namedQuery.getName()));
+      ImmutableSortedSet<DocumentKey> matchingKeys = queryDocumentMap.get(namedQuery.getName());
+      bundleCallback.saveNamedQuery(
+          namedQuery, matchingKeys != null ? matchingKeys : DocumentKey.emptyKeySet());
     }
 
     bundleCallback.saveBundle(bundleMetadata);
-
-    return changes;
   }
 
-  private Map<String, ImmutableSortedSet<DocumentKey>> getQueryDocumentMapping() {
-    Map<String, ImmutableSortedSet<DocumentKey>> queryDocumentMap = new HashMap<>();
-    for (NamedQuery namedQuery : queries) {
-      queryDocumentMap.put(namedQuery.getName(), DocumentKey.emptyKeySet());
+  private void addDocument(MutableDocument document) {
+    pendingDocuments = pendingDocuments.insert(document.getKey(), document);
+    ++documentsLoaded;
+    if (pendingDocuments.size() >= documentChunkSize) {
+      applyPendingDocuments();
     }
-    for (BundledDocumentMetadata metadata : documentsMetadata.values()) {
-      for (String query : metadata.getQueries()) {
-        ImmutableSortedSet<DocumentKey> matchingKeys = queryDocumentMap.get(query);
-        queryDocumentMap.put(query, matchingKeys.insert(metadata.getKey()));
+  }
+
+  private void applyPendingDocuments() {
+    Preconditions.checkArgument(bundleMetadata.getBundleId() != null, "Bundle ID must be set");
+    ImmutableSortedMap<DocumentKey, Document> changes =
+        bundleCallback.applyBundledDocuments(
+            pendingDocuments,
+            bundleMetadata.getBundleId(),
+            /* replaceBundledKeys= */ !appliedFirstChunk);
+    pendingDocuments = emptyMutableDocumentMap();
+    appliedFirstChunk = true;
+    changeListener.accept(changes);
+  }
+
+  private void addQueryMatches(BundledDocumentMetadata metadata) {
+    for (String query : metadata.getQueries()) {
+      ImmutableSortedSet<DocumentKey> matchingKeys = queryDocumentMap.get(query);
+      if (matchingKeys == null) {
+        matchingKeys = DocumentKey.emptyKeySet();
       }
+      queryDocumentMap.put(query, matchingKeys.insert(metadata.getKey()));
     }
-
-    return queryDocumentMap;
   }
 }
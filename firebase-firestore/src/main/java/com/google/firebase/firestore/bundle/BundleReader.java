@@ -14,14 +14,17 @@
 
 package com.google.firebase.firestore.bundle;
 
+import android.util.JsonReader;
 import androidx.annotation.Nullable;
 import com.google.firebase.firestore.util.Logger;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -106,7 +109,7 @@ public class BundleReader {
     }
 
     int jsonStringByteCount = Integer.parseInt(lengthPrefix);
-    String json = readJsonString(jsonStringByteCount);
+    byte[] json = readJsonBytes(jsonStringByteCount);
     bytesRead += lengthPrefix.getBytes(UTF8_CHARSET).length + jsonStringByteCount;
     return decodeBundleElement(json);
   }
@@ -162,9 +165,9 @@ public class BundleReader {
    * Reads from a specified position from the internal buffer, for a specified number of bytes,
    * pulling more data from the underlying stream if needed.
    *
-   * <p>Returns an object containing the Json string and its UTF8 byte count.
+   * <p>Returns the UTF-8 encoded JSON string.
    */
-  private String readJsonString(int bytesToRead) throws IOException {
+  private byte[] readJsonBytes(int bytesToRead) throws IOException {
     ByteArrayOutputStream jsonBytes = new ByteArrayOutputStream();
 
     // Read at least `bytesToRead` number of bytes from the bundle into `this.buffer`, pulling more
@@ -185,7 +188,7 @@ public class BundleReader {
       remaining -= read;
     }
 
-    return jsonBytes.toString(UTF8_CHARSET.name());
+    return jsonBytes.toByteArray();
   }
 
   /**
@@ -208,29 +211,81 @@ public class BundleReader {
     return readSuccess;
   }
 
-  /** Converts a JSON-encoded bundle element into its model class. */
-  private BundleElement decodeBundleElement(String json) throws JSONException, IOException {
-    JSONObject object = new JSONObject(json);
+  /**
+   * Converts a JSON-encoded bundle element into its model class. The element is tokenized once.
+   *
+   * <p>Documents, which make up the bulk of a bundle, are decoded straight from the token stream.
+   * All other elements are small and are decoded from a {@link JSONObject} that is built from the
+   * same token stream.
+   */
+  private BundleElement decodeBundleElement(byte[] json) throws JSONException, IOException {
+    JsonReader reader =
+        new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), UTF8_CHARSET));
+    // Accept the non-finite doubles ("NaN", "Infinity") that proto3 JSON uses for doubleValue.
+    reader.setLenient(true);
+    reader.beginObject();
+    String name = reader.hasNext() ? reader.nextName() : "";
+    switch (name) {
+      case "document":
+        BundleDocument document = serializer.decodeDocument(reader);
+        Logger.debug("BundleElement", "Document loaded: " + document.getKey());
+        return document;
+      case "metadata":
+        BundleMetadata metadata = serializer.decodeBundleMetadata(readJsonObject(reader));
+        Logger.debug("BundleElement", "BundleMetadata element loaded");
+        return metadata;
+      case "namedQuery":
+        NamedQuery namedQuery = serializer.decodeNamedQuery(readJsonObject(reader));
+        Logger.debug("BundleElement", "Query loaded: " + namedQuery.getName());
+        return namedQuery;
+      case "documentMetadata":
+        BundledDocumentMetadata documentMetadata =
+            serializer.decodeBundledDocumentMetadata(readJsonObject(reader));
+        Logger.debug("BundleElement", "Document metadata loaded: " + documentMetadata.getKey());
+        return documentMetadata;
+      default:
+        throw abort("Cannot decode unknown Bundle element: " + new String(json, UTF8_CHARSET));
+    }
+  }
 
-    if (object.has("metadata")) {
-      BundleMetadata metadata = serializer.decodeBundleMetadata(object.getJSONObject("metadata"));
-      Logger.debug("BundleElement", "BundleMetadata element loaded");
-      return metadata;
-    } else if (object.has("namedQuery")) {
-      NamedQuery namedQuery = serializer.decodeNamedQuery(object.getJSONObject("namedQuery"));
-      Logger.debug("BundleElement", "Query loaded: " + namedQuery.getName());
-      return namedQuery;
-    } else if (object.has("documentMetadata")) {
-      BundledDocumentMetadata documentMetadata =
-          serializer.decodeBundledDocumentMetadata(object.getJSONObject("documentMetadata"));
-      Logger.debug("BundleElement", "Document metadata loaded: " + documentMetadata.getKey());
-      return documentMetadata;
-    } else if (object.has("document")) {
-      BundleDocument document = serializer.decodeDocument(object.getJSONObject("document"));
-      Logger.debug("BundleElement", "Document loaded: " + document.getKey());
-      return document;
-    } else {
-      throw abort("Cannot decode unknown Bundle element: " + json);
+  /** Reads the JSON object at the current position of the reader. */
+  private static JSONObject readJsonObject(JsonReader reader) throws JSONException, IOException {
+    JSONObject object = new JSONObject();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      object.put(reader.nextName(), readJsonValue(reader));
+    }
+    reader.endObject();
+    return object;
+  }
+
+  /** Reads the JSON value at the current position of the reader, like {@link JSONObject} does. */
+  private static Object readJsonValue(JsonReader reader) throws JSONException, IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        return readJsonObject(reader);
+      case BEGIN_ARRAY:
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          array.put(readJsonValue(reader));
+        }
+        reader.endArray();
+        return array;
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return JSONObject.NULL;
+      case NUMBER:
+        String number = reader.nextString();
+        try {
+          return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+          return Double.parseDouble(number);
+        }
+      default:
+        return reader.nextString();
     }
   }
 
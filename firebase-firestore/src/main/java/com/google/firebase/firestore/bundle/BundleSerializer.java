@@ -15,6 +15,8 @@
 package com.google.firebase.firestore.bundle;
 
 import android.util.Base64;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import androidx.annotation.Nullable;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.core.Bound;
@@ -36,6 +38,7 @@ import com.google.firestore.v1.Value;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.NullValue;
 import com.google.type.LatLng;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -114,6 +117,185 @@ public class BundleSerializer {
             key, updateTime, ObjectValue.fromMap(value.getMapValue().getFieldsMap())));
   }
 
+  /**
+   * Decodes a document directly from a token stream positioned at the start of the document
+   * object, without building an intermediate JSON tree.
+   */
+  BundleDocument decodeDocument(JsonReader reader) throws IOException {
+    @Nullable DocumentKey key = null;
+    @Nullable SnapshotVersion updateTime = null;
+    MapValue.Builder fields = MapValue.newBuilder();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "name":
+          key = DocumentKey.fromPath(decodeName(reader.nextString()));
+          break;
+        case "updateTime":
+          updateTime = new SnapshotVersion(decodeTimestamp(reader));
+          break;
+        case "fields":
+          decodeMapFields(fields, reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (key == null || updateTime == null) {
+      throw new IllegalArgumentException("Bundled documents must have a name and an update time");
+    }
+    return new BundleDocument(
+        MutableDocument.newFoundDocument(
+            key, updateTime, ObjectValue.fromMap(fields.getFieldsMap())));
+  }
+
+  private Value decodeValue(JsonReader reader) throws IOException {
+    Value.Builder builder = Value.newBuilder();
+    boolean hasValue = false;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String type = reader.nextName();
+      hasValue = true;
+      switch (type) {
+        case "nullValue":
+          reader.skipValue();
+          builder.setNullValue(NullValue.NULL_VALUE);
+          break;
+        case "booleanValue":
+          builder.setBooleanValue(reader.nextBoolean());
+          break;
+        case "integerValue":
+          builder.setIntegerValue(reader.nextLong());
+          break;
+        case "doubleValue":
+          builder.setDoubleValue(reader.nextDouble());
+          break;
+        case "timestampValue":
+          Timestamp timestamp = decodeTimestamp(reader);
+          builder.setTimestampValue(
+              com.google.protobuf.Timestamp.newBuilder()
+                  .setSeconds(timestamp.getSeconds())
+                  .setNanos(timestamp.getNanoseconds()));
+          break;
+        case "stringValue":
+          builder.setStringValue(reader.nextString());
+          break;
+        case "bytesValue":
+          builder.setBytesValue(
+              ByteString.copyFrom(Base64.decode(reader.nextString(), Base64.DEFAULT)));
+          break;
+        case "referenceValue":
+          builder.setReferenceValue(reader.nextString());
+          break;
+        case "geoPointValue":
+          decodeGeoPoint(builder, reader);
+          break;
+        case "arrayValue":
+          decodeArrayValue(builder, reader);
+          break;
+        case "mapValue":
+          decodeMapValue(builder, reader);
+          break;
+        default:
+          throw new IllegalArgumentException("Unexpected value type: " + type);
+      }
+    }
+    reader.endObject();
+
+    if (!hasValue) {
+      throw new IllegalArgumentException("Unexpected empty value");
+    }
+    return builder.build();
+  }
+
+  private void decodeArrayValue(Value.Builder builder, JsonReader reader) throws IOException {
+    ArrayValue.Builder arrayBuilder = ArrayValue.newBuilder();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("values")) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          arrayBuilder.addValues(decodeValue(reader));
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    builder.setArrayValue(arrayBuilder);
+  }
+
+  private void decodeMapValue(Value.Builder builder, JsonReader reader) throws IOException {
+    MapValue.Builder mapBuilder = MapValue.newBuilder();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("fields")) {
+        decodeMapFields(mapBuilder, reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    builder.setMapValue(mapBuilder);
+  }
+
+  private void decodeMapFields(MapValue.Builder mapBuilder, JsonReader reader) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      mapBuilder.putFields(key, decodeValue(reader));
+    }
+    reader.endObject();
+  }
+
+  private void decodeGeoPoint(Value.Builder builder, JsonReader reader) throws IOException {
+    LatLng.Builder latLng = LatLng.newBuilder();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "latitude":
+          latLng.setLatitude(reader.nextDouble());
+          break;
+        case "longitude":
+          latLng.setLongitude(reader.nextDouble());
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    builder.setGeoPointValue(latLng);
+  }
+
+  private Timestamp decodeTimestamp(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.STRING) {
+      return decodeTimestamp(reader.nextString());
+    }
+
+    long seconds = 0;
+    int nanos = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "seconds":
+          seconds = reader.nextLong();
+          break;
+        case "nanos":
+          nanos = reader.nextInt();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new Timestamp(seconds, nanos);
+  }
+
   private ResourcePath decodeName(String name) {
     ResourcePath resourcePath = ResourcePath.fromString(name);
     if (!remoteSerializer.isLocalResourceName(resourcePath)) {
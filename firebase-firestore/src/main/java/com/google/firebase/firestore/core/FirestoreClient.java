@@ -36,6 +36,7 @@ import com.google.firebase.firestore.bundle.BundleSerializer;
 import com.google.firebase.firestore.bundle.NamedQuery;
 import com.google.firebase.firestore.core.EventManager.ListenOptions;
 import com.google.firebase.firestore.local.IndexBackfiller;
+import com.google.firebase.firestore.local.LocalSnapshotReader;
 import com.google.firebase.firestore.local.LocalStore;
 import com.google.firebase.firestore.local.Persistence;
 import com.google.firebase.firestore.local.QueryResult;
@@ -49,12 +50,14 @@ import com.google.firebase.firestore.remote.GrpcMetadataProvider;
 import com.google.firebase.firestore.remote.RemoteSerializer;
 import com.google.firebase.firestore.remote.RemoteStore;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Function;
 import com.google.firebase.firestore.util.Logger;
 import com.google.firestore.v1.Value;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -196,8 +199,8 @@ public final class FirestoreClient {
   @SuppressLint("TaskMainThread")
   public Task<Document> getDocumentFromLocalCache(DocumentKey docKey) {
     this.verifyNotTerminated();
-    return asyncQueue
-        .enqueue(() -> localStore.readDocument(docKey))
+    return readFromLocalCache(
+            reader -> reader.readDocument(docKey), () -> localStore.readDocument(docKey))
         .continueWith(
             (result) -> {
               Document document = result.getResult();
@@ -217,13 +220,39 @@ public final class FirestoreClient {
 
   public Task<ViewSnapshot> getDocumentsFromLocalCache(Query query) {
     this.verifyNotTerminated();
-    return asyncQueue.enqueue(
-        () -> {
-          QueryResult queryResult = localStore.executeQuery(query, /* usePreviousResults= */ true);
-          View view = new View(query, queryResult.getRemoteKeys());
-          View.DocumentChanges viewDocChanges = view.computeDocChanges(queryResult.getDocuments());
-          return view.applyChanges(viewDocChanges).getSnapshot();
-        });
+    return readFromLocalCache(
+            reader -> reader.executeQuery(query, /* usePreviousResults= */ true),
+            () -> localStore.executeQuery(query, /* usePreviousResults= */ true))
+        .continueWith(
+            Executors.DIRECT_EXECUTOR,
+            result -> {
+              QueryResult queryResult = result.getResult();
+              View view = new View(query, queryResult.getRemoteKeys());
+              View.DocumentChanges viewDocChanges =
+                  view.computeDocChanges(queryResult.getDocuments());
+              return view.applyChanges(viewDocChanges).getSnapshot();
+            });
+  }
+
+  /**
+   * Runs a cache-only read. The read is scheduled on the AsyncQueue so that it observes all
+   * previously scheduled writes. If the persistence layer supports concurrent reads, the read
+   * itself then runs on a background thread against a snapshot of the committed state, so that it
+   * does not wait for writes that are scheduled after it.
+   */
+  private <T> Task<T> readFromLocalCache(
+      Function<LocalSnapshotReader, T> concurrentRead, Callable<T> read) {
+    return asyncQueue
+        .enqueue(
+            () -> {
+              LocalSnapshotReader reader = localStore.newSnapshotReader();
+              if (reader == null) {
+                return Tasks.forResult(read.call());
+              }
+              return Tasks.call(
+                  Executors.BACKGROUND_EXECUTOR, () -> concurrentRead.apply(reader));
+            })
+        .continueWithTask(Executors.DIRECT_EXECUTOR, task -> task.getResult());
   }
 
   /** Writes mutations. The returned task will be notified when it's written to the backend. */
@@ -100,7 +100,9 @@ public class MemoryComponentProvider extends ComponentProvider {
         getLocalStore(),
         configuration.getDatastore(),
         configuration.getAsyncQueue(),
-        getConnectivityMonitor());
+        getConnectivityMonitor(),
+        configuration.getSettings().getMaxPendingWrites(),
+        configuration.getSettings().getMaxBatchesPerWriteRequest());
   }
 
   @Override
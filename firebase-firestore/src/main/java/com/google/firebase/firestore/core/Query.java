@@ -22,6 +22,7 @@ import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.FieldPath;
 import com.google.firebase.firestore.model.ResourcePath;
+import com.google.firebase.firestore.model.SortKey;
 import com.google.firebase.firestore.util.Assert;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -62,6 +63,8 @@ public final class Query {
   // The corresponding Target of this Query instance.
   private @Nullable Target memoizedTarget;
 
+  private @Nullable SortKeyEncoder memoizedSortKeyEncoder;
+
   private final List<Filter> filters;
 
   private final ResourcePath path;
@@ -434,13 +437,26 @@ public final class Query {
 
   /** Returns a comparator that will sort documents according to this Query's sort order. */
   public Comparator<Document> comparator() {
-    return new QueryComparator(getOrderBy());
+    return new QueryComparator(getOrderBy(), getSortKeyEncoder());
+  }
+
+  /**
+   * Returns the encoder for the sort keys of the documents that this query sorts.
+   *
+   * <p>This method is marked as synchronized because it modifies the internal state in some cases.
+   */
+  synchronized SortKeyEncoder getSortKeyEncoder() {
+    if (memoizedSortKeyEncoder == null) {
+      memoizedSortKeyEncoder = new SortKeyEncoder(getOrderBy());
+    }
+    return memoizedSortKeyEncoder;
   }
 
   private static class QueryComparator implements Comparator<Document> {
     private final List<OrderBy> sortOrder;
+    private final SortKeyEncoder sortKeyEncoder;
 
-    QueryComparator(List<OrderBy> order) {
+    QueryComparator(List<OrderBy> order, SortKeyEncoder sortKeyEncoder) {
       boolean hasKeyOrdering = false;
       for (OrderBy orderBy : order) {
         hasKeyOrdering = hasKeyOrdering || orderBy.getField().equals(FieldPath.KEY_PATH);
@@ -449,12 +465,24 @@ public final class Query {
         throw new IllegalArgumentException("QueryComparator needs to have a key ordering");
       }
       this.sortOrder = order;
+      this.sortKeyEncoder = sortKeyEncoder;
     }
 
     @Override
     public int compare(Document doc1, Document doc2) {
-      for (OrderBy order : sortOrder) {
-        int comp = order.compare(doc1, doc2);
+      int firstOrder = 0;
+      SortKey key1 = sortKeyEncoder.getSortKey(doc1);
+      SortKey key2 = key1 != null ? sortKeyEncoder.getSortKey(doc2) : null;
+      if (key1 != null && key2 != null) {
+        int comp = key1.compareTo(key2);
+        if (comp != 0) {
+          return comp;
+        }
+        // The sort keys cover the orderings up to the first ordering by document key.
+        firstOrder = sortKeyEncoder.getSegmentCount();
+      }
+      for (int i = firstOrder; i < sortOrder.size(); ++i) {
+        int comp = sortOrder.get(i).compare(doc1, doc2);
         if (comp != 0) {
           return comp;
         }
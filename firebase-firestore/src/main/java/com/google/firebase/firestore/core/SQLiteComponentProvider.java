@@ -14,6 +14,8 @@
 
 package com.google.firebase.firestore.core;
 
+import com.google.firebase.firestore.LocalCacheSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
 import com.google.firebase.firestore.local.IndexBackfiller;
 import com.google.firebase.firestore.local.LocalSerializer;
 import com.google.firebase.firestore.local.LruDelegate;
@@ -45,11 +47,17 @@ public class SQLiteComponentProvider extends MemoryComponentProvider {
     LruGarbageCollector.Params params =
         LruGarbageCollector.Params.WithCacheSizeBytes(
             configuration.getSettings().getCacheSizeBytes());
+    LocalCacheSettings cacheSettings = configuration.getSettings().getCacheSettings();
+    int readerConnectionCount =
+        cacheSettings instanceof PersistentCacheSettings
+            ? ((PersistentCacheSettings) cacheSettings).getReaderConnectionCount()
+            : SQLitePersistence.DEFAULT_READER_CONNECTION_COUNT;
     return new SQLitePersistence(
         configuration.getContext(),
         configuration.getDatabaseInfo().getPersistenceKey(),
         configuration.getDatabaseInfo().getDatabaseId(),
         serializer,
-        params);
+        params,
+        readerConnectionCount);
   }
 }
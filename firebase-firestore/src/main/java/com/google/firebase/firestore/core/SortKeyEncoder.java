@@ -0,0 +1,158 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import androidx.annotation.Nullable;
+import com.google.cloud.datastore.core.number.NumberComparisonHelper;
+import com.google.firebase.firestore.core.OrderBy.Direction;
+import com.google.firebase.firestore.index.DirectionalIndexByteEncoder;
+import com.google.firebase.firestore.index.FirestoreIndexValueWriter;
+import com.google.firebase.firestore.index.IndexByteEncoder;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.FieldIndex;
+import com.google.firebase.firestore.model.ObjectValue;
+import com.google.firebase.firestore.model.SortKey;
+import com.google.firebase.firestore.model.Values;
+import com.google.firestore.v1.Value;
+import com.google.type.LatLng;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes the values that a query orders documents by into {@link SortKey}s, using the encoding of
+ * the client side indexes.
+ *
+ * <p>A sort key is computed once per document and set of orderings and memoized on the document's
+ * data, so that queries with the same orderings share it. It is used to sort the documents.
+ *
+ * <p>The index encoding only orders values exactly like {@link Values#compare} for a subset of
+ * values. Documents with other values in one of the ordered fields (for example maps, references or
+ * strings with surrogate pairs) do not get a sort key and are compared with {@link Values#compare}
+ * instead.
+ */
+final class SortKeyEncoder {
+  /**
+   * The orderings that come before the first ordering by document key. Also identifies the
+   * encoding of the sort keys.
+   */
+  private final List<OrderBy> fieldOrderBys;
+
+  SortKeyEncoder(List<OrderBy> orderBy) {
+    fieldOrderBys = new ArrayList<>();
+    for (OrderBy order : orderBy) {
+      if (order.getField().isKeyField()) {
+        break;
+      }
+      fieldOrderBys.add(order);
+    }
+  }
+
+  /** Returns the number of orderings that are included in a sort key. */
+  int getSegmentCount() {
+    return fieldOrderBys.size();
+  }
+
+  /**
+   * Returns the sort key of the document, or null if the document's values cannot be encoded. The
+   * key is memoized on the document's data.
+   */
+  @Nullable
+  SortKey getSortKey(Document document) {
+    if (fieldOrderBys.isEmpty()) {
+      return null;
+    }
+
+    ObjectValue data = document.getData();
+    SortKey sortKey = data.getMemoizedSortKey(fieldOrderBys);
+    if (sortKey == null) {
+      sortKey = encode(document);
+      data.setMemoizedSortKey(sortKey);
+    }
+    return sortKey.isEncoded() ? sortKey : null;
+  }
+
+  private SortKey encode(Document document) {
+    IndexByteEncoder encoder = new IndexByteEncoder();
+    int[] segmentEnds = new int[fieldOrderBys.size()];
+    byte[] bytes = new byte[0];
+    for (int i = 0; i < fieldOrderBys.size(); ++i) {
+      OrderBy order = fieldOrderBys.get(i);
+      Value value = document.getField(order.getField());
+      if (value == null || !isOrderPreserving(value)) {
+        return SortKey.unencodable(fieldOrderBys);
+      }
+      FirestoreIndexValueWriter.INSTANCE.writeIndexValue(value, directionalEncoder(encoder, order));
+      bytes = encoder.getEncodedBytes();
+      segmentEnds[i] = bytes.length;
+    }
+    return new SortKey(fieldOrderBys, bytes, segmentEnds);
+  }
+
+  private static DirectionalIndexByteEncoder directionalEncoder(
+      IndexByteEncoder encoder, OrderBy order) {
+    return encoder.forKind(
+        order.getDirection() == Direction.ASCENDING
+            ? FieldIndex.Segment.Kind.ASCENDING
+            : FieldIndex.Segment.Kind.DESCENDING);
+  }
+
+  /**
+   * Returns whether the index encoding of the value compares with the encoding of other such values
+   * exactly like {@link Values#compare} compares the values.
+   */
+  static boolean isOrderPreserving(Value value) {
+    switch (value.getValueTypeCase()) {
+      case NULL_VALUE:
+      case BOOLEAN_VALUE:
+      case DOUBLE_VALUE:
+      case TIMESTAMP_VALUE:
+      case BYTES_VALUE:
+        return true;
+      case INTEGER_VALUE:
+        // Integers are encoded as doubles, which cannot represent all large integers.
+        long integer = value.getIntegerValue();
+        return integer >= NumberComparisonHelper.MIN_SAFE_LONG
+            && integer <= NumberComparisonHelper.MAX_SAFE_LONG;
+      case STRING_VALUE:
+        // Strings are encoded as UTF-8, which orders surrogate pairs differently than UTF-16.
+        String string = value.getStringValue();
+        for (int i = 0; i < string.length(); ++i) {
+          if (Character.isSurrogate(string.charAt(i))) {
+            return false;
+          }
+        }
+        return true;
+      case GEO_POINT_VALUE:
+        // Coordinates are encoded without normalizing -0.0 and NaN.
+        LatLng geoPoint = value.getGeoPointValue();
+        return isNormalized(geoPoint.getLatitude()) && isNormalized(geoPoint.getLongitude());
+      case ARRAY_VALUE:
+        for (Value element : value.getArrayValue().getValuesList()) {
+          if (!isOrderPreserving(element)) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        // Map keys are not encoded in sorted order and reference paths are not terminated. Server
+        // timestamps and the max value are represented as maps.
+        return false;
+    }
+  }
+
+  private static boolean isNormalized(double coordinate) {
+    return !Double.isNaN(coordinate) && Double.doubleToRawLongBits(coordinate) != Long.MIN_VALUE;
+  }
+}
@@ -541,7 +541,15 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
       @Nullable LoadBundleTaskProgress progress = LoadBundleTaskProgress.forInitial(bundleMetadata);
       resultTask.updateProgress(progress);
 
-      BundleLoader bundleLoader = new BundleLoader(localStore, bundleMetadata);
+      // Raise snapshots for each chunk as soon as it is applied, so that the changed documents do
+      // not have to be retained or read back at the end of the bundle.
+      // TODO(b/160876443): This currently raises snapshots with `fromCache=false` if users already
+      // listen to some queries and bundles has newer version.
+      BundleLoader bundleLoader =
+          new BundleLoader(
+              localStore,
+              bundleMetadata,
+              changes -> emitNewSnapsAndNotifyLocalStore(changes, /* remoteEvent= */ null));
 
       long currentBytesRead = 0;
       BundleElement bundleElement;
@@ -554,11 +562,7 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
         }
       }
 
-      ImmutableSortedMap<DocumentKey, Document> changes = bundleLoader.applyChanges();
-
-      // TODO(b/160876443): This currently raises snapshots with `fromCache=false` if users already
-      // listen to some queries and bundles has newer version.
-      emitNewSnapsAndNotifyLocalStore(changes, /* remoteEvent= */ null);
+      bundleLoader.applyChanges();
 
       // Save metadata, so loading the same bundle will skip.
       localStore.saveBundle(bundleMetadata);
@@ -93,6 +93,13 @@ public class View {
   /** Documents that have local changes */
   private ImmutableSortedSet<DocumentKey> mutatedKeys;
 
+  /**
+   * Documents whose limbo state may have changed since the limbo documents were last updated,
+   * either because the document changed in the view or because it was added to or removed from the
+   * remote target.
+   */
+  private ImmutableSortedSet<DocumentKey> limboCandidates;
+
   public View(Query query, ImmutableSortedSet<DocumentKey> remoteDocuments) {
     this.query = query;
     syncState = SyncState.NONE;
@@ -100,6 +107,7 @@ public class View {
     syncedDocuments = remoteDocuments;
     limboDocuments = DocumentKey.emptyKeySet();
     mutatedKeys = DocumentKey.emptyKeySet();
+    limboCandidates = DocumentKey.emptyKeySet();
   }
 
   public SyncState getSyncState() {
@@ -292,6 +300,9 @@ public class View {
           }
           return query.comparator().compare(o1.getDocument(), o2.getDocument());
         });
+    for (DocumentViewChange change : viewChanges) {
+      limboCandidates = limboCandidates.insert(change.getDocument().getKey());
+    }
     applyTargetChange(targetChange);
     List<LimboDocumentChange> limboDocumentChanges = updateLimboDocuments();
     boolean synced = limboDocuments.size() == 0 && current;
@@ -342,6 +353,7 @@ public class View {
     if (targetChange != null) {
       for (DocumentKey documentKey : targetChange.getAddedDocuments()) {
         syncedDocuments = syncedDocuments.insert(documentKey);
+        limboCandidates = limboCandidates.insert(documentKey);
       }
       for (DocumentKey documentKey : targetChange.getModifiedDocuments()) {
         hardAssert(
@@ -351,41 +363,44 @@ public class View {
       }
       for (DocumentKey documentKey : targetChange.getRemovedDocuments()) {
         syncedDocuments = syncedDocuments.remove(documentKey);
+        limboCandidates = limboCandidates.insert(documentKey);
       }
       current = targetChange.isCurrent();
     }
   }
 
+  /**
+   * Updates the limbo documents by re-evaluating only the documents whose limbo state may have
+   * changed, so that the cost is proportional to the size of the change rather than to the size of
+   * the view. Candidates are retained while the view is not current and are evaluated once it
+   * becomes current again.
+   */
   private List<LimboDocumentChange> updateLimboDocuments() {
     // We can only determine limbo documents when we're in-sync with the server.
     if (!current) {
       return Collections.emptyList();
     }
 
-    // TODO: Do this incrementally so that it's not quadratic when updating many
-    // documents.
-    ImmutableSortedSet<DocumentKey> oldLimboDocs = limboDocuments;
-    limboDocuments = DocumentKey.emptyKeySet();
-    for (Document doc : documentSet) {
-      if (shouldBeLimboDoc(doc.getKey())) {
-        limboDocuments = limboDocuments.insert(doc.getKey());
+    List<LimboDocumentChange> removedLimboDocs = new ArrayList<>();
+    List<LimboDocumentChange> addedLimboDocs = new ArrayList<>();
+    for (DocumentKey key : limboCandidates) {
+      boolean wasLimboDoc = limboDocuments.contains(key);
+      boolean isLimboDoc = shouldBeLimboDoc(key);
+      if (wasLimboDoc && !isLimboDoc) {
+        limboDocuments = limboDocuments.remove(key);
+        removedLimboDocs.add(new LimboDocumentChange(LimboDocumentChange.Type.REMOVED, key));
+      } else if (!wasLimboDoc && isLimboDoc) {
+        limboDocuments = limboDocuments.insert(key);
+        addedLimboDocs.add(new LimboDocumentChange(LimboDocumentChange.Type.ADDED, key));
       }
     }
+    limboCandidates = DocumentKey.emptyKeySet();
 
-    // Diff the new limbo docs with the old limbo docs.
+    // Report removals before additions, each in key order.
     List<LimboDocumentChange> changes =
-        new ArrayList<>(oldLimboDocs.size() + limboDocuments.size());
-    for (DocumentKey key : oldLimboDocs) {
-      if (!limboDocuments.contains(key)) {
-        changes.add(new LimboDocumentChange(LimboDocumentChange.Type.REMOVED, key));
-      }
-    }
-
-    for (DocumentKey key : limboDocuments) {
-      if (!oldLimboDocs.contains(key)) {
-        changes.add(new LimboDocumentChange(LimboDocumentChange.Type.ADDED, key));
-      }
-    }
+        new ArrayList<>(removedLimboDocs.size() + addedLimboDocs.size());
+    changes.addAll(removedLimboDocs);
+    changes.addAll(addedLimboDocs);
     return changes;
   }
 
@@ -0,0 +1,183 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.util.Assert.fail;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.util.Function;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes rows of the remote_documents table in parallel.
+ *
+ * <p>Rows are collected into fixed-size batches on the thread that reads the cursor. Full batches
+ * are handed to up to {@code workerCount - 1} background workers, each of which decodes batches
+ * into its own result map until no batches are left. The reading thread counts as a worker: it
+ * decodes batches itself when all background workers are busy and the queue is full, and decodes
+ * any remaining batches once all rows are read. The per-worker maps are merged in {@link
+ * #finish()}, so no lock is taken per row.
+ *
+ * <p>This class is not thread-safe. {@link #add} and {@link #finish} must be called from the same
+ * thread.
+ */
+final class DocumentDecodePipeline {
+  /** Number of rows decoded by a single task. */
+  static final int ROW_BATCH_SIZE = 64;
+
+  private final LocalSerializer serializer;
+  private final Executor executor;
+  private final int maxBackgroundWorkers;
+  @Nullable private final Function<MutableDocument, Boolean> filter;
+
+  private final BlockingQueue<RowBatch> pendingBatches;
+  private final Semaphore completedWorkers = new Semaphore(0);
+  private final List<Map<DocumentKey, MutableDocument>> workerResults = new ArrayList<>();
+  private final Map<DocumentKey, MutableDocument> localResults = new HashMap<>();
+  private int startedWorkers = 0;
+  private int activeWorkers = 0;
+  private RowBatch currentBatch = new RowBatch();
+
+  DocumentDecodePipeline(
+      LocalSerializer serializer,
+      Executor executor,
+      int workerCount,
+      @Nullable Function<MutableDocument, Boolean> filter) {
+    this.serializer = serializer;
+    this.executor = executor;
+    this.maxBackgroundWorkers = Math.max(workerCount - 1, 0);
+    this.filter = filter;
+    // Bound the number of rows held in memory while waiting to be decoded.
+    this.pendingBatches = new ArrayBlockingQueue<>(Math.max(2 * workerCount, 1));
+  }
+
+  /** Adds a row to be decoded. */
+  void add(byte[] contents, int readTimeSeconds, int readTimeNanos) {
+    currentBatch.add(contents, readTimeSeconds, readTimeNanos);
+    if (currentBatch.size == ROW_BATCH_SIZE) {
+      submit(currentBatch);
+      currentBatch = new RowBatch();
+    }
+  }
+
+  /** Decodes all remaining rows and returns the decoded documents that match the filter. */
+  Map<DocumentKey, MutableDocument> finish() {
+    // Since scheduling background tasks incurs overhead, the last batch is decoded on this thread.
+    decode(currentBatch, localResults);
+    currentBatch = new RowBatch();
+
+    RowBatch batch;
+    while ((batch = pendingBatches.poll()) != null) {
+      decode(batch, localResults);
+    }
+
+    try {
+      completedWorkers.acquire(startedWorkers);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw fail(e, "Interrupted while waiting for documents to be decoded");
+    }
+
+    synchronized (workerResults) {
+      for (Map<DocumentKey, MutableDocument> results : workerResults) {
+        localResults.putAll(results);
+      }
+    }
+    return localResults;
+  }
+
+  private void submit(RowBatch batch) {
+    if (maxBackgroundWorkers == 0 || !pendingBatches.offer(batch)) {
+      decode(batch, localResults);
+      return;
+    }
+
+    synchronized (workerResults) {
+      if (activeWorkers >= maxBackgroundWorkers) {
+        return;
+      }
+      ++activeWorkers;
+    }
+    ++startedWorkers;
+    try {
+      executor.execute(this::runWorker);
+    } catch (RejectedExecutionException e) {
+      runWorker();
+    }
+  }
+
+  private void runWorker() {
+    Map<DocumentKey, MutableDocument> results = new HashMap<>();
+    try {
+      RowBatch batch;
+      while ((batch = pendingBatches.poll()) != null) {
+        decode(batch, results);
+      }
+    } finally {
+      synchronized (workerResults) {
+        workerResults.add(results);
+        --activeWorkers;
+      }
+      completedWorkers.release();
+    }
+  }
+
+  private void decode(RowBatch batch, Map<DocumentKey, MutableDocument> results) {
+    for (int i = 0; i < batch.size; ++i) {
+      MutableDocument document;
+      try {
+        document =
+            serializer
+                .decodeMaybeDocument(batch.contents[i])
+                .setReadTime(
+                    new SnapshotVersion(
+                        new Timestamp(batch.readTimeSeconds[i], batch.readTimeNanos[i])));
+      } catch (InvalidProtocolBufferException e) {
+        throw fail("MaybeDocument failed to parse: %s", e);
+      }
+      if (filter == null || filter.apply(document)) {
+        results.put(document.getKey(), document);
+      }
+    }
+  }
+
+  /** A fixed-size batch of raw rows. */
+  private static final class RowBatch {
+    final byte[][] contents = new byte[ROW_BATCH_SIZE][];
+    final int[] readTimeSeconds = new int[ROW_BATCH_SIZE];
+    final int[] readTimeNanos = new int[ROW_BATCH_SIZE];
+    int size = 0;
+
+    void add(byte[] rawDocument, int seconds, int nanos) {
+      contents[size] = rawDocument;
+      readTimeSeconds[size] = seconds;
+      readTimeNanos[size] = nanos;
+      ++size;
+    }
+  }
+}
@@ -33,16 +33,31 @@ public class IndexBackfiller {
 
   /** How long we wait to try running index backfill after SDK initialization. */
   private static final long INITIAL_BACKFILL_DELAY_MS = TimeUnit.SECONDS.toMillis(15);
-  /** Minimum amount of time between backfill checks, after the first one. */
+  /** Minimum amount of time between backfill checks once all indexes are up to date. */
   private static final long REGULAR_BACKFILL_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+  /** How long we wait before continuing a backfill while other operations are queued. */
+  private static final long BUSY_BACKFILL_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+  /** The minimum number of documents to process each time backfill() is called. */
+  private static final int MIN_DOCUMENTS_TO_PROCESS = 50;
   /** The maximum number of documents to process each time backfill() is called. */
-  private static final int MAX_DOCUMENTS_TO_PROCESS = 50;
+  private static final int MAX_DOCUMENTS_TO_PROCESS = 2000;
+  /**
+   * The duration that a single backfill should not exceed, since it blocks the AsyncQueue. The
+   * number of documents per backfill grows while backfills are faster and shrinks when they are
+   * slower.
+   */
+  private static final long TARGET_BACKFILL_DURATION_MS = 50;
 
   private final Scheduler scheduler;
   private final Persistence persistence;
   private final Supplier<IndexManager> indexManagerOfCurrentUser;
   private final Supplier<LocalDocumentsView> localDocumentsViewOfCurrentUser;
-  private int maxDocumentsToProcess = MAX_DOCUMENTS_TO_PROCESS;
+  private int maxDocumentsToProcess = MIN_DOCUMENTS_TO_PROCESS;
+
+  private long totalDocumentsProcessed;
+  private long totalBackfillDurationMs;
+  private long lastBackfillDurationMs;
+  private boolean caughtUp;
 
   public IndexBackfiller(Persistence persistence, AsyncQueue asyncQueue, LocalStore localStore) {
     this(
@@ -86,13 +101,76 @@ public class IndexBackfiller {
     private void scheduleBackfill(long delay) {
       backfillTask =
           asyncQueue.enqueueAfterDelay(
-              AsyncQueue.TimerId.INDEX_BACKFILL,
-              delay,
-              () -> {
-                int documentsProcessed = backfill();
-                Logger.debug(LOG_TAG, "Documents written: %s", documentsProcessed);
-                scheduleBackfill(REGULAR_BACKFILL_DELAY_MS);
-              });
+              AsyncQueue.TimerId.INDEX_BACKFILL, delay, this::backfillAndReschedule);
+    }
+
+    /**
+     * Runs a backfill and schedules the next one. While documents remain to be indexed, backfills
+     * run back to back as long as no other operations are queued.
+     */
+    private void backfillAndReschedule() {
+      int documentsProcessed = backfill();
+      Logger.debug(
+          LOG_TAG,
+          "Documents written: %s in %s ms (%s documents in %s ms in total)",
+          documentsProcessed,
+          lastBackfillDurationMs,
+          totalDocumentsProcessed,
+          totalBackfillDurationMs);
+      scheduleBackfill(adaptToLoad(asyncQueue.isIdle()));
+    }
+  }
+
+  /** Statistics about the index entries written by an {@link IndexBackfiller}. */
+  public static final class Stats {
+    private final long documentsProcessed;
+    private final long backfillDurationMs;
+    private final int batchSize;
+    private final boolean caughtUp;
+
+    Stats(long documentsProcessed, long backfillDurationMs, int batchSize, boolean caughtUp) {
+      this.documentsProcessed = documentsProcessed;
+      this.backfillDurationMs = backfillDurationMs;
+      this.batchSize = batchSize;
+      this.caughtUp = caughtUp;
+    }
+
+    /** Returns the number of documents that have been indexed since the backfiller was created. */
+    public long getDocumentsProcessed() {
+      return documentsProcessed;
+    }
+
+    /** Returns the total time spent in backfills. */
+    public long getBackfillDurationMs() {
+      return backfillDurationMs;
+    }
+
+    /** Returns the number of documents indexed per second of backfill time. */
+    public double getDocumentsPerSecond() {
+      return backfillDurationMs > 0 ? documentsProcessed * 1000.0 / backfillDurationMs : 0;
+    }
+
+    /** Returns the maximum number of documents that the next backfill processes. */
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    /** Returns whether the last backfill found all indexes to be up to date. */
+    public boolean isCaughtUp() {
+      return caughtUp;
+    }
+
+    @Override
+    public String toString() {
+      return "Stats{documentsProcessed="
+          + documentsProcessed
+          + ", backfillDurationMs="
+          + backfillDurationMs
+          + ", batchSize="
+          + batchSize
+          + ", caughtUp="
+          + caughtUp
+          + "}";
     }
   }
 
@@ -100,9 +178,22 @@ public class IndexBackfiller {
     return scheduler;
   }
 
+  /** Returns statistics about the progress and throughput of the backfills so far. */
+  public Stats getStats() {
+    return new Stats(
+        totalDocumentsProcessed, totalBackfillDurationMs, maxDocumentsToProcess, caughtUp);
+  }
+
   /** Runs a single backfill operation and returns the number of documents processed. */
   public int backfill() {
-    return persistence.runTransaction("Backfill Indexes", () -> this.writeIndexEntries());
+    long startTime = System.nanoTime();
+    int documentsProcessed =
+        persistence.runTransaction("Backfill Indexes", () -> this.writeIndexEntries());
+    lastBackfillDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    totalDocumentsProcessed += documentsProcessed;
+    totalBackfillDurationMs += lastBackfillDurationMs;
+    caughtUp = documentsProcessed < maxDocumentsToProcess;
+    return documentsProcessed;
   }
 
   /** Writes index entries until the cap is reached. Returns the number of documents processed. */
@@ -159,6 +250,29 @@ public class IndexBackfiller {
         Math.max(lookupResult.getBatchId(), existingOffset.getLargestBatchId()));
   }
 
+  /**
+   * Adapts the number of documents that the next backfill processes to the duration of the last
+   * backfill and to whether other operations are queued. Returns the delay before the next
+   * backfill.
+   */
+  @VisibleForTesting
+  long adaptToLoad(boolean asyncQueueIdle) {
+    if (caughtUp) {
+      maxDocumentsToProcess = MIN_DOCUMENTS_TO_PROCESS;
+      return REGULAR_BACKFILL_DELAY_MS;
+    } else if (!asyncQueueIdle) {
+      maxDocumentsToProcess = Math.max(MIN_DOCUMENTS_TO_PROCESS, maxDocumentsToProcess / 2);
+      return BUSY_BACKFILL_DELAY_MS;
+    }
+
+    if (lastBackfillDurationMs < TARGET_BACKFILL_DURATION_MS) {
+      maxDocumentsToProcess = Math.min(MAX_DOCUMENTS_TO_PROCESS, maxDocumentsToProcess * 2);
+    } else {
+      maxDocumentsToProcess = Math.max(MIN_DOCUMENTS_TO_PROCESS, maxDocumentsToProcess / 2);
+    }
+    return 0;
+  }
+
   @VisibleForTesting
   void setMaxDocumentsToProcess(int newMax) {
     maxDocumentsToProcess = newMax;
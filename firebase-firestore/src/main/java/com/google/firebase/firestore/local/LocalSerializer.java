@@ -36,8 +36,15 @@ import com.google.firestore.v1.DocumentTransform.FieldTransform;
 import com.google.firestore.v1.Write;
 import com.google.firestore.v1.Write.Builder;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Serializer for values stored in the LocalStore. */
 public final class LocalSerializer {
@@ -85,6 +92,107 @@ public final class LocalSerializer {
     }
   }
 
+  /**
+   * Decodes an encoded MaybeDocument proto to the equivalent model.
+   *
+   * <p>The fields of a found document are not parsed up front. Each top-level field keeps its
+   * encoded bytes (which alias {@code bytes}) and is only parsed when it is first accessed, so
+   * query filters that reject a document only pay for the fields that they read. The caller must
+   * not modify {@code bytes} afterwards.
+   */
+  MutableDocument decodeMaybeDocument(byte[] bytes) throws InvalidProtocolBufferException {
+    CodedInputStream input = UnsafeByteOperations.unsafeWrap(bytes).newCodedInput();
+    input.enableAliasing(true);
+
+    ByteString encodedDocument = null;
+    boolean hasCommittedMutations = false;
+    try {
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        switch (WireFormat.getTagFieldNumber(tag)) {
+          case com.google.firebase.firestore.proto.MaybeDocument.DOCUMENT_FIELD_NUMBER:
+            if (encodedDocument != null
+                || WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+              return decodeMaybeDocument(
+                  com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes));
+            }
+            encodedDocument = input.readBytes();
+            break;
+          case com.google.firebase.firestore.proto.MaybeDocument
+              .HAS_COMMITTED_MUTATIONS_FIELD_NUMBER:
+            hasCommittedMutations = input.readBool();
+            break;
+          default:
+            // Missing and unknown documents are small, so they are parsed eagerly.
+            return decodeMaybeDocument(
+                com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes));
+        }
+      }
+      if (encodedDocument == null) {
+        return decodeMaybeDocument(
+            com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes));
+      }
+      return decodeDocumentLazily(encodedDocument.newCodedInput(), hasCommittedMutations);
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+  }
+
+  /** Decodes an encoded Document proto, keeping its fields encoded until they are accessed. */
+  private MutableDocument decodeDocumentLazily(
+      CodedInputStream input, boolean hasCommittedMutations) throws IOException {
+    input.enableAliasing(true);
+
+    String name = "";
+    com.google.protobuf.Timestamp updateTime = com.google.protobuf.Timestamp.getDefaultInstance();
+    Map<String, ByteString> encodedFields = new HashMap<>();
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case com.google.firestore.v1.Document.NAME_FIELD_NUMBER:
+          name = input.readStringRequireUtf8();
+          break;
+        case com.google.firestore.v1.Document.FIELDS_FIELD_NUMBER:
+          readFieldsEntry(input.readBytes().newCodedInput(), encodedFields);
+          break;
+        case com.google.firestore.v1.Document.UPDATE_TIME_FIELD_NUMBER:
+          updateTime = com.google.protobuf.Timestamp.parseFrom(input.readBytes());
+          break;
+        default:
+          input.skipField(tag);
+      }
+    }
+
+    DocumentKey key = rpcSerializer.decodeKey(name);
+    SnapshotVersion version = rpcSerializer.decodeVersion(updateTime);
+    MutableDocument result =
+        MutableDocument.newFoundDocument(
+            key, version, ObjectValue.fromEncodedFields(encodedFields));
+    return hasCommittedMutations ? result.setHasCommittedMutations() : result;
+  }
+
+  /** Reads a single entry of the `fields` map of a Document proto without parsing its value. */
+  private static void readFieldsEntry(CodedInputStream input, Map<String, ByteString> fields)
+      throws IOException {
+    input.enableAliasing(true);
+
+    String fieldName = "";
+    ByteString encodedValue = ByteString.EMPTY;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case 1: // key
+          fieldName = input.readStringRequireUtf8();
+          break;
+        case 2: // value
+          encodedValue = input.readBytes();
+          break;
+        default:
+          input.skipField(tag);
+      }
+    }
+    fields.put(fieldName, encodedValue);
+  }
+
   /**
    * Encodes a Document for local storage. This differs from the v1 RPC serializer for Documents in
    * that it preserves the updateTime, which is considered an output only value by the server.
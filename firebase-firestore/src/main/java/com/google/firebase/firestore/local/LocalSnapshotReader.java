@@ -0,0 +1,98 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.core.Target;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.SnapshotVersion;
+import java.util.Map;
+
+/**
+ * Serves cache-only reads from a read-only snapshot of the persisted local state.
+ *
+ * <p>Unlike the corresponding methods of {@link LocalStore}, the methods of this class can be
+ * called from any thread and do not wait for writes that are being committed on the AsyncQueue.
+ * Each call observes all transactions that were committed before the call started.
+ */
+public final class LocalSnapshotReader {
+  private final Persistence persistence;
+  private final User user;
+  private final Map<Target, TargetData> activeTargets;
+
+  /**
+   * @param activeTargets The metadata of the targets that LocalStore holds in memory when the
+   *     reader is created, which may be newer than the persisted metadata.
+   */
+  LocalSnapshotReader(Persistence persistence, User user, Map<Target, TargetData> activeTargets) {
+    this.persistence = persistence;
+    this.user = user;
+    this.activeTargets = activeTargets;
+  }
+
+  /** Returns the local view of the document identified by {@code key}. */
+  public Document readDocument(DocumentKey key) {
+    return persistence.runReadOnlyTransaction(
+        "Read document from snapshot",
+        snapshot ->
+            newLocalDocumentsView(snapshot, snapshot.getIndexManager(user)).getDocument(key));
+  }
+
+  /** Runs the query against the local snapshot, like {@link LocalStore#executeQuery}. */
+  public QueryResult executeQuery(Query query, boolean usePreviousResults) {
+    return persistence.runReadOnlyTransaction(
+        "Execute query against snapshot",
+        snapshot -> {
+          IndexManager indexManager = snapshot.getIndexManager(user);
+          indexManager.start();
+          QueryEngine queryEngine = new QueryEngine();
+          queryEngine.initialize(newLocalDocumentsView(snapshot, indexManager), indexManager);
+
+          TargetCache targetCache = snapshot.getTargetCache();
+          TargetData targetData = activeTargets.get(query.toTarget());
+          if (targetData == null) {
+            targetData = targetCache.getTargetData(query.toTarget());
+          }
+          SnapshotVersion lastLimboFreeSnapshotVersion = SnapshotVersion.NONE;
+          ImmutableSortedSet<DocumentKey> remoteKeys = DocumentKey.emptyKeySet();
+          if (targetData != null) {
+            lastLimboFreeSnapshotVersion = targetData.getLastLimboFreeSnapshotVersion();
+            remoteKeys = targetCache.getMatchingKeysForTargetId(targetData.getTargetId());
+          }
+
+          ImmutableSortedMap<DocumentKey, Document> documents =
+              queryEngine.getDocumentsMatchingQuery(
+                  query,
+                  usePreviousResults ? lastLimboFreeSnapshotVersion : SnapshotVersion.NONE,
+                  remoteKeys);
+          return new QueryResult(documents, remoteKeys);
+        });
+  }
+
+  private LocalDocumentsView newLocalDocumentsView(
+      Persistence snapshot, IndexManager indexManager) {
+    RemoteDocumentCache remoteDocuments = snapshot.getRemoteDocumentCache();
+    remoteDocuments.setIndexManager(indexManager);
+    return new LocalDocumentsView(
+        remoteDocuments,
+        snapshot.getMutationQueue(user, indexManager),
+        snapshot.getDocumentOverlayCache(user),
+        indexManager);
+  }
+}
@@ -147,6 +147,12 @@ public final class LocalStore implements BundleCallback {
   /** Used to generate targetIds for queries tracked locally. */
   private final TargetIdGenerator targetIdGenerator;
 
+  /** The user whose mutations are visible to local reads. */
+  private User currentUser;
+
+  /** The results of recently executed queries. */
+  private final QueryResultCache queryResultCache;
+
   public LocalStore(Persistence persistence, QueryEngine queryEngine, User initialUser) {
     hardAssert(
         persistence.isStarted(), "LocalStore was passed an unstarted persistence implementation");
@@ -160,6 +166,13 @@ public final class LocalStore implements BundleCallback {
     localViewReferences = new ReferenceSet();
     queryDataByTarget = new SparseArray<>();
     targetIdByTarget = new HashMap<>();
+    // With eager garbage collection, documents are removed as soon as they are no longer
+    // referenced, which would leave stale results in the cache.
+    queryResultCache =
+        new QueryResultCache(
+            persistence.getReferenceDelegate() instanceof LruDelegate
+                ? QueryResultCache.DEFAULT_MAX_ENTRIES
+                : 0);
 
     persistence.getReferenceDelegate().setInMemoryPins(localViewReferences);
 
@@ -168,6 +181,8 @@ public final class LocalStore implements BundleCallback {
 
   private void initializeUserComponents(User user) {
     // TODO(indexing): Add spec tests that test these components change after a user change
+    currentUser = user;
+    queryResultCache.clear();
     indexManager = persistence.getIndexManager(user);
     mutationQueue = persistence.getMutationQueue(user, indexManager);
     documentOverlayCache = persistence.getDocumentOverlayCache(user);
@@ -283,6 +298,7 @@ public final class LocalStore implements BundleCallback {
           Map<DocumentKey, Mutation> overlays =
               batch.applyToLocalDocumentSet(overlayedDocuments, docsWithoutRemoteVersion);
           documentOverlayCache.saveOverlays(batch.getBatchId(), overlays);
+          queryResultCache.invalidate(keys);
           return LocalDocumentsResult.fromOverlayedDocuments(
               batch.getBatchId(), overlayedDocuments);
         });
@@ -315,6 +331,7 @@ public final class LocalStore implements BundleCallback {
 
           documentOverlayCache.removeOverlaysForBatchId(batchResult.getBatch().getBatchId());
           localDocuments.recalculateAndSaveOverlays(getKeysWithTransformResults(batchResult));
+          queryResultCache.invalidate(batch.getKeys());
 
           return localDocuments.getDocuments(batch.getKeys());
         });
@@ -353,6 +370,7 @@ public final class LocalStore implements BundleCallback {
 
           documentOverlayCache.removeOverlaysForBatchId(batchId);
           localDocuments.recalculateAndSaveOverlays(toReject.getKeys());
+          queryResultCache.invalidate(toReject.getKeys());
 
           return localDocuments.getDocuments(toReject.getKeys());
         });
@@ -455,6 +473,7 @@ public final class LocalStore implements BundleCallback {
           }
 
           DocumentChangeResult result = populateDocumentChanges(documentUpdates);
+          queryResultCache.invalidate(documentUpdates.keySet());
           Map<DocumentKey, MutableDocument> changedDocs = result.changedDocuments;
 
           // HACK: The only reason we allow snapshot version NONE is so that we can synthesize
@@ -640,6 +659,22 @@ public final class LocalStore implements BundleCallback {
     return localDocuments.getDocument(key);
   }
 
+  /**
+   * Returns a reader that serves cache-only reads for the current user off the AsyncQueue, or
+   * {@code null} if the persistence layer does not support concurrent reads.
+   */
+  @Nullable
+  public LocalSnapshotReader newSnapshotReader() {
+    if (!persistence.supportsConcurrentReads()) {
+      return null;
+    }
+    Map<Target, TargetData> activeTargets = new HashMap<>();
+    for (Map.Entry<Target, Integer> entry : targetIdByTarget.entrySet()) {
+      activeTargets.put(entry.getKey(), queryDataByTarget.get(entry.getValue()));
+    }
+    return new LocalSnapshotReader(persistence, currentUser, activeTargets);
+  }
+
   /**
    * Assigns the given target an internal ID so that its results can be pinned so they don't get
    * GC'd. A query must be allocated in the local store before the store can be used to manage its
@@ -718,9 +753,17 @@ public final class LocalStore implements BundleCallback {
         });
   }
 
-  @Override
+  /** Applies all documents of a bundle in a single transaction. */
   public ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
       ImmutableSortedMap<DocumentKey, MutableDocument> documents, String bundleId) {
+    return applyBundledDocuments(documents, bundleId, /* replaceBundledKeys= */ true);
+  }
+
+  @Override
+  public ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
+      ImmutableSortedMap<DocumentKey, MutableDocument> documents,
+      String bundleId,
+      boolean replaceBundledKeys) {
     // Allocates a target to hold all document keys from the bundle, such that
     // they will not get garbage collected right away.
     TargetData umbrellaTargetData = allocateTarget(newUmbrellaTarget(bundleId));
@@ -741,10 +784,13 @@ public final class LocalStore implements BundleCallback {
             documentMap.put(documentKey, document);
           }
 
-          targetCache.removeMatchingKeysForTargetId(umbrellaTargetData.getTargetId());
+          if (replaceBundledKeys) {
+            targetCache.removeMatchingKeysForTargetId(umbrellaTargetData.getTargetId());
+          }
           targetCache.addMatchingKeys(documentKeys, umbrellaTargetData.getTargetId());
 
           DocumentChangeResult result = populateDocumentChanges(documentMap);
+          queryResultCache.invalidate(documentMap.keySet());
           Map<DocumentKey, MutableDocument> changedDocs = result.changedDocuments;
           return localDocuments.getLocalViewOfDocuments(changedDocs, result.existenceChangedKeys);
         });
@@ -862,14 +908,33 @@ public final class LocalStore implements BundleCallback {
       remoteKeys = this.targetCache.getMatchingKeysForTargetId(targetData.getTargetId());
     }
 
-    ImmutableSortedMap<DocumentKey, Document> documents =
-        queryEngine.getDocumentsMatchingQuery(
-            query,
-            usePreviousResults ? lastLimboFreeSnapshotVersion : SnapshotVersion.NONE,
-            remoteKeys);
+    // The remote keys and the target's snapshot version only determine how many documents the
+    // query engine reads, so a cached result can be used regardless of them.
+    ImmutableSortedMap<DocumentKey, Document> documents = queryResultCache.get(query);
+    if (documents == null) {
+      documents =
+          queryEngine.getDocumentsMatchingQuery(
+              query,
+              usePreviousResults ? lastLimboFreeSnapshotVersion : SnapshotVersion.NONE,
+              remoteKeys);
+      queryResultCache.put(query, documents);
+    }
     return new QueryResult(documents, remoteKeys);
   }
 
+  /**
+   * Sets the number of query results that are cached to serve repeated executions of the same
+   * query. A size of 0 disables the cache.
+   */
+  public void setQueryResultCacheSize(int maxEntries) {
+    queryResultCache.setMaxEntries(maxEntries);
+  }
+
+  /** Returns statistics about the results served from the query result cache. */
+  public QueryResultCache.Stats getQueryResultCacheStats() {
+    return queryResultCache.getStats();
+  }
+
   /**
    * Returns the keys of the documents that are associated with the given target id in the remote
    * table.
@@ -898,10 +963,34 @@ public final class LocalStore implements BundleCallback {
   }
 
   public LruGarbageCollector.Results collectGarbage(LruGarbageCollector garbageCollector) {
+    queryResultCache.clear();
     return persistence.runTransaction(
         "Collect garbage", () -> garbageCollector.collect(queryDataByTarget));
   }
 
+  /**
+   * Runs the next slice of an incremental garbage collection in its own transaction.
+   *
+   * @return The results of the collection once it is complete, or null if more slices remain.
+   */
+  @Nullable
+  public LruGarbageCollector.Results collectGarbageSlice(LruGarbageCollector garbageCollector) {
+    LruGarbageCollector.Results results;
+    try {
+      results =
+          persistence.runTransaction(
+              "Collect garbage slice", () -> garbageCollector.collectSlice(queryDataByTarget));
+    } catch (RuntimeException e) {
+      garbageCollector.rollBackSlice();
+      throw e;
+    }
+    // Cached query results only need to be dropped if the slice removed documents from the cache.
+    if (garbageCollector.getDocumentsRemovedInLastSlice() > 0) {
+      queryResultCache.clear();
+    }
+    return results;
+  }
+
   /**
    * Creates a new target using the given bundle name, which will be used to hold the keys of all
    * documents from the bundle in query-document mappings. This ensures that the loaded documents do
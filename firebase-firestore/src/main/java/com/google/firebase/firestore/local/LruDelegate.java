@@ -15,6 +15,7 @@
 package com.google.firebase.firestore.local;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.util.Consumer;
 
 /**
@@ -47,9 +48,57 @@ public interface LruDelegate {
    */
   int removeOrphanedDocuments(long upperBound);
 
+  /**
+   * Removes targets like {@link #removeTargets(long, SparseArray)}, but only visits up to `limit`
+   * targets with an ID greater than `cursor.getLastTargetId()`, in ascending order of target ID.
+   * Advances the cursor past the visited targets, and marks the targets as done once none remain.
+   *
+   * @return the number of targets removed.
+   */
+  int removeTargets(LruGarbageCollector.Cursor cursor, SparseArray<?> activeTargetIds, int limit);
+
+  /**
+   * Removes documents like {@link #removeOrphanedDocuments(long)}, but only visits up to `limit`
+   * documents with a key greater than `cursor.getLastDocumentKey()`, in ascending key order.
+   * Advances the cursor past the visited documents, and marks the documents as done once none
+   * remain.
+   *
+   * @return the number of documents removed.
+   */
+  int removeOrphanedDocuments(LruGarbageCollector.Cursor cursor, int limit);
+
+  /**
+   * Enumerates the sequence numbers of up to `limit` targets with an ID greater than
+   * `cursor.getLastTargetId()`, in ascending order of target ID. Advances the cursor past the
+   * visited targets, and marks the targets as done once none remain.
+   */
+  void forEachTargetSequenceNumber(
+      LruGarbageCollector.Cursor cursor, int limit, Consumer<Long> consumer);
+
+  /**
+   * Enumerates the sequence numbers of up to `limit` documents not associated with a target with a
+   * key greater than `cursor.getLastDocumentKey()`, in ascending key order. Advances the cursor
+   * past the visited documents, and marks the documents as done once none remain.
+   */
+  void forEachOrphanedDocumentSequenceNumber(
+      LruGarbageCollector.Cursor cursor, int limit, Consumer<Long> consumer);
+
+  /** Returns the position of an interrupted incremental collection, or null if there is none. */
+  @Nullable
+  LruGarbageCollector.Cursor getGarbageCollectionCursor();
+
+  /** Stores the position of an incremental collection, or clears it if `cursor` is null. */
+  void setGarbageCollectionCursor(@Nullable LruGarbageCollector.Cursor cursor);
+
   /** Access to the underlying LRU Garbage collector instance. */
   LruGarbageCollector getGarbageCollector();
 
   /** Return the size of the cache in bytes. */
   long getByteSize();
+
+  /**
+   * Return the number of bytes that hold cached data. Unlike {@link #getByteSize}, this excludes
+   * space that was freed but is still allocated to the cache.
+   */
+  long getUsedByteSize();
 }
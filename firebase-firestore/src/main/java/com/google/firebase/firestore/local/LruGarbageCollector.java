@@ -18,9 +18,13 @@ import android.util.SparseArray;
 import androidx.annotation.Nullable;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.core.ListenSequence;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.util.AsyncQueue;
 import com.google.firebase.firestore.util.Logger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Locale;
 import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +35,8 @@ public class LruGarbageCollector {
   private static final long INITIAL_GC_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
   /** Minimum amount of time between GC checks, after the first one. */
   private static final long REGULAR_GC_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+  /** The number of rows removed between checks of the time budget of an incremental slice. */
+  private static final int SLICE_STEP_SIZE = 50;
 
   public static class Params {
     private static final long COLLECTION_DISABLED = FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED;
@@ -46,6 +52,15 @@ public class LruGarbageCollector {
 
     private static final int DEFAULT_MAX_SEQUENCE_NUMBERS_TO_COLLECT = 1000;
 
+    /**
+     * The following two constants bound the work done by a single slice of an incremental
+     * collection, which blocks the AsyncQueue while it runs. A slice ends as soon as either budget
+     * is used up.
+     */
+    private static final long DEFAULT_MAX_SLICE_DURATION_MS = 20;
+
+    private static final int DEFAULT_MAX_ROWS_PER_SLICE = 200;
+
     public static Params Default() {
       return new Params(
           DEFAULT_CACHE_SIZE_BYTES,
@@ -66,11 +81,29 @@ public class LruGarbageCollector {
     // Not final for testing purposes.
     int percentileToCollect;
     final int maximumSequenceNumbersToCollect;
+    final long maxSliceDurationMs;
+    final int maxRowsPerSlice;
 
     Params(long minBytesThreshold, int percentileToCollect, int maximumSequenceNumbersToCollect) {
+      this(
+          minBytesThreshold,
+          percentileToCollect,
+          maximumSequenceNumbersToCollect,
+          DEFAULT_MAX_SLICE_DURATION_MS,
+          DEFAULT_MAX_ROWS_PER_SLICE);
+    }
+
+    Params(
+        long minBytesThreshold,
+        int percentileToCollect,
+        int maximumSequenceNumbersToCollect,
+        long maxSliceDurationMs,
+        int maxRowsPerSlice) {
       this.minBytesThreshold = minBytesThreshold;
       this.percentileToCollect = percentileToCollect;
       this.maximumSequenceNumbersToCollect = maximumSequenceNumbersToCollect;
+      this.maxSliceDurationMs = maxSliceDurationMs;
+      this.maxRowsPerSlice = maxRowsPerSlice;
     }
   }
 
@@ -79,6 +112,7 @@ public class LruGarbageCollector {
     private final int sequenceNumbersCollected;
     private final int targetsRemoved;
     private final int documentsRemoved;
+    private final List<Slice> slices;
 
     static Results DidNotRun() {
       return new Results(/* hasRun= */ false, 0, 0, 0);
@@ -86,10 +120,25 @@ public class LruGarbageCollector {
 
     Results(
         boolean hasRun, int sequenceNumbersCollected, int targetsRemoved, int documentsRemoved) {
+      this(
+          hasRun,
+          sequenceNumbersCollected,
+          targetsRemoved,
+          documentsRemoved,
+          Collections.emptyList());
+    }
+
+    Results(
+        boolean hasRun,
+        int sequenceNumbersCollected,
+        int targetsRemoved,
+        int documentsRemoved,
+        List<Slice> slices) {
       this.hasRun = hasRun;
       this.sequenceNumbersCollected = sequenceNumbersCollected;
       this.targetsRemoved = targetsRemoved;
       this.documentsRemoved = documentsRemoved;
+      this.slices = slices;
     }
 
     public boolean hasRun() {
@@ -107,11 +156,154 @@ public class LruGarbageCollector {
     public int getDocumentsRemoved() {
       return documentsRemoved;
     }
+
+    /** Returns the slices that made up this collection, in the order in which they ran. */
+    public List<Slice> getSlices() {
+      return slices;
+    }
+
+    /** Returns the number of bytes that were freed by this collection. */
+    public long getBytesReclaimed() {
+      long bytesReclaimed = 0;
+      for (Slice slice : slices) {
+        bytesReclaimed += slice.getBytesReclaimed();
+      }
+      return bytesReclaimed;
+    }
+
+    /** The duration and effect of one uninterrupted unit of garbage collection work. */
+    public static class Slice {
+      private final long durationMs;
+      private final long bytesReclaimed;
+
+      Slice(long durationMs, long bytesReclaimed) {
+        this.durationMs = durationMs;
+        this.bytesReclaimed = bytesReclaimed;
+      }
+
+      /** Returns how long this slice blocked the AsyncQueue. */
+      public long getDurationMs() {
+        return durationMs;
+      }
+
+      public long getBytesReclaimed() {
+        return bytesReclaimed;
+      }
+    }
+  }
+
+  /**
+   * The position of an incremental collection in the cache. Targets are visited in ascending order
+   * of target ID, followed by orphaned documents in ascending order of document key. A collection
+   * visits them twice: first to determine the upper bound of the sequence numbers to collect, then
+   * to remove them.
+   *
+   * <p>Every slice re-checks the eligibility of the targets and documents it visits, so changes
+   * made to the cache between slices are respected.
+   */
+  public static final class Cursor {
+    private final int sequenceNumbers;
+    private final long upperBound;
+    private int lastTargetId = -1;
+    private boolean targetsDone = false;
+    @Nullable private DocumentKey lastDocumentKey = null;
+    private boolean documentsDone = false;
+
+    Cursor(int sequenceNumbers, long upperBound) {
+      this.sequenceNumbers = sequenceNumbers;
+      this.upperBound = upperBound;
+    }
+
+    Cursor copy() {
+      Cursor copy = new Cursor(sequenceNumbers, upperBound);
+      copy.lastTargetId = lastTargetId;
+      copy.targetsDone = targetsDone;
+      copy.lastDocumentKey = lastDocumentKey;
+      copy.documentsDone = documentsDone;
+      return copy;
+    }
+
+    /** Returns the number of sequence numbers that are collected by this run. */
+    public int getSequenceNumbers() {
+      return sequenceNumbers;
+    }
+
+    /** Returns the highest sequence number that is collected by this run. */
+    public long getUpperBound() {
+      return upperBound;
+    }
+
+    /** Returns the ID of the last visited target, or -1 if no target has been visited yet. */
+    public int getLastTargetId() {
+      return lastTargetId;
+    }
+
+    public void setLastTargetId(int targetId) {
+      this.lastTargetId = targetId;
+    }
+
+    public boolean areTargetsDone() {
+      return targetsDone;
+    }
+
+    /** Marks all targets as visited. */
+    public void markTargetsDone() {
+      this.targetsDone = true;
+    }
+
+    /** Returns the key of the last visited document, or null if no document has been visited. */
+    @Nullable
+    public DocumentKey getLastDocumentKey() {
+      return lastDocumentKey;
+    }
+
+    public void setLastDocumentKey(DocumentKey key) {
+      this.lastDocumentKey = key;
+    }
+
+    public boolean areDocumentsDone() {
+      return documentsDone;
+    }
+
+    /** Marks all documents as visited. */
+    public void markDocumentsDone() {
+      this.documentsDone = true;
+    }
+
+    boolean isDone() {
+      return targetsDone && documentsDone;
+    }
+  }
+
+  /** The state of an incremental collection that spans multiple slices. */
+  private static class IncrementalRun {
+    private Cursor cursor;
+    // The lowest sequence numbers visited so far, until the upper bound of the run is known.
+    @Nullable private RollingSequenceNumberBuffer buffer;
+    private final List<Results.Slice> slices = new ArrayList<>();
+    private int targetsRemoved = 0;
+    private int documentsRemoved = 0;
+
+    IncrementalRun(Cursor cursor, @Nullable RollingSequenceNumberBuffer buffer) {
+      this.cursor = cursor;
+      this.buffer = buffer;
+    }
+
+    IncrementalRun copy() {
+      IncrementalRun copy =
+          new IncrementalRun(
+              cursor.copy(), buffer == null ? null : new RollingSequenceNumberBuffer(buffer));
+      copy.slices.addAll(slices);
+      copy.targetsRemoved = targetsRemoved;
+      copy.documentsRemoved = documentsRemoved;
+      return copy;
+    }
   }
 
   /**
    * This class is responsible for the scheduling of LRU garbage collection. It handles checking
-   * whether or not GC is enabled, as well as which delay to use before the next run.
+   * whether or not GC is enabled, as well as which delay to use before the next run. Collections
+   * run incrementally, see {@link LruGarbageCollector#collectSlice}.
    */
   public class GCScheduler implements Scheduler {
     private final AsyncQueue asyncQueue;
@@ -140,20 +332,37 @@ public class LruGarbageCollector {
 
     private void scheduleGC() {
       long delay = hasRun ? REGULAR_GC_DELAY_MS : INITIAL_GC_DELAY_MS;
+      scheduleGCSlice(delay);
+    }
+
+    /**
+     * Runs the next slice of garbage collection after the given delay. Each slice is a separate
+     * AsyncQueue operation, so queued listens and writes run between slices.
+     */
+    private void scheduleGCSlice(long delayMs) {
       gcTask =
           asyncQueue.enqueueAfterDelay(
               AsyncQueue.TimerId.GARBAGE_COLLECTION,
-              delay,
+              delayMs,
               () -> {
-                localStore.collectGarbage(LruGarbageCollector.this);
-                hasRun = true;
-                scheduleGC();
+                Results results = localStore.collectGarbageSlice(LruGarbageCollector.this);
+                if (results == null) {
+                  scheduleGCSlice(/* delayMs= */ 0);
+                } else {
+                  hasRun = true;
+                  scheduleGC();
+                }
               });
     }
   }
 
   private final LruDelegate delegate;
   private final Params params;
+  @Nullable private IncrementalRun currentRun;
+  // The state of the collection before the current slice, which is restored if the slice's
+  // transaction is rolled back.
+  @Nullable private IncrementalRun runBeforeSlice;
+  private int documentsRemovedInLastSlice;
 
   LruGarbageCollector(LruDelegate delegate, Params params) {
     this.delegate = delegate;
@@ -193,6 +402,11 @@ public class LruGarbageCollector {
       this.queue = new PriorityQueue<>(count, COMPARATOR);
     }
 
+    RollingSequenceNumberBuffer(RollingSequenceNumberBuffer other) {
+      this.maxElements = other.maxElements;
+      this.queue = new PriorityQueue<>(other.queue);
+    }
+
     void addElement(Long sequenceNumber) {
       if (queue.size() < maxElements) {
         queue.add(sequenceNumber);
@@ -206,7 +420,7 @@ public class LruGarbageCollector {
     }
 
     long getMaxValue() {
-      return queue.peek();
+      return queue.isEmpty() ? ListenSequence.INVALID : queue.peek();
     }
   }
 
@@ -238,9 +452,159 @@ public class LruGarbageCollector {
   }
 
   Results collect(SparseArray<?> activeTargetIds) {
+    if (shouldCollect()) {
+      return runGarbageCollection(activeTargetIds);
+    } else {
+      return Results.DidNotRun();
+    }
+  }
+
+  /**
+   * Runs the next slice of an incremental collection, starting a new collection if none is in
+   * progress.
+   *
+   * <p>The first slices of a collection visit the targets and orphaned documents to determine
+   * which sequence numbers to collect. The following slices remove targets and orphaned documents
+   * up to that sequence number. Each slice ends when it exceeds the time or row budget in {@link
+   * Params}, and the next one resumes where it stopped. Every slice is meant to run in its own
+   * transaction. If that transaction is rolled back, {@link #rollBackSlice} must be called so that
+   * the next slice visits the same targets and documents again.
+   *
+   * <p>The position of the removal is persisted with every slice, so a collection that is
+   * interrupted, e.g. because the app is stopped, resumes where it stopped.
+   *
+   * @return The results of the collection once its last slice has run, or null if more slices
+   *     remain.
+   */
+  @Nullable
+  Results collectSlice(SparseArray<?> activeTargetIds) {
+    long startTs = System.currentTimeMillis();
+    runBeforeSlice = currentRun == null ? null : currentRun.copy();
+    documentsRemovedInLastSlice = 0;
+    if (currentRun == null) {
+      Cursor persistedCursor = delegate.getGarbageCollectionCursor();
+      if (persistedCursor != null) {
+        currentRun = new IncrementalRun(persistedCursor, /* buffer= */ null);
+      } else if (!shouldCollect()) {
+        return Results.DidNotRun();
+      } else {
+        int sequenceNumbers = getSequenceNumbersToCollect();
+        currentRun =
+            new IncrementalRun(
+                new Cursor(sequenceNumbers, ListenSequence.INVALID),
+                new RollingSequenceNumberBuffer(Math.max(1, sequenceNumbers)));
+      }
+    }
+
+    if (currentRun.buffer != null) {
+      findUpperBound(currentRun, startTs);
+      currentRun.slices.add(
+          new Results.Slice(System.currentTimeMillis() - startTs, /* bytesReclaimed= */ 0));
+      return null;
+    }
+
+    IncrementalRun run = currentRun;
+    long usedBytesBefore = delegate.getUsedByteSize();
+    int rowsRemaining = params.maxRowsPerSlice;
+    while (rowsRemaining > 0
+        && !run.cursor.isDone()
+        && System.currentTimeMillis() - startTs < params.maxSliceDurationMs) {
+      // Check the time budget at least every SLICE_STEP_SIZE rows.
+      int limit = Math.min(rowsRemaining, SLICE_STEP_SIZE);
+      if (!run.cursor.areTargetsDone()) {
+        run.targetsRemoved += delegate.removeTargets(run.cursor, activeTargetIds, limit);
+      } else {
+        int removed = delegate.removeOrphanedDocuments(run.cursor, limit);
+        run.documentsRemoved += removed;
+        documentsRemovedInLastSlice += removed;
+      }
+      rowsRemaining -= limit;
+    }
+    long bytesReclaimed = Math.max(0, usedBytesBefore - delegate.getUsedByteSize());
+    run.slices.add(new Results.Slice(System.currentTimeMillis() - startTs, bytesReclaimed));
+
+    if (!run.cursor.isDone()) {
+      delegate.setGarbageCollectionCursor(run.cursor);
+      return null;
+    }
+
+    currentRun = null;
+    delegate.setGarbageCollectionCursor(null);
+    Results results =
+        new Results(
+            /* hasRun= */ true,
+            run.cursor.getSequenceNumbers(),
+            run.targetsRemoved,
+            run.documentsRemoved,
+            run.slices);
+    if (Logger.isDebugEnabled()) {
+      long totalDurationMs = 0;
+      long maxSliceDurationMs = 0;
+      for (Results.Slice slice : run.slices) {
+        totalDurationMs += slice.getDurationMs();
+        maxSliceDurationMs = Math.max(maxSliceDurationMs, slice.getDurationMs());
+      }
+      Logger.debug(
+          "LruGarbageCollector",
+          String.format(
+              Locale.ROOT,
+              "Incremental LRU Garbage Collection: removed %d targets and %d documents "
+                  + "(%d bytes) in %d slices, longest slice %dms, total duration %dms",
+              results.getTargetsRemoved(),
+              results.getDocumentsRemoved(),
+              results.getBytesReclaimed(),
+              run.slices.size(),
+              maxSliceDurationMs,
+              totalDurationMs));
+    }
+    return results;
+  }
+
+  /**
+   * Visits targets and orphaned documents within the budget of a slice, keeping the lowest sequence
+   * numbers. Once all have been visited, the highest of them becomes the upper bound of the run and
+   * its removal starts from the beginning.
+   */
+  private void findUpperBound(IncrementalRun run, long startTs) {
+    Cursor cursor = run.cursor;
+    RollingSequenceNumberBuffer buffer = run.buffer;
+    int rowsRemaining = params.maxRowsPerSlice;
+    while (rowsRemaining > 0
+        && !cursor.isDone()
+        && System.currentTimeMillis() - startTs < params.maxSliceDurationMs) {
+      int limit = Math.min(rowsRemaining, SLICE_STEP_SIZE);
+      if (!cursor.areTargetsDone()) {
+        delegate.forEachTargetSequenceNumber(cursor, limit, buffer::addElement);
+      } else {
+        delegate.forEachOrphanedDocumentSequenceNumber(cursor, limit, buffer::addElement);
+      }
+      rowsRemaining -= limit;
+    }
+
+    if (cursor.isDone()) {
+      int sequenceNumbers = cursor.getSequenceNumbers();
+      long upperBound = sequenceNumbers == 0 ? ListenSequence.INVALID : buffer.getMaxValue();
+      run.cursor = new Cursor(sequenceNumbers, upperBound);
+      run.buffer = null;
+      delegate.setGarbageCollectionCursor(run.cursor);
+    }
+  }
+
+  /** Restores the state of the incremental collection from before the last slice. */
+  void rollBackSlice() {
+    currentRun = runBeforeSlice;
+    documentsRemovedInLastSlice = 0;
+  }
+
+  /** Returns the number of documents that the last slice of an incremental collection removed. */
+  int getDocumentsRemovedInLastSlice() {
+    return documentsRemovedInLastSlice;
+  }
+
+  private boolean shouldCollect() {
     if (params.minBytesThreshold == Params.COLLECTION_DISABLED) {
       Logger.debug("LruGarbageCollector", "Garbage collection skipped; disabled");
-      return Results.DidNotRun();
+      return false;
     }
 
     long cacheSize = getByteSize();
@@ -251,14 +615,12 @@ public class LruGarbageCollector {
               + cacheSize
               + " is lower than threshold "
               + params.minBytesThreshold);
-      return Results.DidNotRun();
-    } else {
-      return runGarbageCollection(activeTargetIds);
+      return false;
     }
+    return true;
   }
 
-  private Results runGarbageCollection(SparseArray<?> liveTargetIds) {
-    long startTs = System.currentTimeMillis();
+  private int getSequenceNumbersToCollect() {
     int sequenceNumbers = calculateQueryCount(params.percentileToCollect);
     // Cap at the configured max
     if (sequenceNumbers > params.maximumSequenceNumbersToCollect) {
@@ -270,6 +632,13 @@ public class LruGarbageCollector {
               + sequenceNumbers);
       sequenceNumbers = params.maximumSequenceNumbersToCollect;
     }
+    return sequenceNumbers;
+  }
+
+  private Results runGarbageCollection(SparseArray<?> liveTargetIds) {
+    long startTs = System.currentTimeMillis();
+    long usedBytesBefore = delegate.getUsedByteSize();
+    int sequenceNumbers = getSequenceNumbersToCollect();
     long countedTargetsTs = System.currentTimeMillis();
 
     long upperBound = getNthSequenceNumber(sequenceNumbers);
@@ -305,7 +674,14 @@ public class LruGarbageCollector {
       desc += String.format(Locale.ROOT, "Total Duration: %dms", (removedDocumentsTs - startTs));
       Logger.debug("LruGarbageCollector", desc);
     }
-    return new Results(/* hasRun= */ true, sequenceNumbers, numTargetsRemoved, numDocumentsRemoved);
+    long bytesReclaimed = Math.max(0, usedBytesBefore - delegate.getUsedByteSize());
+    return new Results(
+        /* hasRun= */ true,
+        sequenceNumbers,
+        numTargetsRemoved,
+        numDocumentsRemoved,
+        Collections.singletonList(
+            new Results.Slice(removedDocumentsTs - startTs, bytesReclaimed)));
   }
 
   long getByteSize() {
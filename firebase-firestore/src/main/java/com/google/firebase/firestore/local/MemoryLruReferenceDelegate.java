@@ -17,12 +17,15 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ListenSequence;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.util.Consumer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +34,7 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
   private final MemoryPersistence persistence;
   private final LocalSerializer serializer;
   private final Map<DocumentKey, Long> orphanedSequenceNumbers;
+  @Nullable private LruGarbageCollector.Cursor garbageCollectionCursor;
   private ReferenceSet inMemoryPins;
   private final LruGarbageCollector garbageCollector;
   private final ListenSequence listenSequence;
@@ -130,6 +134,98 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     return docsToRemove.size();
   }
 
+  @Override
+  public int removeTargets(
+      LruGarbageCollector.Cursor cursor, SparseArray<?> activeTargetIds, int limit) {
+    return persistence.getTargetCache().removeQueries(cursor, activeTargetIds, limit);
+  }
+
+  @Override
+  public int removeOrphanedDocuments(LruGarbageCollector.Cursor cursor, int limit) {
+    MemoryRemoteDocumentCache cache = persistence.getRemoteDocumentCache();
+    DocumentKey lastKey = cursor.getLastDocumentKey();
+    List<DocumentKey> docsToRemove = new ArrayList<>();
+    int visited = 0;
+    // Documents are iterated in key order, starting at the last visited key.
+    Iterator<Map.Entry<DocumentKey, Document>> documents =
+        cache.getDocumentsFrom(lastKey != null ? lastKey : DocumentKey.empty());
+    while (visited < limit && documents.hasNext()) {
+      DocumentKey key = documents.next().getKey();
+      if (lastKey != null && key.equals(lastKey)) {
+        continue;
+      }
+      ++visited;
+      cursor.setLastDocumentKey(key);
+      if (!isPinned(key, cursor.getUpperBound())) {
+        docsToRemove.add(key);
+        orphanedSequenceNumbers.remove(key);
+      }
+    }
+    if (visited < limit) {
+      cursor.markDocumentsDone();
+    }
+    cache.removeAll(docsToRemove);
+    return docsToRemove.size();
+  }
+
+  @Override
+  public void forEachTargetSequenceNumber(
+      LruGarbageCollector.Cursor cursor, int limit, Consumer<Long> consumer) {
+    List<TargetData> candidates = new ArrayList<>();
+    forEachTarget(
+        targetData -> {
+          if (targetData.getTargetId() > cursor.getLastTargetId()) {
+            candidates.add(targetData);
+          }
+        });
+    Collections.sort(candidates, (a, b) -> Integer.compare(a.getTargetId(), b.getTargetId()));
+
+    for (TargetData targetData : candidates.subList(0, Math.min(limit, candidates.size()))) {
+      cursor.setLastTargetId(targetData.getTargetId());
+      consumer.accept(targetData.getSequenceNumber());
+    }
+    if (candidates.size() < limit) {
+      cursor.markTargetsDone();
+    }
+  }
+
+  @Override
+  public void forEachOrphanedDocumentSequenceNumber(
+      LruGarbageCollector.Cursor cursor, int limit, Consumer<Long> consumer) {
+    DocumentKey lastKey = cursor.getLastDocumentKey();
+    int visited = 0;
+    Iterator<Map.Entry<DocumentKey, Document>> documents =
+        persistence
+            .getRemoteDocumentCache()
+            .getDocumentsFrom(lastKey != null ? lastKey : DocumentKey.empty());
+    while (visited < limit && documents.hasNext()) {
+      DocumentKey key = documents.next().getKey();
+      if (lastKey != null && key.equals(lastKey)) {
+        continue;
+      }
+      ++visited;
+      cursor.setLastDocumentKey(key);
+      Long sequenceNumber = orphanedSequenceNumbers.get(key);
+      if (sequenceNumber != null && !isPinned(key, sequenceNumber)) {
+        consumer.accept(sequenceNumber);
+      }
+    }
+    if (visited < limit) {
+      cursor.markDocumentsDone();
+    }
+  }
+
+  @Nullable
+  @Override
+  public LruGarbageCollector.Cursor getGarbageCollectionCursor() {
+    return garbageCollectionCursor != null ? garbageCollectionCursor.copy() : null;
+  }
+
+  @Override
+  public void setGarbageCollectionCursor(@Nullable LruGarbageCollector.Cursor cursor) {
+    garbageCollectionCursor = cursor != null ? cursor.copy() : null;
+  }
+
   @Override
   public void removeMutationReference(DocumentKey key) {
     orphanedSequenceNumbers.put(key, getCurrentSequenceNumber());
@@ -199,4 +295,9 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     }
     return count;
   }
+
+  @Override
+  public long getUsedByteSize() {
+    return getByteSize();
+  }
 }
@@ -149,6 +149,11 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
     return new DocumentIterable();
   }
 
+  /** Returns the documents in key order, starting at the first key that is at least {@code key}. */
+  Iterator<Map.Entry<DocumentKey, Document>> getDocumentsFrom(DocumentKey key) {
+    return docs.iteratorFrom(key);
+  }
+
   long getByteSize(LocalSerializer serializer) {
     long count = 0;
     for (Document doc : new DocumentIterable()) {
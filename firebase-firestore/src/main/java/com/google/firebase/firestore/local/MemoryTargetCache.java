@@ -21,8 +21,11 @@ import com.google.firebase.firestore.core.Target;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.util.Consumer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -131,6 +134,37 @@ final class MemoryTargetCache implements TargetCache {
     return removed;
   }
 
+  /**
+   * Drops targets like {@link #removeQueries(long, SparseArray)}, but only visits up to `limit`
+   * targets following the position of `cursor`. Returns the number of targets removed.
+   */
+  int removeQueries(
+      LruGarbageCollector.Cursor cursor, SparseArray<?> activeTargetIds, int limit) {
+    List<TargetData> candidates = new ArrayList<>();
+    for (TargetData targetData : targets.values()) {
+      if (targetData.getSequenceNumber() <= cursor.getUpperBound()
+          && targetData.getTargetId() > cursor.getLastTargetId()) {
+        candidates.add(targetData);
+      }
+    }
+    Collections.sort(candidates, (a, b) -> Integer.compare(a.getTargetId(), b.getTargetId()));
+
+    int removed = 0;
+    for (TargetData targetData : candidates.subList(0, Math.min(limit, candidates.size()))) {
+      int targetId = targetData.getTargetId();
+      cursor.setLastTargetId(targetId);
+      if (activeTargetIds.get(targetId) == null) {
+        targets.remove(targetData.getTarget());
+        removeMatchingKeysForTargetId(targetId);
+        removed++;
+      }
+    }
+    if (candidates.size() < limit) {
+      cursor.markTargetsDone();
+    }
+    return removed;
+  }
+
   @Nullable
   @Override
   public TargetData getTargetData(Target target) {
@@ -14,7 +14,10 @@
 
 package com.google.firebase.firestore.local;
 
+import static com.google.firebase.firestore.util.Assert.fail;
+
 import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.util.Function;
 import com.google.firebase.firestore.util.Supplier;
 
 /**
@@ -118,4 +121,28 @@ public abstract class Persistence {
    * @return The value returned from the operation.
    */
   abstract <T> T runTransaction(String action, Supplier<T> operation);
+
+  /**
+   * Returns whether {@link #runReadOnlyTransaction} is supported. Read-only transactions can run on
+   * any thread, concurrently with each other and with transactions on the AsyncQueue.
+   */
+  boolean supportsConcurrentReads() {
+    return false;
+  }
+
+  /**
+   * Performs a read-only operation against a consistent snapshot of the persisted data. The
+   * snapshot includes all transactions that were committed before this method was called.
+   *
+   * <p>The operation receives a read-only Persistence instance, and must perform all of its reads
+   * through components created from that instance. Components of this Persistence instance must not
+   * be used by the operation.
+   *
+   * @param action A description of the action performed by this transaction, used for logging.
+   * @param operation The operation to run against the snapshot.
+   * @return The value returned from the operation.
+   */
+  <T> T runReadOnlyTransaction(String action, Function<Persistence, T> operation) {
+    throw fail("Concurrent reads are not supported by %s", getClass().getSimpleName());
+  }
 }
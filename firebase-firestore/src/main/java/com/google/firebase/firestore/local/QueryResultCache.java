@@ -0,0 +1,220 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import androidx.annotation.Nullable;
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.ResourcePath;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A least recently used cache of the documents that {@link LocalStore#executeQuery} returned for a
+ * query, keyed by the canonical ID of the query.
+ *
+ * <p>The cached result of a query remains valid until a document in one of the collections that
+ * the query reads from changes. The local store reports the keys of all documents that it changes,
+ * whether by local writes, acknowledgements, rejections, remote events or bundles, and the cache
+ * drops the results of all queries that may contain one of these documents.
+ */
+public final class QueryResultCache {
+  /** The default number of query results that are cached. */
+  static final int DEFAULT_MAX_ENTRIES = 100;
+
+  /** The maximum number of documents in all cached query results. */
+  static final int MAX_CACHED_DOCUMENTS = 10_000;
+
+  private static class Entry {
+    final Query query;
+    final ImmutableSortedMap<DocumentKey, Document> documents;
+
+    Entry(Query query, ImmutableSortedMap<DocumentKey, Document> documents) {
+      this.query = query;
+      this.documents = documents;
+    }
+  }
+
+  private final Map<String, Entry> entries =
+      new LinkedHashMap<>(
+          /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+
+  private int maxEntries;
+  private int cachedDocuments;
+  private long hits;
+  private long misses;
+
+  QueryResultCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /** Returns the cached result of the query, or null if the result is not cached. */
+  @Nullable
+  synchronized ImmutableSortedMap<DocumentKey, Document> get(Query query) {
+    if (maxEntries == 0) {
+      return null;
+    }
+    Entry entry = entries.get(query.getCanonicalId());
+    if (entry == null) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return entry.documents;
+  }
+
+  /** Caches the result of the query, evicting the least recently used results if necessary. */
+  synchronized void put(Query query, ImmutableSortedMap<DocumentKey, Document> documents) {
+    if (maxEntries == 0 || documents.size() > MAX_CACHED_DOCUMENTS) {
+      return;
+    }
+    Entry previous = entries.put(query.getCanonicalId(), new Entry(query, documents));
+    if (previous != null) {
+      cachedDocuments -= previous.documents.size();
+    }
+    cachedDocuments += documents.size();
+    evict();
+  }
+
+  /** Drops the results of all queries that may contain one of the given documents. */
+  synchronized void invalidate(Iterable<DocumentKey> keys) {
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    Set<ResourcePath> collectionPaths = new HashSet<>();
+    for (DocumentKey key : keys) {
+      collectionPaths.add(key.getCollectionPath());
+    }
+    if (collectionPaths.isEmpty()) {
+      return;
+    }
+
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (mayContainDocumentsIn(entry.query, collectionPaths)) {
+        cachedDocuments -= entry.documents.size();
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Drops all cached results. */
+  synchronized void clear() {
+    entries.clear();
+    cachedDocuments = 0;
+  }
+
+  /** Sets the number of query results that are cached. A size of 0 disables the cache. */
+  synchronized void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+    evict();
+  }
+
+  synchronized Stats getStats() {
+    return new Stats(hits, misses, entries.size(), cachedDocuments);
+  }
+
+  private void evict() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()
+        && (entries.size() > maxEntries || cachedDocuments > MAX_CACHED_DOCUMENTS)) {
+      cachedDocuments -= iterator.next().documents.size();
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Returns whether the query may match a document in one of the given collections. Mirrors the
+   * path matching of {@link Query#matches}.
+   */
+  private static boolean mayContainDocumentsIn(Query query, Set<ResourcePath> collectionPaths) {
+    ResourcePath path = query.getPath();
+    String collectionGroup = query.getCollectionGroup();
+    if (collectionGroup != null) {
+      for (ResourcePath collectionPath : collectionPaths) {
+        if (collectionPath.getLastSegment().equals(collectionGroup)
+            && path.isPrefixOf(collectionPath)) {
+          return true;
+        }
+      }
+      return false;
+    } else if (DocumentKey.isDocumentKey(path)) {
+      return collectionPaths.contains(path.popLast());
+    } else {
+      return collectionPaths.contains(path);
+    }
+  }
+
+  /** Statistics about the lookups in a {@link QueryResultCache}. */
+  public static final class Stats {
+    private final long hits;
+    private final long misses;
+    private final int cachedQueries;
+    private final int cachedDocuments;
+
+    Stats(long hits, long misses, int cachedQueries, int cachedDocuments) {
+      this.hits = hits;
+      this.misses = misses;
+      this.cachedQueries = cachedQueries;
+      this.cachedDocuments = cachedDocuments;
+    }
+
+    /** Returns the number of queries whose result was served from the cache. */
+    public long getHits() {
+      return hits;
+    }
+
+    /** Returns the number of queries whose result was not cached. */
+    public long getMisses() {
+      return misses;
+    }
+
+    /** Returns the fraction of queries whose result was served from the cache. */
+    public double getHitRate() {
+      long lookups = hits + misses;
+      return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    /** Returns the number of queries whose result is currently cached. */
+    public int getCachedQueries() {
+      return cachedQueries;
+    }
+
+    /** Returns the number of documents in all currently cached results. */
+    public int getCachedDocuments() {
+      return cachedDocuments;
+    }
+
+    @Override
+    public String toString() {
+      return "Stats{hits="
+          + hits
+          + ", misses="
+          + misses
+          + ", cachedQueries="
+          + cachedQueries
+          + ", cachedDocuments="
+          + cachedDocuments
+          + '}';
+    }
+  }
+}
@@ -26,6 +26,7 @@ import android.text.TextUtils;
 import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.firebase.Timestamp;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.auth.User;
@@ -33,6 +34,7 @@ import com.google.firebase.firestore.core.Bound;
 import com.google.firebase.firestore.core.CompositeFilter;
 import com.google.firebase.firestore.core.FieldFilter;
 import com.google.firebase.firestore.core.Filter;
+import com.google.firebase.firestore.core.OrderBy;
 import com.google.firebase.firestore.core.OrderBy.Direction;
 import com.google.firebase.firestore.core.Target;
 import com.google.firebase.firestore.index.DirectionalIndexByteEncoder;
@@ -56,11 +58,13 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -69,6 +73,15 @@ final class SQLiteIndexManager implements IndexManager {
   private static final String TAG = SQLiteIndexManager.class.getSimpleName();
   private static final byte[] EMPTY_BYTES_VALUE = new byte[] {};
 
+  /** SQLite limits the number of host parameters in a statement to 999. */
+  private static final int MAX_BINDINGS_PER_STATEMENT = 999;
+
+  /**
+   * The minimum number of index scans for which the scans of a target are run as separate
+   * statements and merged, rather than combined into a single UNION statement.
+   */
+  private static final int MIN_INDEX_SCANS_FOR_MERGE = 8;
+
   private final SQLitePersistence db;
   private final LocalSerializer serializer;
   private final String uid;
@@ -104,6 +117,8 @@ final class SQLiteIndexManager implements IndexManager {
             return sequenceCmp;
           });
 
+  private int minIndexScansForMerge = MIN_INDEX_SCANS_FOR_MERGE;
+
   private boolean started = false;
   private int memoizedMaxIndexId = -1;
   private long memoizedMaxSequenceNumber = -1;
@@ -339,6 +354,7 @@ final class SQLiteIndexManager implements IndexManager {
   public IndexType getIndexType(Target target) {
     IndexType result = IndexType.FULL;
     List<Target> subTargets = getSubTargets(target);
+    List<Pair<Target, FieldIndex>> indexes = new ArrayList<>();
 
     for (Target subTarget : subTargets) {
       FieldIndex index = getFieldIndex(subTarget);
@@ -346,19 +362,22 @@ final class SQLiteIndexManager implements IndexManager {
         result = IndexType.NONE;
         break;
       }
+      indexes.add(Pair.create(subTarget, index));
 
       if (index.getSegments().size() < subTarget.getSegmentCount()) {
         result = IndexType.PARTIAL;
       }
     }
 
-    // OR queries have more than one sub-target (one sub-target per DNF term). We currently consider
-    // OR queries that have a `limit` to have a partial index. For such queries we perform sorting
-    // and apply the limit in memory as a post-processing step.
-    // TODO(orquery): If we have a FULL index *and* we have the index that can be used for sorting
-    //  all DNF branches on the same value, we can improve performance by performing a JOIN in SQL.
-    //  See b/235224019 for more information.
-    if (target.hasLimit() && subTargets.size() > 1 && result == IndexType.FULL) {
+    // OR queries have more than one sub-target (one sub-target per DNF term). Unless all DNF terms
+    // are served by the same index, and can therefore be merged in the order of the query (see
+    // getDocumentsMatchingTarget()), we consider OR queries that have a `limit` to have a partial
+    // index. For such queries we perform sorting and apply the limit in memory as a
+    // post-processing step.
+    if (target.hasLimit()
+        && subTargets.size() > 1
+        && result == IndexType.FULL
+        && getMergePrefixSegmentCount(indexes) < 0) {
       return IndexType.PARTIAL;
     }
 
@@ -495,14 +514,20 @@ final class SQLiteIndexManager implements IndexManager {
     return results;
   }
 
+  /**
+   * Sets the minimum number of index scans for which the scans are run as separate statements and
+   * merged.
+   */
+  @VisibleForTesting
+  void setMinIndexScansForMerge(int minIndexScansForMerge) {
+    this.minIndexScansForMerge = minIndexScansForMerge;
+  }
+
   @Override
   public List<DocumentKey> getDocumentsMatchingTarget(Target target) {
     hardAssert(started, "IndexManager not started");
 
-    List<String> subQueries = new ArrayList<>();
-    List<Object> bindings = new ArrayList<>();
     List<Pair<Target, FieldIndex>> indexes = new ArrayList<>();
-
     for (Target subTarget : getSubTargets(target)) {
       FieldIndex fieldIndex = getFieldIndex(subTarget);
       if (fieldIndex == null) {
@@ -511,6 +536,14 @@ final class SQLiteIndexManager implements IndexManager {
       indexes.add(Pair.create(subTarget, fieldIndex));
     }
 
+    // The sub-targets of a limit query can only be merged in the order of the query if they share
+    // an index. If they do, the values of the segments that are fixed by equality filters are
+    // skipped when the results of the sub-targets are compared.
+    int prefixSegmentCount = indexes.size() > 1 ? getMergePrefixSegmentCount(indexes) : 0;
+    boolean mergeInQueryOrder = target.hasLimit() && indexes.size() > 1 && prefixSegmentCount >= 0;
+
+    List<IndexScan> scans = new ArrayList<>();
+    int bindingCount = 0;
     for (Pair<Target, FieldIndex> pair : indexes) {
       Target subTarget = pair.first;
       @NonNull FieldIndex fieldIndex = pair.second;
@@ -535,19 +568,48 @@ final class SQLiteIndexManager implements IndexManager {
       Object[] upperBoundEncoded = encodeBound(fieldIndex, subTarget, upperBound);
       String upperBoundOp = upperBound.isInclusive() ? "<=" : "<";
       Object[] notInEncoded = encodeValues(fieldIndex, subTarget, notInValues);
+      int prefixLength =
+          mergeInQueryOrder ? encodePrefixLength(fieldIndex, lowerBound, prefixSegmentCount) : 0;
 
-      Object[] subQueryAndBindings =
-          generateQueryAndBindings(
-              subTarget,
+      for (IndexScan scan :
+          generateIndexScans(
               fieldIndex.getIndexId(),
               arrayValues,
               lowerBoundEncoded,
               lowerBoundOp,
               upperBoundEncoded,
               upperBoundOp,
-              notInEncoded);
-      subQueries.add(String.valueOf(subQueryAndBindings[0]));
-      bindings.addAll(Arrays.asList(subQueryAndBindings).subList(1, subQueryAndBindings.length));
+              notInEncoded,
+              prefixLength)) {
+        scans.add(scan);
+        bindingCount += scan.bindings.length;
+      }
+    }
+
+    List<DocumentKey> result;
+    if (mergeInQueryOrder
+        || scans.size() >= minIndexScansForMerge
+        || bindingCount > MAX_BINDINGS_PER_STATEMENT) {
+      result = mergeIndexScans(scans, target.getKeyOrder(), target.getLimit());
+    } else {
+      result = unionIndexScans(scans, target);
+    }
+
+    Logger.debug(TAG, "Index scan returned %s documents", result.size());
+    return result;
+  }
+
+  /**
+   * Runs all index scans in a single statement that unions their results. Large unions are hard to
+   * plan for SQLite and cannot stop early for limit queries, which is why many scans are merged
+   * with {@link #mergeIndexScans} instead.
+   */
+  private List<DocumentKey> unionIndexScans(List<IndexScan> scans, Target target) {
+    List<String> subQueries = new ArrayList<>();
+    List<Object> bindings = new ArrayList<>();
+    for (IndexScan scan : scans) {
+      subQueries.add(scan.sql);
+      bindings.addAll(Arrays.asList(scan.bindings));
     }
 
     // We are constructing:
@@ -571,37 +633,143 @@ final class SQLiteIndexManager implements IndexManager {
       queryString = queryString + " LIMIT " + target.getLimit();
     }
 
-    hardAssert(bindings.size() < 1000, "Cannot perform query with more than 999 bind elements");
+    hardAssert(
+        bindings.size() <= MAX_BINDINGS_PER_STATEMENT,
+        "Cannot perform query with more than 999 bind elements");
 
     SQLitePersistence.Query query = db.query(queryString).binding(bindings.toArray());
 
     List<DocumentKey> result = new ArrayList<>();
     query.forEach(
         row -> result.add(DocumentKey.fromPath(ResourcePath.fromString(row.getString(0)))));
+    return result;
+  }
 
-    Logger.debug(TAG, "Index scan returned %s documents", result.size());
+  /**
+   * Runs each index scan as a separate statement and merges their ordered results. Each scan reads
+   * at most {@code limit} rows, since a scan's first {@code limit} rows are distinct documents that
+   * fill the result on their own.
+   */
+  private List<DocumentKey> mergeIndexScans(
+      List<IndexScan> scans, Direction keyOrder, long limit) {
+    String orderBy =
+        " ORDER BY directional_value, document_key "
+            + (keyOrder.equals(Direction.ASCENDING) ? "asc" : "desc")
+            + (limit != Target.NO_LIMIT ? " LIMIT " + limit : "");
+    int keyComparisonModifier = keyOrder.equals(Direction.ASCENDING) ? 1 : -1;
+
+    PriorityQueue<IndexScanRows> queue =
+        new PriorityQueue<>(
+            max(scans.size(), 1), (left, right) -> left.compareTo(right, keyComparisonModifier));
+    for (IndexScan scan : scans) {
+      IndexScanRows rows = new IndexScanRows(scan.prefixLength);
+      db.query(scan.sql + orderBy)
+          .binding(scan.bindings)
+          .forEach(row -> rows.add(row.getString(0), row.getBlob(1)));
+      if (rows.hasNext()) {
+        queue.add(rows);
+      }
+    }
+
+    List<DocumentKey> result = new ArrayList<>();
+    Set<String> seenKeys = new HashSet<>();
+    while (!queue.isEmpty() && (limit == Target.NO_LIMIT || result.size() < limit)) {
+      IndexScanRows rows = queue.poll();
+      String documentKey = rows.documentKey();
+      if (seenKeys.add(documentKey)) {
+        result.add(DocumentKey.fromPath(ResourcePath.fromString(documentKey)));
+      }
+      rows.next();
+      if (rows.hasNext()) {
+        queue.add(rows);
+      }
+    }
     return result;
   }
 
   /**
-   * Constructs a SQL query on 'index_entries' that unions all bounds. Returns an array with SQL
-   * query string as the first element, followed by binding arguments.
+   * Returns the number of leading index segments that are fixed by equality filters in every
+   * sub-target, if the results of the sub-targets can be merged in the order of the target. This
+   * is the case if all sub-targets are fully served by the same index, and the fixed segments are
+   * not ordered by. Returns -1 otherwise.
    */
-  private Object[] generateQueryAndBindings(
-      Target target,
+  private int getMergePrefixSegmentCount(List<Pair<Target, FieldIndex>> indexes) {
+    int prefixSegmentCount = -1;
+    for (Pair<Target, FieldIndex> pair : indexes) {
+      Target subTarget = pair.first;
+      FieldIndex fieldIndex = pair.second;
+      if (fieldIndex.getIndexId() != indexes.get(0).second.getIndexId()
+          || fieldIndex.getSegments().size() < subTarget.getSegmentCount()) {
+        return -1;
+      }
+
+      Set<FieldPath> orderByFields = new HashSet<>();
+      for (OrderBy orderBy : subTarget.getOrderBy()) {
+        orderByFields.add(orderBy.getField());
+      }
+      int equalitySegmentCount = 0;
+      for (FieldIndex.Segment segment : fieldIndex.getDirectionalSegments()) {
+        if (orderByFields.contains(segment.getFieldPath())
+            || !hasEqualityFilter(subTarget, segment.getFieldPath())) {
+          break;
+        }
+        ++equalitySegmentCount;
+      }
+
+      if (prefixSegmentCount == -1) {
+        prefixSegmentCount = equalitySegmentCount;
+      } else if (prefixSegmentCount != equalitySegmentCount) {
+        return -1;
+      }
+    }
+    return prefixSegmentCount;
+  }
+
+  private boolean hasEqualityFilter(Target target, FieldPath fieldPath) {
+    for (Filter filter : target.getFilters()) {
+      if (filter instanceof FieldFilter
+          && ((FieldFilter) filter).getField().equals(fieldPath)
+          && ((FieldFilter) filter).getOperator().equals(FieldFilter.Operator.EQUAL)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the length of the encoded values of the first {@code segmentCount} directional
+   * segments, which equality filters fix to the values of the lower bound.
+   */
+  private int encodePrefixLength(FieldIndex fieldIndex, Bound lowerBound, int segmentCount) {
+    IndexByteEncoder encoder = new IndexByteEncoder();
+    List<FieldIndex.Segment> segments = fieldIndex.getDirectionalSegments();
+    for (int i = 0; i < segmentCount; ++i) {
+      FirestoreIndexValueWriter.INSTANCE.writeIndexValue(
+          lowerBound.getPosition().get(i), encoder.forKind(segments.get(i).getKind()));
+    }
+    return encoder.getEncodedBytes().length;
+  }
+
+  /**
+   * Constructs a range scan on 'index_entries' for each combination of array value and bounds. The
+   * scans are not ordered.
+   */
+  private List<IndexScan> generateIndexScans(
       int indexId,
       @Nullable List<Value> arrayValues,
       Object[] lowerBounds,
       String lowerBoundOp,
       Object[] upperBounds,
       String upperBoundOp,
-      @Nullable Object[] notIn) {
-    // The number of total statements we union together. This is similar to a distributed normal
-    // form, but adapted for array values. We create a single statement per value in an
-    // ARRAY_CONTAINS or ARRAY_CONTAINS_ANY filter combined with the values from the query bounds.
-    int statementCount =
+      @Nullable Object[] notIn,
+      int prefixLength) {
+    // The number of scans. This is similar to a distributed normal form, but adapted for array
+    // values. We create a single scan per value in an ARRAY_CONTAINS or ARRAY_CONTAINS_ANY filter
+    // combined with the values from the query bounds.
+    int scanCount =
         (arrayValues != null ? arrayValues.size() : 1)
             * max(lowerBounds.length, upperBounds.length);
+    int scansPerArrayValue = scanCount / (arrayValues != null ? arrayValues.size() : 1);
 
     // Build the statement. We always include the lower bound, and optionally include an array value
     // and an upper bound.
@@ -611,61 +779,34 @@ final class SQLiteIndexManager implements IndexManager {
     statement.append("AND array_value = ? ");
     statement.append("AND directional_value ").append(lowerBoundOp).append(" ? ");
     statement.append("AND directional_value ").append(upperBoundOp).append(" ? ");
-
-    // Create the UNION statement by repeating the above generated statement.
-    StringBuilder sql = repeatSequence(statement, statementCount, " UNION ");
-
     if (notIn != null) {
-      // Wrap the statement in a NOT-IN call.
-      sql = new StringBuilder("SELECT document_key, directional_value FROM (").append(sql);
-      sql.append(") WHERE directional_value NOT IN (");
-      sql.append(repeatSequence("?", notIn.length, ", "));
-      sql.append(")");
+      statement.append("AND directional_value NOT IN (");
+      statement.append(repeatSequence("?", notIn.length, ", "));
+      statement.append(") ");
     }
+    String sql = statement.toString();
 
-    // Fill in the bind ("question marks") variables.
-    Object[] bindArgs =
-        fillBounds(statementCount, indexId, arrayValues, lowerBounds, upperBounds, notIn);
-
-    List<Object> result = new ArrayList<>();
-    result.add(sql.toString());
-    result.addAll(Arrays.asList(bindArgs));
-    return result.toArray();
-  }
-
-  /** Returns the bind arguments for all {@code statementCount} statements. */
-  private Object[] fillBounds(
-      int statementCount,
-      int indexId,
-      @Nullable List<Value> arrayValues,
-      Object[] lowerBounds,
-      Object[] upperBounds,
-      @Nullable Object[] notInValues) {
-    // Every SQL statement we union together have 5 binds, see generateQueryAndBindings.
-    int bindsPerStatement = 5;
-    int statementsPerArrayValue = statementCount / (arrayValues != null ? arrayValues.size() : 1);
-
-    Object[] bindArgs =
-        new Object
-            [statementCount * bindsPerStatement + (notInValues != null ? notInValues.length : 0)];
-    int offset = 0;
-    for (int i = 0; i < statementCount; ++i) {
+    List<IndexScan> scans = new ArrayList<>();
+    for (int i = 0; i < scanCount; ++i) {
+      // Every scan has 5 binds, followed by the NOT IN values.
+      Object[] bindArgs = new Object[5 + (notIn != null ? notIn.length : 0)];
+      int offset = 0;
       bindArgs[offset++] = indexId;
       bindArgs[offset++] = uid;
       bindArgs[offset++] =
           arrayValues != null
-              ? encodeSingleElement(arrayValues.get(i / statementsPerArrayValue))
+              ? encodeSingleElement(arrayValues.get(i / scansPerArrayValue))
               : EMPTY_BYTES_VALUE;
-
-      bindArgs[offset++] = lowerBounds[i % statementsPerArrayValue];
-      bindArgs[offset++] = upperBounds[i % statementsPerArrayValue];
-    }
-    if (notInValues != null) {
-      for (Object notInValue : notInValues) {
-        bindArgs[offset++] = notInValue;
+      bindArgs[offset++] = lowerBounds[i % scansPerArrayValue];
+      bindArgs[offset++] = upperBounds[i % scansPerArrayValue];
+      if (notIn != null) {
+        for (Object notInValue : notIn) {
+          bindArgs[offset++] = notInValue;
+        }
       }
+      scans.add(new IndexScan(sql, bindArgs, prefixLength));
     }
-    return bindArgs;
+    return scans;
   }
 
   /**
@@ -834,4 +975,70 @@ final class SQLiteIndexManager implements IndexManager {
       memoizeIndex(updatedIndex);
     }
   }
+
+  /** A range scan over the entries of one index, without an ORDER BY clause. */
+  private static class IndexScan {
+    final String sql;
+    final Object[] bindings;
+
+    /** The number of leading bytes of the directional values that are skipped when merging. */
+    final int prefixLength;
+
+    IndexScan(String sql, Object[] bindings, int prefixLength) {
+      this.sql = sql;
+      this.bindings = bindings;
+      this.prefixLength = prefixLength;
+    }
+  }
+
+  /** The ordered rows returned by an {@link IndexScan}, with a position for merging. */
+  private static class IndexScanRows {
+    private final int prefixLength;
+    private final List<String> documentKeys = new ArrayList<>();
+    private final List<byte[]> directionalValues = new ArrayList<>();
+    private int position;
+
+    IndexScanRows(int prefixLength) {
+      this.prefixLength = prefixLength;
+    }
+
+    void add(String documentKey, byte[] directionalValue) {
+      documentKeys.add(documentKey);
+      directionalValues.add(directionalValue);
+    }
+
+    boolean hasNext() {
+      return position < documentKeys.size();
+    }
+
+    void next() {
+      ++position;
+    }
+
+    String documentKey() {
+      return documentKeys.get(position);
+    }
+
+    /**
+     * Compares the current rows of two scans by their directional value without the prefix, and
+     * then by document key.
+     */
+    int compareTo(IndexScanRows other, int keyComparisonModifier) {
+      byte[] left = directionalValues.get(position);
+      byte[] right = other.directionalValues.get(other.position);
+      int leftLength = left.length - prefixLength;
+      int rightLength = right.length - other.prefixLength;
+      for (int i = 0; i < Math.min(leftLength, rightLength); ++i) {
+        int leftByte = left[prefixLength + i] & 0xff;
+        int rightByte = right[other.prefixLength + i] & 0xff;
+        if (leftByte != rightByte) {
+          return leftByte < rightByte ? -1 : 1;
+        }
+      }
+      if (leftLength != rightLength) {
+        return leftLength < rightLength ? -1 : 1;
+      }
+      return documentKey().compareTo(other.documentKey()) * keyComparisonModifier;
+    }
+  }
 }
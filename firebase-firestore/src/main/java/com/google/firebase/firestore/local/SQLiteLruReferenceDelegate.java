@@ -17,6 +17,7 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ListenSequence;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.ResourcePath;
@@ -186,6 +187,132 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     return count[0];
   }
 
+  @Override
+  public int removeTargets(
+      LruGarbageCollector.Cursor cursor, SparseArray<?> activeTargetIds, int limit) {
+    return persistence.getTargetCache().removeQueries(cursor, activeTargetIds, limit);
+  }
+
+  @Override
+  public int removeOrphanedDocuments(LruGarbageCollector.Cursor cursor, int limit) {
+    DocumentKey lastKey = cursor.getLastDocumentKey();
+    String startAfter = lastKey != null ? EncodedPath.encode(lastKey.getPath()) : "";
+
+    List<DocumentKey> docsToRemove = new ArrayList<>();
+    int rowsProcessed =
+        persistence
+            .query(
+                "SELECT path FROM target_documents WHERE path > ? GROUP BY path "
+                    + "HAVING COUNT(*) = 1 AND target_id = 0 AND sequence_number <= ? "
+                    + "ORDER BY path LIMIT ?")
+            .binding(startAfter, cursor.getUpperBound(), limit)
+            .forEach(
+                row -> {
+                  ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
+                  DocumentKey key = DocumentKey.fromPath(path);
+                  cursor.setLastDocumentKey(key);
+                  if (!isPinned(key)) {
+                    docsToRemove.add(key);
+                    removeSentinel(key);
+                  }
+                });
+
+    if (rowsProcessed < limit) {
+      cursor.markDocumentsDone();
+    }
+
+    persistence.getRemoteDocumentCache().removeAll(docsToRemove);
+    return docsToRemove.size();
+  }
+
+  @Override
+  public void forEachTargetSequenceNumber(
+      LruGarbageCollector.Cursor cursor, int limit, Consumer<Long> consumer) {
+    int rowsProcessed =
+        persistence
+            .query(
+                "SELECT target_id, last_listen_sequence_number FROM targets "
+                    + "WHERE target_id > ? ORDER BY target_id LIMIT ?")
+            .binding(cursor.getLastTargetId(), limit)
+            .forEach(
+                row -> {
+                  cursor.setLastTargetId(row.getInt(0));
+                  consumer.accept(row.getLong(1));
+                });
+
+    if (rowsProcessed < limit) {
+      cursor.markTargetsDone();
+    }
+  }
+
+  @Override
+  public void forEachOrphanedDocumentSequenceNumber(
+      LruGarbageCollector.Cursor cursor, int limit, Consumer<Long> consumer) {
+    DocumentKey lastKey = cursor.getLastDocumentKey();
+    String startAfter = lastKey != null ? EncodedPath.encode(lastKey.getPath()) : "";
+
+    int rowsProcessed =
+        persistence
+            .query(
+                "SELECT path, sequence_number FROM target_documents WHERE path > ? GROUP BY path "
+                    + "HAVING COUNT(*) = 1 AND target_id = 0 ORDER BY path LIMIT ?")
+            .binding(startAfter, limit)
+            .forEach(
+                row -> {
+                  ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
+                  cursor.setLastDocumentKey(DocumentKey.fromPath(path));
+                  consumer.accept(row.getLong(1));
+                });
+
+    if (rowsProcessed < limit) {
+      cursor.markDocumentsDone();
+    }
+  }
+
+  @Nullable
+  @Override
+  public LruGarbageCollector.Cursor getGarbageCollectionCursor() {
+    return persistence
+        .query(
+            "SELECT sequence_numbers, upper_bound, last_target_id, targets_done, "
+                + "last_document_path, documents_done FROM lru_garbage_collection")
+        .firstValue(
+            row -> {
+              LruGarbageCollector.Cursor cursor =
+                  new LruGarbageCollector.Cursor(row.getInt(0), row.getLong(1));
+              cursor.setLastTargetId(row.getInt(2));
+              if (row.getInt(3) != 0) {
+                cursor.markTargetsDone();
+              }
+              if (!row.isNull(4)) {
+                ResourcePath path = EncodedPath.decodeResourcePath(row.getString(4));
+                cursor.setLastDocumentKey(DocumentKey.fromPath(path));
+              }
+              if (row.getInt(5) != 0) {
+                cursor.markDocumentsDone();
+              }
+              return cursor;
+            });
+  }
+
+  @Override
+  public void setGarbageCollectionCursor(@Nullable LruGarbageCollector.Cursor cursor) {
+    persistence.execute("DELETE FROM lru_garbage_collection");
+    if (cursor == null) {
+      return;
+    }
+    DocumentKey lastKey = cursor.getLastDocumentKey();
+    persistence.execute(
+        "INSERT INTO lru_garbage_collection (sequence_numbers, upper_bound, last_target_id, "
+            + "targets_done, last_document_path, documents_done) VALUES (?, ?, ?, ?, ?, ?)",
+        cursor.getSequenceNumbers(),
+        cursor.getUpperBound(),
+        cursor.getLastTargetId(),
+        cursor.areTargetsDone() ? 1 : 0,
+        lastKey != null ? EncodedPath.encode(lastKey.getPath()) : null,
+        cursor.areDocumentsDone() ? 1 : 0);
+  }
+
   @Override
   public void removeTarget(TargetData targetData) {
     TargetData updated = targetData.withSequenceNumber(getCurrentSequenceNumber());
@@ -209,4 +336,9 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
   public long getByteSize() {
     return persistence.getByteSize();
   }
+
+  @Override
+  public long getUsedByteSize() {
+    return persistence.getUsedByteSize();
+  }
 }
@@ -20,12 +20,15 @@ import static com.google.firebase.firestore.util.Util.repeatSequence;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.CursorWindow;
 import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteDatabaseLockedException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
 import android.database.sqlite.SQLiteStatement;
 import android.database.sqlite.SQLiteTransactionListener;
 import androidx.annotation.Nullable;
@@ -46,7 +49,13 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A SQLite-backed instance of Persistence.
@@ -60,6 +69,13 @@ public final class SQLitePersistence extends Persistence {
    */
   public static final int MAX_ARGS = 900;
 
+  /**
+   * The default number of read-only connections used for concurrent reads. Concurrent reads are
+   * disabled by default, since they require the database to be opened without an exclusive lock,
+   * which otherwise detects the use of persistence from multiple processes.
+   */
+  public static final int DEFAULT_READER_CONNECTION_COUNT = 0;
+
   /**
    * Creates the database name that is used to identify the database to be used with a Firestore
    * instance. Note that this needs to stay stable across releases. The database is uniquely
@@ -105,6 +121,43 @@ public final class SQLitePersistence extends Persistence {
         public void onRollback() {}
       };
 
+  private final int readerConnectionCount;
+  private final boolean readOnly;
+  @Nullable private SQLiteReaderPool readerPool;
+
+  /** The number of compiled statements that {@link #prepare} keeps for reuse. */
+  private static final int STATEMENT_CACHE_SIZE = 64;
+
+  /**
+   * Statements compiled by {@link #prepare}, keyed by their SQL, in least recently used order.
+   * Evicted statements are closed once the current transaction ends, since callers may still hold
+   * on to them until then.
+   */
+  private final Map<String, SQLiteStatement> statementCache =
+      new LinkedHashMap<String, SQLiteStatement>(
+          /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+          if (size() <= STATEMENT_CACHE_SIZE) {
+            return false;
+          }
+          evictedStatements.add(eldest.getValue());
+          return true;
+        }
+      };
+
+  /** Statements that were evicted from statementCache and still need to be closed. */
+  private final List<SQLiteStatement> evictedStatements = new ArrayList<>();
+
+  /** The SQL of the statements compiled by {@link #prepare}, for statement profiling. */
+  private final Map<SQLiteStatement, String> statementSql = new WeakHashMap<>();
+
+  /** The cursor window reused by consecutive queries, or null for read-only views. */
+  @Nullable private final ReusableCursorWindow reusableWindow;
+
+  /** Execution statistics per SQL statement, or null if statement profiling is disabled. */
+  @Nullable private volatile ConcurrentMap<String, StatementStats> statementStats;
+
   private SQLiteDatabase db;
   private boolean started;
 
@@ -114,20 +167,79 @@ public final class SQLitePersistence extends Persistence {
       DatabaseId databaseId,
       LocalSerializer serializer,
       LruGarbageCollector.Params params) {
+    this(
+        context,
+        persistenceKey,
+        databaseId,
+        serializer,
+        params,
+        DEFAULT_READER_CONNECTION_COUNT);
+  }
+
+  /**
+   * Creates a SQLitePersistence that serves {@link #runReadOnlyTransaction} from up to {@code
+   * readerConnectionCount} read-only connections. If the count is positive, the database is opened
+   * in write-ahead logging mode and without an exclusive lock.
+   */
+  public SQLitePersistence(
+      Context context,
+      String persistenceKey,
+      DatabaseId databaseId,
+      LocalSerializer serializer,
+      LruGarbageCollector.Params params,
+      int readerConnectionCount) {
     this(
         serializer,
         params,
-        new OpenHelper(context, serializer, databaseName(persistenceKey, databaseId)));
+        new OpenHelper(
+            context,
+            serializer,
+            databaseName(persistenceKey, databaseId),
+            SQLiteSchema.VERSION,
+            /* writeAheadLoggingEnabled= */ readerConnectionCount > 0),
+        readerConnectionCount);
   }
 
   public SQLitePersistence(
       LocalSerializer serializer, LruGarbageCollector.Params params, OpenHelper openHelper) {
+    this(serializer, params, openHelper, DEFAULT_READER_CONNECTION_COUNT);
+  }
+
+  SQLitePersistence(
+      LocalSerializer serializer,
+      LruGarbageCollector.Params params,
+      OpenHelper openHelper,
+      int readerConnectionCount) {
     this.opener = openHelper;
     this.serializer = serializer;
     this.targetCache = new SQLiteTargetCache(this, this.serializer);
     this.bundleCache = new SQLiteBundleCache(this, this.serializer);
     this.remoteDocumentCache = new SQLiteRemoteDocumentCache(this, this.serializer);
     this.referenceDelegate = new SQLiteLruReferenceDelegate(this, params);
+    this.readerConnectionCount = readerConnectionCount;
+    this.readOnly = false;
+    this.reusableWindow = new ReusableCursorWindow();
+  }
+
+  /**
+   * Creates a read-only view of {@code persistence} whose components read from {@code
+   * readerConnection}. The view is started and must not be shut down.
+   */
+  private SQLitePersistence(SQLitePersistence persistence, SQLiteDatabase readerConnection) {
+    this.opener = persistence.opener;
+    this.serializer = persistence.serializer;
+    this.targetCache = new SQLiteTargetCache(this, this.serializer);
+    this.bundleCache = new SQLiteBundleCache(this, this.serializer);
+    this.remoteDocumentCache = new SQLiteRemoteDocumentCache(this, this.serializer);
+    this.referenceDelegate =
+        new SQLiteLruReferenceDelegate(this, LruGarbageCollector.Params.Disabled());
+    this.readerConnectionCount = 0;
+    this.readOnly = true;
+    // Read-only views are used by a single transaction, so they would not reuse a window much.
+    this.reusableWindow = null;
+    this.statementStats = persistence.statementStats;
+    this.db = readerConnection;
+    this.started = true;
   }
 
   @Override
@@ -150,12 +262,22 @@ public final class SQLitePersistence extends Persistence {
     }
     targetCache.start();
     referenceDelegate.start(targetCache.getHighestListenSequenceNumber());
+    if (readerConnectionCount > 0) {
+      readerPool = new SQLiteReaderPool(db.getPath(), readerConnectionCount);
+    }
   }
 
   @Override
   public void shutdown() {
     hardAssert(started, "SQLitePersistence shutdown without start!");
+    hardAssert(!readOnly, "Read-only SQLitePersistence cannot be shut down");
     started = false;
+    if (readerPool != null) {
+      readerPool.close();
+      readerPool = null;
+    }
+    closeStatements();
+    reusableWindow.close();
     db.close();
     db = null;
   }
@@ -207,6 +329,11 @@ public final class SQLitePersistence extends Persistence {
 
   @Override
   void runTransaction(String action, Runnable operation) {
+    if (readOnly) {
+      // Read-only views already run inside the snapshot of runReadOnlyTransaction().
+      operation.run();
+      return;
+    }
     Logger.debug(TAG, "Starting transaction: %s", action);
     db.beginTransactionWithListener(transactionListener);
     try {
@@ -216,11 +343,15 @@ public final class SQLitePersistence extends Persistence {
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
+      onTransactionEnded();
     }
   }
 
   @Override
   <T> T runTransaction(String action, Supplier<T> operation) {
+    if (readOnly) {
+      return operation.get();
+    }
     Logger.debug(TAG, "Starting transaction: %s", action);
     T value = null;
     db.beginTransactionWithListener(transactionListener);
@@ -231,10 +362,63 @@ public final class SQLitePersistence extends Persistence {
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
+      onTransactionEnded();
     }
     return value;
   }
 
+  /** Closes the statements evicted from the statement cache once no transaction is running. */
+  private void onTransactionEnded() {
+    if (!evictedStatements.isEmpty() && !db.inTransaction()) {
+      closeEvictedStatements();
+    }
+  }
+
+  private void closeEvictedStatements() {
+    for (SQLiteStatement statement : evictedStatements) {
+      statementSql.remove(statement);
+      statement.close();
+    }
+    evictedStatements.clear();
+  }
+
+  /** Closes all statements compiled by {@link #prepare}. */
+  private void closeStatements() {
+    evictedStatements.addAll(statementCache.values());
+    statementCache.clear();
+    closeEvictedStatements();
+  }
+
+  @Override
+  boolean supportsConcurrentReads() {
+    return readerPool != null;
+  }
+
+  @Override
+  <T> T runReadOnlyTransaction(String action, Function<Persistence, T> operation) {
+    SQLiteReaderPool pool = readerPool;
+    hardAssert(pool != null, "Concurrent reads are not enabled");
+    Logger.debug(TAG, "Starting read-only transaction: %s", action);
+    SQLiteDatabase connection = pool.acquire();
+    SQLitePersistence snapshot = new SQLitePersistence(this, connection);
+    try {
+      // SQLiteDatabase.beginTransaction() starts a write transaction, which a read-only connection
+      // cannot hold, and Android turns every BEGIN statement into one. A savepoint that is created
+      // outside of a transaction instead starts a deferred transaction, which acquires a read
+      // snapshot with its first query and keeps it until it is released, so that all queries see
+      // the same data.
+      connection.execSQL("SAVEPOINT read_snapshot");
+      try {
+        return operation.apply(snapshot);
+      } finally {
+        connection.execSQL("RELEASE read_snapshot");
+      }
+    } finally {
+      snapshot.closeStatements();
+      pool.release(connection);
+    }
+  }
+
   public static void clearPersistence(Context context, DatabaseId databaseId, String persistenceKey)
       throws FirebaseFirestoreException {
     String databaseName = SQLitePersistence.databaseName(persistenceKey, databaseId);
@@ -259,6 +443,14 @@ public final class SQLitePersistence extends Persistence {
     return getPageCount() * getPageSize();
   }
 
+  /**
+   * Returns the number of bytes in database pages that hold data. Pages that were freed by deletes
+   * are not counted, even though they remain part of the database file until it is vacuumed.
+   */
+  long getUsedByteSize() {
+    return (getPageCount() - getFreelistCount()) * getPageSize();
+  }
+
   /**
    * Gets the page size of the database. Typically 4096.
    *
@@ -278,6 +470,15 @@ public final class SQLitePersistence extends Persistence {
     return query("PRAGMA page_count").firstValue(row -> row.getLong(/*column=*/ 0));
   }
 
+  /**
+   * Gets the number of unused pages in the database file.
+   *
+   * @see "https://www.sqlite.org/pragma.html#pragma_freelist_count"
+   */
+  private long getFreelistCount() {
+    return query("PRAGMA freelist_count").firstValue(row -> row.getLong(/*column=*/ 0));
+  }
+
   /**
    * A SQLiteOpenHelper that configures database connections just the way we like them, delegating
    * to SQLiteSchema to actually do the work of migration.
@@ -300,17 +501,30 @@ public final class SQLitePersistence extends Persistence {
   static class OpenHelper extends SQLiteOpenHelper {
 
     private final LocalSerializer serializer;
+    private final boolean writeAheadLoggingEnabled;
     private boolean configured;
 
-    private OpenHelper(Context context, LocalSerializer serializer, String databaseName) {
-      this(context, serializer, databaseName, SQLiteSchema.VERSION);
+    @VisibleForTesting
+    OpenHelper(
+        Context context, LocalSerializer serializer, String databaseName, int schemaVersion) {
+      this(
+          context,
+          serializer,
+          databaseName,
+          schemaVersion,
+          /* writeAheadLoggingEnabled= */ false);
     }
 
     @VisibleForTesting
     OpenHelper(
-        Context context, LocalSerializer serializer, String databaseName, int schemaVersion) {
+        Context context,
+        LocalSerializer serializer,
+        String databaseName,
+        int schemaVersion,
+        boolean writeAheadLoggingEnabled) {
       super(context, databaseName, null, schemaVersion);
       this.serializer = serializer;
+      this.writeAheadLoggingEnabled = writeAheadLoggingEnabled;
     }
 
     @Override
@@ -318,8 +532,15 @@ public final class SQLitePersistence extends Persistence {
       // Note that this is only called automatically by the SQLiteOpenHelper base class on Jelly
       // Bean and above.
       configured = true;
-      Cursor cursor = db.rawQuery("PRAGMA locking_mode = EXCLUSIVE", new String[0]);
-      cursor.close();
+      // Keep the statements that Firestore runs repeatedly compiled on the connection.
+      db.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+      if (writeAheadLoggingEnabled) {
+        // Readers on other connections need shared access to the database and its WAL index.
+        db.enableWriteAheadLogging();
+      } else {
+        Cursor cursor = db.rawQuery("PRAGMA locking_mode = EXCLUSIVE", new String[0]);
+        cursor.close();
+      }
     }
 
     /**
@@ -374,14 +595,26 @@ public final class SQLitePersistence extends Persistence {
    * Execute the given non-query SQL statement. Equivalent to {@code execute(prepare(sql), args)}.
    */
   void execute(String sql, Object... args) {
-    // Note that unlike db.query and friends, execSQL already takes Object[] bindArgs so there's no
-    // need to go through the bind dance below.
-    db.execSQL(sql, args);
+    execute(prepare(sql), args);
   }
 
-  /** Prepare the given non-query SQL statement. */
+  /**
+   * Prepare the given non-query SQL statement. Statements are cached, so preparing the same SQL
+   * again returns the same statement without compiling it again.
+   */
   SQLiteStatement prepare(String sql) {
-    return db.compileStatement(sql);
+    SQLiteStatement statement = statementCache.get(sql);
+    if (statement == null) {
+      long startTime = System.nanoTime();
+      statement = db.compileStatement(sql);
+      statementCache.put(sql, statement);
+      statementSql.put(statement, sql);
+      ConcurrentMap<String, StatementStats> stats = statementStats;
+      if (stats != null) {
+        StatementStats.record(stats, sql, System.nanoTime() - startTime, /* compiled= */ true);
+      }
+    }
+    return statement;
   }
 
   /**
@@ -390,9 +623,18 @@ public final class SQLitePersistence extends Persistence {
    * @return The number of rows affected.
    */
   int execute(SQLiteStatement statement, Object... args) {
+    ConcurrentMap<String, StatementStats> stats = statementStats;
+    long startTime = stats != null ? System.nanoTime() : 0;
     statement.clearBindings();
     bind(statement, args);
-    return statement.executeUpdateDelete();
+    int rowsAffected = statement.executeUpdateDelete();
+    if (stats != null) {
+      String sql = statementSql.get(statement);
+      if (sql != null) {
+        StatementStats.record(stats, sql, System.nanoTime() - startTime, /* compiled= */ false);
+      }
+    }
+    return rowsAffected;
   }
 
   /**
@@ -400,7 +642,24 @@ public final class SQLitePersistence extends Persistence {
    * chaining further methods off the query.
    */
   Query query(String sql) {
-    return new Query(db, sql);
+    return new Query(db, sql, reusableWindow, statementStats);
+  }
+
+  /**
+   * Enables or disables the collection of execution statistics per SQL statement. Enabling
+   * profiling resets the statistics collected so far.
+   */
+  public void setStatementProfilingEnabled(boolean enabled) {
+    statementStats = enabled ? new ConcurrentHashMap<>() : null;
+  }
+
+  /**
+   * Returns the execution statistics per SQL statement that were collected since statement
+   * profiling was enabled, or an empty map if profiling is disabled.
+   */
+  public Map<String, StatementStats> getStatementStats() {
+    Map<String, StatementStats> stats = statementStats;
+    return stats != null ? Collections.unmodifiableMap(stats) : Collections.emptyMap();
   }
 
   /**
@@ -443,11 +702,23 @@ public final class SQLitePersistence extends Persistence {
   static class Query {
     private final SQLiteDatabase db;
     private final String sql;
-    private CursorFactory cursorFactory;
+    @Nullable private final ReusableCursorWindow reusableWindow;
+    @Nullable private final ConcurrentMap<String, StatementStats> statementStats;
+    @Nullable private Object[] args;
 
     Query(SQLiteDatabase db, String sql) {
+      this(db, sql, /* reusableWindow= */ null, /* statementStats= */ null);
+    }
+
+    private Query(
+        SQLiteDatabase db,
+        String sql,
+        @Nullable ReusableCursorWindow reusableWindow,
+        @Nullable ConcurrentMap<String, StatementStats> statementStats) {
       this.db = db;
       this.sql = sql;
+      this.reusableWindow = reusableWindow;
+      this.statementStats = statementStats;
     }
 
     /**
@@ -460,24 +731,7 @@ public final class SQLitePersistence extends Persistence {
      * @return this Query object, for chaining.
      */
     Query binding(Object... args) {
-      // This is gross, but the best way to preserve both the readability of the caller (since
-      // values don't have be arbitrarily converted to Strings) and allows BLOBs to be used as
-      // bind arguments.
-      //
-      // The trick here is that since db.query and db.rawQuery take String[] bind arguments, we
-      // need some other way to bind. db.execSQL takes Object[] bind arguments but doesn't actually
-      // allow querying because it doesn't return a Cursor. SQLiteQuery does allow typed bind
-      // arguments, but isn't directly usable.
-      //
-      // However, you can get to the SQLiteQuery indirectly by supplying a CursorFactory to
-      // db.rawQueryWithFactory. The factory's newCursor method will be called with a new
-      // SQLiteQuery, and now we can bind with typed values.
-
-      cursorFactory =
-          (db1, masterQuery, editTable, query) -> {
-            bind(query, args);
-            return new SQLiteCursor(masterQuery, editTable, query);
-          };
+      this.args = args;
       return this;
     }
 
@@ -489,12 +743,25 @@ public final class SQLitePersistence extends Persistence {
      */
     int forEach(Consumer<Cursor> consumer) {
       int rowsProcessed = 0;
+      // Only the time spent in SQLite is recorded, not the time spent in the consumer.
+      long startTime = statementStats != null ? System.nanoTime() : 0;
+      long durationNanos = 0;
       try (Cursor cursor = startQuery()) {
         while (cursor.moveToNext()) {
+          if (statementStats != null) {
+            durationNanos += System.nanoTime() - startTime;
+          }
           ++rowsProcessed;
           consumer.accept(cursor);
+          if (statementStats != null) {
+            startTime = System.nanoTime();
+          }
         }
       }
+      if (statementStats != null) {
+        durationNanos += System.nanoTime() - startTime;
+        StatementStats.record(statementStats, sql, durationNanos, /* compiled= */ false);
+      }
       return rowsProcessed;
     }
 
@@ -505,12 +772,15 @@ public final class SQLitePersistence extends Persistence {
      * @return The number of rows processed (either zero or one).
      */
     int first(Consumer<Cursor> consumer) {
+      long startTime = statementStats != null ? System.nanoTime() : 0;
       try (Cursor cursor = startQuery()) {
         if (cursor.moveToFirst()) {
           consumer.accept(cursor);
           return 1;
         }
         return 0;
+      } finally {
+        recordSince(startTime);
       }
     }
 
@@ -524,28 +794,203 @@ public final class SQLitePersistence extends Persistence {
      */
     @Nullable
     <T> T firstValue(Function<Cursor, T> function) {
+      long startTime = statementStats != null ? System.nanoTime() : 0;
       try (Cursor cursor = startQuery()) {
         if (cursor.moveToFirst()) {
           return function.apply(cursor);
         }
         return null;
+      } finally {
+        recordSince(startTime);
       }
     }
 
     /** Runs the query and returns true if the result was nonempty. */
     boolean isEmpty() {
+      long startTime = statementStats != null ? System.nanoTime() : 0;
       try (Cursor cursor = startQuery()) {
         return !cursor.moveToFirst();
+      } finally {
+        recordSince(startTime);
+      }
+    }
+
+    private void recordSince(long startTime) {
+      if (statementStats != null) {
+        StatementStats.record(
+            statementStats, sql, System.nanoTime() - startTime, /* compiled= */ false);
       }
     }
 
-    /** Starts the query against the database, supplying binding arguments if they exist. */
+    /**
+     * Starts the query against the database, supplying binding arguments if they exist. The
+     * cursor fills the reusable window if it is not used by another query.
+     */
     private Cursor startQuery() {
-      if (cursorFactory != null) {
+      // This is gross, but the best way to preserve both the readability of the caller (since
+      // values don't have be arbitrarily converted to Strings) and allows BLOBs to be used as
+      // bind arguments.
+      //
+      // The trick here is that since db.query and db.rawQuery take String[] bind arguments, we
+      // need some other way to bind. db.execSQL takes Object[] bind arguments but doesn't actually
+      // allow querying because it doesn't return a Cursor. SQLiteQuery does allow typed bind
+      // arguments, but isn't directly usable.
+      //
+      // However, you can get to the SQLiteQuery indirectly by supplying a CursorFactory to
+      // db.rawQueryWithFactory. The factory's newCursor method will be called with a new
+      // SQLiteQuery, and now we can bind with typed values.
+      @Nullable CursorWindow window = reusableWindow != null ? reusableWindow.acquire() : null;
+      CursorFactory cursorFactory =
+          (db1, masterQuery, editTable, query) -> {
+            if (args != null) {
+              bind(query, args);
+            }
+            return window != null
+                ? new ReusedWindowCursor(masterQuery, editTable, query, reusableWindow, window)
+                : new SQLiteCursor(masterQuery, editTable, query);
+          };
+      try {
         return db.rawQueryWithFactory(cursorFactory, sql, null, null);
+      } catch (RuntimeException e) {
+        if (window != null) {
+          reusableWindow.release();
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * A cursor window that consecutive queries fill instead of each allocating a window of their
+   * own. A query that runs while the window is in use, for example from the consumer of another
+   * query, falls back to a window of its own.
+   */
+  private static final class ReusableCursorWindow {
+    @Nullable private CursorWindow window;
+    private boolean inUse;
+    private boolean closed;
+
+    /** Returns the window, or null if it is in use or closed. */
+    @Nullable
+    synchronized CursorWindow acquire() {
+      if (inUse || closed) {
+        return null;
+      }
+      if (window == null) {
+        window = new CursorWindow("firestore");
+      }
+      inUse = true;
+      return window;
+    }
+
+    synchronized void release() {
+      inUse = false;
+      if (closed) {
+        closeWindow();
+      }
+    }
+
+    /**
+     * Releases the memory of the window. If a cursor still uses the window, it is released when the
+     * cursor is closed.
+     */
+    synchronized void close() {
+      closed = true;
+      if (!inUse) {
+        closeWindow();
+      }
+    }
+
+    private void closeWindow() {
+      if (window != null) {
+        window.close();
+        window = null;
+      }
+    }
+  }
+
+  /** A cursor that hands its window back to its {@link ReusableCursorWindow} when it is closed. */
+  private static final class ReusedWindowCursor extends SQLiteCursor {
+    private final ReusableCursorWindow reusableWindow;
+    private final CursorWindow window;
+
+    ReusedWindowCursor(
+        SQLiteCursorDriver driver,
+        String editTable,
+        SQLiteQuery query,
+        ReusableCursorWindow reusableWindow,
+        CursorWindow window) {
+      super(driver, editTable, query);
+      this.reusableWindow = reusableWindow;
+      this.window = window;
+      // SQLiteCursor clears an existing window before filling it, rather than creating a new one.
+      setWindow(window);
+    }
+
+    @Override
+    protected void closeWindow() {
+      if (mWindow == window) {
+        mWindow = null;
+        reusableWindow.release();
       } else {
-        return db.rawQuery(sql, null);
+        super.closeWindow();
+      }
+    }
+  }
+
+  /** Execution statistics of a SQL statement, collected while statement profiling is enabled. */
+  public static final class StatementStats {
+    private long executionCount;
+    private long compileCount;
+    private long durationNanos;
+
+    static void record(
+        ConcurrentMap<String, StatementStats> statementStats,
+        String sql,
+        long durationNanos,
+        boolean compiled) {
+      StatementStats stats = statementStats.get(sql);
+      if (stats == null) {
+        StatementStats newStats = new StatementStats();
+        stats = statementStats.putIfAbsent(sql, newStats);
+        if (stats == null) {
+          stats = newStats;
+        }
       }
+      synchronized (stats) {
+        if (compiled) {
+          ++stats.compileCount;
+        } else {
+          ++stats.executionCount;
+          stats.durationNanos += durationNanos;
+        }
+      }
+    }
+
+    /** Returns how often the statement was executed. */
+    public synchronized long getExecutionCount() {
+      return executionCount;
+    }
+
+    /** Returns how often the statement was compiled into a {@link SQLiteStatement}. */
+    public synchronized long getCompileCount() {
+      return compileCount;
+    }
+
+    /** Returns the total time spent in SQLite to execute the statement. */
+    public synchronized long getTotalDurationMs() {
+      return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "StatementStats{executionCount="
+          + executionCount
+          + ", compileCount="
+          + compileCount
+          + ", totalDurationMs="
+          + getTotalDurationMs()
+          + '}';
     }
   }
 
@@ -605,6 +1050,13 @@ public final class SQLitePersistence extends Persistence {
 
     private int subqueriesPerformed = 0;
     private final Iterator<Object> argsIter;
+    // The number of arguments in {@link argsIter} that have not been bound yet.
+    private int remainingArgs;
+
+    // The SQL of the last subquery and its number of placeholders. All but the last subquery have
+    // the same number of placeholders, so they share the SQL and its compiled statement.
+    @Nullable private String subquerySql;
+    private int subqueryPlaceholders;
 
     // Limit for the number of host parameters beyond which a query will be split into several
     // subqueries. Deliberately set way below 999 as a safety measure because this class doesn't
@@ -631,6 +1083,7 @@ public final class SQLitePersistence extends Persistence {
       this.tail = tail;
 
       argsIter = allArgs.iterator();
+      remainingArgs = allArgs.size();
     }
 
     /**
@@ -651,34 +1104,48 @@ public final class SQLitePersistence extends Persistence {
       this.tail = tail;
 
       argsIter = allArgs.iterator();
+      remainingArgs = allArgs.size();
     }
 
     /** Whether {@link #performNextSubquery} can be called. */
     boolean hasMoreSubqueries() {
-      return argsIter.hasNext();
+      return remainingArgs > 0;
     }
 
     private Object[] getNextSubqueryArgs() {
-      List<Object> subqueryArgs = new ArrayList<>(argsHead);
-      for (int i = 0; argsIter.hasNext() && i < LIMIT - argsHead.size(); i++) {
-        subqueryArgs.add(argsIter.next());
+      int count = Math.min(remainingArgs, LIMIT - argsHead.size());
+      Object[] subqueryArgs = new Object[argsHead.size() + count];
+      int i = 0;
+      for (Object arg : argsHead) {
+        subqueryArgs[i++] = arg;
+      }
+      for (int j = 0; j < count; j++) {
+        subqueryArgs[i++] = argsIter.next();
+      }
+      remainingArgs -= count;
+      return subqueryArgs;
+    }
+
+    private String getSubquerySql(int placeholders) {
+      if (subquerySql == null || subqueryPlaceholders != placeholders) {
+        subquerySql = head + repeatSequence("?", placeholders, ", ") + tail;
+        subqueryPlaceholders = placeholders;
       }
-      return subqueryArgs.toArray();
+      return subquerySql;
     }
 
     /** Performs the next subquery and returns a {@link Query} object for method chaining. */
     Query performNextSubquery() {
       ++subqueriesPerformed;
       Object[] subqueryArgs = getNextSubqueryArgs();
-      return db.query(head + repeatSequence("?", subqueryArgs.length, ", ") + tail)
-          .binding(subqueryArgs);
+      return db.query(getSubquerySql(subqueryArgs.length)).binding(subqueryArgs);
     }
 
     /** Executes the next subquery. */
     void executeNextSubquery() {
       ++subqueriesPerformed;
       Object[] subqueryArgs = getNextSubqueryArgs();
-      db.execute(head + repeatSequence("?", subqueryArgs.length, ", ") + tail, subqueryArgs);
+      db.execute(getSubquerySql(subqueryArgs.length), subqueryArgs);
     }
 
     /** How many subqueries were performed. */
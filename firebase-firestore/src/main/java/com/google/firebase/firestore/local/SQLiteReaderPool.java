@@ -0,0 +1,105 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.util.Assert.fail;
+import static com.google.firebase.firestore.util.Assert.hardAssert;
+
+import android.database.sqlite.SQLiteDatabase;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of read-only connections to a SQLite database in write-ahead logging mode.
+ *
+ * <p>In WAL mode, readers do not block the writer and the writer does not block readers. Each
+ * reader sees the database as of the start of its read transaction, so the connections in this
+ * pool can serve reads while {@link SQLitePersistence} commits writes on its own connection.
+ * Connections are opened lazily, up to the maximum size of the pool.
+ */
+final class SQLiteReaderPool {
+  private static final long ACQUIRE_POLL_INTERVAL_MS = 100;
+
+  private final String databasePath;
+  private final int maxConnections;
+  private final BlockingQueue<SQLiteDatabase> idleConnections = new LinkedBlockingQueue<>();
+  private int openConnections = 0;
+  private boolean closed = false;
+
+  SQLiteReaderPool(String databasePath, int maxConnections) {
+    hardAssert(maxConnections > 0, "A reader pool needs at least one connection");
+    this.databasePath = databasePath;
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Returns an idle connection, opening a new one if the pool is not yet full. Blocks until a
+   * connection is released if all connections are in use.
+   */
+  SQLiteDatabase acquire() {
+    SQLiteDatabase connection = idleConnections.poll();
+    if (connection != null) {
+      return connection;
+    }
+
+    synchronized (this) {
+      hardAssert(!closed, "SQLiteReaderPool used after close");
+      if (openConnections < maxConnections) {
+        ++openConnections;
+        connection =
+            SQLiteDatabase.openDatabase(
+                databasePath, /* factory= */ null, SQLiteDatabase.OPEN_READONLY);
+        connection.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+        return connection;
+      }
+    }
+
+    try {
+      while (true) {
+        connection = idleConnections.poll(ACQUIRE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (connection != null) {
+          return connection;
+        }
+        synchronized (this) {
+          hardAssert(!closed, "SQLiteReaderPool closed while waiting for a connection");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw fail(e, "Interrupted while waiting for a reader connection");
+    }
+  }
+
+  /** Returns a connection obtained from {@link #acquire} to the pool. */
+  void release(SQLiteDatabase connection) {
+    synchronized (this) {
+      if (closed) {
+        connection.close();
+      } else {
+        idleConnections.add(connection);
+      }
+    }
+  }
+
+  /** Closes all idle connections. Connections in use are closed when they are released. */
+  synchronized void close() {
+    closed = true;
+    SQLiteDatabase connection;
+    while ((connection = idleConnections.poll()) != null) {
+      connection.close();
+    }
+  }
+}
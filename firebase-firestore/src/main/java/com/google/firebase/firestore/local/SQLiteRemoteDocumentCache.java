@@ -15,7 +15,6 @@
 package com.google.firebase.firestore.local;
 
 import static com.google.firebase.firestore.model.DocumentCollections.emptyDocumentMap;
-import static com.google.firebase.firestore.util.Assert.fail;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 import static com.google.firebase.firestore.util.Util.firstNEntries;
 import static com.google.firebase.firestore.util.Util.repeatSequence;
@@ -31,10 +30,8 @@ import com.google.firebase.firestore.model.FieldIndex.IndexOffset;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
-import com.google.firebase.firestore.util.BackgroundQueue;
 import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Function;
-import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,15 +48,31 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
   /** The number of bind args per collection group in {@link #getAll(String, IndexOffset, int)} */
   @VisibleForTesting static final int BINDS_PER_STATEMENT = 9;
 
+  /** The default number of threads (including the querying thread) that decode documents. */
+  private static final int DEFAULT_DECODE_WORKER_COUNT = 4;
+
   private final SQLitePersistence db;
   private final LocalSerializer serializer;
   private IndexManager indexManager;
+  private Executor decodeExecutor = Executors.BACKGROUND_EXECUTOR;
+  private int decodeWorkerCount = DEFAULT_DECODE_WORKER_COUNT;
 
   SQLiteRemoteDocumentCache(SQLitePersistence persistence, LocalSerializer serializer) {
     this.db = persistence;
     this.serializer = serializer;
   }
 
+  /**
+   * Sets the executor and the number of threads used to decode documents. A worker count of 1
+   * decodes all documents on the querying thread.
+   */
+  @VisibleForTesting
+  void setDecodeExecutor(Executor executor, int workerCount) {
+    hardAssert(workerCount > 0, "Worker count must be positive");
+    this.decodeExecutor = executor;
+    this.decodeWorkerCount = workerCount;
+  }
+
   @Override
   public void setIndexManager(IndexManager indexManager) {
     this.indexManager = indexManager;
@@ -136,13 +149,11 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
             bindVars,
             ") ORDER BY path");
 
-    BackgroundQueue backgroundQueue = new BackgroundQueue();
+    DocumentDecodePipeline pipeline = newDecodePipeline(/*filter*/ null);
     while (longQuery.hasMoreSubqueries()) {
-      longQuery
-          .performNextSubquery()
-          .forEach(row -> processRowInBackground(backgroundQueue, results, row, /*filter*/ null));
+      longQuery.performNextSubquery().forEach(row -> addRow(pipeline, row));
     }
-    backgroundQueue.drain();
+    results.putAll(pipeline.finish());
     return results;
   }
 
@@ -215,19 +226,17 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
     }
     bindVars[i] = count;
 
-    BackgroundQueue backgroundQueue = new BackgroundQueue();
-    Map<DocumentKey, MutableDocument> results = new HashMap<>();
+    DocumentDecodePipeline pipeline = newDecodePipeline(filter);
     db.query(sql.toString())
         .binding(bindVars)
         .forEach(
             row -> {
-              processRowInBackground(backgroundQueue, results, row, filter);
+              addRow(pipeline, row);
               if (context != null) {
                 context.incrementDocumentReadCount();
               }
             });
-    backgroundQueue.drain();
-    return results;
+    return pipeline.finish();
   }
 
   private Map<DocumentKey, MutableDocument> getAll(
@@ -238,28 +247,13 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
     return getAll(collections, offset, count, filter, /*context*/ null);
   }
 
-  private void processRowInBackground(
-      BackgroundQueue backgroundQueue,
-      Map<DocumentKey, MutableDocument> results,
-      Cursor row,
+  private DocumentDecodePipeline newDecodePipeline(
       @Nullable Function<MutableDocument, Boolean> filter) {
-    byte[] rawDocument = row.getBlob(0);
-    int readTimeSeconds = row.getInt(1);
-    int readTimeNanos = row.getInt(2);
-
-    // Since scheduling background tasks incurs overhead, we only dispatch to a
-    // background thread if there are still some documents remaining.
-    Executor executor = row.isLast() ? Executors.DIRECT_EXECUTOR : backgroundQueue;
-    executor.execute(
-        () -> {
-          MutableDocument document =
-              decodeMaybeDocument(rawDocument, readTimeSeconds, readTimeNanos);
-          if (filter == null || filter.apply(document)) {
-            synchronized (results) {
-              results.put(document.getKey(), document);
-            }
-          }
-        });
+    return new DocumentDecodePipeline(serializer, decodeExecutor, decodeWorkerCount, filter);
+  }
+
+  private static void addRow(DocumentDecodePipeline pipeline, Cursor row) {
+    pipeline.add(row.getBlob(0), row.getInt(1), row.getInt(2));
   }
 
   @Override
@@ -281,15 +275,4 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
         (MutableDocument doc) -> query.matches(doc) || mutatedKeys.contains(doc.getKey()),
         context);
   }
-
-  private MutableDocument decodeMaybeDocument(
-      byte[] bytes, int readTimeSeconds, int readTimeNanos) {
-    try {
-      return serializer
-          .decodeMaybeDocument(com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes))
-          .setReadTime(new SnapshotVersion(new Timestamp(readTimeSeconds, readTimeNanos)));
-    } catch (InvalidProtocolBufferException e) {
-      throw fail("MaybeDocument failed to parse: %s", e);
-    }
-  }
 }
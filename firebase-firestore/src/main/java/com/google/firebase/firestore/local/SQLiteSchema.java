@@ -48,7 +48,7 @@ class SQLiteSchema {
    * The version of the schema. Increase this by one for each migration added to runMigrations
    * below.
    */
-  static final int VERSION = 16;
+  static final int VERSION = 17;
 
   /**
    * The batch size for data migrations.
@@ -179,6 +179,10 @@ class SQLiteSchema {
       createFieldIndex();
     }
 
+    if (fromVersion < 17 && toVersion >= 17) {
+      createLruGarbageCollectionTable();
+    }
+
     /*
      * Adding a new schema upgrade? READ THIS FIRST!
      *
@@ -706,6 +710,22 @@ class SQLiteSchema {
         });
   }
 
+  /** Stores the position of an incremental garbage collection across app restarts. */
+  private void createLruGarbageCollectionTable() {
+    ifTablesDontExist(
+        new String[] {"lru_garbage_collection"},
+        () -> {
+          db.execSQL(
+              "CREATE TABLE lru_garbage_collection ("
+                  + "sequence_numbers INTEGER, "
+                  + "upper_bound INTEGER, "
+                  + "last_target_id INTEGER, "
+                  + "targets_done INTEGER, "
+                  + "last_document_path TEXT, "
+                  + "documents_done INTEGER)");
+        });
+  }
+
   private void addPendingDataMigration(String migration) {
     db.execSQL(
         "INSERT OR IGNORE INTO data_migrations (migration_name) VALUES (?)",
@@ -205,6 +205,35 @@ final class SQLiteTargetCache implements TargetCache {
     return count[0];
   }
 
+  /**
+   * Drops targets like {@link #removeQueries(long, SparseArray)}, but only visits up to `limit`
+   * targets following the position of `cursor`. Returns the number of targets removed.
+   */
+  int removeQueries(
+      LruGarbageCollector.Cursor cursor, SparseArray<?> activeTargetIds, int limit) {
+    int[] count = new int[1];
+    int rowsProcessed =
+        db.query(
+                "SELECT target_id FROM targets "
+                    + "WHERE last_listen_sequence_number <= ? AND target_id > ? "
+                    + "ORDER BY target_id LIMIT ?")
+            .binding(cursor.getUpperBound(), cursor.getLastTargetId(), limit)
+            .forEach(
+                row -> {
+                  int targetId = row.getInt(0);
+                  cursor.setLastTargetId(targetId);
+                  if (activeTargetIds.get(targetId) == null) {
+                    removeTarget(targetId);
+                    count[0]++;
+                  }
+                });
+    if (rowsProcessed < limit) {
+      cursor.markTargetsDone();
+    }
+    writeMetadata();
+    return count[0];
+  }
+
   @Nullable
   @Override
   public TargetData getTargetData(Target target) {
@@ -14,6 +14,7 @@
 
 package com.google.firebase.firestore.model;
 
+import static com.google.firebase.firestore.util.Assert.fail;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.NonNull;
@@ -21,8 +22,12 @@ import androidx.annotation.Nullable;
 import com.google.firebase.firestore.model.mutation.FieldMask;
 import com.google.firestore.v1.MapValue;
 import com.google.firestore.v1.Value;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,11 +46,41 @@ public final class ObjectValue implements Cloneable {
    */
   private final Map<String, Object> overlayMap = new HashMap<>();
 
+  /**
+   * The top-level fields of an ObjectValue that was created from encoded fields, keyed by field
+   * name. Each entry is an encoded Value proto that is parsed when the field is first read. Set to
+   * {@code null} once all fields have been parsed into {@link #partialValue}.
+   */
+  @Nullable private Map<String, ByteString> encodedFields;
+
+  /** The fields from {@link #encodedFields} that have already been parsed. */
+  @Nullable private Map<String, Value> decodedFields;
+
+  /** The maximum number of sort keys, each for a different set of orderings, that are memoized. */
+  private static final int MAX_MEMOIZED_SORT_KEYS = 4;
+
+  /**
+   * The sort keys that were last computed for this object, at most one per set of orderings.
+   * Replaced rather than modified, and cleared when the object is modified.
+   */
+  @Nullable private volatile SortKey[] memoizedSortKeys;
+
   public static ObjectValue fromMap(Map<String, Value> value) {
     return new ObjectValue(
         Value.newBuilder().setMapValue(MapValue.newBuilder().putAllFields(value)).build());
   }
 
+  /**
+   * Creates an ObjectValue from encoded top-level fields. Fields are parsed individually when they
+   * are read via {@link #get}. All other accessors parse all remaining fields.
+   */
+  public static ObjectValue fromEncodedFields(Map<String, ByteString> encodedFields) {
+    ObjectValue objectValue = new ObjectValue();
+    objectValue.encodedFields = encodedFields;
+    objectValue.decodedFields = new HashMap<>();
+    return objectValue;
+  }
+
   public ObjectValue(Value value) {
     hardAssert(
         value.getValueTypeCase() == Value.ValueTypeCase.MAP_VALUE,
@@ -99,7 +134,39 @@ public final class ObjectValue implements Cloneable {
    * @return The value at the path or null if it doesn't exist.
    */
   public @Nullable Value get(FieldPath fieldPath) {
-    return extractNestedValue(buildProto(), fieldPath);
+    synchronized (overlayMap) {
+      if (encodedFields != null && !fieldPath.isEmpty() && overlayMap.isEmpty()) {
+        // Only parse the top-level field that contains the requested path.
+        Value topLevelValue = decodeField(fieldPath.getFirstSegment());
+        return topLevelValue != null
+            ? extractNestedValue(topLevelValue, fieldPath.popFirst())
+            : null;
+      }
+      return extractNestedValue(buildProto(), fieldPath);
+    }
+  }
+
+  /** Returns the parsed value of the top-level field with the given name or null. */
+  @Nullable
+  private Value decodeField(String fieldName) {
+    Value value = decodedFields.get(fieldName);
+    if (value == null) {
+      ByteString encodedValue = encodedFields.get(fieldName);
+      if (encodedValue == null) {
+        return null;
+      }
+      value = parseValue(fieldName, encodedValue);
+      decodedFields.put(fieldName, value);
+    }
+    return value;
+  }
+
+  private static Value parseValue(String fieldName, ByteString encodedValue) {
+    try {
+      return Value.parseFrom(encodedValue);
+    } catch (InvalidProtocolBufferException e) {
+      throw fail(e, "Failed to parse value of field %s", fieldName);
+    }
   }
 
   @Nullable
@@ -125,6 +192,19 @@ public final class ObjectValue implements Cloneable {
    */
   private Value buildProto() {
     synchronized (overlayMap) {
+      if (encodedFields != null) {
+        MapValue.Builder fields = MapValue.newBuilder();
+        for (Map.Entry<String, ByteString> entry : encodedFields.entrySet()) {
+          String fieldName = entry.getKey();
+          Value value = decodedFields.get(fieldName);
+          fields.putFields(
+              fieldName, value != null ? value : parseValue(fieldName, entry.getValue()));
+        }
+        partialValue = Value.newBuilder().setMapValue(fields).build();
+        encodedFields = null;
+        decodedFields = null;
+      }
+
       MapValue mergedResult = applyOverlay(FieldPath.EMPTY_PATH, overlayMap);
       if (mergedResult != null) {
         partialValue = Value.newBuilder().setMapValue(mergedResult).build();
@@ -134,6 +214,44 @@ public final class ObjectValue implements Cloneable {
     return partialValue;
   }
 
+  /**
+   * Returns the sort key that was memoized for this object with the given encoding, or null if
+   * there is none.
+   */
+  public @Nullable SortKey getMemoizedSortKey(Object encoding) {
+    SortKey[] sortKeys = memoizedSortKeys;
+    if (sortKeys != null) {
+      for (SortKey sortKey : sortKeys) {
+        if (sortKey.hasEncoding(encoding)) {
+          return sortKey;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Memoizes a sort key that was computed from the fields of this object. Replaces a key with the
+   * same encoding, or the oldest key if the memo is full. Keys are discarded when a field is set or
+   * deleted.
+   */
+  public void setMemoizedSortKey(SortKey sortKey) {
+    SortKey[] sortKeys = memoizedSortKeys;
+    List<SortKey> updatedKeys = new ArrayList<>(MAX_MEMOIZED_SORT_KEYS);
+    if (sortKeys != null) {
+      for (SortKey existingKey : sortKeys) {
+        if (!existingKey.hasEncoding(sortKey.getEncoding())) {
+          updatedKeys.add(existingKey);
+        }
+      }
+    }
+    if (updatedKeys.size() == MAX_MEMOIZED_SORT_KEYS) {
+      updatedKeys.remove(0);
+    }
+    updatedKeys.add(sortKey);
+    memoizedSortKeys = updatedKeys.toArray(new SortKey[0]);
+  }
+
   /**
    * Removes the field at the specified path. If there is no field at the specified path nothing is
    * changed.
@@ -171,6 +289,7 @@ public final class ObjectValue implements Cloneable {
    * Adds {@code value} to the overlay map at {@code path}. Creates nested map entries if needed.
    */
   private void setOverlay(FieldPath path, @Nullable Value value) {
+    memoizedSortKeys = null;
     Map<String, Object> currentLevel = overlayMap;
 
     for (int i = 0; i < path.length() - 1; ++i) {
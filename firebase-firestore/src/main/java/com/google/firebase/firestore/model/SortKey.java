@@ -0,0 +1,118 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.model;
+
+import static com.google.firebase.firestore.util.Assert.hardAssert;
+
+import androidx.annotation.Nullable;
+import com.google.firebase.firestore.util.Util;
+
+/**
+ * The encoded values of the fields that a query orders a document by.
+ *
+ * <p>Each field value is stored as a segment of bytes that compares byte by byte like the value
+ * itself, taking the direction of the ordering into account. Sort keys are memoized on the {@link
+ * ObjectValue} of a document, so that comparing two documents does not need to look up and compare
+ * their field values again.
+ */
+public final class SortKey {
+  private final Object encoding;
+  @Nullable private final byte[] bytes;
+  @Nullable private final int[] segmentEnds;
+
+  /**
+   * Creates a sort key.
+   *
+   * @param encoding Identifies how the key was encoded. Only keys with equal encodings can be
+   *     compared.
+   * @param bytes The encoded values of all segments.
+   * @param segmentEnds The offset in {@code bytes} at which each segment ends.
+   */
+  public SortKey(Object encoding, byte[] bytes, int[] segmentEnds) {
+    this.encoding = encoding;
+    this.bytes = bytes;
+    this.segmentEnds = segmentEnds;
+  }
+
+  private SortKey(Object encoding) {
+    this.encoding = encoding;
+    this.bytes = null;
+    this.segmentEnds = null;
+  }
+
+  /**
+   * Returns a placeholder that records that a document's values cannot be encoded, so that the
+   * encoding is not attempted again.
+   */
+  public static SortKey unencodable(Object encoding) {
+    return new SortKey(encoding);
+  }
+
+  /** Returns how this key was encoded. */
+  public Object getEncoding() {
+    return encoding;
+  }
+
+  /** Returns whether this key was created with the given encoding or one that is equal to it. */
+  public boolean hasEncoding(Object encoding) {
+    return this.encoding == encoding || this.encoding.equals(encoding);
+  }
+
+  /** Returns false if this key is a placeholder for a document whose values cannot be encoded. */
+  public boolean isEncoded() {
+    return bytes != null;
+  }
+
+  /** Compares two keys of equal encodings segment by segment. */
+  public int compareTo(SortKey other) {
+    hardAssert(
+        segmentEnds.length == other.segmentEnds.length,
+        "Cannot compare sort keys with different encodings");
+    for (int i = 0; i < segmentEnds.length; ++i) {
+      int comparison =
+          compareBytes(
+              bytes,
+              segmentStart(i),
+              segmentEnds[i],
+              other.bytes,
+              other.segmentStart(i),
+              other.segmentEnds[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return 0;
+  }
+
+  private int segmentStart(int segment) {
+    return segment == 0 ? 0 : segmentEnds[segment - 1];
+  }
+
+  /** Compares two byte ranges lexicographically, treating the bytes as unsigned. */
+  private static int compareBytes(
+      byte[] left, int leftStart, int leftEnd, byte[] right, int rightStart, int rightEnd) {
+    int leftLength = leftEnd - leftStart;
+    int rightLength = rightEnd - rightStart;
+    int length = Math.min(leftLength, rightLength);
+    for (int i = 0; i < length; ++i) {
+      int leftByte = left[leftStart + i] & 0xff;
+      int rightByte = right[rightStart + i] & 0xff;
+      if (leftByte != rightByte) {
+        return leftByte < rightByte ? -1 : 1;
+      }
+    }
+    return Util.compareIntegers(leftLength, rightLength);
+  }
+}
@@ -16,16 +16,18 @@ package com.google.firebase.firestore.remote;
 
 import android.util.Base64;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import com.google.protobuf.ByteString;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 public final class BloomFilter {
   private final int bitCount;
   private final ByteString bitmap;
   private final int hashCount;
-  private final MessageDigest md5HashMessageDigest;
+
+  /** The bitmap as little-endian 64-bit words, so that bit n is bit (n % 64) of word n / 64. */
+  private final long[] bitmapWords;
+
+  private final Md5Hasher md5Hasher = new Md5Hasher();
 
   /**
    * Creates a new {@link BloomFilter} with the given parameters.
@@ -56,7 +58,15 @@ public final class BloomFilter {
     this.bitmap = bitmap;
     this.hashCount = hashCount;
     this.bitCount = bitmap.size() * 8 - padding;
-    this.md5HashMessageDigest = createMd5HashMessageDigest();
+    this.bitmapWords = toWords(bitmap);
+  }
+
+  private static long[] toWords(ByteString bitmap) {
+    long[] words = new long[(bitmap.size() + 7) / 8];
+    for (int i = 0; i < bitmap.size(); i++) {
+      words[i / 8] |= (bitmap.byteAt(i) & 0xFFL) << ((i % 8) * 8);
+    }
+    return words;
   }
 
   /**
@@ -111,14 +121,12 @@ public final class BloomFilter {
       return false;
     }
 
-    byte[] hashedValue = md5HashDigest(value);
-    if (hashedValue.length != 16) {
-      throw new RuntimeException(
-          "Invalid md5 hash array length: " + hashedValue.length + " (expected 16)");
-    }
-
-    long hash1 = getLongLittleEndian(hashedValue, 0);
-    long hash2 = getLongLittleEndian(hashedValue, 8);
+    // The two halves of the MD5 digest of the UTF-8 encoded value, as little-endian longs. This
+    // method is called for every document of a target when an existence filter mismatches, so
+    // hashing does not allocate.
+    md5Hasher.hash(value);
+    long hash1 = md5Hasher.low;
+    long hash2 = md5Hasher.high;
 
     for (int i = 0; i < this.hashCount; i++) {
       int index = this.getBitIndex(hash1, hash2, i);
@@ -129,30 +137,6 @@ public final class BloomFilter {
     return true;
   }
 
-  /** Hash a string using md5 hashing algorithm, and return an array of 16 bytes. */
-  @NonNull
-  private byte[] md5HashDigest(@NonNull String value) {
-    return md5HashMessageDigest.digest(value.getBytes(StandardCharsets.UTF_8));
-  }
-
-  @NonNull
-  private static MessageDigest createMd5HashMessageDigest() {
-    try {
-      return MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("Missing MD5 MessageDigest provider: ", e);
-    }
-  }
-
-  /** Interpret 8 bytes into a long, using little endian 2’s complement. */
-  private static long getLongLittleEndian(@NonNull byte[] bytes, int offset) {
-    long result = 0;
-    for (int i = 0; i < 8; i++) {
-      result |= (bytes[offset + i] & 0xFFL) << (i * 8);
-    }
-    return result;
-  }
-
   /**
    * Calculate the ith hash value based on the hashed 64 bit unsigned integers, and calculate its
    * corresponding bit index in the bitmap to be checked.
@@ -183,10 +167,158 @@ public final class BloomFilter {
 
   /** Return whether the bit at the given index in the bitmap is set to 1. */
   private boolean isBitSet(int index) {
-    // To retrieve bit n, calculate: (bitmap[n / 8] & (0x01 << (n % 8))).
-    byte byteAtIndex = this.bitmap.byteAt(index / 8);
-    int offset = index % 8;
-    return (byteAtIndex & (0x01 << offset)) != 0;
+    // Bit n is bit (n % 8) of byte (n / 8), which is bit (n % 64) of word (n / 64).
+    return (bitmapWords[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Computes MD5 digests of UTF-8 encoded strings into two longs, reusing its buffer across calls.
+   * Instances are not thread-safe.
+   */
+  @VisibleForTesting
+  static final class Md5Hasher {
+    private static final int[] SHIFTS = {
+      7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+      5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+      4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+      6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21
+    };
+
+    /** The per-round constants, floor(abs(sin(i + 1)) * 2^32). */
+    private static final int[] CONSTANTS = {
+      0xd76aa478, 0xe8c7b756, 0x242070db, 0xc1bdceee,
+      0xf57c0faf, 0x4787c62a, 0xa8304613, 0xfd469501,
+      0x698098d8, 0x8b44f7af, 0xffff5bb1, 0x895cd7be,
+      0x6b901122, 0xfd987193, 0xa679438e, 0x49b40821,
+      0xf61e2562, 0xc040b340, 0x265e5a51, 0xe9b6c7aa,
+      0xd62f105d, 0x02441453, 0xd8a1e681, 0xe7d3fbc8,
+      0x21e1cde6, 0xc33707d6, 0xf4d50d87, 0x455a14ed,
+      0xa9e3e905, 0xfcefa3f8, 0x676f02d9, 0x8d2a4c8a,
+      0xfffa3942, 0x8771f681, 0x6d9d6122, 0xfde5380c,
+      0xa4beea44, 0x4bdecfa9, 0xf6bb4b60, 0xbebfbc70,
+      0x289b7ec6, 0xeaa127fa, 0xd4ef3085, 0x04881d05,
+      0xd9d4d039, 0xe6db99e5, 0x1fa27cf8, 0xc4ac5665,
+      0xf4292244, 0x432aff97, 0xab9423a7, 0xfc93a039,
+      0x655b59c3, 0x8f0ccc92, 0xffeff47d, 0x85845dd1,
+      0x6fa87e4f, 0xfe2ce6e0, 0xa3014314, 0x4e0811a1,
+      0xf7537e82, 0xbd3af235, 0x2ad7d2bb, 0xeb86d391
+    };
+
+    /** The first eight bytes of the last digest, as a little-endian long. */
+    long low;
+
+    /** The last eight bytes of the last digest, as a little-endian long. */
+    long high;
+
+    private byte[] buffer = new byte[128];
+    private final int[] block = new int[16];
+
+    /** Computes the MD5 digest of the UTF-8 encoding of {@code value}. */
+    void hash(String value) {
+      int length = encodeUtf8(value);
+
+      // Pad the message to a multiple of 64 bytes: a single 1 bit, zeros, and the bit length.
+      int paddedLength = ((length + 8) / 64 + 1) * 64;
+      ensureCapacity(paddedLength);
+      buffer[length] = (byte) 0x80;
+      for (int i = length + 1; i < paddedLength - 8; i++) {
+        buffer[i] = 0;
+      }
+      long bitLength = (long) length * 8;
+      for (int i = 0; i < 8; i++) {
+        buffer[paddedLength - 8 + i] = (byte) (bitLength >>> (8 * i));
+      }
+
+      int a0 = 0x67452301;
+      int b0 = 0xefcdab89;
+      int c0 = 0x98badcfe;
+      int d0 = 0x10325476;
+      for (int offset = 0; offset < paddedLength; offset += 64) {
+        for (int i = 0; i < 16; i++) {
+          int p = offset + i * 4;
+          block[i] =
+              (buffer[p] & 0xFF)
+                  | (buffer[p + 1] & 0xFF) << 8
+                  | (buffer[p + 2] & 0xFF) << 16
+                  | (buffer[p + 3] & 0xFF) << 24;
+        }
+
+        int a = a0;
+        int b = b0;
+        int c = c0;
+        int d = d0;
+        for (int i = 0; i < 64; i++) {
+          int f;
+          int g;
+          if (i < 16) {
+            f = (b & c) | (~b & d);
+            g = i;
+          } else if (i < 32) {
+            f = (d & b) | (~d & c);
+            g = (5 * i + 1) & 15;
+          } else if (i < 48) {
+            f = b ^ c ^ d;
+            g = (3 * i + 5) & 15;
+          } else {
+            f = c ^ (b | ~d);
+            g = (7 * i) & 15;
+          }
+          int rotated = Integer.rotateLeft(a + f + CONSTANTS[i] + block[g], SHIFTS[i]);
+          a = d;
+          d = c;
+          c = b;
+          b = b + rotated;
+        }
+        a0 += a;
+        b0 += b;
+        c0 += c;
+        d0 += d;
+      }
+
+      low = (a0 & 0xFFFFFFFFL) | ((long) b0 << 32);
+      high = (c0 & 0xFFFFFFFFL) | ((long) d0 << 32);
+    }
+
+    /**
+     * Writes the UTF-8 encoding of {@code value} to the start of the buffer and returns its length.
+     * Like {@link String#getBytes}, unpaired surrogates are encoded as '?'.
+     */
+    private int encodeUtf8(String value) {
+      ensureCapacity(value.length() * 3);
+      int length = 0;
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+          buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[length++] = (byte) (0xC0 | (c >>> 6));
+          buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+          buffer[length++] = (byte) (0xE0 | (c >>> 12));
+          buffer[length++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+          buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < value.length()
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, value.charAt(++i));
+          buffer[length++] = (byte) (0xF0 | (codePoint >>> 18));
+          buffer[length++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+          buffer[length++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+          buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+          buffer[length++] = '?';
+        }
+      }
+      return length;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (buffer.length < capacity) {
+        byte[] newBuffer = new byte[Math.max(capacity, buffer.length * 2)];
+        System.arraycopy(buffer, 0, newBuffer, 0, buffer.length);
+        buffer = newBuffer;
+      }
+    }
   }
 
   @Override
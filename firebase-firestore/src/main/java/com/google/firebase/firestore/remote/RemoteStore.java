@@ -32,6 +32,7 @@ import com.google.firebase.firestore.local.TargetData;
 import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.MutationBatchResult;
 import com.google.firebase.firestore.model.mutation.MutationResult;
@@ -47,11 +48,16 @@ import com.google.firestore.v1.Value;
 import com.google.protobuf.ByteString;
 import io.grpc.Status;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * RemoteStore handles all interaction with the backend through a simple, clean interface. This
@@ -59,8 +65,20 @@ import java.util.Map.Entry;
  */
 public final class RemoteStore implements WatchChangeAggregator.TargetMetadataProvider {
 
-  /** The maximum number of pending writes to allow. TODO: Negotiate this value with the backend. */
-  private static final int MAX_PENDING_WRITES = 10;
+  /**
+   * The default maximum number of pending writes to allow. TODO: Negotiate this value with the
+   * backend.
+   */
+  public static final int DEFAULT_MAX_PENDING_WRITES = 10;
+
+  /**
+   * The default maximum number of mutation batches sent in a single write request. By default,
+   * every batch is sent in its own request.
+   */
+  public static final int DEFAULT_MAX_BATCHES_PER_WRITE_REQUEST = 1;
+
+  /** The maximum number of writes the backend accepts in a single commit. */
+  private static final int MAX_WRITES_PER_REQUEST = 500;
 
   /** The log tag to use for this class. */
   private static final String LOG_TAG = "RemoteStore";
@@ -136,8 +154,14 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
   private final WriteStream writeStream;
   @Nullable private WatchChangeAggregator watchChangeAggregator;
 
+  /** The maximum number of mutation batches in the write pipeline. */
+  private final int maxPendingWrites;
+
+  /** The maximum number of mutation batches that are coalesced into a single write request. */
+  private final int maxBatchesPerWriteRequest;
+
   /**
-   * A list of up to MAX_PENDING_WRITES writes that we have fetched from the LocalStore via
+   * A list of up to maxPendingWrites writes that we have fetched from the LocalStore via
    * fillWritePipeline() and have or will send to the write stream.
    *
    * <p>Whenever writePipeline.length > 0 the RemoteStore will attempt to start or restart the write
@@ -152,19 +176,74 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
    */
   private final Deque<MutationBatch> writePipeline;
 
+  /**
+   * The number of mutation batches in each write request that has been sent on the current write
+   * stream, in the order in which the requests were sent. The batches of these requests are the
+   * first batches in writePipeline.
+   */
+  private final Deque<Integer> sentWriteRequests;
+
+  /** The number of batches at the front of writePipeline that have been sent. */
+  private int sentBatchCount;
+
+  /**
+   * The number of batches at the front of writePipeline that must be sent in their own request,
+   * because a write request that contained them was rejected and the failing batch needs to be
+   * identified.
+   */
+  private int uncoalescedBatchCount;
+
+  /** The time at which the write pipeline started draining, or -1 if it is empty. */
+  private long drainStartTimeMs = -1;
+
+  /** The number of writes acknowledged since drainStartTimeMs. */
+  private int drainedWriteCount;
+
+  /** The statistics of the last time the write pipeline was drained, or null if it never was. */
+  @Nullable private WriteDrainStats lastWriteDrainStats;
+
   public RemoteStore(
       RemoteStoreCallback remoteStoreCallback,
       LocalStore localStore,
       Datastore datastore,
       AsyncQueue workerQueue,
       ConnectivityMonitor connectivityMonitor) {
+    this(
+        remoteStoreCallback,
+        localStore,
+        datastore,
+        workerQueue,
+        connectivityMonitor,
+        DEFAULT_MAX_PENDING_WRITES,
+        DEFAULT_MAX_BATCHES_PER_WRITE_REQUEST);
+  }
+
+  /**
+   * Creates a RemoteStore that keeps up to {@code maxPendingWrites} mutation batches in flight and
+   * coalesces up to {@code maxBatchesPerWriteRequest} consecutive batches into a single write
+   * request. Coalescing reduces the number of round trips when a large backlog of writes is sent
+   * after reconnecting.
+   */
+  public RemoteStore(
+      RemoteStoreCallback remoteStoreCallback,
+      LocalStore localStore,
+      Datastore datastore,
+      AsyncQueue workerQueue,
+      ConnectivityMonitor connectivityMonitor,
+      int maxPendingWrites,
+      int maxBatchesPerWriteRequest) {
+    hardAssert(maxPendingWrites > 0, "maxPendingWrites must be positive");
+    hardAssert(maxBatchesPerWriteRequest > 0, "maxBatchesPerWriteRequest must be positive");
     this.remoteStoreCallback = remoteStoreCallback;
     this.localStore = localStore;
     this.datastore = datastore;
     this.connectivityMonitor = connectivityMonitor;
+    this.maxPendingWrites = maxPendingWrites;
+    this.maxBatchesPerWriteRequest = maxBatchesPerWriteRequest;
 
     listenTargets = new HashMap<>();
     writePipeline = new ArrayDeque<>();
+    sentWriteRequests = new ArrayDeque<>();
 
     onlineStateTracker =
         new OnlineStateTracker(workerQueue, remoteStoreCallback::handleOnlineStateChange);
@@ -294,6 +373,9 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
       Logger.debug(LOG_TAG, "Stopping write stream with %d pending writes", writePipeline.size());
       writePipeline.clear();
     }
+    resetSentWrites();
+    uncoalescedBatchCount = 0;
+    drainStartTimeMs = -1;
 
     cleanUpWatchStreamState();
   }
@@ -618,6 +700,10 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
       lastBatchIdRetrieved = batch.getBatchId();
     }
 
+    if (writeStream.isOpen() && writeStream.isHandshakeComplete()) {
+      sendPendingWrites();
+    }
+
     if (shouldStartWriteStream()) {
       startWriteStream();
     }
@@ -628,23 +714,75 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
    * enabled).
    */
   private boolean canAddToWritePipeline() {
-    return canUseNetwork() && writePipeline.size() < MAX_PENDING_WRITES;
+    return canUseNetwork() && writePipeline.size() < maxPendingWrites;
   }
 
   /**
-   * Queues additional writes to be sent to the write stream, sending them immediately if the write
-   * stream is established.
+   * Queues additional writes to be sent to the write stream. The writes are sent by
+   * fillWritePipeline() once the pipeline has been filled, or when the write stream is
+   * established.
    */
   private void addToWritePipeline(MutationBatch mutationBatch) {
     hardAssert(canAddToWritePipeline(), "addToWritePipeline called when pipeline is full");
 
+    if (writePipeline.isEmpty()) {
+      drainStartTimeMs = System.currentTimeMillis();
+      drainedWriteCount = 0;
+    }
     writePipeline.add(mutationBatch);
+  }
 
-    if (writeStream.isOpen() && writeStream.isHandshakeComplete()) {
-      writeStream.writeMutations(mutationBatch.getMutations());
+  /**
+   * Sends all batches in the write pipeline that have not been sent on the current write stream.
+   * Consecutive batches are coalesced into a single request, as long as the request does not
+   * exceed maxBatchesPerWriteRequest batches or the backend's limit on writes per commit, and no
+   * document is written by more than one of its batches.
+   */
+  private void sendPendingWrites() {
+    Iterator<MutationBatch> unsent = writePipeline.iterator();
+    for (int i = 0; i < sentBatchCount; ++i) {
+      unsent.next();
+    }
+
+    List<Mutation> request = new ArrayList<>();
+    Set<DocumentKey> requestKeys = new HashSet<>();
+    int requestBatchCount = 0;
+    while (unsent.hasNext()) {
+      MutationBatch batch = unsent.next();
+      boolean canCoalesce =
+          requestBatchCount > 0
+              && requestBatchCount < maxBatchesPerWriteRequest
+              && sentBatchCount >= uncoalescedBatchCount
+              && request.size() + batch.getMutations().size() <= MAX_WRITES_PER_REQUEST
+              && Collections.disjoint(requestKeys, batch.getKeys());
+      if (requestBatchCount > 0 && !canCoalesce) {
+        sendWriteRequest(request, requestBatchCount);
+        request = new ArrayList<>();
+        requestKeys.clear();
+        requestBatchCount = 0;
+      }
+      request.addAll(batch.getMutations());
+      requestKeys.addAll(batch.getKeys());
+      ++requestBatchCount;
+    }
+
+    if (requestBatchCount > 0) {
+      sendWriteRequest(request, requestBatchCount);
     }
   }
 
+  private void sendWriteRequest(List<Mutation> mutations, int batchCount) {
+    writeStream.writeMutations(mutations);
+    sentWriteRequests.add(batchCount);
+    sentBatchCount += batchCount;
+  }
+
+  /** Forgets which batches were sent, so that they are sent again on the next write stream. */
+  private void resetSentWrites() {
+    sentWriteRequests.clear();
+    sentBatchCount = 0;
+  }
+
   private void startWriteStream() {
     hardAssert(
         shouldStartWriteStream(),
@@ -661,9 +799,8 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     localStore.setLastStreamToken(writeStream.getLastStreamToken());
 
     // Send the write pipeline now that stream is established.
-    for (MutationBatch batch : writePipeline) {
-      writeStream.writeMutations(batch.getMutations());
-    }
+    resetSentWrites();
+    sendPendingWrites();
   }
 
   /**
@@ -671,13 +808,46 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
    */
   private void handleWriteStreamMutationResults(
       SnapshotVersion commitVersion, List<MutationResult> results) {
-    // This is a response to a write containing mutations and should be correlated to the first
-    // write in our write pipeline.
-    MutationBatch batch = writePipeline.poll();
+    // This is a response to a write request containing mutations and should be correlated to the
+    // first write request we sent. The results of coalesced batches are in batch order.
+    Integer requestBatchCount = sentWriteRequests.poll();
+    int batchCount = requestBatchCount != null ? requestBatchCount : 1;
+    sentBatchCount = Math.max(0, sentBatchCount - batchCount);
+    uncoalescedBatchCount = Math.max(0, uncoalescedBatchCount - batchCount);
+
+    List<MutationBatch> batches = new ArrayList<>(batchCount);
+    int mutationCount = 0;
+    for (int i = 0; i < batchCount; ++i) {
+      MutationBatch batch = writePipeline.poll();
+      batches.add(batch);
+      mutationCount += batch.getMutations().size();
+    }
+    hardAssert(
+        batchCount == 1 || results.size() == mutationCount,
+        "Expected %s write results for %s coalesced batches, but got %s",
+        mutationCount,
+        batchCount,
+        results.size());
+    drainedWriteCount += mutationCount;
+
+    int resultOffset = 0;
+    for (MutationBatch batch : batches) {
+      int batchMutationCount = batch.getMutations().size();
+      List<MutationResult> batchResults =
+          batchCount == 1
+              ? results
+              : results.subList(resultOffset, resultOffset + batchMutationCount);
+      resultOffset += batchMutationCount;
+
+      MutationBatchResult mutationBatchResult =
+          MutationBatchResult.create(
+              batch, commitVersion, batchResults, writeStream.getLastStreamToken());
+      remoteStoreCallback.handleSuccessfulWrite(mutationBatchResult);
+    }
 
-    MutationBatchResult mutationBatchResult =
-        MutationBatchResult.create(batch, commitVersion, results, writeStream.getLastStreamToken());
-    remoteStoreCallback.handleSuccessfulWrite(mutationBatchResult);
+    if (writePipeline.isEmpty() && drainStartTimeMs >= 0) {
+      recordDrainThroughput();
+    }
 
     // It's possible that with the completion of this mutation another slot has freed up.
     fillWritePipeline();
@@ -704,6 +874,12 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
       }
     }
 
+    // Writes that were sent on the closed stream are sent again once a new stream is established.
+    // If the write pipeline was refilled above, this has already happened.
+    if (!writeStream.isStarted()) {
+      resetSentWrites();
+    }
+
     // The write stream may have already been restarted by refilling the write pipeline for failed
     // writes. In that case, we don't want to start the write stream again.
     if (shouldStartWriteStream()) {
@@ -732,14 +908,29 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     hardAssert(!status.isOk(), "Handling write error with status OK.");
     // Only handle permanent errors here. If it's transient, just let the retry logic kick in.
     if (Datastore.isPermanentWriteError(status)) {
-      // If this was a permanent error, the request itself was the problem so it's not going
-      // to succeed if we resend it.
-      MutationBatch batch = writePipeline.poll();
-
       // In this case it's also unlikely that the server itself is melting down -- this was
       // just a bad request, so inhibit backoff on the next restart
       writeStream.inhibitBackoff();
 
+      Integer requestBatchCount = sentWriteRequests.peek();
+      if (requestBatchCount != null && requestBatchCount > 1) {
+        // The rejected request contained several batches, which would have succeeded or failed
+        // individually if they had not been coalesced. Resend them one by one to find the batch
+        // that caused the error.
+        Logger.debug(
+            LOG_TAG,
+            "Write request with %d batches was rejected; resending them individually",
+            requestBatchCount);
+        uncoalescedBatchCount = requestBatchCount;
+        return;
+      }
+
+      // If this was a permanent error, the request itself was the problem so it's not going
+      // to succeed if we resend it.
+      MutationBatch batch = writePipeline.poll();
+      resetSentWrites();
+      uncoalescedBatchCount = Math.max(0, uncoalescedBatchCount - 1);
+
       remoteStoreCallback.handleRejectedWrite(batch.getBatchId(), status);
 
       // It's possible that with the completion of this mutation another slot has freed up.
@@ -747,6 +938,54 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     }
   }
 
+  private void recordDrainThroughput() {
+    long durationMs = Math.max(1, System.currentTimeMillis() - drainStartTimeMs);
+    lastWriteDrainStats = new WriteDrainStats(drainedWriteCount, durationMs);
+    Logger.debug(
+        LOG_TAG,
+        "Write pipeline drained %d writes in %d ms (%.1f writes/s)",
+        drainedWriteCount,
+        durationMs,
+        lastWriteDrainStats.getWritesPerSecond());
+    drainStartTimeMs = -1;
+  }
+
+  /**
+   * Returns the statistics of the last time the write pipeline was drained, or null if it has not
+   * been drained yet. The pipeline is drained when all writes that were queued since it was last
+   * empty have been acknowledged.
+   */
+  @Nullable
+  public WriteDrainStats getLastWriteDrainStats() {
+    return lastWriteDrainStats;
+  }
+
+  /** The number of writes acknowledged while the write pipeline drained, and how long it took. */
+  public static final class WriteDrainStats {
+    private final int writeCount;
+    private final long durationMs;
+
+    WriteDrainStats(int writeCount, long durationMs) {
+      this.writeCount = writeCount;
+      this.durationMs = durationMs;
+    }
+
+    /** Returns the number of writes that were acknowledged. */
+    public int getWriteCount() {
+      return writeCount;
+    }
+
+    /** Returns the time from queuing the first write until the last write was acknowledged. */
+    public long getDurationMs() {
+      return durationMs;
+    }
+
+    /** Returns the drain throughput in writes per second. */
+    public double getWritesPerSecond() {
+      return writeCount * 1000.0 / durationMs;
+    }
+  }
+
   public Transaction createTransaction() {
     return new Transaction(datastore);
   }
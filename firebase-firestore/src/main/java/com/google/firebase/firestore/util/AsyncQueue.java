@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -377,6 +378,16 @@ public class AsyncQueue {
       return null;
     }
 
+    /** Returns whether no tasks are ready to run. Delayed tasks that are not due are ignored. */
+    private boolean isIdle() {
+      for (Runnable task : internalExecutor.getQueue()) {
+        if (!(task instanceof Delayed) || ((Delayed) task).getDelay(TimeUnit.NANOSECONDS) <= 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     /** Wraps around {@link ScheduledThreadPoolExecutor#shutdownNow()}. */
     private void shutdownNow() {
       internalExecutor.shutdownNow();
@@ -503,6 +514,14 @@ public class AsyncQueue {
     return delayedTask;
   }
 
+  /**
+   * Returns whether no tasks are waiting to run on the queue. Delayed tasks that are not due yet
+   * are ignored. Background work that runs in slices can use this to yield to other operations.
+   */
+  public boolean isIdle() {
+    return executor.isIdle();
+  }
+
   /**
    * For Tests: Skip all subsequent delays for a timer id.
    *
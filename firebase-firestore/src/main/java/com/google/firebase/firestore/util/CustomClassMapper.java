@@ -18,12 +18,14 @@ import static com.google.firebase.firestore.util.ApiUtil.invoke;
 import static com.google.firebase.firestore.util.ApiUtil.newInstance;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.DocumentId;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.GeneratedClassMapper;
 import com.google.firebase.firestore.GeoPoint;
 import com.google.firebase.firestore.IgnoreExtraProperties;
 import com.google.firebase.firestore.PropertyName;
@@ -50,6 +52,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -60,6 +63,15 @@ public class CustomClassMapper {
 
   private static final ConcurrentMap<Class<?>, BeanMapper<?>> mappers = new ConcurrentHashMap<>();
 
+  /** The suffix of the names of the mappers that the mapper annotation processor generates. */
+  private static final String GENERATED_MAPPER_SUFFIX = "_FirestoreMapper";
+
+  private static final ConcurrentMap<Class<?>, GeneratedClassMapper<?>> generatedMappers =
+      new ConcurrentHashMap<>();
+
+  private static final Set<Class<?>> classesWithoutGeneratedMapper =
+      Collections.newSetFromMap(new ConcurrentHashMap<>());
+
   private static void hardAssert(boolean assertion) {
     hardAssert(assertion, "Internal inconsistency");
   }
@@ -179,6 +191,10 @@ public class CustomClassMapper {
       return o.toString();
     } else {
       Class<T> clazz = (Class<T>) o.getClass();
+      GeneratedClassMapper<T> generatedMapper = loadGeneratedMapperForClass(clazz);
+      if (generatedMapper != null) {
+        return generatedMapper.serialize(o, path);
+      }
       BeanMapper<T> mapper = loadOrCreateBeanMapperForClass(clazz);
       return mapper.serialize(o, path);
     }
@@ -384,6 +400,53 @@ public class CustomClassMapper {
     return mapper;
   }
 
+  /**
+   * Returns the mapper that was generated for the class by the mapper annotation processor, or null
+   * if the class has to be mapped with reflection.
+   */
+  @Nullable
+  static <T> GeneratedClassMapper<T> loadGeneratedMapperForClass(Class<T> clazz) {
+    @SuppressWarnings("unchecked")
+    GeneratedClassMapper<T> mapper = (GeneratedClassMapper<T>) generatedMappers.get(clazz);
+    if (mapper == null && !classesWithoutGeneratedMapper.contains(clazz)) {
+      mapper = createGeneratedMapper(clazz);
+      if (mapper != null) {
+        generatedMappers.put(clazz, mapper);
+      } else {
+        classesWithoutGeneratedMapper.add(clazz);
+      }
+    }
+    return mapper;
+  }
+
+  /** Instantiates the generated mapper, which is named after the binary name of the class. */
+  @Nullable
+  private static <T> GeneratedClassMapper<T> createGeneratedMapper(Class<T> clazz) {
+    Class<?> mapperClass;
+    try {
+      mapperClass =
+          Class.forName(
+              clazz.getName() + GENERATED_MAPPER_SUFFIX,
+              /* initialize= */ true,
+              clazz.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+    if (!GeneratedClassMapper.class.isAssignableFrom(mapperClass)) {
+      return null;
+    }
+
+    try {
+      @SuppressWarnings("unchecked")
+      Constructor<GeneratedClassMapper<T>> constructor =
+          (Constructor<GeneratedClassMapper<T>>) mapperClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return newInstance(constructor);
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private static Map<String, Object> expectMap(Object object, DeserializeContext context) {
     if (object instanceof Map) {
@@ -539,9 +602,12 @@ public class CustomClassMapper {
   }
 
   private static <T> T convertBean(Object o, Class<T> clazz, DeserializeContext context) {
-    BeanMapper<T> mapper = loadOrCreateBeanMapperForClass(clazz);
+    GeneratedClassMapper<T> generatedMapper = loadGeneratedMapperForClass(clazz);
+    BeanMapper<T> mapper = generatedMapper == null ? loadOrCreateBeanMapperForClass(clazz) : null;
     if (o instanceof Map) {
-      return mapper.deserialize(expectMap(o, context), context);
+      return generatedMapper != null
+          ? generatedMapper.deserialize(expectMap(o, context), context)
+          : mapper.deserialize(expectMap(o, context), context);
     } else {
       throw deserializeError(
           context.errorPath,
@@ -1125,7 +1191,7 @@ public class CustomClassMapper {
    * Immutable class representing the path to a specific field in an object. Used to provide better
    * error messages.
    */
-  static class ErrorPath {
+  static class ErrorPath implements GeneratedClassMapper.SerializeContext {
     private final int length;
     private final ErrorPath parent;
     private final String name;
@@ -1146,6 +1212,11 @@ public class CustomClassMapper {
       return new ErrorPath(this, name, length + 1);
     }
 
+    @Override
+    public Object serialize(Object value, String property) {
+      return CustomClassMapper.serialize(value, child(property));
+    }
+
     @Override
     public String toString() {
       if (length == 0) {
@@ -1160,7 +1231,7 @@ public class CustomClassMapper {
   }
 
   /** Holds information a deserialization operation needs to complete the job. */
-  static class DeserializeContext {
+  static class DeserializeContext implements GeneratedClassMapper.DeserializeContext {
 
     /** Current path to the field being deserialized, used for better error messages. */
     final ErrorPath errorPath;
@@ -1176,5 +1247,80 @@ public class CustomClassMapper {
     DeserializeContext newInstanceWithErrorPath(ErrorPath newPath) {
       return new DeserializeContext(newPath, documentRef);
     }
+
+    @Override
+    public <V> V deserialize(Object value, Type type, String property) {
+      return deserializeToType(value, type, childContext(property));
+    }
+
+    @Override
+    public String deserializeString(Object value, String property) {
+      if (value == null || value instanceof String) {
+        return (String) value;
+      }
+      return convertString(value, childContext(property));
+    }
+
+    @Override
+    public int deserializeInt(Object value, String property) {
+      if (value instanceof Long) {
+        long longValue = (Long) value;
+        if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+          return (int) longValue;
+        }
+      }
+      checkNotNull(value, property);
+      return convertInteger(value, childContext(property));
+    }
+
+    @Override
+    public long deserializeLong(Object value, String property) {
+      if (value instanceof Long) {
+        return (Long) value;
+      }
+      checkNotNull(value, property);
+      return convertLong(value, childContext(property));
+    }
+
+    @Override
+    public double deserializeDouble(Object value, String property) {
+      if (value instanceof Double) {
+        return (Double) value;
+      }
+      checkNotNull(value, property);
+      return convertDouble(value, childContext(property));
+    }
+
+    @Override
+    public boolean deserializeBoolean(Object value, String property) {
+      if (value instanceof Boolean) {
+        return (Boolean) value;
+      }
+      checkNotNull(value, property);
+      return convertBoolean(value, childContext(property));
+    }
+
+    @Override
+    public DocumentReference getDocumentReference() {
+      return documentRef;
+    }
+
+    private DeserializeContext childContext(String property) {
+      return newInstanceWithErrorPath(errorPath.child(property));
+    }
+
+    /**
+     * Throws if a null value is assigned to a primitive property. Reflection throws an {@link
+     * IllegalArgumentException} in this case.
+     */
+    private void checkNotNull(Object value, String property) {
+      if (value == null) {
+        throw new IllegalArgumentException(
+            "Could not deserialize object. Can't convert null to a primitive value (found in "
+                + "field '"
+                + errorPath.child(property)
+                + "')");
+      }
+    }
   }
 }
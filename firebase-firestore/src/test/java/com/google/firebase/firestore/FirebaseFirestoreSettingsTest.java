@@ -15,6 +15,7 @@
 package com.google.firebase.firestore;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThrows;
 
 import org.junit.Test;
@@ -33,6 +34,8 @@ public class FirebaseFirestoreSettingsTest {
     assertEquals(settings.isSslEnabled(), true);
     assertEquals(settings.isPersistenceEnabled(), true);
     assertEquals(settings.getCacheSizeBytes(), 104857600L);
+    assertEquals(settings.getMaxPendingWrites(), 10);
+    assertEquals(settings.getMaxBatchesPerWriteRequest(), 1);
   }
 
   @Test
@@ -57,14 +60,38 @@ public class FirebaseFirestoreSettingsTest {
             .setHost("a.b.c")
             .setSslEnabled(false)
             .setLocalCacheSettings(MemoryCacheSettings.newBuilder().build())
+            .setMaxPendingWrites(50)
+            .setMaxBatchesPerWriteRequest(20)
             .build();
     FirebaseFirestoreSettings settings2 = new FirebaseFirestoreSettings.Builder(settings1).build();
+    assertEquals(settings1, settings2);
     assertEquals(settings2.getHost(), "a.b.c");
+    assertEquals(settings2.getMaxPendingWrites(), 50);
+    assertEquals(settings2.getMaxBatchesPerWriteRequest(), 20);
     assertEquals(settings2.isSslEnabled(), false);
     assertEquals(settings2.isPersistenceEnabled(), false);
     assertEquals(settings2.getCacheSizeBytes(), FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED);
   }
 
+  @Test
+  public void writePipelineLimitsMustBePositive() {
+    FirebaseFirestoreSettings.Builder builder = new FirebaseFirestoreSettings.Builder();
+    assertThrows(IllegalArgumentException.class, () -> builder.setMaxPendingWrites(0));
+    assertThrows(IllegalArgumentException.class, () -> builder.setMaxBatchesPerWriteRequest(0));
+  }
+
+  @Test
+  public void readerConnectionsAreConfiguredOnThePersistentCache() {
+    assertEquals(PersistentCacheSettings.newBuilder().build().getReaderConnectionCount(), 0);
+    PersistentCacheSettings cacheSettings =
+        PersistentCacheSettings.newBuilder().setReaderConnectionCount(2).build();
+    assertEquals(cacheSettings.getReaderConnectionCount(), 2);
+    assertNotEquals(cacheSettings, PersistentCacheSettings.newBuilder().build());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> PersistentCacheSettings.newBuilder().setReaderConnectionCount(-1));
+  }
+
   @Test
   public void cannotMixLegacyAndNewCacheConfig() {
     FirebaseFirestoreSettings.Builder builder =
@@ -33,9 +33,13 @@ import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.util.Consumer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.junit.Before;
@@ -50,24 +54,39 @@ public class BundleLoaderTest {
   private static final SnapshotVersion CREATE_TIME = new SnapshotVersion(Timestamp.now());
 
   private final BundleCallback bundleCallback;
+  private final Consumer<ImmutableSortedMap<DocumentKey, Document>> changeListener;
 
   private final Set<DocumentKey> lastDocuments;
+  private final List<Integer> lastChunkSizes;
+  private final List<Boolean> lastReplaceFlags;
   private final Map<String, ImmutableSortedSet<DocumentKey>> lastQueries;
   private final Map<String, BundleMetadata> lastBundles;
+  private final List<ImmutableSortedSet<DocumentKey>> lastChanges;
 
   public BundleLoaderTest() {
     lastDocuments = new HashSet<>();
+    lastChunkSizes = new ArrayList<>();
+    lastReplaceFlags = new ArrayList<>();
     lastQueries = new HashMap<>();
     lastBundles = new HashMap<>();
+    lastChanges = new ArrayList<>();
 
     bundleCallback =
         new BundleCallback() {
 
           @Override
           public ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
-              ImmutableSortedMap<DocumentKey, MutableDocument> documents, String bundleId) {
+              ImmutableSortedMap<DocumentKey, MutableDocument> documents,
+              String bundleId,
+              boolean replaceBundledKeys) {
             documents.forEach(entry -> lastDocuments.add(entry.getKey()));
-            return emptyDocumentMap();
+            lastChunkSizes.add(documents.size());
+            lastReplaceFlags.add(replaceBundledKeys);
+            ImmutableSortedMap<DocumentKey, Document> changes = emptyDocumentMap();
+            for (Map.Entry<DocumentKey, MutableDocument> entry : documents) {
+              changes = changes.insert(entry.getKey(), entry.getValue());
+            }
+            return changes;
           }
 
           @Override
@@ -81,19 +100,31 @@ public class BundleLoaderTest {
             lastBundles.put(bundleMetadata.getBundleId(), bundleMetadata);
           }
         };
+
+    changeListener =
+        changes -> {
+          ImmutableSortedSet<DocumentKey> keys = DocumentKey.emptyKeySet();
+          for (Map.Entry<DocumentKey, Document> entry : changes) {
+            keys = keys.insert(entry.getKey());
+          }
+          lastChanges.add(keys);
+        };
   }
 
   @Before
   public void before() {
     lastDocuments.clear();
+    lastChunkSizes.clear();
+    lastReplaceFlags.clear();
     lastQueries.clear();
     lastBundles.clear();
+    lastChanges.clear();
   }
 
   @Test
   public void testLoadsDocuments() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 2));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 2), changeListener);
 
     LoadBundleTaskProgress progress =
         bundleLoader.addElement(
@@ -131,7 +162,7 @@ public class BundleLoaderTest {
   @Test
   public void testLoadsDeletedDocuments() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1), changeListener);
 
     LoadBundleTaskProgress progress =
         bundleLoader.addElement(
@@ -149,7 +180,7 @@ public class BundleLoaderTest {
   @Test
   public void testAppliesDocumentChanges() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1), changeListener);
 
     bundleLoader.addElement(
         new BundledDocumentMetadata(
@@ -163,10 +194,58 @@ public class BundleLoaderTest {
     assertEquals(lastBundles.get("bundle-1"), createMetadata(/* documents= */ 1));
   }
 
+  @Test
+  public void testAppliesDocumentsInChunks() {
+    BundleLoader bundleLoader =
+        new BundleLoader(
+            bundleCallback,
+            createMetadata(/* documents= */ 5),
+            changeListener,
+            /* documentChunkSize= */ 2);
+
+    for (int i = 1; i <= 5; ++i) {
+      bundleLoader.addElement(
+          new BundledDocumentMetadata(
+              key("coll/doc" + i), CREATE_TIME, /* exists= */ true, Collections.emptyList()),
+          1);
+      bundleLoader.addElement(new BundleDocument(doc("coll/doc" + i, 1, map())), 1);
+    }
+
+    // Complete chunks are applied, and their changes raised, while the bundle is being read.
+    assertEquals(Arrays.asList(2, 2), lastChunkSizes);
+    assertEquals(
+        Arrays.asList(
+            keySet(key("coll/doc1"), key("coll/doc2")), keySet(key("coll/doc3"), key("coll/doc4"))),
+        lastChanges);
+
+    bundleLoader.applyChanges();
+
+    assertEquals(Arrays.asList(2, 2, 1), lastChunkSizes);
+    assertEquals(Arrays.asList(true, false, false), lastReplaceFlags);
+    assertEquals(
+        Arrays.asList(
+            keySet(key("coll/doc1"), key("coll/doc2")),
+            keySet(key("coll/doc3"), key("coll/doc4")),
+            keySet(key("coll/doc5"))),
+        lastChanges);
+  }
+
+  @Test
+  public void testAppliesEmptyBundle() {
+    BundleLoader bundleLoader =
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 0), changeListener);
+
+    bundleLoader.applyChanges();
+
+    assertEquals(Collections.singletonList(DocumentKey.emptyKeySet()), lastChanges);
+    assertEquals(Collections.singletonList(0), lastChunkSizes);
+    assertEquals(Collections.singletonList(true), lastReplaceFlags);
+  }
+
   @Test
   public void testAppliesNamedQueries() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 2));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 2), changeListener);
 
     bundleLoader.addElement(
         new BundledDocumentMetadata(
@@ -204,7 +283,7 @@ public class BundleLoaderTest {
   @Test
   public void testVerifiesBundledDocumentMetadataSent() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1), changeListener);
 
     try {
       bundleLoader.addElement(new BundleDocument(doc("coll/doc1", 1, map())), /* byteSize= */ 10);
@@ -217,7 +296,7 @@ public class BundleLoaderTest {
   @Test
   public void testVerifiesBundledDocumentMetadataMatches() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 1), changeListener);
     bundleLoader.addElement(
         new BundledDocumentMetadata(
             key("coll/doc1"), CREATE_TIME, /* exists= */ true, Collections.emptyList()),
@@ -234,7 +313,7 @@ public class BundleLoaderTest {
   @Test
   public void testVerifiesDocumentFollowsMetadata() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 0));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 0), changeListener);
 
     bundleLoader.addElement(
         new BundledDocumentMetadata(
@@ -254,7 +333,7 @@ public class BundleLoaderTest {
   @Test
   public void testVerifiesDocumentCount() {
     BundleLoader bundleLoader =
-        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 2));
+        new BundleLoader(bundleCallback, createMetadata(/* documents= */ 2), changeListener);
 
     bundleLoader.addElement(
         new BundledDocumentMetadata(
@@ -22,6 +22,7 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
 
+import android.util.JsonReader;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.core.Target;
 import com.google.firebase.firestore.model.DatabaseId;
@@ -38,6 +39,8 @@ import com.google.firestore.v1.Value;
 import com.google.protobuf.NullValue;
 import com.google.protobuf.Timestamp;
 import com.google.type.LatLng;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -752,6 +755,18 @@ public class BundleSerializerTest {
                         .build())));
 
     assertEquals(expectedDocument, actualDocument);
+    assertEquals(expectedDocument, decodeDocumentFromTokens(documentJson));
+  }
+
+  /** Decodes a document with the streaming decoder that BundleReader uses for documents. */
+  private BundleDocument decodeDocumentFromTokens(String documentJson) {
+    JsonReader reader = new JsonReader(new StringReader(documentJson));
+    reader.setLenient(true);
+    try {
+      return serializer.decodeDocument(reader);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
   }
 
   private void assertDecodesNamedQuery(String json, Query query) throws JSONException {
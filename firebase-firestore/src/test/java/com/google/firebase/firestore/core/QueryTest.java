@@ -18,6 +18,7 @@ import static com.google.firebase.firestore.model.DocumentKey.KEY_FIELD_NAME;
 import static com.google.firebase.firestore.testutil.TestUtil.andFilters;
 import static com.google.firebase.firestore.testutil.TestUtil.bound;
 import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.field;
 import static com.google.firebase.firestore.testutil.TestUtil.filter;
 import static com.google.firebase.firestore.testutil.TestUtil.map;
 import static com.google.firebase.firestore.testutil.TestUtil.orFilters;
@@ -26,9 +27,12 @@ import static com.google.firebase.firestore.testutil.TestUtil.path;
 import static com.google.firebase.firestore.testutil.TestUtil.query;
 import static com.google.firebase.firestore.testutil.TestUtil.ref;
 import static com.google.firebase.firestore.testutil.TestUtil.testEquality;
+import static com.google.firebase.firestore.testutil.TestUtil.wrap;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
@@ -896,6 +900,78 @@ public class QueryTest {
     assertThrows(UnsupportedOperationException.class, () -> orderByList.add(orderBy("g")));
   }
 
+  @Test
+  public void testSortsValuesWithoutSortKeysLikeOtherValues() {
+    Query query = Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("sort"));
+    new ComparatorTester(query.comparator())
+        .addEqualityGroup(doc("collection/1", 0, map("sort", 1)))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", (1L << 60))))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", (1L << 60) + 1)))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", Double.POSITIVE_INFINITY)))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", "a")))
+        // UTF-16 orders surrogate pairs before characters above U+E000.
+        .addEqualityGroup(doc("collection/1", 0, map("sort", "\uD83D\uDE00")))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", "\uFFFF")))
+        .addEqualityGroup(
+            doc("collection/1", 0, map("sort", new GeoPoint(-0.0, 0))),
+            doc("collection/1", 0, map("sort", new GeoPoint(0.0, 0))))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", asList(1, "a"))))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", asList(1, "b"))))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", map("a", 2, "b", 1))))
+        .addEqualityGroup(doc("collection/1", 0, map("sort", map("b", 1))))
+        .testCompare();
+  }
+
+  @Test
+  public void testFiltersOnDescendingOrder() {
+    Query query =
+        Query.atPath(ResourcePath.fromString("collection"))
+            .filter(filter("sort", ">", 2))
+            .filter(filter("sort", "<=", 10))
+            .orderBy(orderBy("sort", "desc"));
+
+    MutableDocument doc1 = doc("collection/1", 0, map("sort", 2));
+    MutableDocument doc2 = doc("collection/2", 0, map("sort", 2.5));
+    MutableDocument doc3 = doc("collection/3", 0, map("sort", 10L));
+    MutableDocument doc4 = doc("collection/4", 0, map("sort", 11));
+    MutableDocument doc5 = doc("collection/5", 0, map("sort", "5"));
+    MutableDocument doc6 = doc("collection/6", 0, map("sort", Double.NaN));
+    assertQueryMatches(query, asList(doc2, doc3), asList(doc1, doc4, doc5, doc6));
+  }
+
+  @Test
+  public void testSortKeysAreRecomputedWhenDocumentsChange() {
+    Query query = Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("sort"));
+    MutableDocument doc1 = doc("collection/1", 0, map("sort", 1));
+    MutableDocument doc2 = doc("collection/2", 0, map("sort", 2));
+    assertTrue(query.comparator().compare(doc1, doc2) < 0);
+
+    doc1.getData().set(field("sort"), wrap(3));
+    assertTrue(query.comparator().compare(doc1, doc2) > 0);
+  }
+
+  @Test
+  public void testSortKeysAreMemoizedPerOrdering() {
+    Query query1 = Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("a"));
+    Query query2 =
+        Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("b", "desc"));
+    MutableDocument doc1 = doc("collection/1", 0, map("a", 1, "b", 1));
+    MutableDocument doc2 = doc("collection/2", 0, map("a", 2, "b", 2));
+
+    assertTrue(query1.comparator().compare(doc1, doc2) < 0);
+    assertTrue(query2.comparator().compare(doc1, doc2) > 0);
+
+    // Neither query evicts the sort key of the other one.
+    assertNotNull(doc1.getData().getMemoizedSortKey(asList(orderBy("a"))));
+    assertNotNull(doc1.getData().getMemoizedSortKey(asList(orderBy("b", "desc"))));
+    assertNull(doc1.getData().getMemoizedSortKey(asList(orderBy("b"))));
+
+    // Queries with the same orderings share sort keys.
+    Query query3 =
+        Query.atPath(ResourcePath.fromString("collection")).orderBy(orderBy("a")).limitToFirst(1);
+    assertTrue(query3.comparator().compare(doc1, doc2) < 0);
+  }
+
   private void assertQueryMatches(
       Query query, List<MutableDocument> matching, List<MutableDocument> nonMatching) {
     for (MutableDocument doc : matching) {
@@ -301,6 +301,30 @@ public class ViewTest {
         change.getLimboChanges());
   }
 
+  @Test
+  public void testUpdatesLimboDocumentsChangedWhileNotCurrent() {
+    Query query = messageQuery();
+    View view = new View(query, DocumentKey.emptyKeySet());
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map());
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map());
+
+    View.DocumentChanges viewDocChanges = view.computeDocChanges(docUpdates(doc1));
+    ViewChange change = view.applyChanges(viewDocChanges, ackTarget(doc1));
+    assertTrue(change.getLimboChanges().isEmpty());
+
+    // Doc2 is not part of the remote target, but limbo documents are not tracked while offline.
+    view.applyOnlineStateChange(OnlineState.OFFLINE);
+    change = applyChanges(view, doc2);
+    assertTrue(change.getLimboChanges().isEmpty());
+
+    viewDocChanges = view.computeDocChanges(docUpdates());
+    change = view.applyChanges(viewDocChanges, ackTarget());
+    assertEquals(
+        asList(new LimboDocumentChange(LimboDocumentChange.Type.ADDED, doc2.getKey())),
+        change.getLimboChanges());
+    assertEquals(keySet(doc2.getKey()), view.getLimboDocuments());
+  }
+
   @Test
   public void testViewsWithLimboDocumentsAreMarkedFromCache() {
     Query query = messageQuery();
@@ -0,0 +1,138 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.field;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.key;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.FieldIndex.IndexOffset;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.util.Executors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Tests the parallel document decoding in {@link SQLiteRemoteDocumentCache}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public final class DocumentDecodePipelineTest {
+  private static final int[] WORKER_COUNTS = {1, 2, 4, 8};
+
+  private SQLitePersistence persistence;
+  private SQLiteRemoteDocumentCache remoteDocumentCache;
+
+  @Before
+  public void setUp() {
+    persistence = PersistenceTestHelpers.createSQLitePersistence();
+    remoteDocumentCache = (SQLiteRemoteDocumentCache) persistence.getRemoteDocumentCache();
+    IndexManager indexManager = persistence.getIndexManager(User.UNAUTHENTICATED);
+    indexManager.start();
+    remoteDocumentCache.setIndexManager(indexManager);
+  }
+
+  @After
+  public void tearDown() {
+    persistence.shutdown();
+  }
+
+  @Test
+  public void testDecodesAllDocumentsForEachWorkerCount() {
+    // Use a document count that does not fill the last row batch.
+    int documentCount = 3 * DocumentDecodePipeline.ROW_BATCH_SIZE + 7;
+    addDocuments("coll", documentCount);
+
+    for (int workerCount : WORKER_COUNTS) {
+      remoteDocumentCache.setDecodeExecutor(Executors.BACKGROUND_EXECUTOR, workerCount);
+      Map<DocumentKey, MutableDocument> results = getDocumentsMatchingQuery("coll");
+      assertThat(results).hasSize(documentCount);
+      for (int i = 0; i < documentCount; ++i) {
+        assertThat(results.get(key("coll/doc" + i)).getData())
+            .isEqualTo(doc("coll/doc" + i, 1, documentData(i)).getData());
+      }
+    }
+  }
+
+  @Test
+  public void testAppliesFilterInWorkers() {
+    addDocuments("coll", 2 * DocumentDecodePipeline.ROW_BATCH_SIZE);
+
+    remoteDocumentCache.setDecodeExecutor(Executors.BACKGROUND_EXECUTOR, 4);
+    Map<DocumentKey, MutableDocument> results =
+        remoteDocumentCache.getDocumentsMatchingQuery(
+            query("coll").filter(filter("even", "==", true)),
+            IndexOffset.NONE,
+            Collections.emptySet());
+    assertThat(results).hasSize(DocumentDecodePipeline.ROW_BATCH_SIZE);
+    for (MutableDocument document : results.values()) {
+      assertThat(document.getData().get(field("even")).getBooleanValue()).isTrue();
+    }
+  }
+
+  @Test
+  public void testDecodesWithDirectExecutor() {
+    int documentCount = 5 * DocumentDecodePipeline.ROW_BATCH_SIZE;
+    addDocuments("coll", documentCount);
+
+    remoteDocumentCache.setDecodeExecutor(Executors.DIRECT_EXECUTOR, 8);
+    assertThat(getDocumentsMatchingQuery("coll")).hasSize(documentCount);
+  }
+
+  private Map<DocumentKey, MutableDocument> getDocumentsMatchingQuery(String collection) {
+    return remoteDocumentCache.getDocumentsMatchingQuery(
+        query(collection), IndexOffset.NONE, Collections.emptySet());
+  }
+
+  private void addDocuments(String collection, int count) {
+    List<MutableDocument> documents = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      documents.add(doc(collection + "/doc" + i, 1, documentData(i)));
+    }
+    persistence.runTransaction(
+        "add documents",
+        () -> {
+          for (MutableDocument document : documents) {
+            remoteDocumentCache.add(document, version(2));
+          }
+        });
+  }
+
+  private static Map<String, Object> documentData(int i) {
+    return map(
+        "index",
+        i,
+        "even",
+        i % 2 == 0,
+        "name",
+        "document " + i,
+        "nested",
+        map("tags", Arrays.asList("a", "b", "c"), "value", i * 1.5));
+  }
+}
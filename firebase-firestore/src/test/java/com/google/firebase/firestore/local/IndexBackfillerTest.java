@@ -478,6 +478,38 @@ public class IndexBackfillerTest {
     verifyQueryResults(queryB, "coll/doc2");
   }
 
+  @Test
+  public void testAdaptsBatchSizeToLoad() {
+    addFieldIndex("coll", "foo");
+    for (int i = 0; i < 200; ++i) {
+      addDoc("coll/doc" + i, version(10 + i), "foo", i);
+    }
+
+    backfiller.setMaxDocumentsToProcess(100);
+    assertEquals(100, backfiller.backfill());
+
+    // Other operations are queued, so the next backfill is smaller and waits.
+    long busyDelay = backfiller.adaptToLoad(/* asyncQueueIdle= */ false);
+    assertTrue(busyDelay > 0);
+    assertEquals(50, backfiller.getStats().getBatchSize());
+
+    // The queue is idle, so the next backfill runs right away.
+    assertEquals(50, backfiller.backfill());
+    assertEquals(0, backfiller.adaptToLoad(/* asyncQueueIdle= */ true));
+
+    backfiller.setMaxDocumentsToProcess(1000);
+    assertEquals(50, backfiller.backfill());
+
+    // All documents are indexed, so the backfiller waits for the regular delay.
+    long regularDelay = backfiller.adaptToLoad(/* asyncQueueIdle= */ true);
+    assertTrue(regularDelay > busyDelay);
+
+    IndexBackfiller.Stats stats = backfiller.getStats();
+    assertEquals(200, stats.getDocumentsProcessed());
+    assertEquals(50, stats.getBatchSize());
+    assertTrue(stats.isCaughtUp());
+  }
+
   private void addFieldIndex(String collectionGroup, String fieldName) {
     FieldIndex fieldIndex =
         fieldIndex(collectionGroup, fieldName, FieldIndex.Segment.Kind.ASCENDING);
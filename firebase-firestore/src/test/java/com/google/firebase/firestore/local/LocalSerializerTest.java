@@ -20,9 +20,11 @@ import static com.google.firebase.firestore.testutil.TestUtil.deletedDoc;
 import static com.google.firebase.firestore.testutil.TestUtil.doc;
 import static com.google.firebase.firestore.testutil.TestUtil.field;
 import static com.google.firebase.firestore.testutil.TestUtil.fieldMask;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
 import static com.google.firebase.firestore.testutil.TestUtil.key;
 import static com.google.firebase.firestore.testutil.TestUtil.map;
 import static com.google.firebase.firestore.testutil.TestUtil.path;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
 import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
 import static com.google.firebase.firestore.testutil.TestUtil.unknownDoc;
 import static java.util.Arrays.asList;
@@ -53,6 +55,7 @@ import com.google.firestore.v1.Value;
 import com.google.firestore.v1.Write;
 import com.google.firestore.v1.Write.Builder;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Before;
@@ -361,6 +364,41 @@ public final class LocalSerializerTest {
     assertEquals(unknownDoc, decoded);
   }
 
+  @Test
+  public void testDecodesEncodedDocuments() throws InvalidProtocolBufferException {
+    List<MutableDocument> documents =
+        asList(
+            doc("some/path", 42, map("foo", "bar", "nested", map("a", 1, "b", asList(1, 2)))),
+            doc("some/path", 42, map()),
+            doc("some/path", 42, map("foo", "bar")).setHasCommittedMutations(),
+            deletedDoc("some/path", 42),
+            unknownDoc("some/path", 42));
+
+    for (MutableDocument document : documents) {
+      byte[] bytes = serializer.encodeMaybeDocument(document).toByteArray();
+      MutableDocument decoded = serializer.decodeMaybeDocument(bytes);
+      assertEquals(document, decoded);
+      assertEquals(document.hasCommittedMutations(), decoded.hasCommittedMutations());
+    }
+  }
+
+  @Test
+  public void testLazilyDecodedDocumentsMatchQueries() throws InvalidProtocolBufferException {
+    Query query = query("coll").filter(filter("nested.selector", "==", 7));
+    for (int i = 0; i < 20; ++i) {
+      MutableDocument document =
+          doc("coll/doc" + i, 1, map("nested", map("selector", i % 10), "name", "doc " + i));
+      byte[] bytes = serializer.encodeMaybeDocument(document).toByteArray();
+      MutableDocument eager =
+          serializer.decodeMaybeDocument(
+              com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes));
+      MutableDocument lazy = serializer.decodeMaybeDocument(bytes);
+      assertEquals(i % 10 == 7, query.matches(lazy));
+      assertEquals(query.matches(eager), query.matches(lazy));
+      assertEquals(eager, lazy);
+    }
+  }
+
   @Test
   public void testEncodesTargetData() {
     Query query = TestUtil.query("room");
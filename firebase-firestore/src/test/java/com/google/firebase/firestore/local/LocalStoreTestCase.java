@@ -128,6 +128,8 @@ public abstract class LocalStoreTestCase {
     localStorePersistence = getPersistence();
     queryEngine = new CountingQueryEngine(new QueryEngine());
     localStore = new LocalStore(localStorePersistence, queryEngine, User.UNAUTHENTICATED);
+    // Most tests verify the documents that the query engine reads, which cached results would hide.
+    localStore.setQueryResultCacheSize(0);
     localStore.start();
     indexBackfiller = new IndexBackfiller(localStorePersistence, new AsyncQueue(), localStore);
   }
@@ -1180,6 +1182,47 @@ public abstract class LocalStoreTestCase {
     assertQueryReturned("foo/a");
   }
 
+  @Test
+  public void testCachesQueryResultsUntilDocumentsInTheCollectionChange() {
+    assumeFalse(garbageCollectorIsEager());
+    localStore.setQueryResultCacheSize(QueryResultCache.DEFAULT_MAX_ENTRIES);
+
+    Query query = query("foo").filter(filter("matches", "==", true));
+    int targetId = allocateQuery(query);
+    writeMutation(setMutation("foo/a", map("matches", true)));
+    writeMutation(setMutation("foo/ignored", map("matches", false)));
+
+    executeQuery(query);
+    assertQueryReturned("foo/a");
+
+    // Repeated executions are served from the cache.
+    executeQuery(query);
+    assertRemoteDocumentsRead(/* byKey= */ 0, /* byCollection= */ 0);
+    assertOverlaysRead(/* byKey= */ 0, /* byCollection= */ 0);
+    assertQueryReturned("foo/a");
+
+    // Writes to other collections do not invalidate the result.
+    writeMutation(setMutation("bar/a", map("matches", true)));
+    executeQuery(query);
+    assertRemoteDocumentsRead(/* byKey= */ 0, /* byCollection= */ 0);
+    assertQueryReturned("foo/a");
+
+    writeMutation(setMutation("foo/b", map("matches", true)));
+    executeQuery(query);
+    assertQueryReturned("foo/a", "foo/b");
+
+    applyRemoteEvent(
+        updateRemoteEvent(doc("foo/c", 10, map("matches", true)), asList(targetId), emptyList()));
+    executeQuery(query);
+    assertQueryReturned("foo/a", "foo/b", "foo/c");
+
+    QueryResultCache.Stats stats = localStore.getQueryResultCacheStats();
+    assertEquals(2, stats.getHits());
+    assertEquals(3, stats.getMisses());
+    assertEquals(1, stats.getCachedQueries());
+    assertEquals(3, stats.getCachedDocuments());
+  }
+
   @Test
   public void testLastLimboFreeSnapshotIsAdvancedDuringViewProcessing() {
     // This test verifies that the `lastLimboFreeSnapshot` version for TargetData is advanced when
@@ -22,7 +22,9 @@ import static com.google.firebase.firestore.testutil.TestUtil.version;
 import static com.google.firebase.firestore.testutil.TestUtil.wrapObject;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import android.util.SparseArray;
 import com.google.firebase.Timestamp;
@@ -722,4 +724,208 @@ public abstract class LruGarbageCollectorTestCase {
     assertEquals(10, results.getTargetsRemoved());
     assertEquals(100, results.getDocumentsRemoved());
   }
+
+  @Test
+  public void testIncrementalGCRan() {
+    // Set a low byte threshold so we can guarantee that GC will run, and a small row budget so
+    // that the collection needs several slices.
+    LruGarbageCollector.Params params =
+        new LruGarbageCollector.Params(
+            /* minBytesThreshold= */ 100,
+            /* percentileToCollect= */ 10,
+            /* maximumSequenceNumbersToCollect= */ 1000,
+            /* maxSliceDurationMs= */ Long.MAX_VALUE,
+            /* maxRowsPerSlice= */ 20);
+
+    // Switch to persistence using our new params.
+    persistence.shutdown();
+    newTestResources(params);
+
+    // Add 100 targets and 10 documents to each
+    for (int i = 0; i < 100; i++) {
+      persistence.runTransaction(
+          "Add a target and some documents",
+          () -> {
+            TargetData targetData = addNextQueryInTransaction();
+            for (int j = 0; j < 10; j++) {
+              MutableDocument doc = cacheADocumentInTransaction();
+              addDocumentToTarget(doc.getKey(), targetData.getTargetId());
+            }
+          });
+    }
+
+    LruGarbageCollector.Results results = collectIncrementally(new SparseArray<>());
+
+    // The incremental collection removes the same 10 targets and 100 documents as a full one.
+    assertTrue(results.hasRun());
+    assertEquals(10, results.getTargetsRemoved());
+    assertEquals(100, results.getDocumentsRemoved());
+    assertTrue(results.getSlices().size() > 2);
+    assertTrue(results.getBytesReclaimed() >= 0);
+  }
+
+  @Test
+  public void testIncrementalGCRespectsChangesBetweenSlices() {
+    LruGarbageCollector.Params params =
+        new LruGarbageCollector.Params(
+            /* minBytesThreshold= */ 100,
+            /* percentileToCollect= */ 100,
+            /* maximumSequenceNumbersToCollect= */ 1000,
+            /* maxSliceDurationMs= */ Long.MAX_VALUE,
+            /* maxRowsPerSlice= */ 5);
+    persistence.shutdown();
+    newTestResources(params);
+
+    List<DocumentKey> orphanedKeys = new ArrayList<>();
+    persistence.runTransaction(
+        "add orphaned docs",
+        () -> {
+          for (int i = 0; i < 20; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+            orphanedKeys.add(doc.getKey());
+          }
+        });
+
+    // The first slice only determines the sequence numbers to collect.
+    assertNull(
+        persistence.runTransaction(
+            "GC slice", () -> garbageCollector.collectSlice(new SparseArray<>())));
+
+    // Pin the last document with a mutation before it is visited.
+    DocumentKey pinnedKey = orphanedKeys.get(orphanedKeys.size() - 1);
+    persistence.runTransaction(
+        "add mutation",
+        () ->
+            mutationQueue.addMutationBatch(
+                Timestamp.now(),
+                Collections.emptyList(),
+                Collections.singletonList(mutation(pinnedKey))));
+
+    LruGarbageCollector.Results results = collectIncrementally(new SparseArray<>());
+    assertEquals(orphanedKeys.size() - 1, results.getDocumentsRemoved());
+    persistence.runTransaction(
+        "verify", () -> assertTrue(documentCache.get(pinnedKey).isValidDocument()));
+  }
+
+  @Test
+  public void testIncrementalGCRevisitsRolledBackSlice() {
+    LruGarbageCollector.Params params =
+        new LruGarbageCollector.Params(
+            /* minBytesThreshold= */ 100,
+            /* percentileToCollect= */ 100,
+            /* maximumSequenceNumbersToCollect= */ 1000,
+            /* maxSliceDurationMs= */ Long.MAX_VALUE,
+            /* maxRowsPerSlice= */ 5);
+    persistence.shutdown();
+    newTestResources(params);
+
+    List<DocumentKey> orphanedKeys = new ArrayList<>();
+    persistence.runTransaction(
+        "add orphaned docs",
+        () -> {
+          for (int i = 0; i < 20; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+            orphanedKeys.add(doc.getKey());
+          }
+        });
+
+    // Roll back every other slice, both while the sequence numbers to collect are determined and
+    // while documents are removed.
+    LruGarbageCollector.Results results = null;
+    while (results == null) {
+      try {
+        persistence.runTransaction(
+            "failing GC slice",
+            () -> {
+              garbageCollector.collectSlice(new SparseArray<>());
+              throw new IllegalStateException("Slice failed");
+            });
+        fail("Expected the slice to fail");
+      } catch (IllegalStateException e) {
+        garbageCollector.rollBackSlice();
+      }
+      results =
+          persistence.runTransaction(
+              "GC slice", () -> garbageCollector.collectSlice(new SparseArray<>()));
+    }
+
+    assertEquals(orphanedKeys.size(), results.getDocumentsRemoved());
+    persistence.runTransaction(
+        "verify",
+        () -> {
+          for (DocumentKey key : orphanedKeys) {
+            assertFalse(documentCache.get(key).isValidDocument());
+          }
+        });
+  }
+
+  @Test
+  public void testIncrementalGCResumesFromPersistedCursor() {
+    LruGarbageCollector.Params params =
+        new LruGarbageCollector.Params(
+            /* minBytesThreshold= */ 100,
+            /* percentileToCollect= */ 100,
+            /* maximumSequenceNumbersToCollect= */ 1000,
+            /* maxSliceDurationMs= */ Long.MAX_VALUE,
+            /* maxRowsPerSlice= */ 5);
+    persistence.shutdown();
+    newTestResources(params);
+
+    List<DocumentKey> orphanedKeys = new ArrayList<>();
+    persistence.runTransaction(
+        "add orphaned docs",
+        () -> {
+          for (int i = 0; i < 20; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+            orphanedKeys.add(doc.getKey());
+          }
+        });
+
+    // Stop the collection once it has removed some of the documents.
+    int removedBeforeRestart = 0;
+    while (removedBeforeRestart == 0) {
+      assertNull(
+          persistence.runTransaction(
+              "GC slice", () -> garbageCollector.collectSlice(new SparseArray<>())));
+      removedBeforeRestart = persistence.runTransaction("count", () -> countRemoved(orphanedKeys));
+    }
+
+    // A new garbage collector, e.g. after the app restarted, continues where the first one stopped.
+    LruGarbageCollector restarted =
+        new LruGarbageCollector((LruDelegate) persistence.getReferenceDelegate(), params);
+    LruGarbageCollector.Results results;
+    do {
+      results =
+          persistence.runTransaction("GC slice", () -> restarted.collectSlice(new SparseArray<>()));
+    } while (results == null);
+
+    assertEquals(orphanedKeys.size() - removedBeforeRestart, results.getDocumentsRemoved());
+    int removed = persistence.runTransaction("count", () -> countRemoved(orphanedKeys));
+    assertEquals(orphanedKeys.size(), removed);
+  }
+
+  private int countRemoved(List<DocumentKey> keys) {
+    int removed = 0;
+    for (DocumentKey key : keys) {
+      if (!documentCache.get(key).isValidDocument()) {
+        ++removed;
+      }
+    }
+    return removed;
+  }
+
+  /** Runs slices of an incremental collection in separate transactions until it completes. */
+  private LruGarbageCollector.Results collectIncrementally(SparseArray<?> activeTargetIds) {
+    while (true) {
+      LruGarbageCollector.Results results =
+          persistence.runTransaction(
+              "GC slice", () -> garbageCollector.collectSlice(activeTargetIds));
+      if (results != null) {
+        return results;
+      }
+    }
+  }
 }
@@ -51,6 +51,27 @@ public final class PersistenceTestHelpers {
     return openSQLitePersistence(nextSQLiteDatabaseName(), LruGarbageCollector.Params.Default());
   }
 
+  /**
+   * Creates and starts a new SQLitePersistence instance that serves read-only transactions from
+   * {@code readerConnectionCount} reader connections.
+   */
+  public static SQLitePersistence createSQLitePersistenceWithConcurrentReads(
+      int readerConnectionCount) {
+    DatabaseId databaseId = DatabaseId.forProject("projectId");
+    LocalSerializer serializer = new LocalSerializer(new RemoteSerializer(databaseId));
+    Context context = ApplicationProvider.getApplicationContext();
+    SQLitePersistence persistence =
+        new SQLitePersistence(
+            context,
+            nextSQLiteDatabaseName(),
+            databaseId,
+            serializer,
+            LruGarbageCollector.Params.Default(),
+            readerConnectionCount);
+    persistence.start();
+    return persistence;
+  }
+
   public static SQLitePersistence createSQLitePersistenceForVersion(
       String databaseName, int version) {
     return openSQLitePersistence(version, databaseName, LruGarbageCollector.Params.Default());
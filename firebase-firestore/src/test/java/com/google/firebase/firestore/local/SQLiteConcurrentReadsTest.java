@@ -0,0 +1,142 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.key;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.MutableDocument;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public final class SQLiteConcurrentReadsTest {
+  private SQLitePersistence persistence;
+  private RemoteDocumentCache remoteDocumentCache;
+  private LocalSnapshotReader reader;
+  private ExecutorService readerThread;
+
+  @Before
+  public void setUp() {
+    persistence = PersistenceTestHelpers.createSQLitePersistenceWithConcurrentReads(2);
+    remoteDocumentCache = persistence.getRemoteDocumentCache();
+    remoteDocumentCache.setIndexManager(persistence.getIndexManager(User.UNAUTHENTICATED));
+    reader =
+        new LocalSnapshotReader(persistence, User.UNAUTHENTICATED, Collections.emptyMap());
+    readerThread = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    readerThread.shutdownNow();
+    persistence.shutdown();
+  }
+
+  @Test
+  public void testSupportsConcurrentReads() {
+    assertTrue(persistence.supportsConcurrentReads());
+    assertFalse(PersistenceTestHelpers.createSQLitePersistence().supportsConcurrentReads());
+  }
+
+  @Test
+  public void testReadsCommittedDocuments() {
+    MutableDocument document = doc("coll/a", 1, map("foo", "bar"));
+    persistence.runTransaction("add document", () -> remoteDocumentCache.add(document, version(1)));
+
+    assertThat(reader.readDocument(key("coll/a"))).isEqualTo(document);
+    assertThat(
+            reader
+                .executeQuery(query("coll"), /* usePreviousResults= */ false)
+                .getDocuments()
+                .get(key("coll/a")))
+        .isEqualTo(document);
+  }
+
+  @Test
+  public void testReadsAreNotBlockedByWriteTransaction() throws Exception {
+    MutableDocument document = doc("coll/a", 1, map("foo", "bar"));
+    persistence.runTransaction(
+        "add document",
+        () -> {
+          remoteDocumentCache.add(document, version(1));
+
+          // The reader runs while the write transaction is still open, so it must neither wait
+          // for the writer nor observe the uncommitted document.
+          Document uncommitted =
+              readerThread
+                  .submit(() -> reader.readDocument(key("coll/a")))
+                  .get(5, TimeUnit.SECONDS);
+          assertFalse(uncommitted.isFoundDocument());
+        });
+
+    Document committed =
+        readerThread.submit(() -> reader.readDocument(key("coll/a"))).get(5, TimeUnit.SECONDS);
+    assertThat(committed).isEqualTo(document);
+  }
+
+  @Test
+  public void testReadOnlyTransactionReadsFromOneSnapshot() {
+    MutableDocument document = doc("coll/a", 1, map("foo", "bar"));
+    MutableDocument[] reads =
+        persistence.runReadOnlyTransaction(
+            "read twice",
+            snapshot -> {
+              RemoteDocumentCache snapshotCache = snapshot.getRemoteDocumentCache();
+              MutableDocument before = snapshotCache.get(key("coll/a"));
+              try {
+                // Commit the document on another thread while the snapshot is open.
+                Runnable write = () -> remoteDocumentCache.add(document, version(1));
+                readerThread
+                    .submit(() -> persistence.runTransaction("add document", write))
+                    .get(5, TimeUnit.SECONDS);
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+              return new MutableDocument[] {before, snapshotCache.get(key("coll/a"))};
+            });
+
+    assertFalse(reads[0].isFoundDocument());
+    assertFalse(reads[1].isFoundDocument());
+    assertThat(reader.readDocument(key("coll/a"))).isEqualTo(document);
+  }
+
+  @Test
+  public void testSnapshotReaderIsOnlyAvailableWithConcurrentReads() {
+    LocalStore localStore =
+        new LocalStore(
+            PersistenceTestHelpers.createSQLitePersistence(),
+            new QueryEngine(),
+            User.UNAUTHENTICATED);
+    assertNull(localStore.newSnapshotReader());
+  }
+}
@@ -581,6 +581,43 @@ public class SQLiteIndexManagerTest extends IndexManagerTestCase {
     verifyResults(query, "coll/doc1", "coll/doc3");
   }
 
+  @Test
+  public void testLimitIsAppliedToMergedSubTargets() {
+    indexManager.addFieldIndex(fieldIndex("coll", "a", Kind.ASCENDING, "b", Kind.ASCENDING));
+    for (int i = 0; i < 10; ++i) {
+      addDoc("coll/doc" + i, map("a", i % 5, "b", 10 - i));
+    }
+    Query query =
+        query("coll")
+            .filter(filter("a", "in", Arrays.asList(1, 2, 3)))
+            .orderBy(orderBy("b"))
+            .limitToFirst(4);
+    validateIndexType(query, IndexManager.IndexType.FULL);
+    verifyResults(query, "coll/doc8", "coll/doc7", "coll/doc6", "coll/doc3");
+  }
+
+  @Test
+  public void testMergedIndexScansMatchUnion() {
+    indexManager.addFieldIndex(fieldIndex("coll", "a", Kind.ASCENDING));
+    indexManager.addFieldIndex(fieldIndex("coll", "b", Kind.CONTAINS));
+    for (int i = 0; i < 20; ++i) {
+      addDoc("coll/doc" + i, map("a", i % 4, "b", Arrays.asList(i % 3, i % 5)));
+    }
+    Query query =
+        query("coll")
+            .filter(
+                orFilters(
+                    filter("a", "in", Arrays.asList(1, 2)),
+                    filter("b", "array-contains-any", Arrays.asList(0, 4))));
+
+    SQLiteIndexManager sqliteIndexManager = (SQLiteIndexManager) indexManager;
+    sqliteIndexManager.setMinIndexScansForMerge(Integer.MAX_VALUE);
+    List<DocumentKey> unionResults = indexManager.getDocumentsMatchingTarget(query.toTarget());
+    sqliteIndexManager.setMinIndexScansForMerge(1);
+    List<DocumentKey> mergedResults = indexManager.getDocumentsMatchingTarget(query.toTarget());
+    assertWithMessage("Merged results").that(mergedResults).containsExactlyElementsIn(unionResults);
+  }
+
   @Test
   public void testIndexEntriesAreUpdated() {
     indexManager.addFieldIndex(fieldIndex("coll", "value", Kind.ASCENDING));
@@ -0,0 +1,164 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.database.sqlite.SQLiteStatement;
+import com.google.firebase.firestore.local.SQLitePersistence.StatementStats;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public final class SQLitePersistenceTest {
+  private static final String INSERT_SQL =
+      "INSERT INTO collection_parents (collection_id, parent) VALUES (?, ?)";
+  private static final String SELECT_SQL =
+      "SELECT parent FROM collection_parents WHERE collection_id = ? ORDER BY parent";
+
+  private SQLitePersistence persistence;
+
+  @Before
+  public void setUp() {
+    persistence = PersistenceTestHelpers.createSQLitePersistence();
+  }
+
+  @After
+  public void tearDown() {
+    persistence.shutdown();
+  }
+
+  @Test
+  public void testReusesPreparedStatements() {
+    assertSame(persistence.prepare(INSERT_SQL), persistence.prepare(INSERT_SQL));
+  }
+
+  @Test
+  public void testEvictedStatementsRemainUsableUntilTransactionEnds() {
+    List<SQLiteStatement> inTransaction = new ArrayList<>();
+    persistence.runTransaction(
+        "evict",
+        () -> {
+          SQLiteStatement insert = persistence.prepare(INSERT_SQL);
+          inTransaction.add(insert);
+          for (int i = 0; i < 100; ++i) {
+            persistence.prepare("SELECT " + i);
+          }
+          insert.bindString(1, "coll");
+          insert.bindString(2, "parent");
+          insert.executeInsert();
+        });
+
+    int rows = persistence.query(SELECT_SQL).binding("coll").forEach(row -> {});
+    assertEquals(1, rows);
+    assertNotSame(inTransaction.get(0), persistence.prepare(INSERT_SQL));
+  }
+
+  @Test
+  public void testProfilesStatements() {
+    persistence.setStatementProfilingEnabled(true);
+    persistence.runTransaction(
+        "insert",
+        () -> {
+          for (int i = 0; i < 10; ++i) {
+            persistence.execute(INSERT_SQL, "coll", "parent" + i);
+          }
+        });
+    int rows = persistence.query(SELECT_SQL).binding("coll").forEach(row -> {});
+    assertEquals(10, rows);
+
+    StatementStats insertStats = persistence.getStatementStats().get(INSERT_SQL);
+    assertNotNull(insertStats);
+    assertEquals(10, insertStats.getExecutionCount());
+    assertEquals(1, insertStats.getCompileCount());
+
+    StatementStats selectStats = persistence.getStatementStats().get(SELECT_SQL);
+    assertNotNull(selectStats);
+    assertEquals(1, selectStats.getExecutionCount());
+
+    persistence.setStatementProfilingEnabled(false);
+    assertThat(persistence.getStatementStats()).isEmpty();
+  }
+
+  @Test
+  public void testSupportsNestedQueries() {
+    persistence.runTransaction(
+        "insert",
+        () -> {
+          persistence.execute(INSERT_SQL, "a", "a1");
+          persistence.execute(INSERT_SQL, "a", "a2");
+          persistence.execute(INSERT_SQL, "b", "b1");
+        });
+
+    // The inner queries run while the outer query holds the reused cursor window.
+    List<String> parents = new ArrayList<>();
+    persistence
+        .query("SELECT DISTINCT collection_id FROM collection_parents ORDER BY collection_id")
+        .forEach(
+            outer ->
+                persistence
+                    .query(SELECT_SQL)
+                    .binding(outer.getString(0))
+                    .forEach(inner -> parents.add(inner.getString(0))));
+    assertThat(parents).containsExactly("a1", "a2", "b1").inOrder();
+
+    // The window is available again once all cursors are closed.
+    List<String> remaining = new ArrayList<>();
+    persistence.query(SELECT_SQL).binding("b").forEach(row -> remaining.add(row.getString(0)));
+    assertThat(remaining).containsExactly("b1");
+  }
+
+  @Test
+  public void testLongQuerySplitsArgumentsIntoSubqueries() {
+    List<Object> parents = new ArrayList<>();
+    persistence.runTransaction(
+        "insert",
+        () -> {
+          for (int i = 0; i < 2000; ++i) {
+            persistence.execute(INSERT_SQL, "coll", "parent" + i);
+            parents.add("parent" + i);
+          }
+        });
+
+    persistence.setStatementProfilingEnabled(true);
+    SQLitePersistence.LongQuery longQuery =
+        new SQLitePersistence.LongQuery(
+            persistence,
+            "SELECT parent FROM collection_parents WHERE collection_id = ? AND parent IN (",
+            Collections.singletonList("coll"),
+            parents,
+            ")");
+    int rows = 0;
+    while (longQuery.hasMoreSubqueries()) {
+      rows += longQuery.performNextSubquery().forEach(row -> {});
+    }
+    assertEquals(2000, rows);
+    assertEquals(3, longQuery.getSubqueriesPerformed());
+    // The two full subqueries share their SQL.
+    assertEquals(2, persistence.getStatementStats().size());
+  }
+}
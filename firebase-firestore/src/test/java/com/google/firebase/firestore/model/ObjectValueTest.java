@@ -26,6 +26,8 @@ import static org.junit.Assert.assertNull;
 import com.google.firebase.firestore.model.mutation.FieldMask;
 import com.google.firestore.v1.MapValue;
 import com.google.firestore.v1.Value;
+import com.google.protobuf.ByteString;
+import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -61,6 +63,34 @@ public class ObjectValueTest {
     assertNull(obj.get(field("bar.a")));
   }
 
+  @Test
+  public void testExtractsFieldsFromEncodedFields() {
+    ObjectValue expected = wrapObject("foo", map("a", 1, "b", true), "bar", "string");
+    ObjectValue obj = ObjectValue.fromEncodedFields(encodeFields(expected));
+
+    assertEquals(wrap(1), obj.get(field("foo.a")));
+    assertEquals(wrap(true), obj.get(field("foo.b")));
+    assertEquals(wrap("string"), obj.get(field("bar")));
+    assertNull(obj.get(field("foo.c")));
+    assertNull(obj.get(field("bar.a")));
+    assertNull(obj.get(field("baz")));
+    assertEquals(expected, obj);
+    assertEquals(expected.getFieldsMap(), obj.getFieldsMap());
+  }
+
+  @Test
+  public void testModifiesEncodedFields() {
+    ObjectValue obj =
+        ObjectValue.fromEncodedFields(encodeFields(wrapObject("foo", map("a", 1), "bar", 2)));
+    assertEquals(wrap(1), obj.get(field("foo.a")));
+
+    obj.set(field("foo.b"), wrap(3));
+    obj.delete(field("bar"));
+
+    assertEquals(wrapObject("foo", map("a", 1, "b", 3)), obj);
+    assertNull(obj.get(field("bar")));
+  }
+
   @Test
   public void testExtractsFieldMask() {
     ObjectValue val =
@@ -285,4 +315,12 @@ public class ObjectValueTest {
     objectValue.set(field("a.c"), fooValue);
     assertEquals(wrapObject("a", map("b", fooString, "c", fooString)), objectValue);
   }
+
+  private static Map<String, ByteString> encodeFields(ObjectValue objectValue) {
+    Map<String, ByteString> encodedFields = new HashMap<>();
+    for (Map.Entry<String, Value> entry : objectValue.getFieldsMap().entrySet()) {
+      encodedFields.put(entry.getKey(), entry.getValue().toByteString());
+    }
+    return encodedFields;
+  }
 }
@@ -24,8 +24,15 @@ import com.google.protobuf.ByteString;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 import org.json.JSONObject;
 import org.junit.Test;
@@ -177,6 +184,40 @@ public class BloomFilterTest {
     }
   }
 
+  @Test
+  public void md5HasherMatchesMessageDigest() throws Exception {
+    MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+    BloomFilter.Md5Hasher hasher = new BloomFilter.Md5Hasher();
+    Random random = new Random(42);
+    List<String> values =
+        new ArrayList<>(
+            Arrays.asList(
+                "",
+                "a",
+                GOLDEN_DOCUMENT_PREFIX + "1",
+                "ÀÒ∑",
+                "\uD83D\uDE00",
+                "unpaired \uD800 surrogate",
+                "\uDC00"));
+    // Cover lengths around the 64-byte block boundaries of the padding.
+    for (int length = 50; length < 140; length++) {
+      StringBuilder value = new StringBuilder();
+      for (int i = 0; i < length; i++) {
+        value.append((char) (random.nextInt(4) == 0 ? random.nextInt(0x10000) : 'a' + i % 26));
+      }
+      values.add(value.toString());
+    }
+
+    for (String value : values) {
+      ByteBuffer digest =
+          ByteBuffer.wrap(messageDigest.digest(value.getBytes(StandardCharsets.UTF_8)))
+              .order(ByteOrder.LITTLE_ENDIAN);
+      hasher.hash(value);
+      assertEquals(digest.getLong(0), hasher.low);
+      assertEquals(digest.getLong(8), hasher.high);
+    }
+  }
+
   @Test
   public void toStringOnEmptyBitmap() {
     String toStringResult = new BloomFilter(ByteString.empty(), 0, 0).toString();
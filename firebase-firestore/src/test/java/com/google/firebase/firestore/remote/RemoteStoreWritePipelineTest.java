@@ -0,0 +1,214 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.mutationResult;
+import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.core.OnlineState;
+import com.google.firebase.firestore.local.LocalStore;
+import com.google.firebase.firestore.local.MemoryPersistence;
+import com.google.firebase.firestore.local.Persistence;
+import com.google.firebase.firestore.local.PersistenceTestHelpers;
+import com.google.firebase.firestore.local.QueryEngine;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.model.mutation.MutationBatchResult;
+import com.google.firebase.firestore.model.mutation.MutationResult;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Consumer;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RemoteStoreWritePipelineTest {
+  private final List<Integer> acknowledgedBatchIds = new ArrayList<>();
+  private final List<Integer> rejectedBatchIds = new ArrayList<>();
+
+  private AsyncQueue queue;
+  private MockDatastore datastore;
+  private LocalStore localStore;
+  private RemoteStore remoteStore;
+
+  @Before
+  public void setUp() throws Exception {
+    queue = new AsyncQueue();
+    datastore =
+        new MockDatastore(
+            PersistenceTestHelpers.nextDatabaseInfo(),
+            queue,
+            ApplicationProvider.getApplicationContext());
+    Persistence persistence = MemoryPersistence.createEagerGcMemoryPersistence();
+    persistence.start();
+    localStore = new LocalStore(persistence, new QueryEngine(), User.UNAUTHENTICATED);
+    queue.runSync(() -> localStore.start());
+
+    RemoteStore.RemoteStoreCallback callback =
+        new RemoteStore.RemoteStoreCallback() {
+          @Override
+          public void handleRemoteEvent(RemoteEvent remoteEvent) {}
+
+          @Override
+          public void handleRejectedListen(int targetId, Status error) {}
+
+          @Override
+          public void handleSuccessfulWrite(MutationBatchResult successfulWrite) {
+            acknowledgedBatchIds.add(successfulWrite.getBatch().getBatchId());
+            localStore.acknowledgeBatch(successfulWrite);
+          }
+
+          @Override
+          public void handleRejectedWrite(int batchId, Status error) {
+            rejectedBatchIds.add(batchId);
+            localStore.rejectBatch(batchId);
+          }
+
+          @Override
+          public void handleOnlineStateChange(OnlineState onlineState) {}
+
+          @Override
+          public ImmutableSortedSet<DocumentKey> getRemoteKeysForTarget(int targetId) {
+            return DocumentKey.emptyKeySet();
+          }
+        };
+    remoteStore =
+        new RemoteStore(
+            callback,
+            localStore,
+            datastore,
+            queue,
+            new NoOpConnectivityMonitor(),
+            /* maxPendingWrites= */ 10,
+            /* maxBatchesPerWriteRequest= */ 3);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    queue.runSync(() -> remoteStore.shutdown());
+  }
+
+  @Test
+  public void testCoalescesBatchesIntoWriteRequests() throws Exception {
+    writeLocally(
+        setMutation("coll/a", map()),
+        setMutation("coll/b", map()),
+        setMutation("coll/c", map()),
+        setMutation("coll/d", map()),
+        setMutation("coll/e", map()));
+    queue.runSync(() -> remoteStore.start());
+
+    assertEquals(2, datastore.writesSent());
+    assertEquals(3, datastore.waitForWriteSend().size());
+    assertEquals(2, datastore.waitForWriteSend().size());
+
+    ackWrite(3);
+    assertEquals(asList(1, 2, 3), acknowledgedBatchIds);
+    ackWrite(2);
+    assertEquals(asList(1, 2, 3, 4, 5), acknowledgedBatchIds);
+  }
+
+  @Test
+  public void testRecordsDrainStatsOnceThePipelineIsEmpty() throws Exception {
+    writeLocally(setMutation("coll/a", map()), setMutation("coll/b", map()));
+    queue.runSync(() -> remoteStore.start());
+    assertNull(remoteStore.getLastWriteDrainStats());
+
+    ackWrite(2);
+    RemoteStore.WriteDrainStats stats = remoteStore.getLastWriteDrainStats();
+    assertNotNull(stats);
+    assertEquals(2, stats.getWriteCount());
+    assertTrue(stats.getDurationMs() > 0);
+    assertTrue(stats.getWritesPerSecond() > 0);
+  }
+
+  @Test
+  public void testDoesNotCoalesceBatchesThatWriteTheSameDocument() throws Exception {
+    writeLocally(
+        setMutation("coll/a", map("v", 1)),
+        setMutation("coll/a", map("v", 2)),
+        setMutation("coll/b", map()));
+    queue.runSync(() -> remoteStore.start());
+
+    assertEquals(2, datastore.writesSent());
+    assertEquals(1, datastore.waitForWriteSend().size());
+    assertEquals(2, datastore.waitForWriteSend().size());
+  }
+
+  @Test
+  public void testResendsRejectedCoalescedBatchesIndividually() throws Exception {
+    writeLocally(
+        setMutation("coll/a", map()), setMutation("coll/b", map()), setMutation("coll/c", map()));
+    queue.runSync(() -> remoteStore.start());
+    assertEquals(1, datastore.writesSent());
+
+    // The rejection cannot be attributed to a single batch, so all batches are resent.
+    queue.runSync(() -> datastore.failWrite(Status.INVALID_ARGUMENT));
+    assertEquals(asList(), rejectedBatchIds);
+    assertEquals(3, datastore.writesSent());
+
+    // Now the first batch is identified as the one that failed.
+    queue.runSync(() -> datastore.failWrite(Status.INVALID_ARGUMENT));
+    assertEquals(singletonList(1), rejectedBatchIds);
+    assertEquals(2, datastore.writesSent());
+
+    ackWrite(1);
+    ackWrite(1);
+    assertEquals(asList(2, 3), acknowledgedBatchIds);
+  }
+
+  private void writeLocally(Mutation... mutations) throws Exception {
+    queue.runSync(
+        () -> {
+          for (Mutation mutation : mutations) {
+            localStore.writeLocally(singletonList(mutation));
+          }
+        });
+  }
+
+  private void ackWrite(int mutationCount) throws Exception {
+    List<MutationResult> results = new ArrayList<>();
+    for (int i = 0; i < mutationCount; ++i) {
+      results.add(mutationResult(1));
+    }
+    queue.runSync(() -> datastore.ackWrite(version(1), results));
+  }
+
+  private static class NoOpConnectivityMonitor implements ConnectivityMonitor {
+    @Override
+    public void addCallback(Consumer<NetworkStatus> callback) {}
+
+    @Override
+    public void shutdown() {}
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import com.google.firebase.firestore.IgnoreExtraProperties;
+import com.google.firebase.firestore.PropertyName;
+import com.google.firebase.firestore.ThrowOnExtraProperties;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GeneratedClassMapperTest {
+
+  @IgnoreExtraProperties
+  public static class GeneratedBean {
+    public String name;
+    public long count;
+    public double score;
+    private boolean active;
+    private List<String> tags;
+
+    @PropertyName("nick_name")
+    public String nickName;
+
+    public boolean isActive() {
+      return active;
+    }
+
+    public void setActive(boolean active) {
+      this.active = active;
+    }
+
+    public List<String> getTags() {
+      return tags;
+    }
+
+    public void setTags(List<String> tags) {
+      this.tags = tags;
+    }
+  }
+
+  /** Same shape as {@link GeneratedBean}, but private so that it is mapped with reflection. */
+  private static class ReflectiveBean {
+    public String name;
+    public long count;
+    public double score;
+    private boolean active;
+    private List<String> tags;
+
+    @PropertyName("nick_name")
+    public String nickName;
+
+    public boolean isActive() {
+      return active;
+    }
+
+    public void setActive(boolean active) {
+      this.active = active;
+    }
+
+    public List<String> getTags() {
+      return tags;
+    }
+
+    public void setTags(List<String> tags) {
+      this.tags = tags;
+    }
+  }
+
+  @ThrowOnExtraProperties
+  public static class StrictBean {
+    public String value;
+  }
+
+  private static Map<String, Object> beanData(int i) {
+    return map(
+        "name",
+        "name" + i,
+        "count",
+        (long) i,
+        "score",
+        i / 2.0,
+        "active",
+        i % 2 == 0,
+        "tags",
+        asList("a", "b", "c"),
+        "nick_name",
+        "nick" + i);
+  }
+
+  @Test
+  public void loadsGeneratedMappers() {
+    assertNotNull(CustomClassMapper.loadGeneratedMapperForClass(GeneratedBean.class));
+    assertNotNull(CustomClassMapper.loadGeneratedMapperForClass(StrictBean.class));
+    assertNull(CustomClassMapper.loadGeneratedMapperForClass(ReflectiveBean.class));
+  }
+
+  @Test
+  public void generatedMapperDeserializesLikeReflection() {
+    Map<String, Object> data = beanData(4);
+    GeneratedBean generated =
+        CustomClassMapper.convertToCustomClass(data, GeneratedBean.class, null);
+    ReflectiveBean reflective =
+        CustomClassMapper.convertToCustomClass(data, ReflectiveBean.class, null);
+
+    assertEquals(reflective.name, generated.name);
+    assertEquals(reflective.count, generated.count);
+    assertEquals(reflective.score, generated.score, 0.0);
+    assertEquals(reflective.isActive(), generated.isActive());
+    assertEquals(reflective.getTags(), generated.getTags());
+    assertEquals(reflective.nickName, generated.nickName);
+  }
+
+  @Test
+  public void generatedMapperSerializesLikeReflection() {
+    Map<String, Object> data = beanData(3);
+    GeneratedBean generated =
+        CustomClassMapper.convertToCustomClass(data, GeneratedBean.class, null);
+    ReflectiveBean reflective =
+        CustomClassMapper.convertToCustomClass(data, ReflectiveBean.class, null);
+
+    assertEquals(
+        CustomClassMapper.convertToPlainJavaTypes(reflective),
+        CustomClassMapper.convertToPlainJavaTypes(generated));
+    assertEquals(data, CustomClassMapper.convertToPlainJavaTypes(generated));
+  }
+
+  @Test
+  public void generatedMapperConvertsNumbers() {
+    GeneratedBean bean =
+        CustomClassMapper.convertToCustomClass(
+            map("count", 1.0, "score", 2L), GeneratedBean.class, null);
+    assertEquals(1L, bean.count);
+    assertEquals(2.0, bean.score, 0.0);
+  }
+
+  @Test
+  public void generatedMapperReportsErrorsLikeReflection() {
+    Map<String, Object> data = map("count", "foo");
+    RuntimeException generated =
+        assertThrows(
+            RuntimeException.class,
+            () -> CustomClassMapper.convertToCustomClass(data, GeneratedBean.class, null));
+    RuntimeException reflective =
+        assertThrows(
+            RuntimeException.class,
+            () -> CustomClassMapper.convertToCustomClass(data, ReflectiveBean.class, null));
+    assertEquals(reflective.getMessage(), generated.getMessage());
+  }
+
+  @Test
+  public void generatedMapperIgnoresExtraProperties() {
+    GeneratedBean bean =
+        CustomClassMapper.convertToCustomClass(
+            map("name", "foo", "unknown", 1L), GeneratedBean.class, null);
+    assertEquals("foo", bean.name);
+  }
+
+  @Test
+  public void generatedMapperThrowsOnExtraProperties() {
+    RuntimeException e =
+        assertThrows(
+            RuntimeException.class,
+            () ->
+                CustomClassMapper.convertToCustomClass(
+                    map("value", "foo", "Value", "bar"), StrictBean.class, null));
+    assertEquals(
+        "No setter/field for Value found on class "
+            + StrictBean.class.getName()
+            + " (fields/setters are case sensitive!)",
+        e.getMessage());
+  }
+}
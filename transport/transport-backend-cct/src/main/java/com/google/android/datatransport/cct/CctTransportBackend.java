@@ -45,6 +45,7 @@ import com.google.firebase.encoders.DataEncoder;
 import com.google.firebase.encoders.EncodingException;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -56,6 +57,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -63,6 +65,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -79,6 +82,8 @@ final class CctTransportBackend implements TransportBackend {
   private static final String CONTENT_TYPE_HEADER_KEY = "Content-Type";
   static final String API_KEY_HEADER_KEY = "X-Goog-Api-Key";
   private static final String JSON_CONTENT_TYPE = "application/json";
+  private static final Encoding PROTO_ENCODING = Encoding.of("proto");
+  private static final Encoding JSON_ENCODING = Encoding.of("json");
 
   @VisibleForTesting static final String KEY_NETWORK_TYPE = "net-type";
   @VisibleForTesting static final String KEY_MOBILE_SUBTYPE = "mobile-subtype";
@@ -105,6 +110,7 @@ final class CctTransportBackend implements TransportBackend {
   private final Clock uptimeClock;
   private final Clock wallTimeClock;
   private final int readTimeout;
+  private final UploadMetrics uploadMetrics = new UploadMetrics();
 
   private static URL parseUrlOrThrow(String url) {
     try {
@@ -129,6 +135,11 @@ final class CctTransportBackend implements TransportBackend {
     this(applicationContext, wallTimeClock, uptimeClock, READ_TIME_OUT);
   }
 
+  /** Returns the counters of the bytes sent by the uploads of this backend. */
+  UploadMetrics getUploadMetrics() {
+    return uploadMetrics;
+  }
+
   private static TelephonyManager getTelephonyManager(Context context) {
     return (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
   }
@@ -247,41 +258,18 @@ final class CctTransportBackend implements TransportBackend {
         requestBuilder.setSource(entry.getKey());
       }
 
-      List<LogEvent> logEvents = new ArrayList<>();
+      // LogEvents are created lazily while the request is being encoded, so that only the event
+      // currently being written is materialized in addition to the stored payloads.
+      List<EventInternal> supportedEvents = new ArrayList<>(entry.getValue().size());
       for (EventInternal eventInternal : entry.getValue()) {
-        EncodedPayload encodedPayload = eventInternal.getEncodedPayload();
-        Encoding encoding = encodedPayload.getEncoding();
-
-        LogEvent.Builder event;
-        if (encoding.equals(Encoding.of("proto"))) {
-          event = LogEvent.protoBuilder(encodedPayload.getBytes());
-        } else if (encoding.equals(Encoding.of("json"))) {
-          event =
-              LogEvent.jsonBuilder(new String(encodedPayload.getBytes(), Charset.forName("UTF-8")));
-        } else {
+        Encoding encoding = eventInternal.getEncodedPayload().getEncoding();
+        if (!encoding.equals(PROTO_ENCODING) && !encoding.equals(JSON_ENCODING)) {
           Logging.w(LOG_TAG, "Received event of unsupported encoding %s. Skipping...", encoding);
           continue;
         }
-
-        event
-            .setEventTimeMs(eventInternal.getEventMillis())
-            .setEventUptimeMs(eventInternal.getUptimeMillis())
-            .setTimezoneOffsetSeconds(eventInternal.getLong(KEY_TIMEZONE_OFFSET))
-            .setNetworkConnectionInfo(
-                NetworkConnectionInfo.builder()
-                    .setNetworkType(
-                        NetworkConnectionInfo.NetworkType.forNumber(
-                            eventInternal.getInteger(KEY_NETWORK_TYPE)))
-                    .setMobileSubtype(
-                        NetworkConnectionInfo.MobileSubtype.forNumber(
-                            eventInternal.getInteger(KEY_MOBILE_SUBTYPE)))
-                    .build());
-
-        if (eventInternal.getCode() != null) {
-          event.setEventCode(eventInternal.getCode());
-        }
-        logEvents.add(event.build());
+        supportedEvents.add(eventInternal);
       }
+      List<LogEvent> logEvents = new LazyLogEventList(supportedEvents);
       requestBuilder.setLogEvents(logEvents);
       batchedRequests.add(requestBuilder.build());
     }
@@ -289,6 +277,36 @@ final class CctTransportBackend implements TransportBackend {
     return BatchedLogRequest.create(batchedRequests);
   }
 
+  private static LogEvent toLogEvent(EventInternal eventInternal) {
+    EncodedPayload encodedPayload = eventInternal.getEncodedPayload();
+
+    LogEvent.Builder event;
+    if (encodedPayload.getEncoding().equals(PROTO_ENCODING)) {
+      event = LogEvent.protoBuilder(encodedPayload.getBytes());
+    } else {
+      event = LogEvent.jsonBuilder(new String(encodedPayload.getBytes(), Charset.forName("UTF-8")));
+    }
+
+    event
+        .setEventTimeMs(eventInternal.getEventMillis())
+        .setEventUptimeMs(eventInternal.getUptimeMillis())
+        .setTimezoneOffsetSeconds(eventInternal.getLong(KEY_TIMEZONE_OFFSET))
+        .setNetworkConnectionInfo(
+            NetworkConnectionInfo.builder()
+                .setNetworkType(
+                    NetworkConnectionInfo.NetworkType.forNumber(
+                        eventInternal.getInteger(KEY_NETWORK_TYPE)))
+                .setMobileSubtype(
+                    NetworkConnectionInfo.MobileSubtype.forNumber(
+                        eventInternal.getInteger(KEY_MOBILE_SUBTYPE)))
+                .build());
+
+    if (eventInternal.getCode() != null) {
+      event.setEventCode(eventInternal.getCode());
+    }
+    return event.build();
+  }
+
   private HttpResponse doSend(HttpRequest request) throws IOException {
 
     Logging.i(LOG_TAG, "Making request to: %s", request.url);
@@ -298,6 +316,9 @@ final class CctTransportBackend implements TransportBackend {
     connection.setDoOutput(true);
     connection.setInstanceFollowRedirects(false);
     connection.setRequestMethod("POST");
+    // Stream the request body instead of letting the connection buffer all of it to compute the
+    // Content-Length.
+    connection.setChunkedStreamingMode(0);
     connection.setRequestProperty(
         "User-Agent", String.format("datatransport/%s android/", BuildConfig.VERSION_NAME));
     connection.setRequestProperty(CONTENT_ENCODING_HEADER_KEY, GZIP_CONTENT_ENCODING);
@@ -308,8 +329,14 @@ final class CctTransportBackend implements TransportBackend {
       connection.setRequestProperty(API_KEY_HEADER_KEY, request.apiKey);
     }
 
+    ByteCountingOutputStream compressedStream = null;
+    ByteCountingOutputStream uncompressedStream = null;
     try (OutputStream conn = connection.getOutputStream();
-        OutputStream outputStream = new GZIPOutputStream(conn)) {
+        ByteCountingOutputStream compressed = new ByteCountingOutputStream(conn);
+        ByteCountingOutputStream outputStream =
+            new ByteCountingOutputStream(new GZIPOutputStream(compressed))) {
+      compressedStream = compressed;
+      uncompressedStream = outputStream;
       // note: it's very important to use a BufferedWriter for efficient use of resources as the
       // JsonWriter often writes one character at a time.
       dataEncoder.encode(
@@ -322,6 +349,15 @@ final class CctTransportBackend implements TransportBackend {
       return new HttpResponse(400, null, 0);
     }
 
+    uploadMetrics.record(
+        uncompressedStream.getCount(), compressedStream.getCount(), request.payloadBytes);
+    Logging.d(
+        LOG_TAG,
+        "Uploaded %d bytes (%d bytes compressed), payload bytes held in memory: %d",
+        uncompressedStream.getCount(),
+        compressedStream.getCount(),
+        request.payloadBytes);
+
     int responseCode = connection.getResponseCode();
     Logging.i(LOG_TAG, "Status Code: %d", responseCode);
     Logging.d(LOG_TAG, "Content-Type: %s", connection.getHeaderField("Content-Type"));
@@ -379,7 +415,7 @@ final class CctTransportBackend implements TransportBackend {
       HttpResponse response =
           retry(
               5,
-              new HttpRequest(actualEndPoint, requestBody, apiKey),
+              new HttpRequest(actualEndPoint, requestBody, apiKey, getPayloadBytes(request)),
               this::doSend,
               (req, resp) -> {
                 if (resp.redirectUrl != null) {
@@ -406,6 +442,14 @@ final class CctTransportBackend implements TransportBackend {
     }
   }
 
+  private static long getPayloadBytes(BackendRequest request) {
+    long payloadBytes = 0;
+    for (EventInternal eventInternal : request.getEvents()) {
+      payloadBytes += eventInternal.getEncodedPayload().getBytes().length;
+    }
+    return payloadBytes;
+  }
+
   @VisibleForTesting
   static long getTzOffset() {
     Calendar.getInstance();
@@ -429,15 +473,115 @@ final class CctTransportBackend implements TransportBackend {
     final URL url;
     final BatchedLogRequest requestBody;
     @Nullable final String apiKey;
+    final long payloadBytes;
 
-    HttpRequest(URL url, BatchedLogRequest requestBody, @Nullable String apiKey) {
+    HttpRequest(
+        URL url, BatchedLogRequest requestBody, @Nullable String apiKey, long payloadBytes) {
       this.url = url;
       this.requestBody = requestBody;
       this.apiKey = apiKey;
+      this.payloadBytes = payloadBytes;
     }
 
     HttpRequest withUrl(URL newUrl) {
-      return new HttpRequest(newUrl, requestBody, apiKey);
+      return new HttpRequest(newUrl, requestBody, apiKey, payloadBytes);
+    }
+  }
+
+  /** List of {@link LogEvent}s that are created on access rather than held in memory. */
+  private static final class LazyLogEventList extends AbstractList<LogEvent> {
+    private final List<EventInternal> events;
+
+    LazyLogEventList(List<EventInternal> events) {
+      this.events = events;
+    }
+
+    @Override
+    public LogEvent get(int index) {
+      return toLogEvent(events.get(index));
+    }
+
+    @Override
+    public int size() {
+      return events.size();
+    }
+  }
+
+  /**
+   * Counters of the bytes sent by uploads and of the event payload bytes they held in memory, which
+   * are recorded for every request body that is sent.
+   */
+  static final class UploadMetrics {
+    private final AtomicLong uploadCount = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong payloadBytes = new AtomicLong();
+    private final AtomicLong maxPayloadBytes = new AtomicLong();
+
+    void record(long uncompressed, long compressed, long payload) {
+      uploadCount.incrementAndGet();
+      uncompressedBytes.addAndGet(uncompressed);
+      compressedBytes.addAndGet(compressed);
+      payloadBytes.addAndGet(payload);
+      long max;
+      do {
+        max = maxPayloadBytes.get();
+      } while (payload > max && !maxPayloadBytes.compareAndSet(max, payload));
+    }
+
+    /** Returns the number of request bodies that were sent. */
+    long getUploadCount() {
+      return uploadCount.get();
+    }
+
+    /** Returns the total size of the request bodies before compression. */
+    long getUncompressedBytes() {
+      return uncompressedBytes.get();
+    }
+
+    /** Returns the total size of the compressed request bodies. */
+    long getCompressedBytes() {
+      return compressedBytes.get();
+    }
+
+    /** Returns the total size of the event payloads that were held in memory while uploading. */
+    long getPayloadBytes() {
+      return payloadBytes.get();
+    }
+
+    /** Returns the largest size of event payloads that one upload held in memory. */
+    long getMaxPayloadBytes() {
+      return maxPayloadBytes.get();
+    }
+  }
+
+  private static final class ByteCountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    ByteCountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Close without flushing so that closing an already closed stream remains a no-op.
+      out.close();
     }
   }
 }
@@ -240,6 +240,49 @@ public class CctTransportBackendTest {
     assertEquals(BackendResponse.ok(3), response);
   }
 
+  @Test
+  public void send_shouldStreamRequestBodyWithChunkedTransferEncoding() {
+    stubFor(
+        post(urlEqualTo("/api"))
+            .willReturn(
+                aResponse()
+                    .withStatus(200)
+                    .withHeader("Content-Type", "application/json;charset=UTF8;hello=world")
+                    .withBody("{\"nextRequestWaitMillis\":3}")));
+    BackendRequest backendRequest = getCCTBackendRequest();
+
+    BackendResponse response = BACKEND.send(backendRequest);
+
+    verify(
+        postRequestedFor(urlEqualTo("/api"))
+            .withHeader("Transfer-Encoding", equalTo("chunked"))
+            .withHeader("Content-Length", absent())
+            .withRequestBody(matchingJsonPath("$[?(@.logRequest[0].logEvent.size() == 2)]")));
+    assertEquals(BackendResponse.ok(3), response);
+  }
+
+  @Test
+  public void send_shouldRecordUploadMetrics() {
+    stubFor(
+        post(urlEqualTo("/api"))
+            .willReturn(aResponse().withStatus(200).withBody("{\"nextRequestWaitMillis\":3}")));
+    BackendRequest backendRequest = getCCTBackendRequest();
+    long payloadBytes = 0;
+    for (EventInternal event : backendRequest.getEvents()) {
+      payloadBytes += event.getEncodedPayload().getBytes().length;
+    }
+
+    BACKEND.send(backendRequest);
+    BACKEND.send(backendRequest);
+
+    CctTransportBackend.UploadMetrics metrics = BACKEND.getUploadMetrics();
+    assertThat(metrics.getUploadCount()).isEqualTo(2);
+    assertThat(metrics.getUncompressedBytes()).isGreaterThan(0L);
+    assertThat(metrics.getCompressedBytes()).isGreaterThan(0L);
+    assertThat(metrics.getPayloadBytes()).isEqualTo(2 * payloadBytes);
+    assertThat(metrics.getMaxPayloadBytes()).isEqualTo(payloadBytes);
+  }
+
   @Test
   public void testCCTContainsRightApplicationBuild() throws NameNotFoundException {
     stubFor(
@@ -37,6 +37,7 @@ import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import javax.inject.Provider;
@@ -121,15 +122,12 @@ public class SQLiteEventStoreTest {
 
   private static SQLiteEventStore newStoreWithConfig(
       Clock clock, EventStoreConfig config, Provider<String> packageName) {
-    return new SQLiteEventStore(
-        clock,
-        new UptimeClock(),
-        config,
-        new SchemaManager(
-            ApplicationProvider.getApplicationContext(),
-            UUID.randomUUID().toString(),
-            SCHEMA_VERSION),
-        packageName);
+    return new SQLiteEventStore(clock, new UptimeClock(), config, newSchemaManager(), packageName);
+  }
+
+  private static SchemaManager newSchemaManager() {
+    return new SchemaManager(
+        ApplicationProvider.getApplicationContext(), UUID.randomUUID().toString(), SCHEMA_VERSION);
   }
 
   @Test
@@ -285,6 +283,70 @@ public class SQLiteEventStoreTest {
     assertThat(events).containsExactly(newEvent);
   }
 
+  @Test
+  public void persistAll_correctlyRoundTrips() {
+    EventInternal nonInlineEvent =
+        EVENT.toBuilder()
+            .setEncodedPayload(
+                new EncodedPayload(
+                    JSON_ENCODING, "LongerThanSixBytes".getBytes(Charset.defaultCharset())))
+            .build();
+    EventInternal eventWithCode = EVENT.toBuilder().setCode(12).build();
+
+    List<PersistedEvent> newEvents =
+        store.persistAll(TRANSPORT_CONTEXT, Arrays.asList(EVENT, nonInlineEvent, eventWithCode));
+    Iterable<PersistedEvent> events = store.loadBatch(TRANSPORT_CONTEXT);
+
+    assertThat(newEvents).hasSize(3);
+    assertThat(newEvents.get(0).getEvent()).isEqualTo(EVENT);
+    assertThat(newEvents.get(1).getEvent()).isEqualTo(nonInlineEvent);
+    assertThat(newEvents.get(2).getEvent()).isEqualTo(eventWithCode);
+    assertThat(events).containsExactlyElementsIn(newEvents);
+  }
+
+  @Test
+  public void persistAll_withEmptyList_shouldNotCreateContext() {
+    assertThat(store.persistAll(TRANSPORT_CONTEXT, Collections.emptyList())).isEmpty();
+    assertThat(store.loadActiveContexts()).isEmpty();
+  }
+
+  @Test
+  public void persistAll_whenDbSizeOnDiskIsAtLimit_shouldRecordAllEventsAsDropped() {
+    SQLiteEventStore storeUnderTest =
+        newStoreWithConfig(
+            clock,
+            CONFIG.toBuilder().setMaxStorageSizeInBytes(store.getByteSize()).build(),
+            packageName);
+
+    assertThat(storeUnderTest.persistAll(TRANSPORT_CONTEXT, Arrays.asList(EVENT, EVENT)))
+        .isEmpty();
+
+    ClientMetrics clientMetrics = storeUnderTest.loadClientMetrics();
+    LogSourceMetrics logSourceMetrics =
+        LogSourceMetrics.newBuilder()
+            .setLogSource(EVENT.getTransportName())
+            .addLogEventDropped(
+                LogEventDropped.newBuilder()
+                    .setEventsDroppedCount(2)
+                    .setReason(REASON_CACHE_FULL)
+                    .build())
+            .build();
+    assertThat(clientMetrics.getLogSourceMetricsList())
+        .comparingElementsUsing(CLIENT_METRICS_CORRESPONDENCE)
+        .contains(logSourceMetrics);
+  }
+
+  @Test
+  public void persist_afterClearDb_shouldRecreateContext() {
+    store.persist(TRANSPORT_CONTEXT, EVENT);
+    store.clearDb();
+
+    PersistedEvent newEvent = store.persist(TRANSPORT_CONTEXT, EVENT);
+
+    assertThat(store.loadBatch(TRANSPORT_CONTEXT)).containsExactly(newEvent);
+    assertThat(store.loadActiveContexts()).containsExactly(TRANSPORT_CONTEXT);
+  }
+
   @Test
   public void persist_whenDbSizeOnDiskIsAtLimit_shouldRecordLogEventDroppedDueToCacheFull() {
     SQLiteEventStore storeUnderTest =
@@ -461,6 +523,81 @@ public class SQLiteEventStoreTest {
     assertThat(storeUnderTest.persist(TRANSPORT_CONTEXT, EVENT)).isNotNull();
   }
 
+  @Test
+  public void persist_whenDbSizeOnDiskIsAtLimit_shouldEvictLowerPriorityEvents() {
+    SchemaManager schemaManager = newSchemaManager();
+    EventInternal largeEvent =
+        EVENT.toBuilder()
+            .setTransportName("large")
+            .setEncodedPayload(new EncodedPayload(JSON_ENCODING, new byte[200 * 1024]))
+            .build();
+    SQLiteEventStore fillingStore =
+        new SQLiteEventStore(
+            clock, new UptimeClock(), EventStoreConfig.DEFAULT, schemaManager, packageName);
+    fillingStore.persist(TRANSPORT_CONTEXT.withPriority(Priority.VERY_LOW), largeEvent);
+    fillingStore.persist(TRANSPORT_CONTEXT.withPriority(Priority.VERY_LOW), largeEvent);
+    SQLiteEventStore storeUnderTest =
+        new SQLiteEventStore(
+            clock,
+            new UptimeClock(),
+            EventStoreConfig.DEFAULT.toBuilder()
+                .setMaxStorageSizeInBytes(fillingStore.getByteSize())
+                .build(),
+            schemaManager,
+            packageName);
+
+    PersistedEvent newEvent =
+        storeUnderTest.persist(TRANSPORT_CONTEXT.withPriority(Priority.HIGHEST), EVENT);
+
+    assertThat(newEvent).isNotNull();
+    assertThat(
+            DatabaseUtils.queryNumEntries(
+                storeUnderTest.getDb(), "events", "transport_name = ?", new String[] {"large"}))
+        .isEqualTo(1);
+    LogSourceMetrics logSourceMetrics =
+        LogSourceMetrics.newBuilder()
+            .setLogSource("large")
+            .addLogEventDropped(
+                LogEventDropped.newBuilder()
+                    .setEventsDroppedCount(1)
+                    .setReason(REASON_CACHE_FULL)
+                    .build())
+            .build();
+    assertThat(storeUnderTest.loadClientMetrics().getLogSourceMetricsList())
+        .comparingElementsUsing(CLIENT_METRICS_CORRESPONDENCE)
+        .contains(logSourceMetrics);
+  }
+
+  @Test
+  public void persist_whenDbSizeOnDiskIsAtLimit_shouldNotEvictHigherPriorityEvents() {
+    SchemaManager schemaManager = newSchemaManager();
+    EventInternal largeEvent =
+        EVENT.toBuilder()
+            .setTransportName("large")
+            .setEncodedPayload(new EncodedPayload(JSON_ENCODING, new byte[200 * 1024]))
+            .build();
+    SQLiteEventStore fillingStore =
+        new SQLiteEventStore(
+            clock, new UptimeClock(), EventStoreConfig.DEFAULT, schemaManager, packageName);
+    fillingStore.persist(TRANSPORT_CONTEXT.withPriority(Priority.HIGHEST), largeEvent);
+    SQLiteEventStore storeUnderTest =
+        new SQLiteEventStore(
+            clock,
+            new UptimeClock(),
+            EventStoreConfig.DEFAULT.toBuilder()
+                .setMaxStorageSizeInBytes(fillingStore.getByteSize())
+                .build(),
+            schemaManager,
+            packageName);
+
+    assertThat(storeUnderTest.persist(TRANSPORT_CONTEXT.withPriority(Priority.VERY_LOW), EVENT))
+        .isNull();
+    assertThat(
+            DatabaseUtils.queryNumEntries(
+                storeUnderTest.getDb(), "events", "transport_name = ?", new String[] {"large"}))
+        .isEqualTo(1);
+  }
+
   @Test
   public void loadBatch_shouldLoadNoMoreThanBatchSizeItems() {
     for (int i = 0; i <= CONFIG.getLoadBatchSize(); i++) {
@@ -473,6 +610,37 @@ public class SQLiteEventStoreTest {
     assertThat(store.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
   }
 
+  @Test
+  public void loadBatch_shouldStopLoadingOncePayloadByteLimitIsReached() {
+    int payloadSize = EVENT.getEncodedPayload().getBytes().length;
+    SQLiteEventStore storeUnderTest =
+        newStoreWithConfig(
+            clock,
+            CONFIG.toBuilder().setLoadBatchMaxPayloadBytes(2 * payloadSize + 1).build(),
+            packageName);
+    for (int i = 0; i < CONFIG.getLoadBatchSize(); i++) {
+      storeUnderTest.persist(TRANSPORT_CONTEXT, EVENT);
+    }
+    storeUnderTest.persist(TRANSPORT_CONTEXT.withPriority(Priority.VERY_LOW), EVENT);
+
+    Iterable<PersistedEvent> persistedEvents = storeUnderTest.loadBatch(TRANSPORT_CONTEXT);
+    assertThat(persistedEvents).hasSize(3);
+
+    storeUnderTest.recordSuccess(persistedEvents);
+    assertThat(storeUnderTest.loadBatch(TRANSPORT_CONTEXT)).hasSize(3);
+  }
+
+  @Test
+  public void loadBatch_withPayloadLargerThanByteLimit_shouldLoadOneEvent() {
+    SQLiteEventStore storeUnderTest =
+        newStoreWithConfig(
+            clock, CONFIG.toBuilder().setLoadBatchMaxPayloadBytes(1).build(), packageName);
+    storeUnderTest.persist(TRANSPORT_CONTEXT, EVENT);
+    storeUnderTest.persist(TRANSPORT_CONTEXT, EVENT);
+
+    assertThat(storeUnderTest.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
+  }
+
   @Test
   public void loadBatch_shouldLoadNoMoreThanBatchSizeItemsWithDifferentPriority() {
     TransportContext ctx1 = TRANSPORT_CONTEXT;
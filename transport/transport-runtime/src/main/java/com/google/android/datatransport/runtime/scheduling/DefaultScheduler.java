@@ -23,6 +23,10 @@ import com.google.android.datatransport.runtime.backends.TransportBackend;
 import com.google.android.datatransport.runtime.scheduling.jobscheduling.WorkScheduler;
 import com.google.android.datatransport.runtime.scheduling.persistence.EventStore;
 import com.google.android.datatransport.runtime.synchronization.SynchronizationGuard;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -40,6 +44,10 @@ public class DefaultScheduler implements Scheduler {
   private final EventStore eventStore;
   private final SynchronizationGuard guard;
 
+  private final Object lock = new Object();
+  private List<PendingEvent> pendingEvents = new ArrayList<>();
+  private boolean drainScheduled;
+
   @Inject
   public DefaultScheduler(
       Executor executor,
@@ -57,38 +65,113 @@ public class DefaultScheduler implements Scheduler {
   /**
    * Schedules the events to be eventually sent to the backend.
    *
+   * <p>Events scheduled while the executor is busy are coalesced and persisted together, one
+   * transaction per {@link TransportContext}.
+   *
    * @param transportContext The transport context with which the event needs to be sent.
    * @param event The event itself which needs to be logged with additional information.
    */
   @Override
   public void schedule(
       TransportContext transportContext, EventInternal event, TransportScheduleCallback callback) {
-    executor.execute(
-        () -> {
-          try {
-            TransportBackend transportBackend =
-                backendRegistry.get(transportContext.getBackendName());
-            if (transportBackend == null) {
-              String errorMsg =
-                  String.format(
-                      "Transport backend '%s' is not registered",
-                      transportContext.getBackendName());
-              LOGGER.warning(errorMsg);
-              callback.onSchedule(new IllegalArgumentException(errorMsg));
-              return;
+    boolean shouldDrain;
+    synchronized (lock) {
+      pendingEvents.add(new PendingEvent(transportContext, event, callback));
+      shouldDrain = !drainScheduled;
+      drainScheduled = true;
+    }
+    if (shouldDrain) {
+      try {
+        executor.execute(this::drainPendingEvents);
+      } catch (RuntimeException e) {
+        synchronized (lock) {
+          drainScheduled = false;
+        }
+        throw e;
+      }
+    }
+  }
+
+  private void drainPendingEvents() {
+    List<PendingEvent> events;
+    synchronized (lock) {
+      events = pendingEvents;
+      pendingEvents = new ArrayList<>();
+      drainScheduled = false;
+    }
+
+    Map<TransportContext, List<PendingEvent>> eventsByContext = new LinkedHashMap<>();
+    for (PendingEvent pending : events) {
+      try {
+        TransportBackend transportBackend =
+            backendRegistry.get(pending.transportContext.getBackendName());
+        if (transportBackend == null) {
+          String errorMsg =
+              String.format(
+                  "Transport backend '%s' is not registered",
+                  pending.transportContext.getBackendName());
+          LOGGER.warning(errorMsg);
+          pending.callback.onSchedule(new IllegalArgumentException(errorMsg));
+          continue;
+        }
+        pending.decoratedEvent = transportBackend.decorate(pending.event);
+      } catch (Exception e) {
+        LOGGER.warning("Error scheduling event " + e.getMessage());
+        pending.callback.onSchedule(e);
+        continue;
+      }
+      List<PendingEvent> contextEvents = eventsByContext.get(pending.transportContext);
+      if (contextEvents == null) {
+        contextEvents = new ArrayList<>();
+        eventsByContext.put(pending.transportContext, contextEvents);
+      }
+      contextEvents.add(pending);
+    }
+
+    for (Map.Entry<TransportContext, List<PendingEvent>> entry : eventsByContext.entrySet()) {
+      persistAndSchedule(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void persistAndSchedule(TransportContext transportContext, List<PendingEvent> events) {
+    try {
+      guard.runCriticalSection(
+          () -> {
+            if (events.size() == 1) {
+              eventStore.persist(transportContext, events.get(0).decoratedEvent);
+            } else {
+              List<EventInternal> decoratedEvents = new ArrayList<>(events.size());
+              for (PendingEvent pending : events) {
+                decoratedEvents.add(pending.decoratedEvent);
+              }
+              eventStore.persistAll(transportContext, decoratedEvents);
             }
-            EventInternal decoratedEvent = transportBackend.decorate(event);
-            guard.runCriticalSection(
-                () -> {
-                  eventStore.persist(transportContext, decoratedEvent);
-                  workScheduler.schedule(transportContext, 1);
-                  return null;
-                });
-            callback.onSchedule(null);
-          } catch (Exception e) {
-            LOGGER.warning("Error scheduling event " + e.getMessage());
-            callback.onSchedule(e);
-          }
-        });
+            workScheduler.schedule(transportContext, 1);
+            return null;
+          });
+    } catch (Exception e) {
+      LOGGER.warning("Error scheduling event " + e.getMessage());
+      for (PendingEvent pending : events) {
+        pending.callback.onSchedule(e);
+      }
+      return;
+    }
+    for (PendingEvent pending : events) {
+      pending.callback.onSchedule(null);
+    }
+  }
+
+  private static final class PendingEvent {
+    final TransportContext transportContext;
+    final EventInternal event;
+    final TransportScheduleCallback callback;
+    EventInternal decoratedEvent;
+
+    PendingEvent(
+        TransportContext transportContext, EventInternal event, TransportScheduleCallback callback) {
+      this.transportContext = transportContext;
+      this.event = event;
+      this.callback = callback;
+    }
   }
 }
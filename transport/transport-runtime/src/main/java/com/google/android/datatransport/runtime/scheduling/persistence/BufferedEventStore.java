@@ -0,0 +1,356 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.android.datatransport.runtime.scheduling.persistence;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.datatransport.Priority;
+import com.google.android.datatransport.runtime.EventInternal;
+import com.google.android.datatransport.runtime.TransportContext;
+import com.google.android.datatransport.runtime.firebase.transport.LogEventDropped;
+import com.google.android.datatransport.runtime.logging.Logging;
+import com.google.android.datatransport.runtime.synchronization.SynchronizationGuard;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link EventStore} that keeps {@link Priority#DEFAULT} and {@link Priority#VERY_LOW} events in a
+ * bounded in-memory ring buffer and writes them to the underlying store in batches.
+ *
+ * <p>The buffer is flushed when it reaches the configured flush threshold, when the oldest buffered
+ * event is older than the configured delay, when the app goes to the background, before any read
+ * of pending events and when the store is closed. {@link Priority#HIGHEST} events bypass the
+ * buffer.
+ *
+ * <p>Buffered events are only assigned an id when they are flushed, so {@link #persist} and {@link
+ * #persistAll} return them with {@link #BUFFERED_EVENT_ID}. Flushes run in a critical section of
+ * the {@link SynchronizationGuard}, like all other writes to the underlying store.
+ *
+ * <p>Buffered events are lost if the process dies before they are flushed; {@link
+ * #getBufferedEventCount()} reports how many events are at risk. If a flush fails the events stay
+ * buffered, and once the buffer is full the oldest events are dropped and reported as {@link
+ * LogEventDropped.Reason#CACHE_FULL}.
+ */
+public class BufferedEventStore implements EventStore, ComponentCallbacks2 {
+  private static final String LOG_TAG = "BufferedEventStore";
+
+  /** The id of events that are buffered and not yet persisted to the underlying store. */
+  public static final long BUFFERED_EVENT_ID = -1;
+
+  private final EventStore delegate;
+  private final ClientHealthMetricsStore clientHealthMetricsStore;
+  private final SynchronizationGuard guard;
+  private final Executor executor;
+  private final Handler handler;
+  private final int flushThreshold;
+  private final long flushDelayMs;
+
+  private final Object lock = new Object();
+  private final BufferedEvent[] buffer;
+  private int head;
+  private int size;
+  private boolean flushPosted;
+  private final Map<String, Integer> droppedEvents = new HashMap<>();
+
+  private final Runnable postFlush = () -> executor.execute(this::onFlushTimer);
+
+  BufferedEventStore(
+      EventStore delegate,
+      ClientHealthMetricsStore clientHealthMetricsStore,
+      SynchronizationGuard guard,
+      Executor executor,
+      EventStoreConfig config) {
+    this(
+        delegate,
+        clientHealthMetricsStore,
+        guard,
+        executor,
+        new Handler(Looper.getMainLooper()),
+        config.getWriteBufferCapacity(),
+        config.getWriteBufferFlushThreshold(),
+        config.getWriteBufferFlushDelayMs());
+  }
+
+  @VisibleForTesting
+  BufferedEventStore(
+      EventStore delegate,
+      ClientHealthMetricsStore clientHealthMetricsStore,
+      SynchronizationGuard guard,
+      Executor executor,
+      Handler handler,
+      int capacity,
+      int flushThreshold,
+      long flushDelayMs) {
+    this.delegate = delegate;
+    this.clientHealthMetricsStore = clientHealthMetricsStore;
+    this.guard = guard;
+    this.executor = executor;
+    this.handler = handler;
+    this.buffer = new BufferedEvent[capacity];
+    this.flushThreshold = Math.min(flushThreshold, capacity);
+    this.flushDelayMs = flushDelayMs;
+  }
+
+  /** Returns the number of events that are buffered in memory and not yet persisted. */
+  public int getBufferedEventCount() {
+    synchronized (lock) {
+      return size;
+    }
+  }
+
+  /**
+   * Buffers the event, or persists it right away if it has {@link Priority#HIGHEST} priority.
+   *
+   * <p>Buffered events are returned with {@link #BUFFERED_EVENT_ID}, as they are not assigned an
+   * id until flushed.
+   */
+  @Override
+  @Nullable
+  public PersistedEvent persist(TransportContext transportContext, EventInternal event) {
+    if (transportContext.getPriority() == Priority.HIGHEST) {
+      return delegate.persist(transportContext, event);
+    }
+    if (add(transportContext, event)) {
+      flush();
+    }
+    return PersistedEvent.create(BUFFERED_EVENT_ID, transportContext, event);
+  }
+
+  /**
+   * Buffers the events, or persists them right away if they have {@link Priority#HIGHEST} priority.
+   *
+   * <p>Buffered events are returned with {@link #BUFFERED_EVENT_ID}, as they are not assigned an
+   * id until flushed.
+   */
+  @Override
+  public List<PersistedEvent> persistAll(
+      TransportContext transportContext, List<EventInternal> events) {
+    if (transportContext.getPriority() == Priority.HIGHEST) {
+      return delegate.persistAll(transportContext, events);
+    }
+    boolean shouldFlush = false;
+    List<PersistedEvent> buffered = new ArrayList<>(events.size());
+    for (EventInternal event : events) {
+      shouldFlush |= add(transportContext, event);
+      buffered.add(PersistedEvent.create(BUFFERED_EVENT_ID, transportContext, event));
+    }
+    if (shouldFlush) {
+      flush();
+    }
+    return buffered;
+  }
+
+  /** Adds an event to the buffer and returns true if the buffer should be flushed. */
+  private boolean add(TransportContext transportContext, EventInternal event) {
+    boolean shouldPostFlush;
+    boolean shouldFlush;
+    synchronized (lock) {
+      if (size == buffer.length) {
+        // A previous flush failed and the buffer is full, drop the oldest event.
+        recordDropped(removeFirst().event.getTransportName());
+      }
+      buffer[(head + size) % buffer.length] = new BufferedEvent(transportContext, event);
+      size++;
+      shouldFlush = size >= flushThreshold;
+      shouldPostFlush = !shouldFlush && !flushPosted;
+      flushPosted |= shouldPostFlush;
+    }
+    if (shouldPostFlush) {
+      handler.postDelayed(postFlush, flushDelayMs);
+    }
+    return shouldFlush;
+  }
+
+  private void onFlushTimer() {
+    synchronized (lock) {
+      flushPosted = false;
+    }
+    flush();
+  }
+
+  /**
+   * Persists all buffered events to the underlying store, in a critical section of the {@link
+   * SynchronizationGuard}.
+   */
+  public void flush() {
+    List<BufferedEvent> events;
+    Map<String, Integer> dropped;
+    synchronized (lock) {
+      if (size == 0 && droppedEvents.isEmpty()) {
+        return;
+      }
+      events = new ArrayList<>(size);
+      while (size > 0) {
+        events.add(removeFirst());
+      }
+      dropped = new HashMap<>(droppedEvents);
+      droppedEvents.clear();
+    }
+
+    Map<TransportContext, List<EventInternal>> eventsByContext = new LinkedHashMap<>();
+    for (BufferedEvent bufferedEvent : events) {
+      List<EventInternal> contextEvents = eventsByContext.get(bufferedEvent.transportContext);
+      if (contextEvents == null) {
+        contextEvents = new ArrayList<>();
+        eventsByContext.put(bufferedEvent.transportContext, contextEvents);
+      }
+      contextEvents.add(bufferedEvent.event);
+    }
+
+    try {
+      guard.runCriticalSection(
+          () -> {
+            for (Map.Entry<TransportContext, List<EventInternal>> entry :
+                eventsByContext.entrySet()) {
+              delegate.persistAll(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Integer> entry : dropped.entrySet()) {
+              clientHealthMetricsStore.recordLogEventDropped(
+                  entry.getValue(), LogEventDropped.Reason.CACHE_FULL, entry.getKey());
+            }
+            return null;
+          });
+    } catch (RuntimeException e) {
+      // The critical section is rolled back as a whole, so none of the events were persisted.
+      Logging.e(LOG_TAG, "Failed to flush buffered events, will retry later.", e);
+      requeue(events, dropped);
+    }
+  }
+
+  /** Puts events that were not persisted back in front of the buffer, preserving their order. */
+  private void requeue(List<BufferedEvent> events, Map<String, Integer> dropped) {
+    boolean shouldPostFlush;
+    synchronized (lock) {
+      for (int i = events.size() - 1; i >= 0; i--) {
+        BufferedEvent bufferedEvent = events.get(i);
+        if (size == buffer.length) {
+          // Newer events arrived while flushing, drop the oldest one instead.
+          recordDropped(bufferedEvent.event.getTransportName());
+          continue;
+        }
+        head = (head - 1 + buffer.length) % buffer.length;
+        buffer[head] = bufferedEvent;
+        size++;
+      }
+      for (Map.Entry<String, Integer> entry : dropped.entrySet()) {
+        Integer count = droppedEvents.get(entry.getKey());
+        droppedEvents.put(entry.getKey(), entry.getValue() + (count == null ? 0 : count));
+      }
+      shouldPostFlush = !flushPosted;
+      flushPosted = true;
+    }
+    if (shouldPostFlush) {
+      handler.postDelayed(postFlush, flushDelayMs);
+    }
+  }
+
+  private BufferedEvent removeFirst() {
+    BufferedEvent bufferedEvent = buffer[head];
+    buffer[head] = null;
+    head = (head + 1) % buffer.length;
+    size--;
+    return bufferedEvent;
+  }
+
+  private void recordDropped(String transportName) {
+    Integer count = droppedEvents.get(transportName);
+    droppedEvents.put(transportName, count == null ? 1 : count + 1);
+  }
+
+  @Override
+  public void recordFailure(Iterable<PersistedEvent> events) {
+    delegate.recordFailure(events);
+  }
+
+  @Override
+  public void recordSuccess(Iterable<PersistedEvent> events) {
+    delegate.recordSuccess(events);
+  }
+
+  @Override
+  public long getNextCallTime(TransportContext transportContext) {
+    return delegate.getNextCallTime(transportContext);
+  }
+
+  @Override
+  public void recordNextCallTime(TransportContext transportContext, long timestampMs) {
+    delegate.recordNextCallTime(transportContext, timestampMs);
+  }
+
+  @Override
+  public boolean hasPendingEventsFor(TransportContext transportContext) {
+    flush();
+    return delegate.hasPendingEventsFor(transportContext);
+  }
+
+  @Override
+  public Iterable<PersistedEvent> loadBatch(TransportContext transportContext) {
+    flush();
+    return delegate.loadBatch(transportContext);
+  }
+
+  @Override
+  public Iterable<TransportContext> loadActiveContexts() {
+    flush();
+    return delegate.loadActiveContexts();
+  }
+
+  @Override
+  public int cleanUp() {
+    return delegate.cleanUp();
+  }
+
+  @Override
+  public void close() throws IOException {
+    handler.removeCallbacks(postFlush);
+    flush();
+    delegate.close();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= TRIM_MEMORY_UI_HIDDEN) {
+      executor.execute(this::flush);
+    }
+  }
+
+  @Override
+  public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+
+  @Override
+  public void onLowMemory() {
+    executor.execute(this::flush);
+  }
+
+  private static final class BufferedEvent {
+    final TransportContext transportContext;
+    final EventInternal event;
+
+    BufferedEvent(TransportContext transportContext, EventInternal event) {
+      this.transportContext = transportContext;
+      this.event = event;
+    }
+  }
+}
@@ -19,6 +19,7 @@ import androidx.annotation.WorkerThread;
 import com.google.android.datatransport.runtime.EventInternal;
 import com.google.android.datatransport.runtime.TransportContext;
 import java.io.Closeable;
+import java.util.List;
 
 /**
  * Persistence layer.
@@ -32,6 +33,14 @@ public interface EventStore extends Closeable {
   @Nullable
   PersistedEvent persist(TransportContext transportContext, EventInternal event);
 
+  /**
+   * Persist a batch of new events for the same {@link TransportContext}.
+   *
+   * <p>Returns the events that were stored, in the order they were given. Events that could not be
+   * stored are not included in the result.
+   */
+  List<PersistedEvent> persistAll(TransportContext transportContext, List<EventInternal> events);
+
   /** Communicate to the store that events have failed to get sent. */
   void recordFailure(Iterable<PersistedEvent> events);
 
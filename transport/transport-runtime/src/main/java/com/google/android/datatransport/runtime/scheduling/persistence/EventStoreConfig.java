@@ -14,6 +14,8 @@
 
 package com.google.android.datatransport.runtime.scheduling.persistence;
 
+import android.os.Bundle;
+import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
 
 @AutoValue
@@ -23,6 +25,19 @@ abstract class EventStoreConfig {
   private static final int LOCK_TIME_OUT_MS = 10000;
   private static final long DURATION_ONE_WEEK_MS = 7 * 24 * 60 * 60 * 1000;
   private static final int MAX_BLOB_BYTE_SIZE_PER_ROW = 80 * 1024;
+  private static final long LOAD_BATCH_MAX_PAYLOAD_BYTES = 1024 * 1024;
+  private static final int EVICTION_BATCH_SIZE = 100;
+  private static final int WRITE_BUFFER_CAPACITY = 0;
+  private static final int WRITE_BUFFER_FLUSH_THRESHOLD = 50;
+  private static final long WRITE_BUFFER_FLUSH_DELAY_MS = 5 * 1000;
+
+  /**
+   * Application metadata that enables the in-memory write buffer with the given capacity, e.g.
+   * {@code <meta-data android:name="com.google.android.datatransport.write_buffer_capacity"
+   * android:value="100" />}.
+   */
+  static final String WRITE_BUFFER_CAPACITY_KEY =
+      "com.google.android.datatransport.write_buffer_capacity";
 
   static final EventStoreConfig DEFAULT =
       EventStoreConfig.builder()
@@ -43,8 +58,50 @@ abstract class EventStoreConfig {
 
   abstract int getMaxBlobByteSizePerRow();
 
+  /**
+   * Soft limit of payload bytes loaded into memory for a single batch. A batch always contains at
+   * least one event, even if its payload is larger than the limit.
+   */
+  abstract long getLoadBatchMaxPayloadBytes();
+
+  /** Policy used to choose which events to evict when the store is at its size limit. */
+  abstract EvictionPolicy getEvictionPolicy();
+
+  /** Maximum number of events evicted by a single call, to keep each call short. */
+  abstract int getEvictionBatchSize();
+
+  /**
+   * Maximum number of events kept in memory before they are written to disk, zero disables the
+   * write buffer.
+   */
+  abstract int getWriteBufferCapacity();
+
+  /** Number of buffered events that triggers a flush to disk. */
+  abstract int getWriteBufferFlushThreshold();
+
+  /** Maximum time an event stays in the write buffer before it is flushed to disk. */
+  abstract long getWriteBufferFlushDelayMs();
+
+  /** Returns the default config with the options set in the given application metadata. */
+  static EventStoreConfig fromMetadata(@Nullable Bundle metadata) {
+    if (metadata == null) {
+      return DEFAULT;
+    }
+    int writeBufferCapacity = metadata.getInt(WRITE_BUFFER_CAPACITY_KEY, WRITE_BUFFER_CAPACITY);
+    if (writeBufferCapacity == DEFAULT.getWriteBufferCapacity()) {
+      return DEFAULT;
+    }
+    return DEFAULT.toBuilder().setWriteBufferCapacity(Math.max(0, writeBufferCapacity)).build();
+  }
+
   static EventStoreConfig.Builder builder() {
-    return new AutoValue_EventStoreConfig.Builder();
+    return new AutoValue_EventStoreConfig.Builder()
+        .setLoadBatchMaxPayloadBytes(LOAD_BATCH_MAX_PAYLOAD_BYTES)
+        .setEvictionPolicy(EvictionPolicy.DEFAULT)
+        .setEvictionBatchSize(EVICTION_BATCH_SIZE)
+        .setWriteBufferCapacity(WRITE_BUFFER_CAPACITY)
+        .setWriteBufferFlushThreshold(WRITE_BUFFER_FLUSH_THRESHOLD)
+        .setWriteBufferFlushDelayMs(WRITE_BUFFER_FLUSH_DELAY_MS);
   }
 
   Builder toBuilder() {
@@ -53,7 +110,13 @@ abstract class EventStoreConfig {
         .setLoadBatchSize(getLoadBatchSize())
         .setCriticalSectionEnterTimeoutMs(getCriticalSectionEnterTimeoutMs())
         .setEventCleanUpAge(getEventCleanUpAge())
-        .setMaxBlobByteSizePerRow(getMaxBlobByteSizePerRow());
+        .setMaxBlobByteSizePerRow(getMaxBlobByteSizePerRow())
+        .setLoadBatchMaxPayloadBytes(getLoadBatchMaxPayloadBytes())
+        .setEvictionPolicy(getEvictionPolicy())
+        .setEvictionBatchSize(getEvictionBatchSize())
+        .setWriteBufferCapacity(getWriteBufferCapacity())
+        .setWriteBufferFlushThreshold(getWriteBufferFlushThreshold())
+        .setWriteBufferFlushDelayMs(getWriteBufferFlushDelayMs());
   }
 
   @AutoValue.Builder
@@ -68,6 +131,18 @@ abstract class EventStoreConfig {
 
     abstract Builder setMaxBlobByteSizePerRow(int value);
 
+    abstract Builder setLoadBatchMaxPayloadBytes(long value);
+
+    abstract Builder setEvictionPolicy(EvictionPolicy value);
+
+    abstract Builder setEvictionBatchSize(int value);
+
+    abstract Builder setWriteBufferCapacity(int value);
+
+    abstract Builder setWriteBufferFlushThreshold(int value);
+
+    abstract Builder setWriteBufferFlushDelayMs(long value);
+
     abstract EventStoreConfig build();
   }
 }
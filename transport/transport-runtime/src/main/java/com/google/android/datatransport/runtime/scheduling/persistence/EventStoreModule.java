@@ -15,23 +15,56 @@
 package com.google.android.datatransport.runtime.scheduling.persistence;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import androidx.annotation.Nullable;
+import com.google.android.datatransport.runtime.logging.Logging;
 import com.google.android.datatransport.runtime.synchronization.SynchronizationGuard;
 import dagger.Binds;
 import dagger.Module;
 import dagger.Provides;
+import java.util.concurrent.Executor;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 @Module
 public abstract class EventStoreModule {
+  private static final String LOG_TAG = "EventStoreModule";
 
   @Provides
-  static EventStoreConfig storeConfig() {
-    return EventStoreConfig.DEFAULT;
+  static EventStoreConfig storeConfig(Context context) {
+    return EventStoreConfig.fromMetadata(getApplicationMetadata(context));
   }
 
-  @Binds
-  abstract EventStore eventStore(SQLiteEventStore store);
+  @Provides
+  @Singleton
+  static EventStore eventStore(
+      Context context, EventStoreConfig config, SQLiteEventStore store, Executor executor) {
+    if (config.getWriteBufferCapacity() <= 0) {
+      return store;
+    }
+    BufferedEventStore bufferedStore =
+        new BufferedEventStore(store, store, store, executor, config);
+    context.registerComponentCallbacks(bufferedStore);
+    return bufferedStore;
+  }
+
+  @Nullable
+  private static Bundle getApplicationMetadata(Context context) {
+    try {
+      PackageManager manager = context.getPackageManager();
+      if (manager == null) {
+        return null;
+      }
+      ApplicationInfo info =
+          manager.getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+      return info != null ? info.metaData : null;
+    } catch (PackageManager.NameNotFoundException e) {
+      Logging.e(LOG_TAG, "Application info not found, using the default event store config.", e);
+      return null;
+    }
+  }
 
   @Binds
   abstract SynchronizationGuard synchronizationGuard(SQLiteEventStore store);
@@ -0,0 +1,66 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.android.datatransport.runtime.scheduling.persistence;
+
+import com.google.android.datatransport.Priority;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which persisted events are evicted first when the {@link SQLiteEventStore} reaches its
+ * size limit.
+ *
+ * <p>Events are evicted one priority at a time, in the order given by {@link #getEvictionOrder()}.
+ * Within a priority, events are evicted in the order given by {@link #getEventOrder()}.
+ *
+ * <p>The policy is internal and set through {@link EventStoreConfig}; it is not an app setting.
+ */
+interface EvictionPolicy {
+
+  /**
+   * Evicts {@link Priority#VERY_LOW} events before {@link Priority#DEFAULT} ones and those before
+   * {@link Priority#HIGHEST}. Within a priority, events that failed to upload most often go first,
+   * then the oldest ones, then the largest ones.
+   */
+  EvictionPolicy DEFAULT =
+      new EvictionPolicy() {
+        private final List<Priority> evictionOrder =
+            Collections.unmodifiableList(
+                Arrays.asList(Priority.VERY_LOW, Priority.DEFAULT, Priority.HIGHEST));
+
+        @Override
+        public List<Priority> getEvictionOrder() {
+          return evictionOrder;
+        }
+
+        @Override
+        public String getEventOrder() {
+          return "num_attempts DESC, timestamp_ms ASC, payload_size DESC";
+        }
+      };
+
+  /** Returns all priorities, starting with the one whose events are the most expendable. */
+  List<Priority> getEvictionOrder();
+
+  /**
+   * Returns an SQL {@code ORDER BY} clause over the columns of the {@code events} table ({@code
+   * num_attempts}, {@code timestamp_ms} and {@code payload_size}) that sorts the most expendable
+   * events first.
+   *
+   * <p>Orderings that start with {@code num_attempts DESC, timestamp_ms} are served by an index.
+   */
+  String getEventOrder();
+}
@@ -18,7 +18,9 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Base64;
 import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
@@ -44,6 +46,7 @@ import com.google.android.datatransport.runtime.time.WallTime;
 import com.google.android.datatransport.runtime.util.PriorityMapping;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -51,6 +54,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -69,12 +73,29 @@ public class SQLiteEventStore
   private static final int LOCK_RETRY_BACK_OFF_MILLIS = 50;
   private static final Encoding PROTOBUF_ENCODING = Encoding.of("proto");
 
+  private static final String INSERT_EVENT_SQL =
+      "INSERT INTO events (context_id, transport_name, timestamp_ms, uptime_ms, payload_encoding,"
+          + " code, num_attempts, inline, payload, payload_size)"
+          + " VALUES (?, ?, ?, ?, ?, ?, 0, ?, ?, ?)";
+  private static final String INSERT_PAYLOAD_SQL =
+      "INSERT INTO event_payloads (event_id, sequence_num, bytes) VALUES (?, ?, ?)";
+  private static final String INSERT_METADATA_SQL =
+      "INSERT INTO event_metadata (event_id, name, value) VALUES (?, ?, ?)";
+
   private final SchemaManager schemaManager;
   private final Clock wallClock;
   private final Clock monotonicClock;
   private final EventStoreConfig config;
   private final Provider<String> packageName;
 
+  /**
+   * Ids of transport contexts known to exist in the db.
+   *
+   * <p>Entries are only valid for committed rows, so the cache is cleared whenever a transaction
+   * fails and whenever the contexts table is cleared.
+   */
+  private final Map<TransportContext, Long> contextIds = new ConcurrentHashMap<>();
+
   @Inject
   SQLiteEventStore(
       @WallTime Clock wallClock,
@@ -108,35 +129,79 @@ public class SQLiteEventStore
         transportContext.getPriority(),
         event.getTransportName(),
         transportContext.getBackendName());
-    long newRowId =
-        inTransaction(
-            db -> {
-              // drop new events until old ones are uploaded and removed.
-              // TODO(vkryachko): come up with a more sophisticated algorithm for limiting disk
-              // space.
-              if (isStorageAtLimit()) {
-                recordLogEventDropped(
-                    1, LogEventDropped.Reason.CACHE_FULL, event.getTransportName());
-                return -1L;
-              }
+    List<PersistedEvent> persisted =
+        persistAll(transportContext, Collections.singletonList(event));
+    if (persisted.isEmpty()) {
+      return null;
+    }
+    return persisted.get(0);
+  }
 
-              long contextId = ensureTransportContext(db, transportContext);
-              int maxBlobSizePerRow = config.getMaxBlobByteSizePerRow();
+  @Override
+  public List<PersistedEvent> persistAll(
+      TransportContext transportContext, List<EventInternal> events) {
+    if (events.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return inTransaction(
+        db -> {
+          // make room by evicting expendable events, and drop new events if that is not enough.
+          boolean atLimit = isStorageAtLimit();
+          if (atLimit) {
+            long incomingBytes = 0;
+            for (EventInternal event : events) {
+              incomingBytes += event.getEncodedPayload().getBytes().length;
+            }
+            long bytesToFree =
+                getUsedByteSize() - config.getMaxStorageSizeInBytes() + incomingBytes;
+            evictEvents(db, transportContext.getPriority(), bytesToFree);
+            atLimit = isStorageAtLimit();
+          }
+          if (atLimit) {
+            Map<String, Integer> droppedCounts = new HashMap<>();
+            for (EventInternal event : events) {
+              Integer count = droppedCounts.get(event.getTransportName());
+              droppedCounts.put(event.getTransportName(), count == null ? 1 : count + 1);
+            }
+            for (Map.Entry<String, Integer> entry : droppedCounts.entrySet()) {
+              recordLogEventDropped(
+                  entry.getValue(), LogEventDropped.Reason.CACHE_FULL, entry.getKey());
+            }
+            return Collections.emptyList();
+          }
 
+          long contextId = ensureTransportContext(db, transportContext);
+          int maxBlobSizePerRow = config.getMaxBlobByteSizePerRow();
+          List<PersistedEvent> persisted = new ArrayList<>(events.size());
+
+          SQLiteStatement insertEvent = db.compileStatement(INSERT_EVENT_SQL);
+          SQLiteStatement insertPayload = null;
+          SQLiteStatement insertMetadata = null;
+          try {
+            for (EventInternal event : events) {
               byte[] payloadBytes = event.getEncodedPayload().getBytes();
               boolean inline = payloadBytes.length <= maxBlobSizePerRow;
-              ContentValues values = new ContentValues();
-              values.put("context_id", contextId);
-              values.put("transport_name", event.getTransportName());
-              values.put("timestamp_ms", event.getEventMillis());
-              values.put("uptime_ms", event.getUptimeMillis());
-              values.put("payload_encoding", event.getEncodedPayload().getEncoding().getName());
-              values.put("code", event.getCode());
-              values.put("num_attempts", 0);
-              values.put("inline", inline);
-              values.put("payload", inline ? payloadBytes : new byte[0]);
-              long newEventId = db.insert("events", null, values);
+
+              insertEvent.clearBindings();
+              insertEvent.bindLong(1, contextId);
+              insertEvent.bindString(2, event.getTransportName());
+              insertEvent.bindLong(3, event.getEventMillis());
+              insertEvent.bindLong(4, event.getUptimeMillis());
+              insertEvent.bindString(5, event.getEncodedPayload().getEncoding().getName());
+              if (event.getCode() == null) {
+                insertEvent.bindNull(6);
+              } else {
+                insertEvent.bindLong(6, event.getCode());
+              }
+              insertEvent.bindLong(7, inline ? 1 : 0);
+              insertEvent.bindBlob(8, inline ? payloadBytes : new byte[0]);
+              insertEvent.bindLong(9, payloadBytes.length);
+              long newEventId = insertEvent.executeInsert();
+
               if (!inline) {
+                if (insertPayload == null) {
+                  insertPayload = db.compileStatement(INSERT_PAYLOAD_SQL);
+                }
                 int numChunks = (int) Math.ceil((double) payloadBytes.length / maxBlobSizePerRow);
 
                 for (int chunk = 1; chunk <= numChunks; chunk++) {
@@ -145,29 +210,35 @@ public class SQLiteEventStore
                           payloadBytes,
                           (chunk - 1) * maxBlobSizePerRow,
                           Math.min((chunk) * maxBlobSizePerRow, payloadBytes.length));
-                  ContentValues payloadValues = new ContentValues();
-                  payloadValues.put("event_id", newEventId);
-                  payloadValues.put("sequence_num", chunk);
-                  payloadValues.put("bytes", chunkBytes);
-                  db.insert("event_payloads", null, payloadValues);
+                  insertPayload.bindLong(1, newEventId);
+                  insertPayload.bindLong(2, chunk);
+                  insertPayload.bindBlob(3, chunkBytes);
+                  insertPayload.executeInsert();
                 }
               }
 
-              // TODO: insert all with one sql query.
               for (Map.Entry<String, String> entry : event.getMetadata().entrySet()) {
-                ContentValues metadata = new ContentValues();
-                metadata.put("event_id", newEventId);
-                metadata.put("name", entry.getKey());
-                metadata.put("value", entry.getValue());
-                db.insert("event_metadata", null, metadata);
+                if (insertMetadata == null) {
+                  insertMetadata = db.compileStatement(INSERT_METADATA_SQL);
+                }
+                insertMetadata.bindLong(1, newEventId);
+                insertMetadata.bindString(2, entry.getKey());
+                insertMetadata.bindString(3, entry.getValue());
+                insertMetadata.executeInsert();
               }
-              return newEventId;
-            });
-
-    if (newRowId < 1) {
-      return null;
-    }
-    return PersistedEvent.create(newRowId, transportContext, event);
+              persisted.add(PersistedEvent.create(newEventId, transportContext, event));
+            }
+          } finally {
+            insertEvent.close();
+            if (insertPayload != null) {
+              insertPayload.close();
+            }
+            if (insertMetadata != null) {
+              insertMetadata.close();
+            }
+          }
+          return persisted;
+        });
   }
 
   private long ensureTransportContext(SQLiteDatabase db, TransportContext transportContext) {
@@ -184,11 +255,19 @@ public class SQLiteEventStore
       record.put("extras", Base64.encodeToString(transportContext.getExtras(), Base64.DEFAULT));
     }
 
-    return db.insert("transport_contexts", null, record);
+    long newId = db.insert("transport_contexts", null, record);
+    if (newId != -1) {
+      contextIds.put(transportContext, newId);
+    }
+    return newId;
   }
 
   @Nullable
   private Long getTransportContextId(SQLiteDatabase db, TransportContext transportContext) {
+    Long cachedId = contextIds.get(transportContext);
+    if (cachedId != null) {
+      return cachedId;
+    }
     final StringBuilder selection = new StringBuilder("backend_name = ? and priority = ?");
     ArrayList<String> selectionArgs =
         new ArrayList<>(
@@ -216,7 +295,9 @@ public class SQLiteEventStore
           if (!cursor.moveToNext()) {
             return null;
           }
-          return cursor.getLong(0);
+          long id = cursor.getLong(0);
+          contextIds.put(transportContext, id);
+          return id;
         });
   }
 
@@ -339,17 +420,19 @@ public class SQLiteEventStore
   public Iterable<PersistedEvent> loadBatch(TransportContext transportContext) {
     return inTransaction(
         db -> {
-          List<PersistedEvent> events = loadEvents(db, transportContext, config.getLoadBatchSize());
+          long[] payloadBytes = new long[1];
+          List<PersistedEvent> events =
+              loadEvents(db, transportContext, config.getLoadBatchSize(), payloadBytes);
           for (Priority p : Priority.values()) {
             if (p == transportContext.getPriority()) {
               continue;
             }
             int space = config.getLoadBatchSize() - events.size();
-            if (space <= 0) {
+            if (space <= 0 || payloadBytes[0] >= config.getLoadBatchMaxPayloadBytes()) {
               break;
             }
             List<PersistedEvent> additional =
-                loadEvents(db, transportContext.withPriority(p), space);
+                loadEvents(db, transportContext.withPriority(p), space, payloadBytes);
             events.addAll(additional);
           }
           return join(events, loadMetadata(db, events));
@@ -401,12 +484,95 @@ public class SQLiteEventStore
                 return null;
               });
 
-          return db.delete("events", "timestamp_ms < ?", selectionArgs);
+          int deleted = db.delete("events", "timestamp_ms < ?", selectionArgs);
+          if (isStorageAtLimit()) {
+            deleted +=
+                evictEvents(db, null, getUsedByteSize() - config.getMaxStorageSizeInBytes());
+          }
+          return deleted;
         });
   }
 
+  /**
+   * Evicts events to free at least {@code bytesToFree} bytes of payload, in the order defined by
+   * the configured {@link EvictionPolicy}.
+   *
+   * <p>Only events whose priority is at most as important as {@code maxPriority} are evicted, or
+   * events of any priority if it is null. At most {@link EventStoreConfig#getEvictionBatchSize()}
+   * events are evicted per call so that a single call never stalls; callers make further progress
+   * on subsequent calls. Evicted events are recorded as dropped because the cache is full.
+   *
+   * @return the number of evicted events.
+   */
+  private int evictEvents(SQLiteDatabase db, @Nullable Priority maxPriority, long bytesToFree) {
+    EvictionPolicy policy = config.getEvictionPolicy();
+    String eventsQuery =
+        "SELECT _id, transport_name, payload_size FROM events WHERE context_id = ? ORDER BY "
+            + policy.getEventOrder()
+            + " LIMIT ?";
+    long targetBytes = Math.max(bytesToFree, 1);
+    List<Long> evictedIds = new ArrayList<>();
+    Map<String, Integer> evictedCounts = new HashMap<>();
+    long freedBytes = 0;
+
+    for (Priority priority : policy.getEvictionOrder()) {
+      if (freedBytes >= targetBytes || evictedIds.size() >= config.getEvictionBatchSize()) {
+        break;
+      }
+      List<Long> priorityContextIds =
+          tryWithCursor(
+              db.rawQuery(
+                  "SELECT _id FROM transport_contexts WHERE priority = ?",
+                  new String[] {String.valueOf(PriorityMapping.toInt(priority))}),
+              cursor -> {
+                List<Long> ids = new ArrayList<>();
+                while (cursor.moveToNext()) {
+                  ids.add(cursor.getLong(0));
+                }
+                return ids;
+              });
+      for (Long contextId : priorityContextIds) {
+        if (freedBytes >= targetBytes || evictedIds.size() >= config.getEvictionBatchSize()) {
+          break;
+        }
+        int limit = config.getEvictionBatchSize() - evictedIds.size();
+        long remainingBytes = targetBytes - freedBytes;
+        freedBytes +=
+            tryWithCursor(
+                db.rawQuery(
+                    eventsQuery, new String[] {contextId.toString(), String.valueOf(limit)}),
+                cursor -> {
+                  long bytes = 0;
+                  while (bytes < remainingBytes && cursor.moveToNext()) {
+                    evictedIds.add(cursor.getLong(0));
+                    String transportName = cursor.getString(1);
+                    Integer count = evictedCounts.get(transportName);
+                    evictedCounts.put(transportName, count == null ? 1 : count + 1);
+                    bytes += cursor.getLong(2);
+                  }
+                  return bytes;
+                });
+      }
+      if (priority == maxPriority) {
+        break;
+      }
+    }
+
+    if (evictedIds.isEmpty()) {
+      return 0;
+    }
+    String evictedIdList = "(" + TextUtils.join(",", evictedIds) + ")";
+    db.execSQL("DELETE FROM events WHERE _id in " + evictedIdList);
+    for (Map.Entry<String, Integer> entry : evictedCounts.entrySet()) {
+      recordLogEventDropped(entry.getValue(), LogEventDropped.Reason.CACHE_FULL, entry.getKey());
+    }
+    Logging.d(LOG_TAG, "Evicted %d events to free %d bytes", evictedIds.size(), freedBytes);
+    return evictedIds.size();
+  }
+
   @Override
   public void close() {
+    contextIds.clear();
     schemaManager.close();
   }
 
@@ -418,6 +584,7 @@ public class SQLiteEventStore
           db.delete("transport_contexts", null, new String[] {});
           return null;
         });
+    contextIds.clear();
   }
 
   private static byte[] maybeBase64Decode(@Nullable String value) {
@@ -427,9 +594,14 @@ public class SQLiteEventStore
     return Base64.decode(value, Base64.DEFAULT);
   }
 
-  /** Loads all events for a backend. */
+  /**
+   * Loads events for a backend.
+   *
+   * <p>Stops loading once the running payload byte count in {@code payloadBytes[0]} reaches the
+   * configured batch payload limit, so that large backlogs are uploaded in bounded chunks.
+   */
   private List<PersistedEvent> loadEvents(
-      SQLiteDatabase db, TransportContext transportContext, int limit) {
+      SQLiteDatabase db, TransportContext transportContext, int limit, long[] payloadBytes) {
     List<PersistedEvent> events = new ArrayList<>();
     Long contextId = getTransportContextId(db, transportContext);
     if (contextId == null) {
@@ -456,7 +628,7 @@ public class SQLiteEventStore
             null,
             String.valueOf(limit)),
         cursor -> {
-          while (cursor.moveToNext()) {
+          while (payloadBytes[0] < config.getLoadBatchMaxPayloadBytes() && cursor.moveToNext()) {
             long id = cursor.getLong(0);
             boolean inline = cursor.getInt(7) != 0;
             EventInternal.Builder event =
@@ -474,7 +646,9 @@ public class SQLiteEventStore
             if (!cursor.isNull(6)) {
               event.setCode(cursor.getInt(6));
             }
-            events.add(PersistedEvent.create(id, transportContext, event.build()));
+            EventInternal eventInternal = event.build();
+            payloadBytes[0] += eventInternal.getEncodedPayload().getBytes().length;
+            events.add(PersistedEvent.create(id, transportContext, eventInternal));
           }
           return null;
         });
@@ -766,12 +940,17 @@ public class SQLiteEventStore
   public <T> T runCriticalSection(CriticalSection<T> criticalSection) {
     SQLiteDatabase db = getDb();
     ensureBeginTransaction(db);
+    boolean successful = false;
     try {
       T result = criticalSection.execute();
       db.setTransactionSuccessful();
+      successful = true;
       return result;
     } finally {
       db.endTransaction();
+      if (!successful) {
+        contextIds.clear();
+      }
     }
   }
 
@@ -779,12 +958,18 @@ public class SQLiteEventStore
   <T> T inTransaction(Function<SQLiteDatabase, T> function) {
     SQLiteDatabase db = getDb();
     db.beginTransaction();
+    boolean successful = false;
     try {
       T result = function.apply(db);
       db.setTransactionSuccessful();
+      successful = true;
       return result;
     } finally {
       db.endTransaction();
+      if (!successful) {
+        // Rolled back rows may still be referenced by the cache.
+        contextIds.clear();
+      }
     }
   }
 
@@ -799,9 +984,15 @@ public class SQLiteEventStore
   }
 
   private boolean isStorageAtLimit() {
-    long byteSize = getPageCount() * getPageSize();
+    return getUsedByteSize() >= config.getMaxStorageSizeInBytes();
+  }
 
-    return byteSize >= config.getMaxStorageSizeInBytes();
+  /**
+   * Size of the database excluding free pages, which are reused for new rows. Unlike {@link
+   * #getByteSize()} it shrinks when events are deleted.
+   */
+  private long getUsedByteSize() {
+    return (getPageCount() - getFreelistCount()) * getPageSize();
   }
 
   @VisibleForTesting
@@ -822,6 +1013,11 @@ public class SQLiteEventStore
     return getDb().compileStatement("PRAGMA page_count").simpleQueryForLong();
   }
 
+  /** Gets the number of unused pages in the database file. */
+  private long getFreelistCount() {
+    return getDb().compileStatement("PRAGMA freelist_count").simpleQueryForLong();
+  }
+
   @VisibleForTesting
   static <T> T tryWithCursor(Cursor c, Function<Cursor, T> function) {
     try {
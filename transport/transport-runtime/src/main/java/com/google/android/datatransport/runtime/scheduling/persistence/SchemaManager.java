@@ -101,7 +101,10 @@ final class SchemaManager extends SQLiteOpenHelper {
   private static final String DROP_GLOBAL_LOG_EVENT_STATE_SQL =
       "DROP TABLE IF EXISTS global_log_event_state";
 
-  static int SCHEMA_VERSION = 5;
+  private static final String CREATE_EVENT_EVICTION_INDEX_V6 =
+      "CREATE INDEX events_context_eviction on events(context_id, num_attempts DESC, timestamp_ms)";
+
+  static int SCHEMA_VERSION = 6;
 
   private static final SchemaManager.Migration MIGRATE_TO_V1 =
       (db) -> {
@@ -138,8 +141,24 @@ final class SchemaManager extends SQLiteOpenHelper {
         db.execSQL(CREATE_INITIAL_GLOBAL_LOG_EVENT_STATE_VALUE_SQL);
       };
 
+  private static final SchemaManager.Migration MIGRATION_TO_V6 =
+      db -> {
+        db.execSQL("ALTER TABLE events ADD COLUMN payload_size INTEGER NOT NULL DEFAULT 0");
+        db.execSQL(
+            "UPDATE events SET payload_size = CASE WHEN inline THEN length(payload) ELSE"
+                + " (SELECT IFNULL(SUM(length(bytes)), 0) FROM event_payloads"
+                + " WHERE event_id = events._id) END");
+        db.execSQL(CREATE_EVENT_EVICTION_INDEX_V6);
+      };
+
   private static final List<Migration> INCREMENTAL_MIGRATIONS =
-      Arrays.asList(MIGRATE_TO_V1, MIGRATE_TO_V2, MIGRATE_TO_V3, MIGRATE_TO_V4, MIGRATION_TO_V5);
+      Arrays.asList(
+          MIGRATE_TO_V1,
+          MIGRATE_TO_V2,
+          MIGRATE_TO_V3,
+          MIGRATE_TO_V4,
+          MIGRATION_TO_V5,
+          MIGRATION_TO_V6);
 
   @Inject
   SchemaManager(
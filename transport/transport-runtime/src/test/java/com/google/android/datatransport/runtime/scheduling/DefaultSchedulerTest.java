@@ -0,0 +1,126 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.android.datatransport.runtime.scheduling;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.android.datatransport.Encoding;
+import com.google.android.datatransport.runtime.EncodedPayload;
+import com.google.android.datatransport.runtime.EventInternal;
+import com.google.android.datatransport.runtime.TransportContext;
+import com.google.android.datatransport.runtime.backends.BackendRegistry;
+import com.google.android.datatransport.runtime.backends.TransportBackend;
+import com.google.android.datatransport.runtime.scheduling.jobscheduling.WorkScheduler;
+import com.google.android.datatransport.runtime.scheduling.persistence.InMemoryEventStore;
+import com.google.android.datatransport.runtime.synchronization.SynchronizationGuard;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class DefaultSchedulerTest {
+  private static final String BACKEND_NAME = "backend";
+  private static final TransportContext TRANSPORT_CONTEXT =
+      TransportContext.builder().setBackendName(BACKEND_NAME).build();
+  private static final TransportContext ANOTHER_TRANSPORT_CONTEXT =
+      TransportContext.builder().setBackendName("unknown").build();
+  private static final EventInternal EVENT =
+      EventInternal.builder()
+          .setTransportName("42")
+          .setEventMillis(1)
+          .setUptimeMillis(2)
+          .setEncodedPayload(
+              new EncodedPayload(Encoding.of("proto"), "Hello".getBytes(Charset.defaultCharset())))
+          .build();
+  private static final SynchronizationGuard GUARD =
+      new SynchronizationGuard() {
+        @Override
+        public <T> T runCriticalSection(CriticalSection<T> criticalSection) {
+          return criticalSection.execute();
+        }
+      };
+
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final BackendRegistry mockRegistry = mock(BackendRegistry.class);
+  private final TransportBackend mockBackend = mock(TransportBackend.class);
+  private final WorkScheduler mockWorkScheduler = mock(WorkScheduler.class);
+  private final InMemoryEventStore eventStore = spy(new InMemoryEventStore());
+  private final DefaultScheduler scheduler =
+      new DefaultScheduler(tasks::add, mockRegistry, mockWorkScheduler, eventStore, GUARD);
+
+  @Before
+  public void setUp() {
+    when(mockRegistry.get(BACKEND_NAME)).thenReturn(mockBackend);
+    when(mockBackend.decorate(any())).thenAnswer(invocation -> invocation.getArgument(0));
+  }
+
+  @Test
+  public void schedule_whileExecutorIsBusy_shouldPersistEventsInOneBatch() {
+    List<Exception> results = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      scheduler.schedule(TRANSPORT_CONTEXT, EVENT, results::add);
+    }
+
+    assertThat(tasks).hasSize(1);
+    tasks.remove(0).run();
+
+    verify(eventStore, times(1)).persistAll(eq(TRANSPORT_CONTEXT), any());
+    verify(eventStore, never()).persist(any(), any());
+    verify(mockWorkScheduler, times(1)).schedule(TRANSPORT_CONTEXT, 1);
+    assertThat(eventStore.hasPendingEventsFor(TRANSPORT_CONTEXT)).isTrue();
+    assertThat(eventStore.loadBatch(TRANSPORT_CONTEXT)).hasSize(3);
+    assertThat(results).containsExactly(null, null, null);
+  }
+
+  @Test
+  public void schedule_afterDrain_shouldPostNewTask() {
+    List<Exception> results = new ArrayList<>();
+    scheduler.schedule(TRANSPORT_CONTEXT, EVENT, results::add);
+    tasks.remove(0).run();
+    scheduler.schedule(TRANSPORT_CONTEXT, EVENT, results::add);
+
+    assertThat(tasks).hasSize(1);
+    tasks.remove(0).run();
+
+    verify(eventStore, times(2)).persist(eq(TRANSPORT_CONTEXT), any());
+    assertThat(results).containsExactly(null, null);
+  }
+
+  @Test
+  public void schedule_withUnregisteredBackend_shouldOnlyFailThatEvent() {
+    List<Exception> results = new ArrayList<>();
+    scheduler.schedule(ANOTHER_TRANSPORT_CONTEXT, EVENT, results::add);
+    scheduler.schedule(TRANSPORT_CONTEXT, EVENT, results::add);
+
+    tasks.remove(0).run();
+
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0)).isInstanceOf(IllegalArgumentException.class);
+    assertThat(results.get(1)).isNull();
+    assertThat(eventStore.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
+  }
+}
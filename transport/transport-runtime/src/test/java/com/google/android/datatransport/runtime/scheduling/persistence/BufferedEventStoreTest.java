@@ -0,0 +1,175 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.android.datatransport.runtime.scheduling.persistence;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import com.google.android.datatransport.Encoding;
+import com.google.android.datatransport.Priority;
+import com.google.android.datatransport.runtime.EncodedPayload;
+import com.google.android.datatransport.runtime.EventInternal;
+import com.google.android.datatransport.runtime.TransportContext;
+import com.google.android.datatransport.runtime.firebase.transport.LogEventDropped;
+import com.google.android.datatransport.runtime.synchronization.SynchronizationGuard;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class BufferedEventStoreTest {
+  private static final TransportContext TRANSPORT_CONTEXT =
+      TransportContext.builder().setBackendName("backend1").build();
+  private static final TransportContext HIGHEST_PRIORITY_CONTEXT =
+      TRANSPORT_CONTEXT.withPriority(Priority.HIGHEST);
+  private static final EventInternal EVENT =
+      EventInternal.builder()
+          .setTransportName("42")
+          .setEventMillis(1)
+          .setUptimeMillis(2)
+          .setEncodedPayload(
+              new EncodedPayload(Encoding.of("proto"), "Hello".getBytes(Charset.defaultCharset())))
+          .build();
+  private static final int CAPACITY = 4;
+  private static final int FLUSH_THRESHOLD = 3;
+  private static final long FLUSH_DELAY_MS = 1000;
+
+  private final InMemoryEventStore delegate = spy(new InMemoryEventStore());
+  private final ClientHealthMetricsStore metricsStore = mock(ClientHealthMetricsStore.class);
+  private final AtomicInteger criticalSections = new AtomicInteger();
+  private final SynchronizationGuard guard =
+      new SynchronizationGuard() {
+        @Override
+        public <T> T runCriticalSection(CriticalSection<T> criticalSection) {
+          criticalSections.incrementAndGet();
+          return criticalSection.execute();
+        }
+      };
+  private final BufferedEventStore store =
+      new BufferedEventStore(
+          delegate,
+          metricsStore,
+          guard,
+          Runnable::run,
+          new Handler(Looper.getMainLooper()),
+          CAPACITY,
+          FLUSH_THRESHOLD,
+          FLUSH_DELAY_MS);
+
+  @Test
+  public void persist_belowThreshold_shouldKeepEventsInMemory() {
+    PersistedEvent persisted = store.persist(TRANSPORT_CONTEXT, EVENT);
+    List<PersistedEvent> persistedAll =
+        store.persistAll(TRANSPORT_CONTEXT, Collections.singletonList(EVENT));
+
+    assertThat(persisted.getId()).isEqualTo(BufferedEventStore.BUFFERED_EVENT_ID);
+    assertThat(persisted.getEvent()).isEqualTo(EVENT);
+    assertThat(persistedAll).containsExactly(persisted);
+    assertThat(store.getBufferedEventCount()).isEqualTo(2);
+    assertThat(delegate.loadActiveContexts()).isEmpty();
+  }
+
+  @Test
+  public void persist_atThreshold_shouldFlushInOneBatch() {
+    for (int i = 0; i < FLUSH_THRESHOLD; i++) {
+      store.persist(TRANSPORT_CONTEXT, EVENT);
+    }
+
+    assertThat(store.getBufferedEventCount()).isEqualTo(0);
+    verify(delegate).persistAll(eq(TRANSPORT_CONTEXT), any());
+    assertThat(delegate.loadBatch(TRANSPORT_CONTEXT)).hasSize(FLUSH_THRESHOLD);
+  }
+
+  @Test
+  public void persist_afterFlushDelay_shouldFlush() {
+    store.persist(TRANSPORT_CONTEXT, EVENT);
+
+    shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+
+    assertThat(store.getBufferedEventCount()).isEqualTo(0);
+    assertThat(criticalSections.get()).isEqualTo(1);
+    assertThat(delegate.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
+  }
+
+  @Test
+  public void persist_withHighestPriority_shouldBypassBuffer() {
+    store.persist(HIGHEST_PRIORITY_CONTEXT, EVENT);
+
+    assertThat(store.getBufferedEventCount()).isEqualTo(0);
+    assertThat(delegate.loadBatch(HIGHEST_PRIORITY_CONTEXT)).hasSize(1);
+  }
+
+  @Test
+  public void loadBatch_shouldFlushBufferedEvents() {
+    store.persist(TRANSPORT_CONTEXT, EVENT);
+
+    assertThat(store.hasPendingEventsFor(TRANSPORT_CONTEXT)).isTrue();
+    assertThat(store.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
+  }
+
+  @Test
+  public void onTrimMemory_whenBackgrounded_shouldFlush() {
+    store.persist(TRANSPORT_CONTEXT, EVENT);
+
+    store.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+    assertThat(store.getBufferedEventCount()).isEqualTo(0);
+    assertThat(criticalSections.get()).isEqualTo(1);
+    assertThat(delegate.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
+  }
+
+  @Test
+  public void persist_whenFlushFailsAndBufferIsFull_shouldDropOldestEvents() {
+    doThrow(new IllegalStateException("db is locked"))
+        .when(delegate)
+        .persistAll(any(), any());
+    for (int i = 0; i < CAPACITY + 2; i++) {
+      store.persist(TRANSPORT_CONTEXT, EVENT);
+    }
+    assertThat(store.getBufferedEventCount()).isEqualTo(CAPACITY);
+
+    doCallRealMethod().when(delegate).persistAll(any(), any());
+    store.flush();
+
+    assertThat(store.getBufferedEventCount()).isEqualTo(0);
+    assertThat(delegate.loadBatch(TRANSPORT_CONTEXT)).hasSize(CAPACITY);
+    verify(metricsStore)
+        .recordLogEventDropped(2, LogEventDropped.Reason.CACHE_FULL, EVENT.getTransportName());
+  }
+
+  @Test
+  public void close_shouldFlushBufferedEvents() throws Exception {
+    store.persistAll(TRANSPORT_CONTEXT, Collections.singletonList(EVENT));
+
+    store.close();
+
+    assertThat(delegate.loadBatch(TRANSPORT_CONTEXT)).hasSize(1);
+  }
+}
@@ -0,0 +1,71 @@
+// Copyright 2023 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.android.datatransport.runtime.scheduling.persistence;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+import android.os.Bundle;
+import androidx.test.core.app.ApplicationProvider;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class EventStoreConfigTest {
+
+  @Test
+  public void fromMetadata_withoutMetadata_disablesWriteBuffer() {
+    assertThat(EventStoreConfig.fromMetadata(null)).isSameInstanceAs(EventStoreConfig.DEFAULT);
+    assertThat(EventStoreConfig.fromMetadata(new Bundle()).getWriteBufferCapacity()).isEqualTo(0);
+  }
+
+  @Test
+  public void fromMetadata_withWriteBufferCapacity_enablesWriteBuffer() {
+    Bundle metadata = new Bundle();
+    metadata.putInt(EventStoreConfig.WRITE_BUFFER_CAPACITY_KEY, 100);
+
+    EventStoreConfig config = EventStoreConfig.fromMetadata(metadata);
+
+    assertThat(config.getWriteBufferCapacity()).isEqualTo(100);
+    assertThat(config.getMaxStorageSizeInBytes())
+        .isEqualTo(EventStoreConfig.DEFAULT.getMaxStorageSizeInBytes());
+  }
+
+  @Test
+  public void fromMetadata_withNegativeWriteBufferCapacity_disablesWriteBuffer() {
+    Bundle metadata = new Bundle();
+    metadata.putInt(EventStoreConfig.WRITE_BUFFER_CAPACITY_KEY, -1);
+
+    assertThat(EventStoreConfig.fromMetadata(metadata).getWriteBufferCapacity()).isEqualTo(0);
+  }
+
+  @Test
+  public void eventStore_withWriteBufferCapacity_isBuffered() {
+    Context context = ApplicationProvider.getApplicationContext();
+    SQLiteEventStore store = mock(SQLiteEventStore.class);
+    EventStoreConfig config =
+        EventStoreConfig.DEFAULT.toBuilder().setWriteBufferCapacity(4).build();
+
+    assertThat(EventStoreModule.eventStore(context, config, store, mock(Executor.class)))
+        .isInstanceOf(BufferedEventStore.class);
+    assertThat(
+            EventStoreModule.eventStore(
+                context, EventStoreConfig.DEFAULT, store, mock(Executor.class)))
+        .isSameInstanceAs(store);
+  }
+}
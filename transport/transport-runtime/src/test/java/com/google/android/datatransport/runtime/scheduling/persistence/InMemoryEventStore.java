@@ -41,6 +41,19 @@ public class InMemoryEventStore implements EventStore {
     return PersistedEvent.create(newId, transportContext, event);
   }
 
+  @Override
+  public synchronized List<PersistedEvent> persistAll(
+      TransportContext transportContext, List<EventInternal> events) {
+    List<PersistedEvent> persisted = new ArrayList<>(events.size());
+    Map<Long, EventInternal> backendStore = getOrCreateBackendStore(transportContext);
+    for (EventInternal event : events) {
+      long newId = idCounter.incrementAndGet();
+      backendStore.put(newId, event);
+      persisted.add(PersistedEvent.create(newId, transportContext, event));
+    }
+    return persisted;
+  }
+
   private Map<Long, EventInternal> getOrCreateBackendStore(TransportContext transportContext) {
     if (!store.containsKey(transportContext)) {
       store.put(transportContext, new HashMap<>());